@@ -36,6 +36,8 @@ class AuditConfig {
 
     public static final String REQUEST_BODY = "requestBody";
     public static final String RESPONSE_BODY = "responseBody";
+    public static final String OVERFLOW_POLICY_DROP = "drop";
+    public static final String OVERFLOW_POLICY_BLOCK = "block";
 
     private static final String HEADERS = "headers";
     private static final String AUDIT = "audit";
@@ -48,6 +50,10 @@ class AuditConfig {
     private static final String ENABLED = "enabled";
     private static final String REQUEST_BODY_MAX_SIZE = "requestBodyMaxSize";
     private static final String RESPONSE_BODY_MAX_SIZE = "responseBodyMaxSize";
+    private static final String ASYNC = "async";
+    private static final String QUEUE_SIZE = "queueSize";
+    private static final String BATCH_SIZE = "batchSize";
+    private static final String OVERFLOW_POLICY = "overflowPolicy";
 
     private  Map<String, Object> mappedConfig;
     public static final String CONFIG_NAME = "audit";
@@ -65,6 +71,10 @@ class AuditConfig {
     private int requestBodyMaxSize;
     private int responseBodyMaxSize;
     private boolean enabled;
+    private boolean async;
+    private int queueSize = 8192;
+    private int batchSize = 256;
+    private String overflowPolicy = OVERFLOW_POLICY_DROP;
 
     private AuditConfig() {
         this(CONFIG_NAME);
@@ -145,6 +155,14 @@ class AuditConfig {
 
     public int getResponseBodyMaxSize() { return responseBodyMaxSize; }
 
+    public boolean isAsync() { return async; }
+
+    public int getQueueSize() { return queueSize; }
+
+    public int getBatchSize() { return batchSize; }
+
+    public String getOverflowPolicy() { return overflowPolicy; }
+
     Config getConfig() {
         return config;
     }
@@ -229,5 +247,22 @@ class AuditConfig {
             enabled = true;
         }
         timestampFormat = (String)getMappedConfig().get(TIMESTAMP_FORMAT);
+        object = getMappedConfig().get(ASYNC);
+        async = object != null && (Boolean) object;
+        object = getMappedConfig().get(QUEUE_SIZE);
+        if (object != null) {
+            queueSize = (Integer) object;
+        }
+        object = getMappedConfig().get(BATCH_SIZE);
+        if (object != null) {
+            batchSize = (Integer) object;
+        }
+        object = getMappedConfig().get(OVERFLOW_POLICY);
+        if (object != null) {
+            overflowPolicy = (String) object;
+            if(!OVERFLOW_POLICY_DROP.equalsIgnoreCase(overflowPolicy) && !OVERFLOW_POLICY_BLOCK.equalsIgnoreCase(overflowPolicy)) {
+                throw new ConfigException("overflowPolicy must be drop or block: " + overflowPolicy);
+            }
+        }
     }
 }
@@ -46,7 +46,9 @@ import java.util.*;
  *
  * This handler can be used on production but be aware that it will impact the overall performance.
  * Turning off statusCode and responseTime can make it faster as these have to be captured on the
- * response chain instead of request chain.
+ * response chain instead of request chain. With async enabled in audit.yml, the entries are masked,
+ * serialized and logged in batches on a dedicated thread, and only copied to a bounded buffer on the
+ * request thread.
  *
  * For most business and the majority of microservices, you don't need to enable this handler due to
  * performance reason. The default audit log will be the audit.log configured in the default logback.xml;
@@ -95,9 +97,12 @@ public class AuditHandler implements MiddlewareHandler {
 
     private DateTimeFormatter DATE_TIME_FORMATTER;
 
+    private volatile AuditSink sink;
+
     public AuditHandler() {
         if (logger.isInfoEnabled()) logger.info("AuditHandler is loaded.");
         config = AuditConfig.load();
+        initSink();
         Map<String, Object> serverConfig = Config.getInstance().getJsonMapConfigNoCache(SERVER_CONFIG);
         if (serverConfig != null) {
             serviceId = (String) serverConfig.get(SERVICE_ID_KEY);
@@ -120,6 +125,8 @@ public class AuditHandler implements MiddlewareHandler {
         Map<String, Object> auditInfo = exchange.getAttachment(AttachmentConstants.AUDIT_INFO);
         Map<String, Object> auditMap = new LinkedHashMap<>();
         final long start = System.currentTimeMillis();
+        // the sink might be replaced by a reload, so the same sink is used to mask and write the entry of the request.
+        final AuditSink auditSink = sink;
 
         // add audit timestamp
         auditMap.put(TIMESTAMP, DATE_TIME_FORMATTER == null ? System.currentTimeMillis() : DATE_TIME_FORMATTER.format(Instant.now()));
@@ -127,11 +134,11 @@ public class AuditHandler implements MiddlewareHandler {
         // dump audit info fields according to config
         boolean needAuditData = auditInfo != null && config.hasAuditList();
         if (needAuditData) {
-            auditFields(auditInfo, auditMap);
+            auditFields(auditInfo, auditMap, auditSink);
         }
 
         // dump request header, request body, path parameters, query parameters and request cookies according to config
-        auditRequest(exchange, auditMap, config);
+        auditRequest(exchange, auditMap, config, auditSink);
 
         // dump serviceId from server.yml
         if (config.hasAuditList() && config.getAuditList().contains(SERVICE_ID_KEY)) {
@@ -161,16 +168,16 @@ public class AuditHandler implements MiddlewareHandler {
                     }
                     // audit the response body.
                     if(config.getAuditList() != null && config.getAuditList().contains(RESPONSE_BODY_KEY)) {
-                        auditResponseBody(exchange, auditMap);
+                        auditResponseBody(exchange, auditMap, auditSink);
                     }
 
                     try {
                         // audit entries only is it is an error, if auditOnError flag is set
                         if (config.isAuditOnError()) {
                             if (exchange1.getStatusCode() >= 400)
-                                config.getAuditFunc().accept(Config.getInstance().getMapper().writeValueAsString(auditMap));
+                                audit(auditMap, Config.getInstance(), auditSink);
                         } else {
-                            config.getAuditFunc().accept(Config.getInstance().getMapper().writeValueAsString(auditMap));
+                            audit(auditMap, Config.getInstance(), auditSink);
                         }
                     } catch (JsonProcessingException e) {
                         throw new RuntimeException(e);
@@ -182,16 +189,49 @@ public class AuditHandler implements MiddlewareHandler {
                 }
             });
         } else {
-            config.getAuditFunc().accept(config.getConfig().getMapper().writeValueAsString(auditMap));
+            audit(auditMap, config.getConfig(), auditSink);
         }
         if(logger.isDebugEnabled()) logger.debug("AuditHandler.handleRequest ends.");
         next(exchange);
     }
 
-    private void auditHeader(HttpServerExchange exchange, Map<String, Object> auditMap) {
+    /**
+     * Log the audit entry or hand it over to the sink if async is enabled. If the sink is shut down by a reload
+     * after the request is received, the sink rejects the entry and it is written here so that it is not lost.
+     */
+    private void audit(Map<String, Object> auditMap, Config mapperConfig, AuditSink auditSink) throws JsonProcessingException {
+        // the entry is published, or dropped as the buffer is full.
+        if (auditSink != null && (auditSink.publish(auditMap) || auditSink.isRunning())) return;
+        if (auditSink != null) AuditSink.resolve(auditMap);
+        config.getAuditFunc().accept(mapperConfig.getMapper().writeValueAsString(auditMap));
+    }
+
+    /**
+     * Mask the value now or leave it to the sink if async is enabled.
+     */
+    private static Object mask(AuditSink.Deferred masked, AuditSink auditSink) {
+        return auditSink != null ? masked : masked.resolve();
+    }
+
+    private void initSink() {
+        AuditSink old = sink;
+        sink = config.isAsync() ? new AuditSink(config.getQueueSize(), config.getBatchSize(),
+                AuditConfig.OVERFLOW_POLICY_BLOCK.equalsIgnoreCase(config.getOverflowPolicy()), config.getAuditFunc()) : null;
+        if (old != null) old.shutdown();
+    }
+
+    /**
+     * @return the counters of the async sink or an empty map if async is not enabled
+     */
+    public Map<String, Object> getSinkMetrics() {
+        AuditSink s = sink;
+        return s == null ? new LinkedHashMap<>() : s.getMetrics();
+    }
+
+    private void auditHeader(HttpServerExchange exchange, Map<String, Object> auditMap, AuditSink auditSink) {
         for (String name : config.getHeaderList()) {
             String value = exchange.getRequestHeaders().getFirst(name);
-            auditMap.put(name, config.isMask() ? Mask.maskRegex(value, "requestHeader", name) : value);
+            auditMap.put(name, config.isMask() ? mask(() -> Mask.maskRegex(value, "requestHeader", name), auditSink) : value);
         }
     }
 
@@ -199,17 +239,17 @@ public class AuditHandler implements MiddlewareHandler {
         Handler.next(exchange, next);
     }
 
-    private void auditFields(Map<String, Object> auditInfo, Map<String, Object> auditMap) {
+    private void auditFields(Map<String, Object> auditInfo, Map<String, Object> auditMap, AuditSink auditSink) {
         for (String name : config.getAuditList()) {
             Object value = auditInfo.get(name);
             boolean needApplyMask = config.isMask() && value instanceof String;
-            auditMap.put(name, needApplyMask ? Mask.maskRegex((String) value, MASK_KEY, name) : value);
+            auditMap.put(name, needApplyMask ? mask(() -> Mask.maskRegex((String) value, MASK_KEY, name), auditSink) : value);
         }
     }
 
-    private void auditRequest(HttpServerExchange exchange, Map<String, Object> auditMap, AuditConfig config) {
+    private void auditRequest(HttpServerExchange exchange, Map<String, Object> auditMap, AuditConfig config, AuditSink auditSink) {
         if (config.hasHeaderList()) {
-            auditHeader(exchange, auditMap);
+            auditHeader(exchange, auditMap, auditSink);
         }
         if (!config.hasAuditList()) {
             return;
@@ -217,23 +257,23 @@ public class AuditHandler implements MiddlewareHandler {
         for (String key : config.getAuditList()) {
             switch (key) {
                 case REQUEST_BODY_KEY:
-                    auditRequestBody(exchange, auditMap);
+                    auditRequestBody(exchange, auditMap, auditSink);
                     break;
                 case REQUEST_COOKIES_KEY:
-                    auditRequestCookies(exchange, auditMap);
+                    auditRequestCookies(exchange, auditMap, auditSink);
                     break;
                 case QUERY_PARAMETERS_KEY:
-                    auditQueryParameters(exchange, auditMap);
+                    auditQueryParameters(exchange, auditMap, auditSink);
                     break;
                 case PATH_PARAMETERS_KEY:
-                    auditPathParameters(exchange, auditMap);
+                    auditPathParameters(exchange, auditMap, auditSink);
                     break;
             }
         }
     }
 
     // Audit request body automatically if body handler enabled
-    private void auditRequestBody(HttpServerExchange exchange, Map<String, Object> auditMap) {
+    private void auditRequestBody(HttpServerExchange exchange, Map<String, Object> auditMap, AuditSink auditSink) {
         // Try to get BodyHandler cached request body string first to prevent unnecessary decoding
         String requestBodyString = exchange.getAttachment(AttachmentConstants.REQUEST_BODY_STRING);
         if (requestBodyString == null && exchange.getAttachment(AttachmentConstants.REQUEST_BODY) != null) {
@@ -246,25 +286,25 @@ public class AuditHandler implements MiddlewareHandler {
         }
         // Mask requestBody json string if mask enabled
         if (requestBodyString != null && requestBodyString.length() > 0) {
+            final String body = requestBodyString;
+            final int maxSize = config.getRequestBodyMaxSize();
             String contentType = exchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE);
+            AuditSink.Deferred masked = null;
             if(contentType != null) {
                 if(contentType.startsWith("application/json")) {
-                    if(config.isMask()) requestBodyString = Mask.maskJson(requestBodyString, REQUEST_BODY_KEY);
+                    if(config.isMask()) masked = () -> truncate(Mask.maskJson(body, REQUEST_BODY_KEY), maxSize);
                 } else if(contentType.startsWith("text") || contentType.startsWith("application/xml")) {
-                    if(config.isMask()) requestBodyString = Mask.maskString(requestBodyString, REQUEST_BODY_KEY);
+                    if(config.isMask()) masked = () -> truncate(Mask.maskString(body, REQUEST_BODY_KEY), maxSize);
                 } else {
                     logger.error("Incorrect request content type " + contentType);
                 }
             }
-            if(requestBodyString.length() > config.getRequestBodyMaxSize()) {
-                requestBodyString = requestBodyString.substring(0, config.getRequestBodyMaxSize());
-            }
-            auditMap.put(REQUEST_BODY_KEY, requestBodyString);
+            auditMap.put(REQUEST_BODY_KEY, masked == null ? truncate(body, maxSize) : mask(masked, auditSink));
         }
     }
 
     // Audit response body
-    private void auditResponseBody(HttpServerExchange exchange, Map<String, Object> auditMap) {
+    private void auditResponseBody(HttpServerExchange exchange, Map<String, Object> auditMap, AuditSink auditSink) {
         String responseBodyString = exchange.getAttachment(AttachmentConstants.RESPONSE_BODY_STRING);
         if(responseBodyString == null && exchange.getAttachment(AttachmentConstants.RESPONSE_BODY) != null) {
             // try to convert the response body to JSON if possible. Fallback to String().
@@ -276,51 +316,53 @@ public class AuditHandler implements MiddlewareHandler {
         }
         // mask the response body json string if mask is enabled.
         if(responseBodyString != null && responseBodyString.length() > 0) {
+            final String body = responseBodyString;
+            final int maxSize = config.getResponseBodyMaxSize();
             String contentType = exchange.getResponseHeaders().getFirst(Headers.CONTENT_TYPE);
+            AuditSink.Deferred masked = null;
             if(contentType != null) {
                 if(contentType.startsWith("application/json")) {
-                    if(config.isMask()) responseBodyString =Mask.maskJson(responseBodyString, RESPONSE_BODY_KEY);
+                    if(config.isMask()) masked = () -> truncate(Mask.maskJson(body, RESPONSE_BODY_KEY), maxSize);
                 } else if(contentType.startsWith("text") || contentType.startsWith("application/xml")) {
-                    if(config.isMask()) responseBodyString = Mask.maskString(responseBodyString, RESPONSE_BODY_KEY);
+                    if(config.isMask()) masked = () -> truncate(Mask.maskString(body, RESPONSE_BODY_KEY), maxSize);
                 } else {
                     logger.error("Incorrect response content type " + contentType);
                 }
             }
-            if(responseBodyString.length() > config.getResponseBodyMaxSize()) {
-                responseBodyString = responseBodyString.substring(0, config.getResponseBodyMaxSize());
-            }
-            auditMap.put(RESPONSE_BODY_KEY, responseBodyString);
+            auditMap.put(RESPONSE_BODY_KEY, masked == null ? truncate(body, maxSize) : mask(masked, auditSink));
         }
     }
 
+    private static String truncate(String value, int maxSize) {
+        return value.length() > maxSize ? value.substring(0, maxSize) : value;
+    }
+
     // Audit query parameters
-    private void auditQueryParameters(HttpServerExchange exchange, Map<String, Object> auditMap) {
+    private void auditQueryParameters(HttpServerExchange exchange, Map<String, Object> auditMap, AuditSink auditSink) {
         Map<String, String> res = new HashMap<>();
         Map<String, Deque<String>> queryParameters = exchange.getQueryParameters();
         if (queryParameters != null && queryParameters.size() > 0) {
             for (String query : queryParameters.keySet()) {
                 String value = queryParameters.get(query).toString();
-                String mask = config.isMask() ? Mask.maskRegex(value, QUERY_PARAMETERS_KEY, query) : value;
-                res.put(query, mask);
+                res.put(query, value);
             }
-            auditMap.put(QUERY_PARAMETERS_KEY, res.toString());
+            auditMap.put(QUERY_PARAMETERS_KEY, parameters(res, QUERY_PARAMETERS_KEY, auditSink));
         }
     }
 
-    private void auditPathParameters(HttpServerExchange exchange, Map<String, Object> auditMap) {
+    private void auditPathParameters(HttpServerExchange exchange, Map<String, Object> auditMap, AuditSink auditSink) {
         Map<String, String> res = new HashMap<>();
         Map<String, Deque<String>> pathParameters = exchange.getPathParameters();
         if (pathParameters != null && pathParameters.size() > 0) {
             for (String name : pathParameters.keySet()) {
                 String value = pathParameters.get(name).toString();
-                String mask = config.isMask() ? Mask.maskRegex(value, PATH_PARAMETERS_KEY, name) : value;
-                res.put(name, mask);
+                res.put(name, value);
             }
-            auditMap.put(PATH_PARAMETERS_KEY, res.toString());
+            auditMap.put(PATH_PARAMETERS_KEY, parameters(res, PATH_PARAMETERS_KEY, auditSink));
         }
     }
 
-    private void auditRequestCookies(HttpServerExchange exchange, Map<String, Object> auditMap) {
+    private void auditRequestCookies(HttpServerExchange exchange, Map<String, Object> auditMap, AuditSink auditSink) {
         Map<String, String> res = new HashMap<>();
         Iterable<Cookie> iterable = exchange.requestCookies();
         if(iterable != null) {
@@ -329,11 +371,20 @@ public class AuditHandler implements MiddlewareHandler {
                 Cookie cookie = iterator.next();
                 String name = cookie.getName();
                 String value = cookie.getValue();
-                String mask = config.isMask() ? Mask.maskRegex(value, REQUEST_COOKIES_KEY, name) : value;
-                res.put(name, mask);
+                res.put(name, value);
             }
-            auditMap.put(REQUEST_COOKIES_KEY, res.toString());
+            auditMap.put(REQUEST_COOKIES_KEY, parameters(res, REQUEST_COOKIES_KEY, auditSink));
+        }
+    }
+
+    private Object parameters(Map<String, String> res, String key, AuditSink auditSink) {
+        if (!config.isMask()) {
+            return res.toString();
         }
+        return mask(() -> {
+            res.replaceAll((name, value) -> Mask.maskRegex(value, key, name));
+            return res.toString();
+        }, auditSink);
     }
 
     private void auditServiceId(Map<String, Object> auditMap) {
@@ -367,5 +418,6 @@ public class AuditHandler implements MiddlewareHandler {
     @Override
     public void reload() {
         config.reload();
+        initSink();
     }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.audit;
+
+import com.networknt.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Write the audit entries on a dedicated worker thread so that the serialization, the masking and the
+ * appender are not on the response path. The handler puts the audit map into a bounded ring buffer and
+ * the worker drains it in batches.
+ *
+ * When the buffer is full, the entry is dropped and counted with the drop policy, or the caller waits
+ * for a free slot with the block policy. The masking of the values that are expensive to mask (e.g. the
+ * request and response body) is deferred to the worker with a Deferred value in the audit map.
+ */
+class AuditSink {
+    static final Logger logger = LoggerFactory.getLogger(AuditSink.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long SHUTDOWN_WAIT_MILLIS = 1000;
+
+    /**
+     * A value of the audit map that is resolved by the worker before the entry is serialized.
+     */
+    @FunctionalInterface
+    interface Deferred {
+        String resolve();
+    }
+
+    private final AuditRingBuffer<Map<String, Object>> buffer;
+    private final int batchSize;
+    private final boolean block;
+    private final Consumer<String> auditFunc;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile boolean idle;
+    // the publish calls in progress. The shutdown waits for them so that no entry is queued after the last drain.
+    private final AtomicInteger publishing = new AtomicInteger();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    AuditSink(int queueSize, int batchSize, boolean block, Consumer<String> auditFunc) {
+        this.buffer = new AuditRingBuffer<>(queueSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.block = block;
+        this.auditFunc = auditFunc;
+        worker = new Thread(this::run, "audit-sink");
+        worker.setDaemon(true);
+        worker.start();
+        if(logger.isInfoEnabled()) logger.info("AuditSink is started with capacity {} batchSize {} and {} policy", buffer.capacity(), this.batchSize, block ? "block" : "drop");
+    }
+
+    /**
+     * Queue an audit entry for the worker. The map must not be changed by the caller afterwards.
+     *
+     * @param auditMap the audit entry
+     * @return false if the entry is dropped, or if the sink is shut down and the entry must be written by the caller
+     */
+    boolean publish(Map<String, Object> auditMap) {
+        publishing.incrementAndGet();
+        try {
+            // checked after the publish is counted, so either the shutdown waits for this entry or it is rejected here.
+            if(!running) return false;
+            while(!buffer.offer(auditMap)) {
+                if(!running) return false;
+                if(!block) {
+                    dropped.increment();
+                    if(logger.isDebugEnabled()) logger.debug("Audit entry is dropped as the buffer is full. dropped = {}", dropped.sum());
+                    return false;
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+        } finally {
+            publishing.decrementAndGet();
+        }
+        published.increment();
+        if(idle) LockSupport.unpark(worker);
+        return true;
+    }
+
+    /**
+     * Stop the worker after the queued entries are written. The entries that are published after the sink is
+     * stopped are rejected and written by the caller.
+     */
+    void shutdown() {
+        running = false;
+        while(publishing.get() > 0) {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        LockSupport.unpark(worker);
+        try {
+            worker.join(SHUTDOWN_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(!worker.isAlive()) {
+            List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+            while(buffer.drain(batch, batchSize) > 0) {
+                for(Map<String, Object> auditMap : batch) {
+                    write(auditMap);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @return false if the sink is shut down and the entries must be written by the caller
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Resolve the deferred values of an audit entry.
+     *
+     * @param auditMap the audit entry
+     */
+    static void resolve(Map<String, Object> auditMap) {
+        for(Map.Entry<String, Object> entry : auditMap.entrySet()) {
+            if(entry.getValue() instanceof Deferred) {
+                entry.setValue(((Deferred)entry.getValue()).resolve());
+            }
+        }
+    }
+
+    private void run() {
+        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+        while(running || buffer.size() > 0) {
+            if(buffer.drain(batch, batchSize) == 0) {
+                idle = true;
+                // check again after the flag is set so that a publish in between is not missed.
+                if(buffer.size() == 0 && running) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                idle = false;
+                continue;
+            }
+            for(Map<String, Object> auditMap : batch) {
+                write(auditMap);
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(Map<String, Object> auditMap) {
+        try {
+            resolve(auditMap);
+            auditFunc.accept(Config.getInstance().getMapper().writeValueAsString(auditMap));
+            written.increment();
+        } catch (Throwable e) {
+            failed.increment();
+            logger.error("Failed to write the audit entry", e);
+        }
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getWritten() {
+        return written.sum();
+    }
+
+    Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("published", published.sum());
+        metrics.put("written", written.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("queued", buffer.size());
+        metrics.put("capacity", buffer.capacity());
+        return metrics;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.audit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AuditSinkTest {
+
+    @Test
+    public void testRingBuffer() {
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(3);
+        Assert.assertEquals(4, buffer.capacity());
+        for(int i = 0; i < 4; i++) Assert.assertTrue(buffer.offer(i));
+        Assert.assertFalse(buffer.offer(4));
+        List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(3, buffer.drain(batch, 3));
+        Assert.assertEquals(1, buffer.size());
+        Assert.assertTrue(buffer.offer(5));
+        Assert.assertEquals(2, buffer.drain(batch, 10));
+        Assert.assertEquals(List.of(0, 1, 2, 3, 5), batch);
+        Assert.assertEquals(0, buffer.drain(batch, 10));
+    }
+
+    @Test
+    public void testWriteInBackground() throws Exception {
+        List<String> entries = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(100);
+        AuditSink sink = new AuditSink(16, 8, true, entry -> {
+            entries.add(entry);
+            latch.countDown();
+        });
+        try {
+            for(int i = 0; i < 100; i++) {
+                Map<String, Object> auditMap = new LinkedHashMap<>();
+                auditMap.put("id", i);
+                AuditSink.Deferred masked = () -> "masked";
+                auditMap.put("requestBody", masked);
+                Assert.assertTrue(sink.publish(auditMap));
+            }
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals("{\"id\":0,\"requestBody\":\"masked\"}", entries.get(0));
+            Assert.assertEquals("{\"id\":99,\"requestBody\":\"masked\"}", entries.get(99));
+            Assert.assertEquals(0, sink.getDropped());
+        } finally {
+            sink.shutdown();
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AuditSink sink = new AuditSink(4, 1, false, entry -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            Assert.assertTrue(sink.publish(new LinkedHashMap<>()));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            // the worker is blocked in the appender, so only 4 entries fit in the buffer.
+            int accepted = 0;
+            for(int i = 0; i < 10; i++) {
+                if(sink.publish(new LinkedHashMap<>())) accepted++;
+            }
+            Assert.assertEquals(4, accepted);
+            Assert.assertEquals(6, sink.getDropped());
+            Assert.assertEquals(6L, sink.getMetrics().get("dropped"));
+        } finally {
+            release.countDown();
+            sink.shutdown();
+        }
+        Assert.assertEquals(5, sink.getWritten());
+    }
+
+    @Test
+    public void testWrittenByCallerAfterShutdown() {
+        List<String> entries = Collections.synchronizedList(new ArrayList<>());
+        AuditSink sink = new AuditSink(4, 1, true, entries::add);
+        Assert.assertTrue(sink.isRunning());
+        sink.shutdown();
+        // the handler writes the entry itself once the sink is shut down, so the deferred values are resolved here.
+        Assert.assertFalse(sink.isRunning());
+        Map<String, Object> auditMap = new LinkedHashMap<>();
+        AuditSink.Deferred masked = () -> "masked";
+        auditMap.put("requestBody", masked);
+        // the entry is rejected instead of being queued in the buffer that is no longer drained.
+        Assert.assertFalse(sink.publish(auditMap));
+        Assert.assertEquals(0L, sink.getDropped());
+        Assert.assertEquals(0, sink.getMetrics().get("queued"));
+        AuditSink.resolve(auditMap);
+        Assert.assertEquals("masked", auditMap.get("requestBody"));
+        Assert.assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void testNoEntryLostOnShutdown() throws Exception {
+        List<String> entries = Collections.synchronizedList(new ArrayList<>());
+        AuditSink sink = new AuditSink(1024, 16, true, entries::add);
+        AtomicInteger rejected = new AtomicInteger();
+        int threads = 4;
+        int count = 10000;
+        CountDownLatch started = new CountDownLatch(threads);
+        List<Thread> publishers = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                for(int i = 0; i < count; i++) {
+                    Map<String, Object> auditMap = new LinkedHashMap<>();
+                    auditMap.put("i", i);
+                    if(!sink.publish(auditMap)) rejected.incrementAndGet();
+                }
+            });
+            thread.start();
+            publishers.add(thread);
+        }
+        started.await();
+        sink.shutdown();
+        for(Thread thread : publishers) thread.join();
+        // the worker might still be writing the queued entries after the shutdown wait.
+        long deadline = System.currentTimeMillis() + 5000;
+        while(entries.size() + rejected.get() < threads * count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // every entry is either written by the sink or rejected to be written by the caller.
+        Assert.assertEquals(threads * count, entries.size() + rejected.get());
+        Assert.assertEquals(0L, sink.getDropped());
+    }
+}
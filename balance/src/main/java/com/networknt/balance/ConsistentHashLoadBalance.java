@@ -20,7 +20,12 @@ import com.networknt.registry.URL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * To obtain maximum scalability, microservices allow Y-Axis scale to break up big
@@ -33,48 +38,135 @@ import java.util.List;
  * or one user always to be routed to one service instance. However, this key can be a
  * combination of multiple fields from the request.
  *
+ * Each instance is placed on a hash ring with a number of virtual nodes based on the
+ * MurmurHash3 of its host:port, and a request key is served by the first virtual node
+ * clockwise from the hash of the key. The position of an instance doesn't depend on the
+ * order or the size of the discovered list, so adding or removing one of N instances
+ * only moves about 1/N of the keys.
+ *
+ * The ring is cached per serviceId and tag, and it is only rebuilt when the host:port
+ * of the discovered urls are changed.
  *
  * Created by steve on 07/05/17.
  */
 public class ConsistentHashLoadBalance implements LoadBalance {
     static Logger logger = LoggerFactory.getLogger(ConsistentHashLoadBalance.class);
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
 
-    // TODO need to keep a lookup table to map the hash to host:ip, using index in the
-    // urls is not reliable as the sequence will be changed after service restart.
-    // maybe we need somehow to have an instanceId for each service instance. UUID will
-    // do the job. It will be registered as extra parameter like public key and public
-    // key certificate of the service.
+    private final int virtualNodes;
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
 
     public ConsistentHashLoadBalance() {
-        if(logger.isInfoEnabled()) logger.info("A ConsistentHashLoadBalance instance is started");
+        this(DEFAULT_VIRTUAL_NODES);
     }
 
+    /**
+     * @param virtualNodes the number of virtual nodes of each instance on the ring. More nodes
+     *                     distribute the keys more evenly with a bigger ring.
+     */
+    public ConsistentHashLoadBalance(int virtualNodes) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        if(logger.isInfoEnabled()) logger.info("A ConsistentHashLoadBalance instance is started with {} virtual nodes", this.virtualNodes);
+    }
 
     @Override
     public URL select(List<URL> urls, String serviceId, String tag, String requestKey) {
         URL url = null;
         if (urls.size() > 1) {
-            url = doSelect(urls, requestKey);
+            String key = tag == null ? serviceId : serviceId + "|" + tag;
+            url = doSelect(urls, key, requestKey);
         } else if (urls.size() == 1) {
             url = urls.get(0);
         }
         return url;
     }
 
-    private URL doSelect(List<URL> urls, String requestKey) {
-        int hash = getHash(requestKey);
-        // convert hash to an index in urls. This assumes there are the same number
-        // This will be changed later on.
-        return urls.get(hash % urls.size());
+    private URL doSelect(List<URL> urls, String key, String requestKey) {
+        Ring ring = rings.get(key);
+        if(ring == null || ring.urls != urls) {
+            Ring current = ring == null ? null : ring.rebind(urls);
+            if(current == null) {
+                current = new Ring(urls, virtualNodes);
+                if(logger.isDebugEnabled()) logger.debug("Hash ring of {} is built for {} urls", key, urls.size());
+            }
+            rings.put(key, current);
+            ring = current;
+        }
+        return ring.get(MurmurHash3.hash64(requestKey == null ? "" : requestKey));
+    }
+
+    private static String getAddress(URL url) {
+        return url.getHost() + ":" + url.getPort();
     }
 
-    private int getHash(String hashKey) {
-        int hashcode;
-        if(hashKey != null) {
-            hashcode = hashKey.hashCode();
-        } else {
-            hashcode = 0;
+    /**
+     * The immutable hash ring of a list of urls. The hashes of the virtual nodes are kept in a sorted
+     * array with the index of the owner url in a parallel array, so a lookup is a binary search.
+     */
+    static final class Ring {
+        final List<URL> urls;
+        private final long[] hashes;
+        private final int[] owners;
+        private final URL[] nodes;
+        private final Map<String, Integer> indexes;
+
+        Ring(List<URL> urls, int virtualNodes) {
+            this.urls = urls;
+            String[] addresses = urls.stream().map(ConsistentHashLoadBalance::getAddress).distinct().sorted().toArray(String[]::new);
+            nodes = new URL[addresses.length];
+            indexes = new HashMap<>();
+            for(int i = 0; i < addresses.length; i++) indexes.put(addresses[i], i);
+            for(URL url : urls) nodes[indexes.get(getAddress(url))] = url;
+            // the addresses are sorted so that the hash collisions are resolved regardless of the order of the urls.
+            TreeMap<Long, Integer> ring = new TreeMap<>();
+            for(int i = 0; i < addresses.length; i++) {
+                for(int v = 0; v < virtualNodes; v++) {
+                    ring.put(MurmurHash3.hash64(addresses[i] + "#" + v), i);
+                }
+            }
+            hashes = new long[ring.size()];
+            owners = new int[ring.size()];
+            int i = 0;
+            for(Map.Entry<Long, Integer> entry : ring.entrySet()) {
+                hashes[i] = entry.getKey();
+                owners[i++] = entry.getValue();
+            }
+        }
+
+        private Ring(List<URL> urls, long[] hashes, int[] owners, URL[] nodes, Map<String, Integer> indexes) {
+            this.urls = urls;
+            this.hashes = hashes;
+            this.owners = owners;
+            this.nodes = nodes;
+            this.indexes = indexes;
+        }
+
+        /**
+         * Reuse the ring for a new list of urls with the same host:port, which is the normal case as the
+         * registry returns a new list for each discovery.
+         *
+         * @param urls the discovered urls
+         * @return a ring that returns the new url objects or null if the ring must be rebuilt
+         */
+        Ring rebind(List<URL> urls) {
+            URL[] current = new URL[nodes.length];
+            int found = 0;
+            for(URL url : urls) {
+                Integer index = indexes.get(getAddress(url));
+                if(index == null) return null;
+                if(current[index] == null) found++;
+                current[index] = url;
+            }
+            return found == nodes.length ? new Ring(urls, hashes, owners, current, indexes) : null;
+        }
+
+        URL get(long hash) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if(index < 0) {
+                index = -index - 1;
+                if(index == hashes.length) index = 0;
+            }
+            return nodes[owners[index]];
         }
-        return getPositive(hashcode);
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.balance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The load of one service instance reported through LoadBalance.onRequestStart and onRequestComplete.
+ * It tracks the number of outstanding requests and a peak exponentially weighted moving average of the
+ * response time. A response slower than the average replaces it immediately, while faster responses
+ * only move it gradually, so a degrading instance is detected quickly and recovers slowly. The average
+ * also decays toward zero while there are no responses, so an idle instance is retried eventually.
+ */
+public class EndpointStats {
+    private final double decayTime;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private double cost;
+    private long stamp;
+
+    /**
+     * @param decayTime the time in nanoseconds for the average to decay to 1/e of its value
+     * @param now the current time in nanoseconds
+     */
+    public EndpointStats(long decayTime, long now) {
+        this.decayTime = decayTime;
+        this.stamp = now;
+    }
+
+    public void start() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * @param latency the response time in milliseconds
+     * @param now the current time in nanoseconds
+     */
+    public void complete(long latency, long now) {
+        outstanding.updateAndGet(o -> o > 0 ? o - 1 : 0);
+        observe(latency, now);
+    }
+
+    private synchronized void observe(double rtt, long now) {
+        double elapsed = Math.max(now - stamp, 0);
+        stamp = now;
+        if(rtt > cost) {
+            cost = rtt;
+        } else {
+            double w = Math.exp(-elapsed / decayTime);
+            cost = cost * w + rtt * (1 - w);
+        }
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @param now the current time in nanoseconds
+     * @return the decayed average response time in milliseconds. 0 if no response is received
+     */
+    public synchronized double getCost(long now) {
+        double elapsed = Math.max(now - stamp, 0);
+        return cost * Math.exp(-elapsed / decayTime);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.balance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Least outstanding requests load balance picks two urls randomly and selects the one with fewer
+ * requests in flight. An overloaded or slow instance accumulates outstanding requests, so it receives
+ * fewer new requests until it catches up.
+ *
+ * The client must report the requests with onRequestStart and onRequestComplete. Without the reports,
+ * it behaves like a random load balance.
+ */
+public class LeastOutstandingLoadBalance extends LoadTrackingLoadBalance {
+    static Logger logger = LoggerFactory.getLogger(LeastOutstandingLoadBalance.class);
+
+    public LeastOutstandingLoadBalance() {
+        if(logger.isInfoEnabled()) logger.info("A LeastOutstandingLoadBalance instance is started");
+    }
+
+    @Override
+    protected double score(EndpointStats stats, long now) {
+        return stats.getOutstanding();
+    }
+}
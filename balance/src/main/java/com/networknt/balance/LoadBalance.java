@@ -34,6 +34,25 @@ public interface LoadBalance {
      */
     URL select(List<URL> urls, String serviceId, String tag, String requestKey);
 
+    /**
+     * Notify the load balance that a request is sent to the url selected by the select method. It is
+     * only used by the load balances that track the load of each url and does nothing by default.
+     *
+     * @param endpoint the selected url in the form of protocol://host:port
+     */
+    default void onRequestStart(String endpoint) {
+    }
+
+    /**
+     * Notify the load balance that a request started with onRequestStart is completed.
+     *
+     * @param endpoint the selected url in the form of protocol://host:port
+     * @param latency the response time in milliseconds
+     * @param success false if the request failed or the server returned an error
+     */
+    default void onRequestComplete(String endpoint, long latency, boolean success) {
+    }
+
     /**
      * return positive int value of originValue
      * @param originValue original value
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.balance;
+
+import com.networknt.registry.URL;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The base of the load balances that pick the less loaded url based on the load reported by the client
+ * through onRequestStart and onRequestComplete. The load of each url is kept in an EndpointStats keyed by
+ * host:port, so the same instance shares its load across the services and protocols.
+ *
+ * Instead of comparing all the urls, two different urls are picked randomly and the one with the lower
+ * score is selected (the power of two choices). It avoids the herd behavior of always sending the requests
+ * to the least loaded instance based on stale statistics, and it is O(1) for any number of instances.
+ */
+public abstract class LoadTrackingLoadBalance implements LoadBalance {
+    public static final long DEFAULT_DECAY_TIME = 10000;
+    public static final long DEFAULT_FAILURE_PENALTY = 1000;
+
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+    private final long decayTime;
+    private final long failurePenalty;
+
+    protected LoadTrackingLoadBalance() {
+        this(DEFAULT_DECAY_TIME, DEFAULT_FAILURE_PENALTY);
+    }
+
+    /**
+     * @param decayTime the time in milliseconds for the response time average to decay to 1/e of its value
+     * @param failurePenalty the minimum response time in milliseconds recorded for a failed request, so that
+     *                       an instance that fails fast doesn't attract more requests
+     */
+    protected LoadTrackingLoadBalance(long decayTime, long failurePenalty) {
+        this.decayTime = TimeUnit.MILLISECONDS.toNanos(decayTime);
+        this.failurePenalty = failurePenalty;
+    }
+
+    @Override
+    public URL select(List<URL> urls, String serviceId, String tag, String requestKey) {
+        int size = urls.size();
+        if(size == 0) return null;
+        if(size == 1) return urls.get(0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if(j >= i) j++;
+        URL a = urls.get(i);
+        URL b = urls.get(j);
+        if(a == null || b == null) return a == null ? b : a;
+        long now = System.nanoTime();
+        return score(getStats(a.getHost() + ":" + a.getPort()), now) <= score(getStats(b.getHost() + ":" + b.getPort()), now) ? a : b;
+    }
+
+    /**
+     * The load of an instance. The url with the lower score is selected.
+     *
+     * @param stats the statistics of the url
+     * @param now the current time in nanoseconds
+     * @return the score of the url
+     */
+    protected abstract double score(EndpointStats stats, long now);
+
+    @Override
+    public void onRequestStart(String endpoint) {
+        getStats(getAddress(endpoint)).start();
+    }
+
+    @Override
+    public void onRequestComplete(String endpoint, long latency, boolean success) {
+        getStats(getAddress(endpoint)).complete(success ? latency : Math.max(latency, failurePenalty), System.nanoTime());
+    }
+
+    /**
+     * @return the statistics keyed by host:port for monitoring
+     */
+    public Map<String, EndpointStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private EndpointStats getStats(String address) {
+        EndpointStats s = stats.get(address);
+        if(s == null) {
+            s = stats.computeIfAbsent(address, k -> new EndpointStats(decayTime, System.nanoTime()));
+        }
+        return s;
+    }
+
+    /**
+     * @param endpoint the url in the form of protocol://host:port with an optional path
+     * @return host:port of the endpoint
+     */
+    static String getAddress(String endpoint) {
+        int start = endpoint.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = endpoint.indexOf('/', start);
+        return end < 0 ? endpoint.substring(start) : endpoint.substring(start, end);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.balance;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The lower 64 bits of MurmurHash3 x64 128 with seed 0. It is used to place the instances and the request
+ * keys on the consistent hash ring, where String.hashCode doesn't spread the similar keys well enough.
+ */
+final class MurmurHash3 {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private MurmurHash3() {
+    }
+
+    static long hash64(String value) {
+        return hash64(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long hash64(byte[] data) {
+        int length = data.length;
+        int blocks = length >> 4;
+        long h1 = 0;
+        long h2 = 0;
+        for(int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i << 4);
+            long k2 = getLong(data, (i << 4) + 8);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int offset = blocks << 4;
+        long k1 = 0;
+        long k2 = 0;
+        switch(length & 15) {
+            case 15: k2 ^= (long)(data[offset + 14] & 0xff) << 48;
+            case 14: k2 ^= (long)(data[offset + 13] & 0xff) << 40;
+            case 13: k2 ^= (long)(data[offset + 12] & 0xff) << 32;
+            case 12: k2 ^= (long)(data[offset + 11] & 0xff) << 24;
+            case 11: k2 ^= (long)(data[offset + 10] & 0xff) << 16;
+            case 10: k2 ^= (long)(data[offset + 9] & 0xff) << 8;
+            case 9: k2 ^= data[offset + 8] & 0xff;
+                h2 ^= mixK2(k2);
+            case 8: k1 ^= (long)(data[offset + 7] & 0xff) << 56;
+            case 7: k1 ^= (long)(data[offset + 6] & 0xff) << 48;
+            case 6: k1 ^= (long)(data[offset + 5] & 0xff) << 40;
+            case 5: k1 ^= (long)(data[offset + 4] & 0xff) << 32;
+            case 4: k1 ^= (long)(data[offset + 3] & 0xff) << 24;
+            case 3: k1 ^= (long)(data[offset + 2] & 0xff) << 16;
+            case 2: k1 ^= (long)(data[offset + 1] & 0xff) << 8;
+            case 1: k1 ^= data[offset] & 0xff;
+                h1 ^= mixK1(k1);
+            default:
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return (data[offset] & 0xffL)
+                | (data[offset + 1] & 0xffL) << 8
+                | (data[offset + 2] & 0xffL) << 16
+                | (data[offset + 3] & 0xffL) << 24
+                | (data[offset + 4] & 0xffL) << 32
+                | (data[offset + 5] & 0xffL) << 40
+                | (data[offset + 6] & 0xffL) << 48
+                | (data[offset + 7] & 0xffL) << 56;
+    }
+}
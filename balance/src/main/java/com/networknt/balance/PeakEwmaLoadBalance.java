@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.balance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Peak EWMA load balance picks two urls randomly and selects the one with the lower expected wait,
+ * which is the peak weighted average response time multiplied by the outstanding requests plus one.
+ * It reacts to both the slow and the overloaded instances, so the tail latency stays low when one of
+ * the instances degrades.
+ *
+ * An instance without any response yet is preferred when it is idle, but it is avoided once it has
+ * requests in flight, so that a new or hanging instance doesn't receive a burst of requests.
+ *
+ * The client must report the requests with onRequestStart and onRequestComplete. Without the reports,
+ * it behaves like a random load balance.
+ */
+public class PeakEwmaLoadBalance extends LoadTrackingLoadBalance {
+    static Logger logger = LoggerFactory.getLogger(PeakEwmaLoadBalance.class);
+    // the score of an instance that has outstanding requests without any response.
+    private static final double PENALTY = 1.0e6;
+
+    public PeakEwmaLoadBalance() {
+        if(logger.isInfoEnabled()) logger.info("A PeakEwmaLoadBalance instance is started");
+    }
+
+    /**
+     * @param decayTime the time in milliseconds for the response time average to decay to 1/e of its value
+     * @param failurePenalty the minimum response time in milliseconds recorded for a failed request
+     */
+    public PeakEwmaLoadBalance(long decayTime, long failurePenalty) {
+        super(decayTime, failurePenalty);
+        if(logger.isInfoEnabled()) logger.info("A PeakEwmaLoadBalance instance is started");
+    }
+
+    @Override
+    protected double score(EndpointStats stats, long now) {
+        double cost = stats.getCost(now);
+        int outstanding = stats.getOutstanding();
+        if(cost == 0) {
+            return outstanding == 0 ? 0 : PENALTY + outstanding;
+        }
+        return cost * (outstanding + 1);
+    }
+}
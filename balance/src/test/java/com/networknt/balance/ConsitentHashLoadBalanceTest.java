@@ -23,8 +23,10 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by steve on 08/05/17.
@@ -36,25 +38,61 @@ public class ConsitentHashLoadBalanceTest {
     public void testSelect() throws Exception {
         List<URL> urls = new ArrayList<>();
 
-        //TODO complete the test cases when the class is completed. Need implementation.
-        /*
         urls.add(new URLImpl("http", "127.0.0.1", 8081, "v1", new HashMap<String, String>()));
         urls.add(new URLImpl("http", "127.0.0.1", 8082, "v1", new HashMap<String, String>()));
         urls.add(new URLImpl("http", "127.0.0.1", 8083, "v1", new HashMap<String, String>()));
         urls.add(new URLImpl("http", "127.0.0.1", 8084, "v1", new HashMap<String, String>()));
 
-        URL url1 = loadBalance.select(urls, "user1");
-        URL url2 = loadBalance.select(urls, "user1");
+        URL url1 = loadBalance.select(urls, "serviceId", "tag", "user1");
+        URL url2 = loadBalance.select(urls, "serviceId", "tag", "user1");
         Assert.assertEquals(url1, url2);
 
-        URL url3 = loadBalance.select(urls, "user1");
-        Assert.assertEquals(url1, url3);
+        // the same instance is selected regardless of the order of the urls
+        List<URL> reversed = new ArrayList<>(urls);
+        Collections.reverse(reversed);
+        URL url3 = loadBalance.select(reversed, "serviceId", "tag", "user1");
+        Assert.assertSame(url1, url3);
+    }
 
+    @Test
+    public void testDistribution() {
+        List<URL> urls = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            urls.add(new URLImpl("http", "127.0.0.1", 8081 + i, "v1", new HashMap<String, String>()));
+        }
+        Map<Integer, Integer> counts = new HashMap<>();
+        for(int i = 0; i < 10000; i++) {
+            counts.merge(loadBalance.select(urls, "serviceId", null, "user" + i).getPort(), 1, Integer::sum);
+        }
+        Assert.assertEquals(4, counts.size());
+        for(int count : counts.values()) {
+            Assert.assertTrue("unbalanced " + counts, count > 1500 && count < 3500);
+        }
+    }
 
-        URL url4 = loadBalance.select(urls, "user2");
-        Assert.assertNotEquals(url1, url4);
-        URL url5 = loadBalance.select(urls, "user3");
-        Assert.assertNotEquals(url4, url5);
-        */
+    @Test
+    public void testAddInstanceMovesFewKeys() {
+        List<URL> urls = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            urls.add(new URLImpl("http", "127.0.0.1", 8081 + i, "v1", new HashMap<String, String>()));
+        }
+        int keys = 10000;
+        int[] before = new int[keys];
+        for(int i = 0; i < keys; i++) {
+            before[i] = loadBalance.select(urls, "serviceId", null, "user" + i).getPort();
+        }
+        List<URL> added = new ArrayList<>(urls);
+        added.add(new URLImpl("http", "127.0.0.1", 8085, "v1", new HashMap<String, String>()));
+        int moved = 0;
+        for(int i = 0; i < keys; i++) {
+            int port = loadBalance.select(added, "serviceId", null, "user" + i).getPort();
+            if(port != before[i]) {
+                moved++;
+                // a key only moves to the new instance
+                Assert.assertEquals(8085, port);
+            }
+        }
+        // about 1/5 of the keys move to the new instance
+        Assert.assertTrue("moved " + moved, moved > keys / 10 && moved < keys * 3 / 10);
     }
 }
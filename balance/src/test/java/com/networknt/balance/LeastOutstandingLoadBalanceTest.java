@@ -0,0 +1,48 @@
+package com.networknt.balance;
+
+import com.networknt.registry.URL;
+import com.networknt.registry.URLImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class LeastOutstandingLoadBalanceTest {
+    LoadBalance loadBalance = new LeastOutstandingLoadBalance();
+
+    @Test
+    public void testSelect() {
+        List<URL> urls = new ArrayList<>();
+        urls.add(new URLImpl("http", "127.0.0.1", 8081, "v1", new HashMap<String, String>()));
+        urls.add(new URLImpl("http", "127.0.0.1", 8082, "v1", new HashMap<String, String>()));
+        // the instance on 8081 is stuck with 10 requests in flight
+        for(int i = 0; i < 10; i++) {
+            loadBalance.onRequestStart("http://127.0.0.1:8081");
+        }
+        for(int i = 0; i < 100; i++) {
+            Assert.assertEquals(8082, (int)loadBalance.select(urls, "serviceId", "tag", null).getPort());
+        }
+        for(int i = 0; i < 10; i++) {
+            loadBalance.onRequestComplete("http://127.0.0.1:8081", 10, true);
+        }
+        boolean selected8081 = false;
+        for(int i = 0; i < 100 && !selected8081; i++) {
+            selected8081 = loadBalance.select(urls, "serviceId", "tag", null).getPort() == 8081;
+        }
+        Assert.assertTrue(selected8081);
+    }
+
+    @Test
+    public void testSelectWithEmptyList() {
+        Assert.assertNull(loadBalance.select(new ArrayList<>(), "serviceId", "tag", null));
+    }
+
+    @Test
+    public void testGetAddress() {
+        Assert.assertEquals("127.0.0.1:8081", LoadTrackingLoadBalance.getAddress("https://127.0.0.1:8081"));
+        Assert.assertEquals("127.0.0.1:8081", LoadTrackingLoadBalance.getAddress("https://127.0.0.1:8081/v1/pets"));
+        Assert.assertEquals("127.0.0.1:8081", LoadTrackingLoadBalance.getAddress("127.0.0.1:8081"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.networknt.balance;
+
+import com.networknt.registry.URL;
+import com.networknt.registry.URLImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PeakEwmaLoadBalanceTest {
+
+    @Test
+    public void testSlowInstanceIsAvoided() {
+        LoadBalance loadBalance = new PeakEwmaLoadBalance();
+        List<URL> urls = new ArrayList<>();
+        urls.add(new URLImpl("http", "127.0.0.1", 8081, "v1", new HashMap<String, String>()));
+        urls.add(new URLImpl("http", "127.0.0.1", 8082, "v1", new HashMap<String, String>()));
+        loadBalance.onRequestStart("http://127.0.0.1:8081");
+        loadBalance.onRequestComplete("http://127.0.0.1:8081", 500, true);
+        loadBalance.onRequestStart("http://127.0.0.1:8082");
+        loadBalance.onRequestComplete("http://127.0.0.1:8082", 5, true);
+        for(int i = 0; i < 100; i++) {
+            Assert.assertEquals(8082, (int)loadBalance.select(urls, "serviceId", "tag", null).getPort());
+        }
+    }
+
+    @Test
+    public void testFailureIsPenalized() {
+        LoadBalance loadBalance = new PeakEwmaLoadBalance();
+        List<URL> urls = new ArrayList<>();
+        urls.add(new URLImpl("http", "127.0.0.1", 8081, "v1", new HashMap<String, String>()));
+        urls.add(new URLImpl("http", "127.0.0.1", 8082, "v1", new HashMap<String, String>()));
+        // a fast failure must not make the instance more attractive
+        loadBalance.onRequestStart("http://127.0.0.1:8081");
+        loadBalance.onRequestComplete("http://127.0.0.1:8081", 1, false);
+        loadBalance.onRequestStart("http://127.0.0.1:8082");
+        loadBalance.onRequestComplete("http://127.0.0.1:8082", 20, true);
+        for(int i = 0; i < 100; i++) {
+            Assert.assertEquals(8082, (int)loadBalance.select(urls, "serviceId", "tag", null).getPort());
+        }
+    }
+
+    @Test
+    public void testPeakEwma() {
+        long decay = TimeUnit.MILLISECONDS.toNanos(10000);
+        EndpointStats stats = new EndpointStats(decay, 0);
+        stats.start();
+        stats.complete(100, 0);
+        Assert.assertEquals(100, stats.getCost(0), 0.001);
+        // a faster response only moves the average gradually
+        stats.start();
+        stats.complete(10, decay);
+        Assert.assertEquals(100 / Math.E + 10 * (1 - 1 / Math.E), stats.getCost(decay), 0.001);
+        // a slower response replaces it immediately
+        stats.start();
+        stats.complete(200, decay);
+        Assert.assertEquals(200, stats.getCost(decay), 0.001);
+        Assert.assertEquals(0, stats.getOutstanding());
+        // the average decays without responses
+        Assert.assertEquals(200 / Math.E, stats.getCost(2 * decay), 0.001);
+    }
+}
@@ -1,14 +1,11 @@
 package com.networknt.body;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.networknt.config.Config;
+import com.networknt.handler.BufferedRequestBody;
 import com.networknt.handler.MiddlewareHandler;
 import com.networknt.handler.RequestInterceptor;
 import com.networknt.httpstring.AttachmentConstants;
 import com.networknt.utility.ModuleRegistry;
 import io.undertow.Handlers;
-import io.undertow.connector.PooledByteBuffer;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
@@ -17,9 +14,7 @@ import io.undertow.util.Methods;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
 
 import static com.networknt.body.BodyHandler.REQUEST_BODY_STRING;
 
@@ -73,29 +68,23 @@ public class RequestBodyInterceptor implements RequestInterceptor {
         if(logger.isDebugEnabled()) logger.debug("RequestBodyInterceptor.handleRequest starts.");
         if (this.shouldAttachBody(exchange)) {
             boolean attached = false;
-            var existing = (PooledByteBuffer[])exchange.getAttachment(AttachmentConstants.BUFFERED_REQUEST_DATA_KEY);
+            BufferedRequestBody existing = BufferedRequestBody.get(exchange);
             if(existing != null) {
                 if(logger.isTraceEnabled()) logger.trace("Attach request body requirement is met and butter exists.");
-                StringBuilder completeBody = new StringBuilder();
-                for(PooledByteBuffer buffer : existing) {
-                    if(buffer != null) {
-                        completeBody.append(StandardCharsets.UTF_8.decode(buffer.getBuffer().duplicate()).toString());
-                    } else {
-                        break;
-                    }
-                }
                 String contentType = exchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE);
-                if(logger.isTraceEnabled()) logger.trace("contentType = " + contentType + " request body = " + (completeBody.length() > 16384 ? completeBody.substring(0, 16384) : completeBody));
+                if(logger.isTraceEnabled()) {
+                    String completeBody = existing.getString();
+                    logger.trace("contentType = " + contentType + " request body = " + (completeBody.length() > 16384 ? completeBody.substring(0, 16384) : completeBody));
+                }
                 if(contentType.startsWith("application/json")) {
-                    attached = this.attachJsonBody(exchange, completeBody.toString());
+                    attached = this.attachJsonBody(exchange, existing);
                 } else if(contentType.startsWith("text") || contentType.startsWith("application/xml")) { // include text/plain and text/xml etc.
                     if (config.isCacheRequestBody()) {
-                        exchange.putAttachment(AttachmentConstants.REQUEST_BODY_STRING, completeBody.toString());
+                        exchange.putAttachment(AttachmentConstants.REQUEST_BODY_STRING, existing.getString());
                         attached = true;
                     }
                 } else if (contentType.startsWith("multipart/form-data") || contentType.startsWith("application/x-www-form-urlencoded")) {
-                    if(logger.isTraceEnabled()) logger.trace("contentType = " + contentType + " stringBody = " + completeBody);
-                    attached = this.attachFormDataBody(exchange, completeBody.toString());
+                    attached = this.attachFormDataBody(exchange, existing.getString());
                 }
             } else {
                 if(logger.isTraceEnabled()) logger.trace("Request body is null or Request body interceptor is skipped due to the request path " + exchange.getRequestPath() + " is not in request-injection.appliedBodyInjectionPathPrefixes configuration");
@@ -123,43 +112,28 @@ public class RequestBodyInterceptor implements RequestInterceptor {
     }
 
     /**
-     * Method used to parse the body into a Map or a List and attach it into exchange
+     * Method used to parse the body into a Map or a List and attach it into exchange. The body is parsed
+     * directly from the pooled buffers and the string form is only built if the cacheRequestBody is true.
      *
      * @param exchange exchange to be attached
-     * @param string   raw request body
+     * @param requestBody shared view of the raw request body
      */
-    private boolean attachJsonBody(final HttpServerExchange exchange, String string) {
+    private boolean attachJsonBody(final HttpServerExchange exchange, BufferedRequestBody requestBody) {
         Object body;
-        string = string.trim();
-        if (string.startsWith("{")) {
-            try {
-                body = Config.getInstance().getMapper().readValue(string, new TypeReference<Map<String, Object>>() {
-                });
-            } catch (JsonProcessingException e) {
-                setExchangeStatus(exchange, CONTENT_TYPE_MISMATCH, "application/json");
-                if(logger.isTraceEnabled())
-                    logger.trace("Full request body: {}", string);
-                return false;
-            }
-        } else if (string.startsWith("[")) {
-            try {
-                body = Config.getInstance().getMapper().readValue(string, new TypeReference<List<Object>>() {
-                });
-            } catch (JsonProcessingException e) {
-                setExchangeStatus(exchange, CONTENT_TYPE_MISMATCH, "application/json");
-                if(logger.isTraceEnabled())
-                    logger.trace("Full request body: {}", string);
-                return false;
-            }
-        } else {
-            // error here. The content type in head doesn't match the body.
+        try {
+            body = requestBody.getJson();
+        } catch (IOException e) {
+            body = null;
+        }
+        if (body == null) {
+            // error here. The content type in head doesn't match the body or the body is not a valid JSON.
             setExchangeStatus(exchange, CONTENT_TYPE_MISMATCH, "application/json");
             if(logger.isTraceEnabled())
-                logger.trace("Full request body: {}", string);
+                logger.trace("Full request body: {}", requestBody.getString());
             return false;
         }
         if (config.isCacheRequestBody()) {
-            exchange.putAttachment(AttachmentConstants.REQUEST_BODY_STRING, string);
+            exchange.putAttachment(AttachmentConstants.REQUEST_BODY_STRING, requestBody.getString().trim());
         }
         exchange.putAttachment(AttachmentConstants.REQUEST_BODY, body);
         return true;
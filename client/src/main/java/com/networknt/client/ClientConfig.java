@@ -46,11 +46,21 @@ public final class ClientConfig {
     public static final int DEFAULT_ERROR_THRESHOLD = 5;
     public static final int DEFAULT_TIMEOUT = 3000;
     public static final int DEFAULT_RESET_TIMEOUT = 600000;
+    public static final int DEFAULT_ROLLING_WINDOW = 10000;
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_SLOW_CALL_DURATION = 0;
+    public static final int DEFAULT_HALF_OPEN_PERMITS = 1;
     public static final boolean DEFAULT_INJECT_OPEN_TRACING = false;
     public static final boolean DEFAULT_INJECT_CALLER_ID = false;
     private static final String BUFFER_SIZE = "bufferSize";
     private static final String ERROR_THRESHOLD = "errorThreshold";
     private static final String RESET_TIMEOUT = "resetTimeout";
+    private static final String ROLLING_WINDOW = "rollingWindow";
+    private static final String MINIMUM_CALLS = "minimumCalls";
+    private static final String FAILURE_RATE_THRESHOLD = "failureRateThreshold";
+    private static final String SLOW_CALL_DURATION = "slowCallDuration";
+    private static final String HALF_OPEN_PERMITS = "halfOpenPermits";
     private static final String INJECT_OPEN_TRACING = "injectOpenTracing";
     private static final String INJECT_CALLER_ID = "injectCallerId";
     public static final int DEFAULT_CONNECTION_POOL_SIZE = 1000;
@@ -59,12 +69,14 @@ public final class ClientConfig {
     public static final long DEFAULT_CONNECTION_EXPIRE_TIME = 1000000;
     public static final int DEFAULT_MAX_CONNECTION_PER_HOST = 1000;
     public static final int DEFAULT_MIN_CONNECTION_PER_HOST = 250;
+    public static final boolean DEFAULT_CONCURRENT_CONNECTION_POOL = false;
 
     private static final String CONNECTION_POOL_SIZE = "connectionPoolSize";
     private static final String MAX_REQUEST_PER_CONNECTION = "maxReqPerConn";
     private static final String CONNECTION_EXPIRE_TIME = "connectionExpireTime";
     private static final String MAX_CONNECTION_NUM_PER_HOST = "maxConnectionNumPerHost";
     private static final String MIN_CONNECTION_NUM_PER_HOST = "minConnectionNumPerHost";
+    private static final String CONCURRENT_CONNECTION_POOL = "concurrentConnectionPool";
 
     private final Config config;
     private final Map<String, Object> mappedConfig;
@@ -80,6 +92,11 @@ public final class ClientConfig {
     private int resetTimeout = DEFAULT_RESET_TIMEOUT;
     private int timeout = DEFAULT_TIMEOUT;
     private int errorThreshold = DEFAULT_ERROR_THRESHOLD;
+    private int rollingWindow = DEFAULT_ROLLING_WINDOW;
+    private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    private int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private int slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+    private int halfOpenPermits = DEFAULT_HALF_OPEN_PERMITS;
     private boolean injectOpenTracing = DEFAULT_INJECT_OPEN_TRACING;
     private boolean injectCallerId = DEFAULT_INJECT_CALLER_ID;
     private int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
@@ -88,6 +105,7 @@ public final class ClientConfig {
     private long connectionExpireTime = DEFAULT_CONNECTION_EXPIRE_TIME;
     private int maxConnectionNumPerHost = DEFAULT_MAX_CONNECTION_PER_HOST;
     private int minConnectionNumPerHost = DEFAULT_MIN_CONNECTION_PER_HOST;
+    private boolean concurrentConnectionPool = DEFAULT_CONCURRENT_CONNECTION_POOL;
 
     private static ClientConfig instance;
 
@@ -163,6 +181,21 @@ public final class ClientConfig {
         if (requestConfig.containsKey(TIMEOUT)) {
             timeout = (int) requestConfig.get(TIMEOUT);
         }
+        if (requestConfig.containsKey(ROLLING_WINDOW)) {
+            rollingWindow = (int) requestConfig.get(ROLLING_WINDOW);
+        }
+        if (requestConfig.containsKey(MINIMUM_CALLS)) {
+            minimumCalls = (int) requestConfig.get(MINIMUM_CALLS);
+        }
+        if (requestConfig.containsKey(FAILURE_RATE_THRESHOLD)) {
+            failureRateThreshold = (int) requestConfig.get(FAILURE_RATE_THRESHOLD);
+        }
+        if (requestConfig.containsKey(SLOW_CALL_DURATION)) {
+            slowCallDuration = (int) requestConfig.get(SLOW_CALL_DURATION);
+        }
+        if (requestConfig.containsKey(HALF_OPEN_PERMITS)) {
+            halfOpenPermits = (int) requestConfig.get(HALF_OPEN_PERMITS);
+        }
         if(requestConfig.containsKey(INJECT_OPEN_TRACING)) {
             injectOpenTracing = (Boolean) requestConfig.get(INJECT_OPEN_TRACING);
         }
@@ -187,6 +220,9 @@ public final class ClientConfig {
         if (requestConfig.containsKey(MIN_CONNECTION_NUM_PER_HOST)) {
             minConnectionNumPerHost = (int) requestConfig.get(MIN_CONNECTION_NUM_PER_HOST);
         }
+        if (requestConfig.containsKey(CONCURRENT_CONNECTION_POOL)) {
+            concurrentConnectionPool = (boolean) requestConfig.get(CONCURRENT_CONNECTION_POOL);
+        }
     }
 
     private void setBufferSize() {
@@ -273,6 +309,26 @@ public final class ClientConfig {
         return errorThreshold;
     }
 
+    public int getRollingWindow() {
+        return rollingWindow;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public int getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    public int getHalfOpenPermits() {
+        return halfOpenPermits;
+    }
+
     public boolean isInjectOpenTracing() { return injectOpenTracing; }
 
     public boolean isInjectCallerId() {
@@ -307,5 +363,9 @@ public final class ClientConfig {
         return minConnectionNumPerHost;
     }
 
+    public boolean isConcurrentConnectionPool() {
+        return concurrentConnectionPool;
+    }
+
     public boolean isMultipleAuthServers() { return multipleAuthServers; }
 }
@@ -19,6 +19,7 @@
 package com.networknt.client;
 
 import com.networknt.client.circuitbreaker.CircuitBreaker;
+import com.networknt.client.circuitbreaker.CircuitBreakerRegistry;
 import com.networknt.client.http.*;
 import com.networknt.client.listener.ByteBufferReadChannelListener;
 import com.networknt.client.listener.ByteBufferWriteChannelListener;
@@ -26,7 +27,9 @@ import com.networknt.client.oauth.Jwt;
 import com.networknt.client.oauth.TokenManager;
 import com.networknt.client.simplepool.SimpleConnectionHolder;
 import com.networknt.client.simplepool.SimpleConnectionMaker;
+import com.networknt.client.simplepool.ConcurrentURIConnectionPool;
 import com.networknt.client.simplepool.SimpleURIConnectionPool;
+import com.networknt.client.simplepool.URIConnectionPool;
 import com.networknt.client.simplepool.undertow.SimpleClientConnectionMaker;
 import com.networknt.client.ssl.ClientX509ExtendedTrustManager;
 import com.networknt.client.ssl.CompositeX509TrustManager;
@@ -44,6 +47,7 @@ import com.networknt.status.Status;
 import com.networknt.utility.ModuleRegistry;
 import com.networknt.config.TlsUtil;
 import com.networknt.utility.StringUtils;
+import com.networknt.utility.Util;
 import io.opentracing.Tracer;
 import io.opentracing.propagation.Format;
 import io.opentracing.tag.Tags;
@@ -80,6 +84,7 @@ import java.nio.file.Paths;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -144,7 +149,7 @@ public class Http2Client {
     // This is the old connection pool that is kept for backward compatibility.
     private final Http2ClientConnectionPool http2ClientConnectionPool = Http2ClientConnectionPool.getInstance();
     // This is the new connection pool that is used by the new request method.
-    private final Map<URI, SimpleURIConnectionPool> pools = new ConcurrentHashMap<>();
+    private final Map<URI, URIConnectionPool> pools = new ConcurrentHashMap<>();
 
     static {
         List<String> masks = List.of(MASK_KEY_CLIENT_SECRET, MASK_KEY_TRUST_STORE_PASS, MASK_KEY_KEY_STORE_PASS, MASK_KEY_KEY_PASS);
@@ -283,13 +288,7 @@ public class Http2Client {
     }
 
     public SimpleConnectionHolder.ConnectionToken borrow(final URI uri, final XnioWorker worker, ByteBufferPool bufferPool, OptionMap options) {
-        SimpleURIConnectionPool pool = pools.get(uri);
-        if(pool == null) {
-            SimpleConnectionMaker undertowConnectionMaker = SimpleClientConnectionMaker.instance();
-            pool = new SimpleURIConnectionPool(uri, ClientConfig.get().getConnectionExpireTime(), ClientConfig.get().getConnectionPoolSize(), null, worker, bufferPool, null, options, undertowConnectionMaker);
-            pools.putIfAbsent(uri, pool);
-        }
-        return pool.borrow(ClientConfig.get().getTimeout());
+        return getPool(uri, worker, null, bufferPool, options).borrow(ClientConfig.get().getTimeout());
     }
 
     @Deprecated
@@ -368,13 +367,42 @@ public class Http2Client {
 
     public SimpleConnectionHolder.ConnectionToken borrow(final URI uri, final XnioWorker worker, XnioSsl ssl, ByteBufferPool bufferPool, OptionMap options) {
         if(HTTPS.equals(uri.getScheme()) && ssl == null) ssl = getDefaultXnioSsl();
-        SimpleURIConnectionPool pool = pools.get(uri);
+        return getPool(uri, worker, ssl, bufferPool, options).borrow(ClientConfig.get().getTimeout());
+    }
+
+    /**
+     * Borrow a connection without blocking the caller. When the pool is full, the future waits for a connection
+     * to be restored instead of failing if concurrentConnectionPool is enabled in client.yml.
+     *
+     * @param uri the uri of the downstream service
+     * @param worker XnioWorker
+     * @param ssl XnioSsl for https. The default XnioSsl is used if it is null.
+     * @param bufferPool ByteBufferPool
+     * @param options OptionMap
+     * @return a future of the connection token that must be restored after the request
+     */
+    public CompletableFuture<SimpleConnectionHolder.ConnectionToken> borrowAsync(final URI uri, final XnioWorker worker, XnioSsl ssl, ByteBufferPool bufferPool, OptionMap options) {
+        if(HTTPS.equals(uri.getScheme()) && ssl == null) ssl = getDefaultXnioSsl();
+        return getPool(uri, worker, ssl, bufferPool, options).borrowAsync(ClientConfig.get().getTimeout(), ClientConfig.get().getTimeout());
+    }
+
+    private URIConnectionPool getPool(final URI uri, final XnioWorker worker, XnioSsl ssl, ByteBufferPool bufferPool, OptionMap options) {
+        URIConnectionPool pool = pools.get(uri);
         if(pool == null) {
             SimpleConnectionMaker undertowConnectionMaker = SimpleClientConnectionMaker.instance();
-            pool = new SimpleURIConnectionPool(uri, ClientConfig.get().getConnectionExpireTime(), ClientConfig.get().getConnectionPoolSize(), null, worker, bufferPool, ssl, options, undertowConnectionMaker);
-            pools.putIfAbsent(uri, pool);
+            ClientConfig config = ClientConfig.get();
+            if(config.isConcurrentConnectionPool()) {
+                pool = new ConcurrentURIConnectionPool(uri, config.getConnectionExpireTime(), config.getConnectionPoolSize(), null, worker, bufferPool, ssl, options, undertowConnectionMaker);
+            } else {
+                pool = new SimpleURIConnectionPool(uri, config.getConnectionExpireTime(), config.getConnectionPoolSize(), null, worker, bufferPool, ssl, options, undertowConnectionMaker);
+            }
+            URIConnectionPool existing = pools.putIfAbsent(uri, pool);
+            if(existing != null) {
+                if(pool instanceof ConcurrentURIConnectionPool) ((ConcurrentURIConnectionPool)pool).shutdown();
+                pool = existing;
+            }
         }
-        return pool.borrow(ClientConfig.get().getTimeout());
+        return pool;
     }
 
     @Deprecated
@@ -690,7 +718,7 @@ public class Http2Client {
      *
      * @param request the http request
      * @param authToken the authorization token
-     * @param correlationId the correlation id
+     * @param correlationId the correlation id, a new one is generated if it is null
      * @param traceabilityId the traceability id
      * @return Result when fail to get jwt, it will return a Status.
      */
@@ -703,6 +731,8 @@ public class Http2Client {
         } else {
             request.getRequestHeaders().put(HttpStringConstants.SCOPE_TOKEN, "Bearer " + result.getResult().getJwt());
         }
+        // a downstream call always carries a correlationId even if the caller doesn't have one.
+        if(correlationId == null) correlationId = Util.getCorrelationId();
         request.getRequestHeaders().put(HttpStringConstants.CORRELATION_ID, correlationId);
         if(traceabilityId != null) {
             addAuthTokenTrace(request, authToken, traceabilityId);
@@ -1234,11 +1264,11 @@ public class Http2Client {
     }
 
     public CircuitBreaker getRequestService(URI uri, ClientRequest request, Optional<String> requestBody) {
-        return new CircuitBreaker(() -> callService(uri, request, requestBody));
+        return new CircuitBreaker(CircuitBreakerRegistry.getInstance().getCircuit(uri), () -> callService(uri, request, requestBody));
     }
 
     public CircuitBreaker getRequestService(URI uri, ClientRequest request, Optional<String> requestBody, boolean isHttp2) {
-        return new CircuitBreaker(() -> callService(uri, request, requestBody, isHttp2));
+        return new CircuitBreaker(CircuitBreakerRegistry.getInstance().getCircuit(uri), () -> callService(uri, request, requestBody, isHttp2));
     }
 
     /**
@@ -1310,7 +1340,7 @@ public class Http2Client {
                 logger.error("Failed to discover service with serviceID: {}, and tag: {}", serviceId, envTag);
                 throw new ClientException(String.format("Failed to discover service with serviceID: %s, and tag: %s", serviceId, envTag));
             }
-            return callService(new URI(url), request, requestBody);
+            return reportLoad(cluster, url, () -> callService(new URI(url), request, requestBody));
         } catch (Exception e) {
             logger.error("Failed to call service: {}", serviceId);
             throw new RuntimeException("Failed to call service: " + serviceId, e);
@@ -1336,13 +1366,30 @@ public class Http2Client {
                 logger.error("Failed to discover service with serviceID: {}, and tag: {}", serviceId, envTag);
                 throw new ClientException(String.format("Failed to discover service with serviceID: %s, and tag: %s", serviceId, envTag));
             }
-            return callService(new URI(url), request, requestBody, isHttp2);
+            return reportLoad(cluster, url, () -> callService(new URI(url), request, requestBody, isHttp2));
         } catch (Exception e) {
             logger.error("Failed to call service: {}", serviceId);
             throw new RuntimeException("Failed to call service: " + serviceId, e);
         }
     }
 
+    /**
+     * Report the request to the cluster so that the load balance can track the load of the service instance.
+     */
+    private CompletableFuture<ClientResponse> reportLoad(Cluster cluster, String url, Callable<CompletableFuture<ClientResponse>> call) throws Exception {
+        long start = System.nanoTime();
+        cluster.onRequestStart(url);
+        CompletableFuture<ClientResponse> future;
+        try {
+            future = call.call();
+        } catch (Exception e) {
+            cluster.onRequestComplete(url, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), false);
+            throw e;
+        }
+        return future.whenComplete((response, throwable) -> cluster.onRequestComplete(url, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                throwable == null && response.getResponseCode() < 500));
+    }
+
     /**
      * Create async connection with default config value
      * @param uri URI
@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.client.circuitbreaker;
+
+import com.networknt.client.ClientConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The circuit of one downstream endpoint or service managed by the CircuitBreakerRegistry. It tracks the
+ * calls, failures, slow calls and latency in a rolling window that is split into buckets, so that the state
+ * of one slow or failing dependency doesn't affect the calls to the other dependencies.
+ *
+ * The circuit is opened when the consecutive failures reach the errorThreshold or when the failure rate in
+ * the rolling window reaches the failureRateThreshold after at least minimumCalls calls. Slow calls are
+ * counted as failures for the failure rate. After the resetTimeout, the circuit becomes half open and only
+ * halfOpenPermits probe calls are allowed. The circuit is closed once all the probes succeed, and it is
+ * opened again if any of the probes fails or is not completed within the probeTimeout.
+ *
+ * All the state is kept in atomic fields, so a circuit can be shared by all the threads without locking.
+ */
+public class Circuit {
+    private static final Logger logger = LoggerFactory.getLogger(Circuit.class);
+    private static final int BUCKETS = 10;
+
+    private final String key;
+    private final int errorThreshold;
+    private final long resetTimeout;
+    private final long bucketSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallDuration;
+    private final int halfOpenPermits;
+    private final long probeTimeout;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSE);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger probes = new AtomicInteger();
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+    private volatile long openedAt;
+    private volatile long probeStartedAt;
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+    private final LongAdder rejected = new LongAdder();
+
+    public Circuit(String key, ClientConfig config) {
+        this(key, config.getErrorThreshold(), config.getResetTimeout(), config.getRollingWindow(), config.getMinimumCalls(),
+                config.getFailureRateThreshold(), config.getSlowCallDuration(), config.getHalfOpenPermits(), config.getTimeout());
+    }
+
+    /**
+     * Create a circuit with the resetTimeout as the probeTimeout.
+     */
+    public Circuit(String key, int errorThreshold, long resetTimeout, long rollingWindow, int minimumCalls,
+                   int failureRateThreshold, long slowCallDuration, int halfOpenPermits) {
+        this(key, errorThreshold, resetTimeout, rollingWindow, minimumCalls, failureRateThreshold, slowCallDuration, halfOpenPermits, resetTimeout);
+    }
+
+    /**
+     * @param key the uri or serviceId of the circuit
+     * @param errorThreshold number of consecutive failures to open the circuit
+     * @param resetTimeout milliseconds the circuit stays open before the half open probes
+     * @param rollingWindow milliseconds of the rolling window for the failure rate
+     * @param minimumCalls minimum calls in the rolling window to calculate the failure rate
+     * @param failureRateThreshold failure rate percentage to open the circuit. 0 to disable
+     * @param slowCallDuration milliseconds to count a successful call as slow. 0 to disable
+     * @param halfOpenPermits number of probe calls allowed when the circuit is half open
+     * @param probeTimeout milliseconds to wait for the probe calls before the circuit is opened again
+     */
+    public Circuit(String key, int errorThreshold, long resetTimeout, long rollingWindow, int minimumCalls,
+                   int failureRateThreshold, long slowCallDuration, int halfOpenPermits, long probeTimeout) {
+        this.key = key;
+        this.errorThreshold = errorThreshold;
+        this.resetTimeout = resetTimeout;
+        this.bucketSize = Math.max(1, rollingWindow / BUCKETS);
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.halfOpenPermits = Math.max(1, halfOpenPermits);
+        this.probeTimeout = Math.max(1, probeTimeout);
+        for(int i = 0; i < BUCKETS; i++) buckets[i] = new Bucket();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return the number of the calls rejected since the circuit is created
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Call the supplier if the circuit allows it and record the outcome when the future is completed.
+     *
+     * @param supplier the supplier of the async call
+     * @param <T> the type of the result
+     * @return the future of the call or a future failed with IllegalStateException if the circuit is open
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> supplier) {
+        State admitted = acquire();
+        if(admitted == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("circuit is opened."));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = supplier.get();
+        } catch (RuntimeException e) {
+            onFailure(elapsed(start), admitted);
+            throw e;
+        }
+        if(admitted == State.HALF_OPEN) {
+            // a probe that never completes would keep the circuit half open and reject all the other calls.
+            future = future.orTimeout(probeTimeout, TimeUnit.MILLISECONDS);
+        }
+        return future.whenComplete((result, throwable) -> {
+            if(throwable == null) {
+                onSuccess(elapsed(start), admitted);
+            } else {
+                onFailure(elapsed(start), admitted);
+            }
+        });
+    }
+
+    /**
+     * Check if a call is allowed. Each allowed call must be followed by one of onSuccess, onFailure or release.
+     *
+     * @return true if the call is allowed
+     */
+    public boolean tryAcquire() {
+        return acquire() != null;
+    }
+
+    boolean tryAcquire(long now) {
+        return acquire(now) != null;
+    }
+
+    /**
+     * Check if a call is allowed and return the state that it is admitted under. The state must be passed
+     * to onSuccess, onFailure or release so that only the calls admitted when the circuit is half open
+     * are counted as the probes.
+     *
+     * @return CLOSE or HALF_OPEN if the call is allowed, null if it is rejected
+     */
+    public State acquire() {
+        return acquire(System.currentTimeMillis());
+    }
+
+    State acquire(long now) {
+        State s = state.get();
+        if(s == State.CLOSE) return State.CLOSE;
+        if(s == State.OPEN) {
+            if(now - openedAt < resetTimeout) {
+                rejected.increment();
+                return null;
+            }
+            if(state.compareAndSet(State.OPEN, State.HALF_OPEN) && logger.isInfoEnabled()) {
+                logger.info("Circuit {} is half open.", key);
+            }
+        }
+        for(;;) {
+            int p = probes.get();
+            if(p >= halfOpenPermits) {
+                if(now - probeStartedAt >= probeTimeout) {
+                    // the probes are not completed in time, so the circuit is opened again until the next resetTimeout.
+                    if(logger.isWarnEnabled()) logger.warn("Probes of circuit {} are not completed in {} ms.", key, probeTimeout);
+                    open(now, State.HALF_OPEN);
+                }
+                rejected.increment();
+                return null;
+            }
+            if(probes.compareAndSet(p, p + 1)) {
+                probeStartedAt = now;
+                return State.HALF_OPEN;
+            }
+        }
+    }
+
+    /**
+     * Record a successful call that is admitted under the current state.
+     *
+     * @param latency milliseconds of the call
+     */
+    public void onSuccess(long latency) {
+        onSuccess(latency, state.get());
+    }
+
+    /**
+     * @param latency milliseconds of the call
+     * @param admitted the state returned by acquire
+     */
+    public void onSuccess(long latency, State admitted) {
+        onSuccess(latency, System.currentTimeMillis(), admitted);
+    }
+
+    void onSuccess(long latency, long now) {
+        onSuccess(latency, now, state.get());
+    }
+
+    void onSuccess(long latency, long now, State admitted) {
+        boolean slow = slowCallDuration > 0 && latency >= slowCallDuration;
+        record(now, false, slow, latency);
+        State s = state.get();
+        // a call admitted before the circuit is opened is not a probe.
+        if(s != admitted) return;
+        consecutiveFailures.set(0);
+        if(s == State.HALF_OPEN) {
+            if(probeSuccesses.incrementAndGet() >= halfOpenPermits) close();
+        } else if(s == State.CLOSE && slow && isFailureRateExceeded(now)) {
+            open(now, State.CLOSE);
+        }
+    }
+
+    /**
+     * Record a failed call that is admitted under the current state.
+     *
+     * @param latency milliseconds of the call
+     */
+    public void onFailure(long latency) {
+        onFailure(latency, state.get());
+    }
+
+    /**
+     * @param latency milliseconds of the call
+     * @param admitted the state returned by acquire
+     */
+    public void onFailure(long latency, State admitted) {
+        onFailure(latency, System.currentTimeMillis(), admitted);
+    }
+
+    void onFailure(long latency, long now) {
+        onFailure(latency, now, state.get());
+    }
+
+    void onFailure(long latency, long now, State admitted) {
+        record(now, true, false, latency);
+        State s = state.get();
+        if(s != admitted) return;
+        if(s == State.HALF_OPEN) {
+            open(now, State.HALF_OPEN);
+        } else if(s == State.CLOSE) {
+            if(consecutiveFailures.incrementAndGet() >= errorThreshold || isFailureRateExceeded(now)) {
+                open(now, State.CLOSE);
+            }
+        }
+    }
+
+    /**
+     * Give back the permit of an allowed call without recording any outcome, for example, when the calling
+     * thread is interrupted.
+     */
+    public void release() {
+        release(state.get());
+    }
+
+    /**
+     * @param admitted the state returned by acquire
+     */
+    public void release(State admitted) {
+        if(admitted == State.HALF_OPEN && state.get() == State.HALF_OPEN) {
+            probes.updateAndGet(p -> p > 0 ? p - 1 : 0);
+        }
+    }
+
+    private void open(long now, State expected) {
+        openedAt = now;
+        if(state.compareAndSet(expected, State.OPEN)) {
+            probes.set(0);
+            probeSuccesses.set(0);
+            if(logger.isWarnEnabled()) logger.warn("Circuit {} is opened.", key);
+        }
+    }
+
+    private void close() {
+        if(state.compareAndSet(State.HALF_OPEN, State.CLOSE)) {
+            consecutiveFailures.set(0);
+            // the failures before the circuit was opened should not open it again.
+            for(Bucket bucket : buckets) bucket.epoch.set(-1);
+            if(logger.isInfoEnabled()) logger.info("Circuit {} is closed.", key);
+        }
+    }
+
+    private boolean isFailureRateExceeded(long now) {
+        if(failureRateThreshold <= 0) return false;
+        long calls = 0;
+        long failures = 0;
+        long current = now / bucketSize;
+        for(Bucket bucket : buckets) {
+            if(bucket.isCurrent(current)) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum() + bucket.slowCalls.sum();
+            }
+        }
+        return calls >= minimumCalls && failures * 100 >= calls * failureRateThreshold;
+    }
+
+    private void record(long now, boolean failure, boolean slow, long latency) {
+        long current = now / bucketSize;
+        Bucket bucket = buckets[(int)(current % BUCKETS)];
+        long epoch = bucket.epoch.get();
+        if(epoch != current && bucket.epoch.compareAndSet(epoch, current)) {
+            // the bucket is reused for a new period. A few counts of the concurrent calls might be lost.
+            bucket.calls.reset();
+            bucket.failures.reset();
+            bucket.slowCalls.reset();
+            bucket.latency.reset();
+        }
+        bucket.calls.increment();
+        if(failure) bucket.failures.increment();
+        if(slow) bucket.slowCalls.increment();
+        bucket.latency.add(latency);
+    }
+
+    /**
+     * @return the state and the statistics of the rolling window for monitoring
+     */
+    public Map<String, Object> getMetrics() {
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        long latency = 0;
+        long current = System.currentTimeMillis() / bucketSize;
+        for(Bucket bucket : buckets) {
+            if(bucket.isCurrent(current)) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum();
+                slowCalls += bucket.slowCalls.sum();
+                latency += bucket.latency.sum();
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("state", state.get().name());
+        metrics.put("calls", calls);
+        metrics.put("failures", failures);
+        metrics.put("slowCalls", slowCalls);
+        metrics.put("failureRate", calls == 0 ? 0 : (failures + slowCalls) * 100 / calls);
+        metrics.put("averageLatency", calls == 0 ? 0 : latency / calls);
+        metrics.put("rejected", rejected.sum());
+        return metrics;
+    }
+
+    static long elapsed(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static final class Bucket {
+        final AtomicLong epoch = new AtomicLong(-1);
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder slowCalls = new LongAdder();
+        final LongAdder latency = new LongAdder();
+
+        boolean isCurrent(long current) {
+            long e = epoch.get();
+            return e <= current && e > current - BUCKETS;
+        }
+    }
+}
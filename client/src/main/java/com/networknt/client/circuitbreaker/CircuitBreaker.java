@@ -19,66 +19,59 @@ package com.networknt.client.circuitbreaker;
 import com.networknt.client.ClientConfig;
 import io.undertow.client.ClientResponse;
 
-import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 /**
- * Circuit breaker implementation based on the configuration in client.yml
+ * Circuit breaker implementation based on the configuration in client.yml. The state of the circuit is kept
+ * per endpoint or serviceId in the CircuitBreakerRegistry so that a slow downstream service doesn't break the
+ * circuit of the other services.
  *
  * @author Jeferson Perito
  */
 public class CircuitBreaker {
+    static final String DEFAULT_KEY = "default";
 
-    private Supplier<CompletableFuture<ClientResponse>> supplier;
-    private static AtomicInteger timeoutCount;
-    private long lastErrorTime;
+    private final Supplier<CompletableFuture<ClientResponse>> supplier;
+    private final Circuit circuit;
 
+    /**
+     * @param supplier the supplier of the call
+     * @deprecated all the calls share the same circuit. Use the constructor with a circuit from the registry.
+     */
+    @Deprecated
     public CircuitBreaker(Supplier<CompletableFuture<ClientResponse>> supplier) {
+        this(CircuitBreakerRegistry.getInstance().getCircuit(DEFAULT_KEY), supplier);
+    }
+
+    public CircuitBreaker(Circuit circuit, Supplier<CompletableFuture<ClientResponse>> supplier) {
+        this.circuit = circuit;
         this.supplier = supplier;
-        this.timeoutCount = new AtomicInteger(0);
     }
 
     public ClientResponse call() throws TimeoutException, ExecutionException, InterruptedException {
-        State state = checkState();
-
+        State admitted = circuit.acquire();
+        if (admitted == null) {
+            throw new IllegalStateException("circuit is opened.");
+        }
+        long start = System.nanoTime();
         try {
-            if (State.OPEN == state) {
-                throw new IllegalStateException("circuit is opened.");
-            }
-
             ClientResponse clientResponse = supplier.get().get(ClientConfig.get().getTimeout(), TimeUnit.MILLISECONDS);
-            timeoutCount = new AtomicInteger(0);
-
+            circuit.onSuccess(Circuit.elapsed(start), admitted);
             return clientResponse;
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException e) {
+            circuit.release(admitted);
             throw e;
-        } catch (TimeoutException e) {
-            recordTimeout();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            circuit.onFailure(Circuit.elapsed(start), admitted);
             throw e;
         }
     }
 
-    private State checkState() {
-        ClientConfig clientConfig = ClientConfig.get();
-
-        boolean isExtrapolatedResetTimeout = Instant.now().toEpochMilli() - lastErrorTime > clientConfig.getResetTimeout();
-        boolean isExtrapolatedErrorThreshold = timeoutCount.get() >= clientConfig.getErrorThreshold();
-        if (isExtrapolatedErrorThreshold && isExtrapolatedResetTimeout) {
-            return State.HALF_OPEN;
-        }
-        if (timeoutCount.get() >= clientConfig.getErrorThreshold()) {
-            return State.OPEN;
-        }
-        return State.CLOSE;
-    }
-
-    private void recordTimeout() {
-        timeoutCount.getAndIncrement();
-        lastErrorTime = Instant.now().toEpochMilli();
+    public Circuit getCircuit() {
+        return circuit;
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.client.circuitbreaker;
+
+import com.networknt.client.ClientConfig;
+import com.networknt.utility.GaugeRegistry;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of the circuits keyed by the downstream endpoint (scheme://host:port) or the serviceId, so
+ * that a failing dependency is isolated without affecting the healthy ones. The circuits are created on
+ * demand with the settings in the request section of client.yml.
+ */
+public class CircuitBreakerRegistry {
+    private static final CircuitBreakerRegistry instance = new CircuitBreakerRegistry();
+
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    // the config that the circuits are created with. The circuits are rebuilt when the ClientConfig is reloaded.
+    private volatile ClientConfig config;
+
+    public static CircuitBreakerRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param key the endpoint or serviceId
+     * @return the circuit of the key
+     */
+    public Circuit getCircuit(String key) {
+        ClientConfig current = ClientConfig.get();
+        if(current != config) {
+            synchronized (this) {
+                if(current != config) {
+                    circuits.clear();
+                    config = current;
+                }
+            }
+        }
+        Circuit circuit = circuits.get(key);
+        if(circuit == null) {
+            circuit = circuits.computeIfAbsent(key, k -> {
+                registerGauges(k);
+                return new Circuit(k, current);
+            });
+        }
+        return circuit;
+    }
+
+    /**
+     * Register the gauges of the state and the counters of the circuit. The gauges read the current circuit of
+     * the key so that they follow the circuit that is rebuilt after a reload. The state is 0 for CLOSE, 1 for
+     * HALF_OPEN and 2 for OPEN.
+     */
+    private void registerGauges(String key) {
+        Map<String, String> tags = Collections.singletonMap("circuit", key);
+        GaugeRegistry.register("circuit_state", tags, () -> {
+            Circuit c = circuits.get(key);
+            return c == null ? 0 : c.getState().ordinal();
+        });
+        GaugeRegistry.register("circuit_calls", tags, () -> getMetric(key, "calls"));
+        GaugeRegistry.register("circuit_failures", tags, () -> getMetric(key, "failures"));
+        GaugeRegistry.register("circuit_slow_calls", tags, () -> getMetric(key, "slowCalls"));
+        GaugeRegistry.register("circuit_rejected", tags, () -> {
+            Circuit c = circuits.get(key);
+            return c == null ? 0L : c.getRejected();
+        });
+    }
+
+    private Number getMetric(String key, String name) {
+        Circuit c = circuits.get(key);
+        return c == null ? 0L : (Number)c.getMetrics().get(name);
+    }
+
+    /**
+     * @param uri the uri of the downstream service. Only the scheme, host and port are used.
+     * @return the circuit of the endpoint
+     */
+    public Circuit getCircuit(URI uri) {
+        return getCircuit(getKey(uri));
+    }
+
+    public static String getKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+
+    public Map<String, Circuit> getCircuits() {
+        return Collections.unmodifiableMap(circuits);
+    }
+
+    /**
+     * @return the metrics of all the circuits keyed by the endpoint or serviceId
+     */
+    public Map<String, Map<String, Object>> getMetrics() {
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        circuits.forEach((k, v) -> metrics.put(k, v.getMetrics()));
+        return metrics;
+    }
+
+    public void remove(String key) {
+        circuits.remove(key);
+    }
+
+    public void clear() {
+        circuits.clear();
+    }
+}
@@ -21,7 +21,7 @@ package com.networknt.client.circuitbreaker;
  *
  * @author Jeferson Perito
  */
-enum State {
+public enum State {
     CLOSE,
     HALF_OPEN,
     OPEN
@@ -2,6 +2,7 @@ package com.networknt.client.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.networknt.client.Http2Client;
+import com.networknt.client.circuitbreaker.CircuitBreakerRegistry;
 import com.networknt.client.model.HttpVerb;
 import com.networknt.client.model.ServiceDef;
 import com.networknt.cluster.Cluster;
@@ -80,7 +81,9 @@ public class Http2ServiceRequest {
 
     public CompletableFuture<Http2ServiceResponse> call() {
         processClientRequest();
-        return http2Client.callService(hostURI, clientRequest, requestBody).thenApplyAsync(
+        // the calls to a failing endpoint are rejected by its circuit without affecting the other endpoints.
+        return CircuitBreakerRegistry.getInstance().getCircuit(hostURI).execute(
+                () -> http2Client.callService(hostURI, clientRequest, requestBody)).thenApplyAsync(
                 response -> new Http2ServiceResponse(response));
     }
 
@@ -19,7 +19,6 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
 import com.networknt.client.ClientConfig;
 import com.networknt.client.Http2Client;
-import com.networknt.client.ssl.TLSConfig;
 import com.networknt.cluster.Cluster;
 import com.networknt.config.Config;
 import com.networknt.config.JsonMapper;
@@ -39,8 +38,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.InetSocketAddress;
-import java.net.ProxySelector;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -48,7 +45,6 @@ import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
@@ -73,11 +69,6 @@ public class OauthHelper {
 
     private static final Logger logger = LoggerFactory.getLogger(OauthHelper.class);
 
-    private static HttpClient tokenClient = null;
-    private static HttpClient introspectionClient = null;
-    private static HttpClient signClient = null;
-    private static HttpClient derefClient = null;
-
     /**
      * Get an access token from the token service. A Result of TokenResponse will be returned if the invocation is successfully.
      * Otherwise, a Result of Status will be returned.
@@ -98,28 +89,14 @@ public class OauthHelper {
      * @return Result of TokenResponse or error Status.
      */
     public static Result<TokenResponse> getTokenResult(TokenRequest tokenRequest, String envTag) {
-        // As the tokenClient will be reused frequently, we create it once and cache it.
         if(logger.isTraceEnabled()) logger.trace("tokenRequest = " + JsonMapper.toJson(tokenRequest));
-        if(tokenClient == null) {
-            try {
-                HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                        .followRedirects(HttpClient.Redirect.NORMAL)
-                        .connectTimeout(Duration.ofMillis(ClientConfig.get().getTimeout()))
-                        .sslContext(Http2Client.createSSLContext());
-                if(logger.isTraceEnabled()) logger.trace("proxyHost = " + tokenRequest.getProxyHost() + " proxyPort = " + tokenRequest.getProxyPort());
-                if(!StringUtils.isBlank(tokenRequest.getProxyHost())) clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(tokenRequest.getProxyHost(), tokenRequest.getProxyPort() == 0 ? 443 : tokenRequest.getProxyPort())));
-                if(tokenRequest.isEnableHttp2()) clientBuilder.version(HttpClient.Version.HTTP_2);
-                // this a workaround to bypass the hostname verification in jdk11 http client.
-                Map<String, Object> tlsMap = (Map<String, Object>)ClientConfig.get().getMappedConfig().get(Http2Client.TLS);
-                if(tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
-                    final Properties props = System.getProperties();
-                    props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-                }
-                tokenClient = clientBuilder.build();
-            } catch (IOException e) {
-                logger.error("Cannot create HttpClient:", e);
-                return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
-            }
+        // The client is shared by the calls to the same server to reuse the connections and the TLS sessions.
+        HttpClient tokenClient;
+        try {
+            tokenClient = OauthHttpClients.get(tokenRequest.getProxyHost(), tokenRequest.getProxyPort(), tokenRequest.isEnableHttp2());
+        } catch (IOException e) {
+            logger.error("Cannot create HttpClient:", e);
+            return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
         }
         try {
             String serverUrl = tokenRequest.getServerUrl();
@@ -167,25 +144,12 @@ public class OauthHelper {
      * @return Result that contains TokenResponse or error status when failed.
      */
     public static Result<TokenResponse> getSignResult(SignRequest signRequest, String envTag) {
-        if(signClient == null) {
-            try {
-                HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                        .followRedirects(HttpClient.Redirect.NORMAL)
-                        .connectTimeout(Duration.ofMillis(ClientConfig.get().getTimeout()))
-                        .sslContext(Http2Client.createSSLContext());
-                if(signRequest.getProxyHost() != null) clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(signRequest.getProxyHost(), signRequest.getProxyPort() == 0 ? 443 : signRequest.getProxyPort())));
-                if(signRequest.isEnableHttp2()) clientBuilder.version(HttpClient.Version.HTTP_2);
-                // this a workaround to bypass the hostname verification in jdk11 http client.
-                Map<String, Object> tlsMap = (Map<String, Object>)ClientConfig.get().getMappedConfig().get(Http2Client.TLS);
-                if(tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
-                    final Properties props = System.getProperties();
-                    props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-                }
-                signClient = clientBuilder.build();
-            } catch (IOException e) {
-                logger.error("Cannot create HttpClient:", e);
-                return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
-            }
+        HttpClient signClient;
+        try {
+            signClient = OauthHttpClients.get(signRequest.getProxyHost(), signRequest.getProxyPort(), signRequest.isEnableHttp2());
+        } catch (IOException e) {
+            logger.error("Cannot create HttpClient:", e);
+            return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
         }
         try {
             String serverUrl = signRequest.getServerUrl();
@@ -240,25 +204,12 @@ public class OauthHelper {
      * @return Result of TokenResponse or error Status.
      */
     public static Result<TokenResponse> getTokenFromSamlResult(SAMLBearerRequest tokenRequest, String envTag) {
-        if(tokenClient == null) {
-            try {
-                HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                        .followRedirects(HttpClient.Redirect.NORMAL)
-                        .connectTimeout(Duration.ofMillis(ClientConfig.get().getTimeout()))
-                        .sslContext(Http2Client.createSSLContext());
-                if(tokenRequest.getProxyHost() != null) clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(tokenRequest.getProxyHost(), tokenRequest.getProxyPort() == 0 ? 443 : tokenRequest.getProxyPort())));
-                if(tokenRequest.isEnableHttp2()) clientBuilder.version(HttpClient.Version.HTTP_2);
-                // this a workaround to bypass the hostname verification in jdk11 http client.
-                Map<String, Object> tlsMap = (Map<String, Object>)ClientConfig.get().getMappedConfig().get(Http2Client.TLS);
-                if(tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
-                    final Properties props = System.getProperties();
-                    props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-                }
-                tokenClient = clientBuilder.build();
-            } catch (IOException e) {
-                logger.error("Cannot create HttpClient:", e);
-                return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
-            }
+        HttpClient tokenClient;
+        try {
+            tokenClient = OauthHttpClients.get(tokenRequest.getProxyHost(), tokenRequest.getProxyPort(), tokenRequest.isEnableHttp2());
+        } catch (IOException e) {
+            logger.error("Cannot create HttpClient:", e);
+            return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
         }
         try {
             String serverUrl = tokenRequest.getServerUrl();
@@ -323,20 +274,7 @@ public class OauthHelper {
             throw new ClientException(new Status(OAUTH_SERVER_URL_ERROR, "key"));
         }
         try {
-            // The key client is used only during the server startup or jwt key is rotated. Don't cache the keyClient.
-            HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                    .followRedirects(HttpClient.Redirect.NORMAL)
-                    .connectTimeout(Duration.ofMillis(ClientConfig.get().getTimeout()))
-                    .sslContext(Http2Client.createSSLContext());
-            if(!StringUtils.isBlank(keyRequest.getProxyHost())) clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(keyRequest.getProxyHost(), keyRequest.getProxyPort() == 0 ? 443 : keyRequest.getProxyPort())));
-            if(keyRequest.isEnableHttp2()) clientBuilder.version(HttpClient.Version.HTTP_2);
-            // this a workaround to bypass the hostname verification in jdk11 http client.
-            Map<String, Object> tlsMap = (Map<String, Object>)ClientConfig.get().getMappedConfig().get(Http2Client.TLS);
-            if(tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
-                final Properties props = System.getProperties();
-                props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-            }
-            HttpClient keyClient = clientBuilder.build();
+            HttpClient keyClient = OauthHttpClients.get(keyRequest.getProxyHost(), keyRequest.getProxyPort(), keyRequest.isEnableHttp2());
 
             HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
                     .GET()
@@ -364,26 +302,12 @@ public class OauthHelper {
      * @throws ClientException throw exception if communication with the service fails.
      */
     public static Result<String> getIntrospection(String token, IntrospectionRequest introspectionRequest, String envTag) throws ClientException {
-        if(introspectionClient == null) {
-            try {
-                HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                        .followRedirects(HttpClient.Redirect.NORMAL)
-                        .connectTimeout(Duration.ofMillis(ClientConfig.get().getTimeout()))
-                        .sslContext(Http2Client.createSSLContext());
-                if(logger.isTraceEnabled()) logger.trace("proxyHost = " + introspectionRequest.getProxyHost() + " proxyPort = " + introspectionRequest.getProxyPort());
-                if(!StringUtils.isBlank(introspectionRequest.getProxyHost())) clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(introspectionRequest.getProxyHost(), introspectionRequest.getProxyPort() == 0 ? 443 : introspectionRequest.getProxyPort())));
-                if(introspectionRequest.isEnableHttp2()) clientBuilder.version(HttpClient.Version.HTTP_2);
-                // this a workaround to bypass the hostname verification in jdk11 http client.
-                Map<String, Object> tlsMap = (Map<String, Object>)ClientConfig.get().getMappedConfig().get(Http2Client.TLS);
-                if(tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
-                    final Properties props = System.getProperties();
-                    props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-                }
-                introspectionClient = clientBuilder.build();
-            } catch (IOException e) {
-                logger.error("Cannot create HttpClient:", e);
-                return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
-            }
+        HttpClient introspectionClient;
+        try {
+            introspectionClient = OauthHttpClients.get(introspectionRequest.getProxyHost(), introspectionRequest.getProxyPort(), introspectionRequest.isEnableHttp2());
+        } catch (IOException e) {
+            logger.error("Cannot create HttpClient:", e);
+            return Failure.of(new Status(TLS_TRUSTSTORE_ERROR));
         }
 
         String serverUrl = introspectionRequest.getServerUrl();
@@ -443,25 +367,12 @@ public class OauthHelper {
      * @throws ClientException when error occurs.
      */
     public static String derefToken(DerefRequest derefRequest, String envTag) throws ClientException {
-        if(derefClient == null) {
-            try {
-                HttpClient.Builder clientBuilder = HttpClient.newBuilder()
-                        .followRedirects(HttpClient.Redirect.NORMAL)
-                        .connectTimeout(Duration.ofMillis(ClientConfig.get().getTimeout()))
-                        .sslContext(Http2Client.createSSLContext());
-                if(derefRequest.getProxyHost() != null) clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(derefRequest.getProxyHost(), derefRequest.getProxyPort() == 0 ? 443 : derefRequest.getProxyPort())));
-                if(derefRequest.isEnableHttp2()) clientBuilder.version(HttpClient.Version.HTTP_2);
-                // this a workaround to bypass the hostname verification in jdk11 http client.
-                Map<String, Object> tlsMap = (Map<String, Object>)ClientConfig.get().getMappedConfig().get(Http2Client.TLS);
-                if(tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
-                    final Properties props = System.getProperties();
-                    props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-                }
-                derefClient = clientBuilder.build();
-            } catch (IOException e) {
-                logger.error("Cannot create HttpClient:", e);
-                throw new ClientException(e);
-            }
+        HttpClient derefClient;
+        try {
+            derefClient = OauthHttpClients.get(derefRequest.getProxyHost(), derefRequest.getProxyPort(), derefRequest.isEnableHttp2());
+        } catch (IOException e) {
+            logger.error("Cannot create HttpClient:", e);
+            throw new ClientException(e);
         }
         try {
             String serverUrl = derefRequest.getServerUrl();
@@ -685,7 +596,7 @@ public class OauthHelper {
      * @param jwt the jwt you want to renew
      * @return Jwt when success, it will be the same object as the jwt you passed in; return Status when fail;
      */
-    private static Result<Jwt> getCCTokenRemotely(final Jwt jwt) {
+    static Result<Jwt> getCCTokenRemotely(final Jwt jwt) {
         TokenRequest tokenRequest = new ClientCredentialsRequest(jwt.getCcConfig());
         //scopes at this point is may not be set yet when issuing a new token.
         setScope(tokenRequest, jwt);
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.client.oauth;
+
+import com.networknt.client.ClientConfig;
+import com.networknt.client.Http2Client;
+import com.networknt.client.ssl.TLSConfig;
+import com.networknt.utility.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The HttpClient instances that are shared by the token, sign, key, introspection and deref calls of the
+ * OauthHelper. The jdk HttpClient keeps a pool of connections per OAuth server, so reusing it saves the TLS
+ * handshake and the executor setup on each call to the same server.
+ *
+ * A client is created for each proxy and http version combination with the SSLContext that is built once
+ * from the client.yml. All the clients are rebuilt when the ClientConfig is reloaded.
+ */
+final class OauthHttpClients {
+    private static final Logger logger = LoggerFactory.getLogger(OauthHttpClients.class);
+
+    private static final Map<ClientKey, HttpClient> clients = new ConcurrentHashMap<>();
+    private static volatile ClientConfig config;
+    private static SSLContext sslContext;
+
+    private OauthHttpClients() {
+    }
+
+    /**
+     * Get the shared HttpClient for the proxy and http version of a request.
+     *
+     * @param proxyHost the proxy host or null if the server is called directly
+     * @param proxyPort the proxy port, 443 if it is 0
+     * @param enableHttp2 true if HTTP/2 is used
+     * @return HttpClient the shared client
+     * @throws IOException if the SSLContext cannot be created from the trust store
+     */
+    static HttpClient get(String proxyHost, int proxyPort, boolean enableHttp2) throws IOException {
+        ClientConfig current = ClientConfig.get();
+        ClientKey key = new ClientKey(StringUtils.isBlank(proxyHost) ? null : proxyHost, proxyPort == 0 ? 443 : proxyPort, enableHttp2);
+        if(current == config) {
+            HttpClient client = clients.get(key);
+            if(client != null) return client;
+        }
+        synchronized (OauthHttpClients.class) {
+            if(current != config) {
+                // the config is reloaded, the clients will be closed by the gc once the in-flight calls are completed.
+                clients.clear();
+                sslContext = null;
+                config = current;
+            }
+            HttpClient client = clients.get(key);
+            if(client == null) {
+                client = build(current, key);
+                clients.put(key, client);
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Drop all the shared clients so that they are rebuilt on the next call. For testing purpose.
+     */
+    static synchronized void clear() {
+        clients.clear();
+        sslContext = null;
+        config = null;
+    }
+
+    static int size() {
+        return clients.size();
+    }
+
+    private static HttpClient build(ClientConfig clientConfig, ClientKey key) throws IOException {
+        if(sslContext == null) sslContext = Http2Client.createSSLContext();
+        HttpClient.Builder clientBuilder = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(clientConfig.getTimeout()))
+                .sslContext(sslContext);
+        if(key.proxyHost != null) clientBuilder.proxy(ProxySelector.of(new InetSocketAddress(key.proxyHost, key.proxyPort)));
+        if(key.enableHttp2) clientBuilder.version(HttpClient.Version.HTTP_2);
+        // this a workaround to bypass the hostname verification in jdk11 http client.
+        Map<String, Object> tlsMap = (Map<String, Object>)clientConfig.getMappedConfig().get(Http2Client.TLS);
+        if(tlsMap != null && !Boolean.TRUE.equals(tlsMap.get(TLSConfig.VERIFY_HOSTNAME))) {
+            final Properties props = System.getProperties();
+            props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
+        }
+        if(logger.isDebugEnabled()) logger.debug("Create a shared oauth HttpClient with proxyHost = " + key.proxyHost + " proxyPort = " + key.proxyPort + " http2 = " + key.enableHttp2);
+        return clientBuilder.build();
+    }
+
+    private static final class ClientKey {
+        private final String proxyHost;
+        private final int proxyPort;
+        private final boolean enableHttp2;
+
+        ClientKey(String proxyHost, int proxyPort, boolean enableHttp2) {
+            this.proxyHost = proxyHost;
+            this.proxyPort = proxyPort;
+            this.enableHttp2 = enableHttp2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ClientKey)) return false;
+            ClientKey that = (ClientKey) o;
+            return proxyPort == that.proxyPort && enableHttp2 == that.enableHttp2 && Objects.equals(proxyHost, that.proxyHost);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(proxyHost, proxyPort, enableHttp2);
+        }
+    }
+}
@@ -2,8 +2,6 @@ package com.networknt.client.oauth;
 
 import com.networknt.client.ClientConfig;
 import com.networknt.client.Http2Client;
-import com.networknt.client.oauth.cache.ICacheStrategy;
-import com.networknt.client.oauth.cache.LongestExpireCacheStrategy;
 import com.networknt.config.Config;
 import com.networknt.monad.Failure;
 import com.networknt.monad.Result;
@@ -18,7 +16,7 @@ import java.util.*;
 /**
  * This class is a singleton to manage ALL tokens.
  * This TokenManager provides a simple method to consumer to get a token.
- * It manages caches based on different cache strategies underneath.
+ * The tokens are kept and renewed in the background by a TokenRefresher underneath.
  */
 public class TokenManager {
     private Logger logger = LoggerFactory.getLogger(TokenManager.class);
@@ -27,7 +25,7 @@ public class TokenManager {
     private static volatile TokenManager INSTANCE;
     private static int CAPACITY = 200;
 
-    private ICacheStrategy cacheStrategy;
+    private final TokenRefresher tokenRefresher;
 
     private TokenManager() {
         //set CAPACITY based on config
@@ -40,7 +38,7 @@ public class TokenManager {
                 }
             }
         }
-        cacheStrategy = new LongestExpireCacheStrategy(CAPACITY);
+        tokenRefresher = new TokenRefresher(CAPACITY);
     }
 
     public static TokenManager getInstance() {
@@ -56,39 +54,16 @@ public class TokenManager {
 
     /**
      * get a Jwt with a provided Key (Key is either scope or a service id inputted by user, for caching usage):
-     * 1.if a token is cached with provided key
-     *      - if the token is expired, renew it right away.
-     *      - if the token is almost expired, use this token and renew it silently.
-     *      - if the token is not almost expired, just use this token.
-     * 2.if a token is not cached with provided key
-     *      - get a new jwt from oauth server
-     * 3.after getting the valid token, cache that token no matter if it's already cached or not. The strategy should determine how to cache it.
+     * 1.if a valid token is cached with provided key
+     *      - just use this token. It is renewed in the background before it is expired.
+     * 2.if a token is not cached with provided key or it is expired
+     *      - get a new jwt from oauth server. The concurrent requests for the same key wait for the same token request.
      * @param key either based on scope or service id
      * @param ccConfig a map of target auth server client credentials config
      * @return a Jwt if successful, otherwise return error Status.
      */
     public Result<Jwt> getJwt(Jwt.Key key, Map<String, Object> ccConfig) {
-        Jwt cachedJwt = getJwt(cacheStrategy, key);
-        if(ccConfig != null) cachedJwt.setCcConfig(ccConfig);
-        Result<Jwt> result = OauthHelper.populateCCToken(cachedJwt);
-        //update JWT
-        if (result.isSuccess()) {
-            cacheStrategy.cacheJwt(key, result.getResult());
-        }
-        return result;
-    }
-
-    /**
-     * cache jwt if not exist
-     */
-    private synchronized Jwt getJwt(ICacheStrategy cacheStrategy, Jwt.Key key) {
-        Jwt result = cacheStrategy.getCachedJwt(key);
-        if(result == null) {
-            //cache an empty JWT first.
-            result = new Jwt(key);
-            cacheStrategy.cacheJwt(key, result);
-        }
-        return result;
+        return tokenRefresher.getJwt(key, ccConfig);
     }
 
     /**
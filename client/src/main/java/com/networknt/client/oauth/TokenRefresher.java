@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.client.oauth;
+
+import com.networknt.monad.Failure;
+import com.networknt.monad.Result;
+import com.networknt.monad.Success;
+import com.networknt.status.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Keep the client credentials tokens by key and renew them on a background executor before they
+ * are expired, so that a request only reads the published token and never waits for the OAuth
+ * server unless there is no valid token for the key.
+ *
+ * A renewed token is a new Jwt object that is published once it is fully populated. The renewal
+ * of a token is scheduled at tokenRenewBeforeExpired plus a random jitter of up to 10 percent before
+ * the expiry to spread the renewals of the tokens that are issued together, and there is only one
+ * token request in-flight for a key at any time. A token that is not used since its last renewal is
+ * not renewed again until it is requested. A key that fails to get a token is removed if it is not
+ * requested again within the expiredRefreshRetryDelay.
+ */
+public class TokenRefresher {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRefresher.class);
+    private static final String STATUS_CLIENT_CREDENTIALS_TOKEN_NOT_AVAILABLE = "ERR10009";
+
+    private static final ScheduledExecutorService executor = createExecutor();
+
+    private final Map<Jwt.Key, Entry> entries = new ConcurrentHashMap<>();
+    // the entries with a token in the order of the expiry, so that the token that expires first is found without a scan.
+    private final NavigableSet<Entry> byExpire = new TreeSet<>(Comparator.comparingLong((Entry e) -> e.orderExpire).thenComparingLong(e -> e.seq));
+    private final AtomicLong sequence = new AtomicLong();
+    private final int capacity;
+    private final Function<Jwt, Result<Jwt>> tokenFetcher;
+
+    /**
+     * @param capacity the max number of tokens to keep, the token that expires first is removed when a new token is
+     *                 received and it is reached.
+     */
+    public TokenRefresher(int capacity) {
+        this(capacity, OauthHelper::getCCTokenRemotely);
+    }
+
+    TokenRefresher(int capacity, Function<Jwt, Result<Jwt>> tokenFetcher) {
+        this.capacity = capacity;
+        this.tokenFetcher = tokenFetcher;
+    }
+
+    /**
+     * Get the token for the key. A valid token is returned right away and if it is in the renew window
+     * without a pending renewal, a renewal is started in the background. Otherwise, the caller waits
+     * for the token request of the key, which is shared by all the concurrent callers.
+     *
+     * @param key the key of the token, either scopes or serviceId
+     * @param ccConfig the client credentials config of the auth server or null for the default one
+     * @return Result of the Jwt or the error Status of the token request
+     */
+    public Result<Jwt> getJwt(Jwt.Key key, Map<String, Object> ccConfig) {
+        Entry entry = entries.get(key);
+        if(entry == null) {
+            entry = entries.computeIfAbsent(key, k -> new Entry(k, sequence.incrementAndGet()));
+        }
+        if(ccConfig != null) entry.ccConfig = ccConfig;
+        entry.used = true;
+        Jwt jwt = entry.jwt;
+        long now = System.currentTimeMillis();
+        if(jwt != null && jwt.getExpire() > now) {
+            if(jwt.getExpire() - now < Jwt.getTokenRenewBeforeExpired() && entry.scheduled == null) {
+                refresh(entry, false);
+            }
+            return Success.of(jwt);
+        }
+        if(now < entry.retryAfter) {
+            if(logger.isTraceEnabled()) logger.trace("Circuit breaker is tripped and not timeout yet!");
+            return Failure.of(new Status(STATUS_CLIENT_CREDENTIALS_TOKEN_NOT_AVAILABLE));
+        }
+        return refresh(entry, false).join();
+    }
+
+    /**
+     * Remove the token of the key and cancel its renewal.
+     *
+     * @param key the key of the token
+     */
+    public void remove(Jwt.Key key) {
+        Entry entry = entries.remove(key);
+        if(entry != null) {
+            synchronized (byExpire) {
+                byExpire.remove(entry);
+            }
+            entry.cancel();
+        }
+    }
+
+    public void clear() {
+        synchronized (byExpire) {
+            byExpire.clear();
+        }
+        entries.values().forEach(Entry::cancel);
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param key the key of the token
+     * @return the current token of the key or null if there is no token for the key
+     */
+    public Jwt getToken(Jwt.Key key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.jwt;
+    }
+
+    /**
+     * @return a snapshot of the current tokens by key
+     */
+    public Map<Jwt.Key, Jwt> getTokens() {
+        Map<Jwt.Key, Jwt> tokens = new HashMap<>();
+        for(Entry entry : entries.values()) {
+            Jwt jwt = entry.jwt;
+            if(jwt != null) tokens.put(entry.key, jwt);
+        }
+        return tokens;
+    }
+
+    /**
+     * Publish the new token of the entry and remove the tokens that expire first if the capacity is exceeded.
+     * The entry of the new token and the entries that are still waiting for their first token are not removed.
+     */
+    private void publish(Entry entry, Jwt jwt) {
+        entry.jwt = jwt;
+        synchronized (byExpire) {
+            byExpire.remove(entry);
+            entry.orderExpire = jwt.getExpire();
+            if(entries.get(entry.key) != entry) return;
+            byExpire.add(entry);
+            while(entries.size() > capacity) {
+                Entry oldest = byExpire.first();
+                if(oldest == entry) oldest = byExpire.higher(entry);
+                if(oldest == null) break;
+                byExpire.remove(oldest);
+                if(entries.remove(oldest.key, oldest)) {
+                    oldest.cancel();
+                    if(logger.isDebugEnabled()) logger.debug("Token for {} is removed as the capacity {} is reached.", oldest, capacity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a token request for the entry unless there is one in-flight already.
+     *
+     * @param entry the entry of the token
+     * @param scheduled true if it is the scheduled renewal ahead of the renew window
+     */
+    private CompletableFuture<Result<Jwt>> refresh(Entry entry, boolean scheduled) {
+        CompletableFuture<Result<Jwt>> future = new CompletableFuture<>();
+        CompletableFuture<Result<Jwt>> current = entry.inflight.compareAndExchange(null, future);
+        if(current != null) return current;
+        Jwt jwt = entry.jwt;
+        long now = System.currentTimeMillis();
+        if(!scheduled && jwt != null && jwt.getExpire() - now >= Jwt.getTokenRenewBeforeExpired()) {
+            // the token is renewed by the request that was in-flight when the caller read the entry.
+            entry.inflight.set(null);
+            future.complete(Success.of(jwt));
+        } else if(jwt != null && jwt.getExpire() > now) {
+            // the current token is still valid, so the request is sent in the background.
+            executor.execute(() -> fetch(entry, future));
+        } else {
+            fetch(entry, future);
+        }
+        return future;
+    }
+
+    private void fetch(Entry entry, CompletableFuture<Result<Jwt>> future) {
+        Result<Jwt> result;
+        try {
+            Jwt jwt = new Jwt(entry.key);
+            jwt.setCcConfig(entry.ccConfig);
+            result = tokenFetcher.apply(jwt);
+        } catch (Throwable e) {
+            logger.error("Exception:", e);
+            result = Failure.of(new Status(STATUS_CLIENT_CREDENTIALS_TOKEN_NOT_AVAILABLE));
+        }
+        long now = System.currentTimeMillis();
+        if(result.isSuccess()) {
+            publish(entry, result.getResult());
+            entry.retryAfter = 0;
+            schedule(entry, renewDelay(result.getResult().getExpire() - now));
+        } else {
+            Jwt current = entry.jwt;
+            if(current != null && current.getExpire() > now) {
+                // keep the current token and retry before it is expired.
+                schedule(entry, Jwt.getEarlyRefreshRetryDelay());
+            } else {
+                entry.retryAfter = now + Jwt.getExpiredRefreshRetryDelay();
+                entry.used = false;
+                scheduleRemoval(entry, Jwt.getExpiredRefreshRetryDelay());
+            }
+            logger.error("Renew token for {} error with status: {}", entry, result.getError().toString());
+        }
+        entry.inflight.set(null);
+        future.complete(result);
+    }
+
+    private void schedule(Entry entry, long delay) {
+        if(!entries.containsKey(entry.key)) return;
+        entry.scheduled = executor.schedule(() -> {
+            entry.scheduled = null;
+            if(entry.used && entries.get(entry.key) == entry) {
+                entry.used = false;
+                refresh(entry, true);
+            } else if(logger.isDebugEnabled()) {
+                logger.debug("Token for {} is not used since the last renewal and it is not renewed.", entry);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Remove the entry without a valid token once it is not requested for the delay, so that the keys that keep
+     * failing don't stay forever. The entry of a key that is still requested is kept for its retryAfter.
+     */
+    private void scheduleRemoval(Entry entry, long delay) {
+        entry.scheduled = executor.schedule(() -> {
+            entry.scheduled = null;
+            Jwt jwt = entry.jwt;
+            if((jwt != null && jwt.getExpire() > System.currentTimeMillis()) || entries.get(entry.key) != entry) return;
+            if(entry.used) {
+                entry.used = false;
+                scheduleRemoval(entry, delay);
+            } else if(entries.remove(entry.key, entry)) {
+                synchronized (byExpire) {
+                    byExpire.remove(entry);
+                }
+                if(logger.isDebugEnabled()) logger.debug("Token for {} is removed as it failed and is not requested since.", entry);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The delay to renew a token that expires in ttl milliseconds. It is renewed ahead of the expiry
+     * with a random jitter, or at the half of its life if it is shorter than the renew window.
+     */
+    static long renewDelay(long ttl) {
+        long renewBeforeExpired = Jwt.getTokenRenewBeforeExpired();
+        long ahead = renewBeforeExpired + ThreadLocalRandom.current().nextLong(renewBeforeExpired / 10 + 1);
+        return ttl > ahead ? ttl - ahead : Math.max(0, ttl / 2);
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread thread = new Thread(r, "token-refresher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static final class Entry {
+        final Jwt.Key key;
+        final long seq;
+        final AtomicReference<CompletableFuture<Result<Jwt>>> inflight = new AtomicReference<>();
+        volatile Map<String, Object> ccConfig;
+        volatile Jwt jwt;
+        volatile long retryAfter;
+        volatile boolean used;
+        volatile ScheduledFuture<?> scheduled;
+        // the expiry of the token when the entry is added to the byExpire set, only changed under its lock.
+        long orderExpire;
+
+        Entry(Jwt.Key key, long seq) {
+            this.key = key;
+            this.seq = seq;
+        }
+
+        void cancel() {
+            ScheduledFuture<?> future = scheduled;
+            if(future != null) future.cancel(false);
+        }
+
+        @Override
+        public String toString() {
+            return key.getServiceId() != null ? key.getServiceId() : String.valueOf(key.getScopes());
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.networknt.client.simplepool;
+
+import io.undertow.connector.ByteBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.OptionMap;
+import org.xnio.XnioWorker;
+import org.xnio.ssl.XnioSsl;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/***
+    A lock-free connection pool for a single URI and an alternative to SimpleURIConnectionPool.
+
+    The connections are kept in a copy-on-write array that is only replaced when a connection is added or
+    retired, so borrowing reads a snapshot of the array and claims a stream (HTTP/2) or the connection
+    (HTTP/1.1) with a compare-and-set on the borrow count of a randomly chosen connection. No lock is taken
+    and nothing is copied on the borrow and restore paths, and the callers for the same URI don't block
+    each other.
+
+    Expired and unexpectedly closed connections are retired on borrow and by a background sweeper. A retired
+    connection is closed once all of its tokens are restored. The sweeper also closes the connections that
+    were created by the SimpleConnectionMaker but never tracked by the pool, for example, after a timeout.
+
+    borrow() throws an exception when the pool is full like SimpleURIConnectionPool, while borrowAsync()
+    waits for a connection to be restored or retired until the borrowTimeout.
+*/
+public final class ConcurrentURIConnectionPool implements URIConnectionPool {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentURIConnectionPool.class);
+    private static final Entry[] EMPTY = new Entry[0];
+    private static final long MIN_SWEEP_INTERVAL = 1000;
+    private static final long MAX_SWEEP_INTERVAL = 30000;
+    private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(daemon("connection-pool-sweeper"));
+    private static final ExecutorService connector = Executors.newCachedThreadPool(daemon("connection-pool-connector"));
+
+    private final SimpleConnectionMaker connectionMaker;
+    private final long EXPIRY_TIME;
+    private final int poolSize;
+    private final URI uri;
+    private InetSocketAddress bindAddress;
+    private XnioWorker worker;
+    private ByteBufferPool bufferPool;
+    private XnioSsl ssl;
+    private OptionMap options;
+
+    /** The connections tracked by the pool. The array is replaced, never modified. */
+    private final AtomicReference<Entry[]> entries = new AtomicReference<>(EMPTY);
+    /** The tracked connections and the retired connections with unrestored tokens */
+    private final Map<SimpleConnectionHolder, Entry> holders = new ConcurrentHashMap<>();
+    /** The number of connections tracked or being created, which is limited by the poolSize */
+    private final AtomicInteger size = new AtomicInteger();
+    /** The set of all connections created by the SimpleConnectionMaker for this uri and not tracked yet */
+    private final Set<SimpleConnection> allCreatedConnections = ConcurrentHashMap.newKeySet();
+    /** The untracked connections found by the last sweep. They are closed if they are still untracked in the next sweep */
+    private final Set<SimpleConnection> suspectedLeaks = ConcurrentHashMap.newKeySet();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final ScheduledFuture<?> sweep;
+
+    public ConcurrentURIConnectionPool(URI uri, long expireTime, int poolSize, SimpleConnectionMaker connectionMaker) {
+        this(uri, expireTime, poolSize, null, null, null, null, null, connectionMaker);
+    }
+
+    public ConcurrentURIConnectionPool(URI uri, long expireTime, int poolSize, InetSocketAddress bindAddress, XnioWorker worker, ByteBufferPool bufferPool, XnioSsl ssl, OptionMap options, SimpleConnectionMaker connectionMaker) {
+        EXPIRY_TIME = expireTime;
+        this.uri = uri;
+        this.poolSize = poolSize;
+        this.bindAddress = bindAddress;
+        this.worker = worker;
+        this.bufferPool = bufferPool;
+        this.ssl = ssl;
+        this.options = options;
+        this.connectionMaker = connectionMaker;
+        long interval = Math.max(MIN_SWEEP_INTERVAL, Math.min(MAX_SWEEP_INTERVAL, expireTime / 10));
+        this.sweep = sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /***
+     *
+     * @param createConnectionTimeout the maximum time to wait for a connection to be created
+     * @return a connection token that represents the borrowing of a connection by a thread
+     * @throws RuntimeException if an attempt is made to exceed the maximum size of the connection pool
+     */
+    @Override
+    public SimpleConnectionHolder.ConnectionToken borrow(long createConnectionTimeout) throws RuntimeException {
+        SimpleConnectionHolder.ConnectionToken token = borrowExisting(createConnectionTimeout, System.currentTimeMillis());
+        if(token != null)
+            return token;
+        if(!reserve()) {
+            // another thread might have just created an HTTP/2 connection
+            token = borrowExisting(createConnectionTimeout, System.currentTimeMillis());
+            if(token != null)
+                return token;
+            throw new RuntimeException("An attempt was made to exceed the maximum size was of the " + uri.toString() + " connection pool");
+        }
+        return create(createConnectionTimeout);
+    }
+
+    /***
+     * Borrow a connection without blocking the caller. The connection is created in a background thread if
+     * the pool is not full. Otherwise, the future is completed when a connection is restored or retired.
+     *
+     * @param createConnectionTimeout the maximum time to wait for a connection to be created
+     * @param borrowTimeout the maximum time in milliseconds to wait for a connection when the pool is full
+     * @return a future of the connection token. It is completed with a TimeoutException after the borrowTimeout
+     */
+    @Override
+    public CompletableFuture<SimpleConnectionHolder.ConnectionToken> borrowAsync(long createConnectionTimeout, long borrowTimeout) {
+        CompletableFuture<SimpleConnectionHolder.ConnectionToken> future = new CompletableFuture<>();
+        SimpleConnectionHolder.ConnectionToken token = borrowExisting(createConnectionTimeout, System.currentTimeMillis());
+        if(token != null) {
+            future.complete(token);
+            return future;
+        }
+        Waiter waiter = new Waiter(future, createConnectionTimeout);
+        if(reserve()) {
+            createAsync(waiter);
+            return future;
+        }
+        future.orTimeout(borrowTimeout, TimeUnit.MILLISECONDS);
+        waiters.offer(waiter);
+        // a connection might have been restored between the borrow attempt and the offer
+        dispatch();
+        return future;
+    }
+
+    /***
+     * Restores borrowed connections
+     *
+     * @param connectionToken the connection token that represents the borrowing of a connection by a thread
+     */
+    @Override
+    public void restore(SimpleConnectionHolder.ConnectionToken connectionToken) {
+        if(connectionToken == null)
+            return;
+        Entry entry = holders.get(connectionToken.holder());
+        if(entry == null || !entry.tokens.remove(connectionToken)) {
+            logger.debug("Restoring an unknown connection token to the {} connection pool", uri);
+            return;
+        }
+        release(entry);
+        if(!entry.retired.get())
+            dispatch();
+    }
+
+    /***
+     * Stop the background sweeper of this pool.
+     */
+    public void shutdown() {
+        sweep.cancel(false);
+    }
+
+    /***
+     * @return the number of connections tracked by the pool
+     */
+    public int getConnectionCount() {
+        return entries.get().length;
+    }
+
+    private SimpleConnectionHolder.ConnectionToken borrowExisting(long createConnectionTimeout, long now) {
+        Entry[] snapshot = entries.get();
+        int n = snapshot.length;
+        if(n == 0)
+            return null;
+        int start = n == 1 ? 0 : ThreadLocalRandom.current().nextInt(n);
+        for(int i = 0; i < n; i++) {
+            int index = start + i;
+            Entry entry = snapshot[index < n ? index : index - n];
+            if(entry.retired.get())
+                continue;
+            if(now - entry.createdAt >= EXPIRY_TIME || !entry.connection.isOpen()) {
+                retire(entry);
+                continue;
+            }
+            if(!entry.tryBorrow())
+                continue;
+            // the entry might be retired between the check and the borrow. See retire().
+            if(entry.retired.get()) {
+                release(entry);
+                continue;
+            }
+            SimpleConnection connection;
+            try {
+                connection = connectionMaker.reuseConnection(createConnectionTimeout, entry.connection);
+            } catch (RuntimeException e) {
+                logger.debug("Failed to reuse connection to {}: {}", uri, e.getMessage());
+                retire(entry);
+                release(entry);
+                continue;
+            }
+            SimpleConnectionHolder.ConnectionToken token = entry.holder.new ConnectionToken(connection);
+            entry.tokens.add(token);
+            return token;
+        }
+        return null;
+    }
+
+    /***
+     * Create a new connection in a slot reserved by the caller and borrow it.
+     */
+    private SimpleConnectionHolder.ConnectionToken create(long createConnectionTimeout) {
+        SimpleConnectionHolder holder;
+        try {
+            holder = new SimpleConnectionHolder(EXPIRY_TIME, createConnectionTimeout, uri, bindAddress, worker, bufferPool, ssl, options, allCreatedConnections, connectionMaker);
+        } catch (RuntimeException e) {
+            size.decrementAndGet();
+            dispatch();
+            throw e;
+        }
+        Entry entry = new Entry(holder, System.currentTimeMillis());
+        SimpleConnectionHolder.ConnectionToken token = holder.new ConnectionToken(entry.connection);
+        entry.tokens.add(token);
+        holders.put(holder, entry);
+        add(entry);
+        allCreatedConnections.remove(entry.connection);
+        logger.debug("New connection to {} - the pool has {} connections", uri, size.get());
+        // the waiters can share a new HTTP/2 connection
+        if(entry.maxBorrows > 1)
+            dispatch();
+        return token;
+    }
+
+    private void createAsync(Waiter waiter) {
+        connector.execute(() -> {
+            try {
+                SimpleConnectionHolder.ConnectionToken token = create(waiter.createConnectionTimeout);
+                if(!waiter.future.complete(token))
+                    restore(token);
+            } catch (RuntimeException e) {
+                waiter.future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /***
+     * Hand the available connections and the free slots to the waiters in order.
+     */
+    private void dispatch() {
+        Waiter waiter;
+        while((waiter = waiters.peek()) != null) {
+            if(waiter.future.isDone()) {
+                waiters.remove(waiter);
+                continue;
+            }
+            SimpleConnectionHolder.ConnectionToken token = borrowExisting(waiter.createConnectionTimeout, System.currentTimeMillis());
+            if(token != null) {
+                waiters.remove(waiter);
+                if(!waiter.future.complete(token))
+                    restore(token);
+                continue;
+            }
+            if(!reserve())
+                return;
+            waiters.remove(waiter);
+            createAsync(waiter);
+        }
+    }
+
+    private boolean reserve() {
+        for(;;) {
+            int current = size.get();
+            if(current >= poolSize)
+                return false;
+            if(size.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    private void release(Entry entry) {
+        if(entry.borrows.decrementAndGet() == 0 && entry.retired.get())
+            close(entry);
+    }
+
+    /***
+     * Stop lending the connection and free its slot. The connection is closed when it has no borrowed tokens.
+     *
+     * The retired flag is set before the borrow count is read here, and the borrow count is set before the
+     * retired flag is read in borrowExisting(), so either the borrower backs off or the connection is left
+     * open for the borrower and closed on restore.
+     */
+    private void retire(Entry entry) {
+        if(!entry.retired.compareAndSet(false, true))
+            return;
+        remove(entry);
+        size.decrementAndGet();
+        logger.debug("Connection to {} retired - the pool has {} connections", uri, size.get());
+        if(entry.borrows.get() == 0)
+            close(entry);
+        dispatch();
+    }
+
+    private void close(Entry entry) {
+        if(entry.closed.compareAndSet(false, true)) {
+            holders.remove(entry.holder);
+            entry.connection.safeClose();
+        }
+    }
+
+    private void add(Entry entry) {
+        for(;;) {
+            Entry[] current = entries.get();
+            Entry[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = entry;
+            if(entries.compareAndSet(current, next))
+                return;
+        }
+    }
+
+    private void remove(Entry entry) {
+        for(;;) {
+            Entry[] current = entries.get();
+            int index = -1;
+            for(int i = 0; i < current.length; i++) {
+                if(current[i] == entry) {
+                    index = i;
+                    break;
+                }
+            }
+            if(index < 0)
+                return;
+            Entry[] next = new Entry[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            if(entries.compareAndSet(current, next))
+                return;
+        }
+    }
+
+    /***
+     * Retire the expired and closed connections, close the leaked connections and remove the timed out waiters.
+     */
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            for(Entry entry : entries.get()) {
+                if(now - entry.createdAt >= EXPIRY_TIME || !entry.connection.isOpen())
+                    retire(entry);
+            }
+            for(SimpleConnection connection : allCreatedConnections) {
+                if(suspectedLeaks.remove(connection)) {
+                    allCreatedConnections.remove(connection);
+                    if(connection.isOpen()) {
+                        connection.safeClose();
+                        logger.debug("Leaked connection to {} closed", uri);
+                    }
+                } else {
+                    suspectedLeaks.add(connection);
+                }
+            }
+            suspectedLeaks.retainAll(allCreatedConnections);
+            waiters.removeIf(waiter -> waiter.future.isDone());
+        } catch (Throwable e) {
+            logger.error("Failed to sweep the " + uri + " connection pool", e);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Entry {
+        final SimpleConnectionHolder holder;
+        final SimpleConnection connection;
+        final long createdAt;
+        // HTTP/1.1 connections can only be borrowed by one thread at a time
+        final int maxBorrows;
+        // the creator of the connection holds the first borrow
+        final AtomicInteger borrows = new AtomicInteger(1);
+        final AtomicBoolean retired = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Set<SimpleConnectionHolder.ConnectionToken> tokens = ConcurrentHashMap.newKeySet();
+
+        Entry(SimpleConnectionHolder holder, long createdAt) {
+            this.holder = holder;
+            this.connection = holder.connection();
+            this.createdAt = createdAt;
+            this.maxBorrows = connection.isMultiplexingSupported() ? Integer.MAX_VALUE : 1;
+        }
+
+        boolean tryBorrow() {
+            for(;;) {
+                int current = borrows.get();
+                if(current >= maxBorrows)
+                    return false;
+                if(borrows.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final CompletableFuture<SimpleConnectionHolder.ConnectionToken> future;
+        final long createConnectionTimeout;
+
+        Waiter(CompletableFuture<SimpleConnectionHolder.ConnectionToken> future, long createConnectionTimeout) {
+            this.future = future;
+            this.createConnectionTimeout = createConnectionTimeout;
+        }
+    }
+}
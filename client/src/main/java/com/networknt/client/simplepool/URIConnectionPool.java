@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.networknt.client.simplepool;
+
+import java.util.concurrent.CompletableFuture;
+
+/***
+ * A connection pool for a single URI. SimpleURIConnectionPool is the default implementation and
+ * ConcurrentURIConnectionPool is the lock-free alternative selected with the concurrentConnectionPool
+ * flag in the request section of client.yml.
+ */
+public interface URIConnectionPool {
+    /***
+     * @param createConnectionTimeout the maximum time to wait for a connection to be created
+     * @return a connection token that represents the borrowing of a connection by a thread
+     * @throws RuntimeException if the connection cannot be created or the pool is full
+     */
+    SimpleConnectionHolder.ConnectionToken borrow(long createConnectionTimeout) throws RuntimeException;
+
+    /***
+     * Borrow a connection asynchronously. The default implementation completes the future with the result
+     * of the synchronous borrow.
+     *
+     * @param createConnectionTimeout the maximum time to wait for a connection to be created
+     * @param borrowTimeout the maximum time in milliseconds to wait for a connection when the pool is full
+     * @return a future of the connection token
+     */
+    default CompletableFuture<SimpleConnectionHolder.ConnectionToken> borrowAsync(long createConnectionTimeout, long borrowTimeout) {
+        try {
+            return CompletableFuture.completedFuture(borrow(createConnectionTimeout));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /***
+     * @param connectionToken the connection token that represents the borrowing of a connection by a thread
+     */
+    void restore(SimpleConnectionHolder.ConnectionToken connectionToken);
+}
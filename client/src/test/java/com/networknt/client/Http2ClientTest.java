@@ -19,6 +19,7 @@
 package com.networknt.client;
 
 import com.networknt.client.circuitbreaker.CircuitBreaker;
+import com.networknt.client.circuitbreaker.CircuitBreakerRegistry;
 import com.networknt.client.http.Http2ClientConnectionPool;
 import com.networknt.client.simplepool.SimpleConnectionHolder;
 import com.networknt.config.Config;
@@ -241,6 +242,7 @@ public class Http2ClientTest extends Http2ClientBase {
     @Test(expected = TimeoutException.class)
     public void shouldThrowTimeoutExceptionIfTimeoutHasBeenReached() throws URISyntaxException, ExecutionException, InterruptedException, TimeoutException {
         Http2ClientConnectionPool.getInstance().clear();
+        CircuitBreakerRegistry.getInstance().clear();
         Http2Client client = createClient();
 
         final ClientRequest request = new ClientRequest().setMethod(Methods.POST).setPath(SLOW);
@@ -256,6 +258,7 @@ public class Http2ClientTest extends Http2ClientBase {
         expectedException.expectMessage("circuit is opened.");
 
         Http2ClientConnectionPool.getInstance().clear();
+        CircuitBreakerRegistry.getInstance().clear();
         Http2Client client = createClient();
 
         final ClientRequest request = new ClientRequest().setMethod(Methods.POST).setPath(SLOW);
@@ -280,6 +283,7 @@ public class Http2ClientTest extends Http2ClientBase {
     @Test
     public void shouldCircuitBeCloseIfResetTimeoutIsReached() throws URISyntaxException, ExecutionException, InterruptedException, TimeoutException {
         Http2ClientConnectionPool.getInstance().clear();
+        CircuitBreakerRegistry.getInstance().clear();
         Http2Client client = createClient();
 
         final ClientRequest request = new ClientRequest().setMethod(Methods.POST).setPath(SLOW);
@@ -306,6 +310,7 @@ public class Http2ClientTest extends Http2ClientBase {
     @Test
     public void shouldCallRequestAsync() throws URISyntaxException, ExecutionException, InterruptedException, TimeoutException {
         Http2ClientConnectionPool.getInstance().clear();
+        CircuitBreakerRegistry.getInstance().clear();
         Http2Client client = createClient();
 
         final ClientRequest request = new ClientRequest().setMethod(Methods.POST).setPath(POST);
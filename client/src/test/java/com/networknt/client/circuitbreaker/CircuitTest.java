@@ -0,0 +1,189 @@
+package com.networknt.client.circuitbreaker;
+
+import com.networknt.client.ClientConfig;
+import com.networknt.utility.GaugeRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+public class CircuitTest {
+
+    @Test
+    public void testConsecutiveFailures() {
+        Circuit circuit = new Circuit("a", 2, 1000, 10000, 20, 0, 0, 1);
+        long now = 1000000L;
+        Assert.assertTrue(circuit.tryAcquire(now));
+        circuit.onFailure(10, now);
+        Assert.assertEquals(State.CLOSE, circuit.getState());
+        circuit.onFailure(10, now);
+        Assert.assertEquals(State.OPEN, circuit.getState());
+        Assert.assertFalse(circuit.tryAcquire(now + 999));
+        Assert.assertEquals(1L, circuit.getMetrics().get("rejected"));
+    }
+
+    @Test
+    public void testHalfOpenPermits() {
+        Circuit circuit = new Circuit("a", 1, 1000, 10000, 20, 0, 0, 2);
+        long now = 1000000L;
+        circuit.onFailure(10, now);
+        Assert.assertEquals(State.OPEN, circuit.getState());
+        // only two probes are allowed after the reset timeout.
+        Assert.assertTrue(circuit.tryAcquire(now + 1000));
+        Assert.assertEquals(State.HALF_OPEN, circuit.getState());
+        Assert.assertTrue(circuit.tryAcquire(now + 1000));
+        Assert.assertFalse(circuit.tryAcquire(now + 1000));
+        circuit.onSuccess(10, now + 1001);
+        Assert.assertEquals(State.HALF_OPEN, circuit.getState());
+        circuit.onSuccess(10, now + 1001);
+        Assert.assertEquals(State.CLOSE, circuit.getState());
+        Assert.assertTrue(circuit.tryAcquire(now + 1002));
+    }
+
+    @Test
+    public void testFailedProbeOpensAgain() {
+        Circuit circuit = new Circuit("a", 1, 1000, 10000, 20, 0, 0, 1);
+        long now = 1000000L;
+        circuit.onFailure(10, now);
+        Assert.assertTrue(circuit.tryAcquire(now + 1000));
+        circuit.onFailure(10, now + 1000);
+        Assert.assertEquals(State.OPEN, circuit.getState());
+        Assert.assertFalse(circuit.tryAcquire(now + 1999));
+        Assert.assertTrue(circuit.tryAcquire(now + 2000));
+    }
+
+    @Test
+    public void testStuckProbeOpensAgain() {
+        Circuit circuit = new Circuit("a", 1, 1000, 10000, 20, 0, 0, 1, 500);
+        long now = 1000000L;
+        circuit.onFailure(10, now);
+        // the probe never completes.
+        Assert.assertEquals(State.HALF_OPEN, circuit.acquire(now + 1000));
+        Assert.assertNull(circuit.acquire(now + 1499));
+        Assert.assertEquals(State.HALF_OPEN, circuit.getState());
+        Assert.assertNull(circuit.acquire(now + 1500));
+        Assert.assertEquals(State.OPEN, circuit.getState());
+        Assert.assertNull(circuit.acquire(now + 2499));
+        Assert.assertEquals(State.HALF_OPEN, circuit.acquire(now + 2500));
+    }
+
+    @Test
+    public void testExecuteProbeTimeout() throws Exception {
+        Circuit circuit = new Circuit("a", 1, 1, 10000, 20, 0, 0, 1, 100);
+        circuit.onFailure(10);
+        Thread.sleep(5);
+        try {
+            circuit.execute(CompletableFuture::new).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(State.OPEN, circuit.getState());
+    }
+
+    @Test
+    public void testCallAdmittedWhenClosedIsNotProbe() {
+        Circuit circuit = new Circuit("a", 1, 1000, 10000, 20, 0, 0, 1);
+        long now = 1000000L;
+        State slow = circuit.acquire(now);
+        Assert.assertEquals(State.CLOSE, slow);
+        circuit.onFailure(10, now, circuit.acquire(now));
+        Assert.assertEquals(State.OPEN, circuit.getState());
+        Assert.assertEquals(State.HALF_OPEN, circuit.acquire(now + 1000));
+        // the slow call that started before the circuit was opened completes when it is half open.
+        circuit.onSuccess(10, now + 1001, slow);
+        Assert.assertEquals(State.HALF_OPEN, circuit.getState());
+        circuit.onFailure(10, now + 1001, slow);
+        Assert.assertEquals(State.HALF_OPEN, circuit.getState());
+        circuit.onSuccess(10, now + 1001, State.HALF_OPEN);
+        Assert.assertEquals(State.CLOSE, circuit.getState());
+    }
+
+    @Test
+    public void testFailureRate() {
+        Circuit circuit = new Circuit("a", 100, 1000, 10000, 10, 50, 500, 1);
+        long now = 1000000L;
+        for (int i = 0; i < 5; i++) {
+            circuit.onSuccess(10, now);
+            circuit.onSuccess(600, now);
+        }
+        // five slow calls out of ten
+        Assert.assertEquals(State.OPEN, circuit.getState());
+
+        circuit = new Circuit("b", 100, 1000, 10000, 10, 50, 0, 1);
+        for (int i = 0; i < 8; i++) circuit.onSuccess(10, now);
+        circuit.onFailure(10, now);
+        circuit.onFailure(10, now);
+        Assert.assertEquals(State.CLOSE, circuit.getState());
+        // the calls leave the rolling window.
+        for (int i = 0; i < 10; i++) circuit.onFailure(10, now + 10000 + i);
+        Assert.assertEquals(State.OPEN, circuit.getState());
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        Circuit circuit = new Circuit("a", 1, 60000, 10000, 20, 0, 0, 1);
+        Assert.assertEquals("ok", circuit.execute(() -> CompletableFuture.completedFuture("ok")).get());
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("down"));
+        try {
+            circuit.execute(() -> failed).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals("down", e.getCause().getMessage());
+        }
+        try {
+            circuit.execute(() -> CompletableFuture.completedFuture("ok")).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(2L, circuit.getMetrics().get("calls"));
+    }
+
+    @Test
+    public void testRegistryIsolation() {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.getInstance();
+        Circuit a = registry.getCircuit(URI.create("https://localhost:7001/v1/pets"));
+        Assert.assertSame(a, registry.getCircuit(URI.create("https://localhost:7001/v1/address")));
+        Circuit b = registry.getCircuit(URI.create("https://localhost:7002/v1/pets"));
+        Assert.assertNotSame(a, b);
+        for (int i = 0; i < 100; i++) a.onFailure(10);
+        Assert.assertEquals(State.OPEN, a.getState());
+        Assert.assertEquals(State.CLOSE, b.getState());
+        Assert.assertEquals("OPEN", registry.getMetrics().get("https://localhost:7001").get("state"));
+        registry.remove("https://localhost:7001");
+        registry.remove("https://localhost:7002");
+    }
+
+    @Test
+    public void testRegistryRebuiltOnReload() {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.getInstance();
+        Circuit a = registry.getCircuit("reload");
+        Assert.assertSame(a, registry.getCircuit("reload"));
+        ClientConfig.get("client");
+        Assert.assertNotSame(a, registry.getCircuit("reload"));
+        registry.remove("reload");
+    }
+
+    @Test
+    public void testRegistryGauges() {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.getInstance();
+        Circuit circuit = registry.getCircuit("gauges");
+        for (int i = 0; i < 100; i++) circuit.onFailure(10);
+        circuit.tryAcquire();
+        Map<String, Number> values = new HashMap<>();
+        for (GaugeRegistry.Gauge gauge : GaugeRegistry.getGauges()) {
+            if("gauges".equals(gauge.getTags().get("circuit"))) values.put(gauge.getName(), gauge.getValue());
+        }
+        Assert.assertEquals(State.OPEN.ordinal(), values.get("circuit_state").intValue());
+        Assert.assertEquals(100L, values.get("circuit_failures").longValue());
+        Assert.assertEquals(1L, values.get("circuit_rejected").longValue());
+        registry.remove("gauges");
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.client.oauth;
+
+import com.networknt.client.ClientConfig;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.http.HttpClient;
+
+public class OauthHttpClientsTest {
+    @Before
+    public void setUp() {
+        ClientConfig.get();
+        OauthHttpClients.clear();
+    }
+
+    @Test
+    public void testClientIsShared() throws Exception {
+        HttpClient client = OauthHttpClients.get(null, 0, true);
+        Assert.assertSame(client, OauthHttpClients.get("", 0, true));
+        Assert.assertSame(client.sslContext(), OauthHttpClients.get(null, 0, false).sslContext());
+        Assert.assertNotSame(client, OauthHttpClients.get(null, 0, false));
+        Assert.assertNotSame(client, OauthHttpClients.get("proxy.lightapi.net", 3128, true));
+        Assert.assertSame(OauthHttpClients.get("proxy.lightapi.net", 0, true), OauthHttpClients.get("proxy.lightapi.net", 443, true));
+        Assert.assertEquals(4, OauthHttpClients.size());
+    }
+
+    @Test
+    public void testClientIsRebuiltOnReload() throws Exception {
+        HttpClient client = OauthHttpClients.get(null, 0, true);
+        ClientConfig.get("client");
+        HttpClient reloaded = OauthHttpClients.get(null, 0, true);
+        Assert.assertNotSame(client, reloaded);
+        Assert.assertNotSame(client.sslContext(), reloaded.sslContext());
+        Assert.assertEquals(1, OauthHttpClients.size());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.client.oauth;
+
+import com.networknt.client.ClientConfig;
+import com.networknt.monad.Failure;
+import com.networknt.monad.Result;
+import com.networknt.monad.Success;
+import com.networknt.status.Status;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TokenRefresherTest {
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicLong expiresIn = new AtomicLong(600000);
+    private volatile boolean failing;
+    // the expiredRefreshRetryDelay to use instead of the client.yml, which is loaded again with each new Jwt.
+    private volatile long retryDelay;
+    private volatile CountDownLatch release;
+    private TokenRefresher refresher;
+    // the tokenRenewBeforeExpired in the client.yml
+    private long renew;
+
+    @Before
+    public void setUp() {
+        // the other tests might leave a client.yml with a longer tokenRenewBeforeExpired.
+        ClientConfig.get("client");
+        new Jwt();
+        renew = Jwt.getTokenRenewBeforeExpired();
+        refresher = new TokenRefresher(2, this::fetch);
+    }
+
+    @After
+    public void tearDown() {
+        refresher.clear();
+    }
+
+    private Result<Jwt> fetch(Jwt jwt) {
+        try {
+            if(release != null) release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(retryDelay > 0) Jwt.setExpiredRefreshRetryDelay(retryDelay);
+        int count = fetches.incrementAndGet();
+        if(failing) return Failure.of(new Status(OauthHelper.STATUS_CLIENT_CREDENTIALS_TOKEN_NOT_AVAILABLE));
+        jwt.setJwt("token-" + count);
+        jwt.setExpire(System.currentTimeMillis() + expiresIn.get());
+        return Success.of(jwt);
+    }
+
+    @Test
+    public void testCachedToken() {
+        Jwt.Key key = new Jwt.Key("service1");
+        Jwt jwt = refresher.getJwt(key, null).getResult();
+        Assert.assertEquals("token-1", jwt.getJwt());
+        Assert.assertSame(jwt, refresher.getJwt(key, null).getResult());
+        Assert.assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Result<Jwt>>> futures = new ArrayList<>();
+            for(int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> refresher.getJwt(new Jwt.Key("service1"), null)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for(Future<Result<Jwt>> future : futures) {
+                Assert.assertEquals("token-1", future.get().getResult().getJwt());
+            }
+            Assert.assertEquals(1, fetches.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRenewedBeforeExpiry() throws Exception {
+        expiresIn.set(renew + 500);
+        Jwt.Key key = new Jwt.Key("service1");
+        Jwt jwt = refresher.getJwt(key, null).getResult();
+        Assert.assertEquals("token-1", jwt.getJwt());
+        // the token is renewed in the background at most 500 ms after it is issued.
+        long deadline = System.currentTimeMillis() + 1000;
+        while(fetches.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, fetches.get());
+        Jwt renewed = refresher.getJwt(key, null).getResult();
+        Assert.assertEquals("token-2", renewed.getJwt());
+        Assert.assertTrue(renewed.getExpire() > jwt.getExpire());
+    }
+
+    @Test
+    public void testNotUsedTokenIsNotRenewed() throws Exception {
+        expiresIn.set(renew + 500);
+        refresher.getJwt(new Jwt.Key("service1"), null);
+        Thread.sleep(1000);
+        // the first scheduled renewal is done as the token was used, but the renewed token is not used.
+        Assert.assertEquals(2, fetches.get());
+        Thread.sleep(500);
+        Assert.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testFailure() {
+        failing = true;
+        Jwt.Key key = new Jwt.Key("service1");
+        Assert.assertTrue(refresher.getJwt(key, null).isFailure());
+        // the second call is within the expiredRefreshRetryDelay and the server is not called.
+        Assert.assertTrue(refresher.getJwt(key, null).isFailure());
+        Assert.assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testFailedEntryRemoved() throws Exception {
+        long delay = Jwt.getExpiredRefreshRetryDelay();
+        retryDelay = 300;
+        try {
+            failing = true;
+            refresher.getJwt(new Jwt.Key("service1"), null);
+            refresher.getJwt(new Jwt.Key("service2"), null);
+            Assert.assertEquals(2, refresher.size());
+            // service2 is requested again within the expiredRefreshRetryDelay and it is kept.
+            refresher.getJwt(new Jwt.Key("service2"), null);
+            Thread.sleep(450);
+            Assert.assertEquals(1, refresher.size());
+            failing = false;
+            Assert.assertEquals(2, fetches.get());
+            Assert.assertTrue(refresher.getJwt(new Jwt.Key("service2"), null).isSuccess());
+            Assert.assertEquals(3, fetches.get());
+            // the entry that is no longer requested is removed and the entry with a token is kept.
+            failing = true;
+            refresher.getJwt(new Jwt.Key("service3"), null);
+            Thread.sleep(450);
+            Assert.assertEquals(1, refresher.size());
+            Assert.assertNotNull(refresher.getToken(new Jwt.Key("service2")));
+            Assert.assertEquals(1, refresher.getTokens().size());
+        } finally {
+            retryDelay = 0;
+            Jwt.setExpiredRefreshRetryDelay(delay);
+        }
+    }
+
+    @Test
+    public void testCapacity() {
+        refresher.getJwt(new Jwt.Key("service1"), null);
+        refresher.getJwt(new Jwt.Key("service2"), null);
+        Jwt jwt = refresher.getJwt(new Jwt.Key("service3"), null).getResult();
+        Assert.assertEquals(2, refresher.size());
+        // the new token is kept and the token that expires first is removed.
+        Assert.assertSame(jwt, refresher.getJwt(new Jwt.Key("service3"), null).getResult());
+        refresher.getJwt(new Jwt.Key("service2"), null);
+        Assert.assertEquals(3, fetches.get());
+        refresher.getJwt(new Jwt.Key("service1"), null);
+        Assert.assertEquals(4, fetches.get());
+        Assert.assertEquals(2, refresher.size());
+    }
+
+    @Test
+    public void testRenewDelay() {
+        long ttl = renew * 3;
+        for(int i = 0; i < 100; i++) {
+            long delay = TokenRefresher.renewDelay(ttl);
+            Assert.assertTrue(delay >= ttl - renew - renew / 10 && delay <= ttl - renew);
+        }
+        Assert.assertEquals(renew / 4, TokenRefresher.renewDelay(renew / 2));
+    }
+}
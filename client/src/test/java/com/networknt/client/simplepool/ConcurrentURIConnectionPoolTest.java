@@ -0,0 +1,125 @@
+package com.networknt.client.simplepool;
+
+import com.networknt.client.simplepool.mockexample.MockKeepAliveConnection;
+import io.undertow.connector.ByteBufferPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xnio.OptionMap;
+import org.xnio.XnioWorker;
+import org.xnio.ssl.XnioSsl;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentURIConnectionPoolTest {
+    private static final URI URI = java.net.URI.create("https://mock-host:8443");
+
+    @Test
+    public void testHttp11Borrow() {
+        MockConnectionMaker maker = new MockConnectionMaker(false);
+        ConcurrentURIConnectionPool pool = new ConcurrentURIConnectionPool(URI, 60000, 2, maker);
+        SimpleConnectionHolder.ConnectionToken token1 = pool.borrow(1);
+        SimpleConnectionHolder.ConnectionToken token2 = pool.borrow(1);
+        Assert.assertNotSame(token1.connection(), token2.connection());
+        Assert.assertEquals(2, maker.created.get());
+        try {
+            pool.borrow(1);
+            Assert.fail("The pool is full");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        pool.restore(token1);
+        // restoring the same token twice must not free another borrow
+        pool.restore(token1);
+        SimpleConnectionHolder.ConnectionToken token3 = pool.borrow(1);
+        Assert.assertSame(token1.connection(), token3.connection());
+        Assert.assertEquals(2, maker.created.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testHttp2Multiplexing() {
+        MockConnectionMaker maker = new MockConnectionMaker(true);
+        ConcurrentURIConnectionPool pool = new ConcurrentURIConnectionPool(URI, 60000, 1, maker);
+        SimpleConnectionHolder.ConnectionToken token1 = pool.borrow(1);
+        for(int i = 0; i < 100; i++) {
+            Assert.assertSame(token1.connection(), pool.borrow(1).connection());
+        }
+        Assert.assertEquals(1, maker.created.get());
+        Assert.assertEquals(1, pool.getConnectionCount());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testAsyncBorrowWaitsForRestore() throws Exception {
+        MockConnectionMaker maker = new MockConnectionMaker(false);
+        ConcurrentURIConnectionPool pool = new ConcurrentURIConnectionPool(URI, 60000, 1, maker);
+        SimpleConnectionHolder.ConnectionToken token1 = pool.borrowAsync(1, 1000).get(1, TimeUnit.SECONDS);
+        CompletableFuture<SimpleConnectionHolder.ConnectionToken> waiting = pool.borrowAsync(1, 5000);
+        Assert.assertFalse(waiting.isDone());
+        pool.restore(token1);
+        SimpleConnectionHolder.ConnectionToken token2 = waiting.get(1, TimeUnit.SECONDS);
+        Assert.assertSame(token1.connection(), token2.connection());
+        Assert.assertEquals(1, maker.created.get());
+
+        CompletableFuture<SimpleConnectionHolder.ConnectionToken> timeout = pool.borrowAsync(1, 50);
+        try {
+            timeout.get(1, TimeUnit.SECONDS);
+            Assert.fail("The borrow should time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testExpiredConnectionIsClosedAfterRestore() throws Exception {
+        MockConnectionMaker maker = new MockConnectionMaker(true);
+        ConcurrentURIConnectionPool pool = new ConcurrentURIConnectionPool(URI, 50, 1, maker);
+        SimpleConnectionHolder.ConnectionToken token1 = pool.borrow(1);
+        Thread.sleep(100);
+        // the expired connection is retired, so a new connection is created in its slot
+        SimpleConnectionHolder.ConnectionToken token2 = pool.borrow(1);
+        Assert.assertNotSame(token1.connection(), token2.connection());
+        Assert.assertTrue(token1.connection().isOpen());
+        pool.restore(token1);
+        Assert.assertFalse(token1.connection().isOpen());
+        Assert.assertTrue(token2.connection().isOpen());
+        pool.shutdown();
+    }
+
+    private static class MockConnectionMaker implements SimpleConnectionMaker {
+        final boolean isHttp2;
+        final AtomicInteger created = new AtomicInteger();
+
+        MockConnectionMaker(boolean isHttp2) {
+            this.isHttp2 = isHttp2;
+        }
+
+        @Override
+        public SimpleConnection makeConnection(long createConnectionTimeout, boolean isHttp2, URI uri, Set<SimpleConnection> allCreatedConnections) {
+            SimpleConnection connection = new MockKeepAliveConnection(isHttp2);
+            allCreatedConnections.add(connection);
+            created.incrementAndGet();
+            return connection;
+        }
+
+        @Override
+        public SimpleConnection makeConnection(long createConnectionTimeout, InetSocketAddress bindAddress, URI uri, XnioWorker worker, XnioSsl ssl, ByteBufferPool bufferPool, OptionMap options, Set<SimpleConnection> allCreatedConnections) {
+            return makeConnection(createConnectionTimeout, isHttp2, uri, allCreatedConnections);
+        }
+
+        @Override
+        public SimpleConnection reuseConnection(long createConnectionTimeout, SimpleConnection connection) throws RuntimeException {
+            if(!connection.isOpen())
+                throw new RuntimeException("Reused-connection has been unexpectedly closed");
+            return connection;
+        }
+    }
+}
@@ -58,5 +58,24 @@ public interface Cluster {
      */
     List<URI> services(String protocol, String serviceId, String tag);
 
+    /**
+     * report a request sent to the url returned by serviceToUrl so that the load balance
+     * can track the load of each service instance. It does nothing by default.
+     *
+     * @param url the url returned by serviceToUrl
+     */
+    default void onRequestStart(String url) {
+    }
+
+    /**
+     * report the completion of a request reported by onRequestStart.
+     *
+     * @param url the url returned by serviceToUrl
+     * @param latency the response time in milliseconds
+     * @param success false if the request failed or the server returned an error
+     */
+    default void onRequestComplete(String url, long latency, boolean success) {
+    }
+
 
 }
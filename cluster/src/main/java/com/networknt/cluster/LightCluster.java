@@ -19,7 +19,6 @@ package com.networknt.cluster;
 import com.networknt.balance.LoadBalance;
 import com.networknt.registry.*;
 import com.networknt.service.SingletonServiceFactory;
-import com.networknt.utility.ConcurrentHashSet;
 import com.networknt.utility.Constants;
 import com.networknt.utility.StringUtils;
 import org.slf4j.Logger;
@@ -27,8 +26,14 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This is the only concrete implementation of cluster interface. It basically integrates
@@ -36,12 +41,26 @@ import java.util.stream.Collectors;
  * to convert a protocol, service id and request key to a url that can be addressed and
  * invoked.
  *
+ * The discovered urls are cached per protocol, serviceId and tag in an immutable snapshot
+ * along with the url strings returned by serviceToUrl. The cache entry subscribes to the
+ * registry once, and the snapshot is replaced when the registry notifies a change, so
+ * resolving a service is a map lookup and a load balance pick. For the registries that
+ * don't notify the changes, the snapshot is also refreshed from the registry cache every
+ * REFRESH_INTERVAL, and an empty snapshot is refreshed on every call until the service is
+ * found.
+ *
  * Created by stevehu on 2017-01-27.
  */
 public class LightCluster implements Cluster {
     private static Logger logger = LoggerFactory.getLogger(LightCluster.class);
     private static Registry registry = SingletonServiceFactory.getBean(Registry.class);
     private static LoadBalance loadBalance = SingletonServiceFactory.getBean(LoadBalance.class);
+    static final long REFRESH_INTERVAL = 10000;
+    // tag is optional, and ConcurrentHashMap doesn't accept null key.
+    private static final String NO_TAG = "";
+
+    // protocol -> serviceId -> tag -> entry. The nested maps avoid building a composite key on each call.
+    private final Map<String, Map<String, Map<String, ServiceEntry>>> entries = new ConcurrentHashMap<>();
 
     public LightCluster() {
         if(logger.isInfoEnabled()) logger.info("A LightCluster instance is started");
@@ -61,13 +80,13 @@ public class LightCluster implements Cluster {
             logger.debug("The serviceId cannot be blank");
             return null;
         }
-        URL url = loadBalance.select(discovery(protocol, serviceId, tag), serviceId, tag, requestKey);
+        Snapshot snapshot = getEntry(protocol, serviceId, tag).getSnapshot();
+        URL url = loadBalance.select(snapshot.urls, serviceId, tag, requestKey);
         if (url != null) {
-            logger.debug("Final url after load balance = {}.", url);
-            // construct a url in string
-            return protocol + "://" + url.getHost() + ":" + url.getPort();
+            if(logger.isDebugEnabled()) logger.debug("Final url after load balance = {}.", url);
+            return snapshot.toEndpoint(url);
         } else {
-            logger.debug("The service: {} cannot be found from service discovery.", serviceId);
+            if(logger.isDebugEnabled()) logger.debug("The service: {} cannot be found from service discovery.", serviceId);
             return null;
         }
     }
@@ -85,29 +104,45 @@ public class LightCluster implements Cluster {
             logger.debug("The serviceId cannot be blank");
             return new ArrayList<>();
         }
+        return new ArrayList<>(getEntry(protocol, serviceId, tag).getSnapshot().uris);
+    }
 
-        // transform to a list of URIs
-        return discovery(protocol, serviceId, tag).stream()
-                .map(this::toUri)
-                .collect(Collectors.toList());
+    @Override
+    public void onRequestStart(String url) {
+        loadBalance.onRequestStart(url);
     }
 
-    private List<URL> discovery(String protocol, String serviceId, String tag) {
-        if(logger.isDebugEnabled()) logger.debug("protocol = " + protocol + " serviceId = " + serviceId + " tag = " + tag);
-        URL subscribeUrl = URLImpl.valueOf(protocol + "://localhost/" + serviceId);
-        if(tag != null) {
-            subscribeUrl.addParameter(Constants.TAG_ENVIRONMENT, tag);
+    @Override
+    public void onRequestComplete(String url, long latency, boolean success) {
+        loadBalance.onRequestComplete(url, latency, success);
+    }
+
+    ServiceEntry getEntry(String protocol, String serviceId, String tag) {
+        Map<String, Map<String, ServiceEntry>> services = entries.get(protocol);
+        if(services == null) {
+            services = entries.computeIfAbsent(protocol, k -> new ConcurrentHashMap<>());
+        }
+        Map<String, ServiceEntry> tags = services.get(serviceId);
+        if(tags == null) {
+            tags = services.computeIfAbsent(serviceId, k -> new ConcurrentHashMap<>());
+        }
+        String tagKey = tag == null ? NO_TAG : tag;
+        ServiceEntry entry = tags.get(tagKey);
+        if(entry == null) {
+            entry = tags.computeIfAbsent(tagKey, k -> new ServiceEntry(protocol, serviceId, tag));
+            entry.subscribe();
         }
-        if(logger.isDebugEnabled()) logger.debug("subscribeUrl = " + subscribeUrl);
-        // subscribe is async and the result won't come back immediately.
-        registry.subscribe(subscribeUrl, null);
+        return entry;
+    }
+
+    private static List<URL> discovery(URL subscribeUrl) {
         // do a lookup for the quick response from either cache or registry service.
         List<URL> urls = registry.discover(subscribeUrl);
         if(logger.isDebugEnabled()) logger.debug("discovered urls = " + urls);
         return urls;
     }
 
-    private URI toUri(URL url) {
+    private static URI toUri(URL url) {
         URI uri = null;
         try {
             uri = new URI(url.getProtocol(), null, url.getHost(), url.getPort(), null, null, null);
@@ -116,4 +151,90 @@ public class LightCluster implements Cluster {
         }
         return uri;
     }
+
+    /**
+     * The cached resolution of a protocol, serviceId and tag. It is the listener of the subscription
+     * so that the snapshot is replaced when the registry notifies a change of the service.
+     */
+    static class ServiceEntry implements NotifyListener {
+        private final String protocol;
+        private final URL subscribeUrl;
+        private final AtomicLong refreshedAt = new AtomicLong();
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+        private volatile Snapshot snapshot;
+
+        ServiceEntry(String protocol, String serviceId, String tag) {
+            this.protocol = protocol;
+            if(logger.isDebugEnabled()) logger.debug("protocol = " + protocol + " serviceId = " + serviceId + " tag = " + tag);
+            subscribeUrl = URLImpl.valueOf(protocol + "://localhost/" + serviceId);
+            if(tag != null) {
+                subscribeUrl.addParameter(Constants.TAG_ENVIRONMENT, tag);
+            }
+            if(logger.isDebugEnabled()) logger.debug("subscribeUrl = " + subscribeUrl);
+        }
+
+        void subscribe() {
+            if(subscribed.compareAndSet(false, true)) {
+                // subscribe is async and the result won't come back immediately.
+                registry.subscribe(subscribeUrl, this);
+            }
+        }
+
+        Snapshot getSnapshot() {
+            Snapshot s = snapshot;
+            long now = System.currentTimeMillis();
+            if(s == null || s.urls.isEmpty()) {
+                s = refresh(now);
+            } else {
+                long last = refreshedAt.get();
+                // only one thread refreshes an expired snapshot and the others use the current one.
+                if(now - last > REFRESH_INTERVAL && refreshedAt.compareAndSet(last, now)) {
+                    s = refresh(now);
+                }
+            }
+            return s;
+        }
+
+        @Override
+        public void notify(URL registryUrl, List<URL> urls) {
+            if(logger.isDebugEnabled()) logger.debug("Registry {} notified the change of {}", registryUrl, subscribeUrl);
+            // discover again so that the urls are filtered the same way as the lookup.
+            refresh(System.currentTimeMillis());
+        }
+
+        private Snapshot refresh(long now) {
+            Snapshot s = new Snapshot(protocol, discovery(subscribeUrl));
+            snapshot = s;
+            refreshedAt.set(now);
+            return s;
+        }
+    }
+
+    /**
+     * An immutable list of the discovered urls with the url strings and URIs computed once.
+     */
+    static class Snapshot {
+        final List<URL> urls;
+        final List<URI> uris;
+        private final String protocol;
+        private final Map<URL, String> endpoints = new IdentityHashMap<>();
+
+        Snapshot(String protocol, List<URL> discovered) {
+            this.protocol = protocol;
+            List<URL> list = discovered == null ? Collections.emptyList() : new ArrayList<>(discovered);
+            this.urls = Collections.unmodifiableList(list);
+            List<URI> uriList = new ArrayList<>(list.size());
+            for(URL url : list) {
+                // construct a url in string
+                endpoints.put(url, protocol + "://" + url.getHost() + ":" + url.getPort());
+                uriList.add(toUri(url));
+            }
+            this.uris = Collections.unmodifiableList(uriList);
+        }
+
+        String toEndpoint(URL url) {
+            String endpoint = endpoints.get(url);
+            return endpoint != null ? endpoint : protocol + "://" + url.getHost() + ":" + url.getPort();
+        }
+    }
 }
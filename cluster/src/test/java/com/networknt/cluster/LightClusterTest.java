@@ -62,4 +62,28 @@ public class LightClusterTest {
         List<URI> l = cluster.services("http", "com.networknt.apib-1.0.0", null);
         Assert.assertEquals(2, l.size());
     }
+
+    @Test
+    public void testServiceEntryIsCached() {
+        LightCluster lightCluster = (LightCluster)cluster;
+        LightCluster.ServiceEntry entry = lightCluster.getEntry("http", "com.networknt.apib-1.0.0", null);
+        Assert.assertSame(entry, lightCluster.getEntry("http", "com.networknt.apib-1.0.0", null));
+        LightCluster.Snapshot snapshot = entry.getSnapshot();
+        Assert.assertEquals(2, snapshot.urls.size());
+        // the snapshot and the url strings are reused until it is refreshed
+        Assert.assertSame(snapshot, entry.getSnapshot());
+        Assert.assertSame(snapshot.toEndpoint(snapshot.urls.get(0)), snapshot.toEndpoint(snapshot.urls.get(0)));
+        Assert.assertNotSame(entry, lightCluster.getEntry("https", "com.networknt.apib-1.0.0", null));
+        Assert.assertNotSame(entry, lightCluster.getEntry("http", "com.networknt.apib-1.0.0", "0000"));
+        // a notification from the registry replaces the snapshot
+        entry.notify(null, snapshot.urls);
+        Assert.assertNotSame(snapshot, entry.getSnapshot());
+        Assert.assertEquals(2, entry.getSnapshot().urls.size());
+    }
+
+    @Test
+    public void testUnknownService() {
+        Assert.assertNull(cluster.serviceToUrl("http", "com.networknt.unknown-1.0.0", null, null));
+        Assert.assertEquals(0, cluster.services("http", "com.networknt.unknown-1.0.0", null).size());
+    }
 }
@@ -35,6 +35,8 @@ public class ConsulConfig {
     long reconnectInterval = 2;             // Time to wait in seconds between reconnect attempts when Consul connection fails
     long reconnectJitter = 2;               // Random seconds in [0..reconnectJitter) added to reconnectInterval
     long lookupInterval = 15;               // Time in seconds between blocking queries with Consul
+    int watchThreads = 2;                   // Number of threads shared by the blocking queries of all the discovered services
+    long notifyWindow = 100;                // Time in milliseconds to coalesce the changes of a service before notifying the listeners
     long maxAttemptsBeforeShutdown = -1;    // Max number of failed Consul reconnection attempts before self-termination
                                             // -1 means an infinite # of attempts
     boolean shutdownIfThreadFrozen = false; // Shuts down host application if any Consul lookup thread stops reporting a
@@ -129,6 +131,14 @@ public class ConsulConfig {
 
     public long getLookupInterval() { return lookupInterval; }
 
+    public int getWatchThreads() { return watchThreads; }
+
+    public void setWatchThreads(int watchThreads) { this.watchThreads = watchThreads; }
+
+    public long getNotifyWindow() { return notifyWindow; }
+
+    public void setNotifyWindow(long notifyWindow) { this.notifyWindow = notifyWindow; }
+
     public long getMaxAttemptsBeforeShutdown() { return maxAttemptsBeforeShutdown; }
 
     public boolean isShutdownIfThreadFrozen() { return shutdownIfThreadFrozen; }
@@ -20,6 +20,7 @@ import com.networknt.common.SecretConstants;
 import com.networknt.config.Config;
 import com.networknt.consul.client.ConsulClient;
 import com.networknt.registry.NotifyListener;
+import com.networknt.registry.ServiceChange;
 import com.networknt.registry.URL;
 import com.networknt.registry.URLParamType;
 import com.networknt.registry.support.AbstractRegistry;
@@ -33,28 +34,43 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ConsulRegistry extends AbstractRegistry {
     private static final Logger logger = LoggerFactory.getLogger(ConsulRegistry.class);
     private static final String CONFIG_PROPERTY_MISSING = "ERR10057";
+    // the reconnect interval is doubled for each failure up to 32 times.
+    private static final int MAX_BACKOFF_SHIFT = 5;
+    // a service is notified by one thread at a time, so a few threads are enough for all the services.
+    private static final int NOTIFY_THREADS = 2;
 
     private ConsulClient client;
     private ConsulHeartbeatManager heartbeatManager;
     private long lookupInterval;
     private long reconnectInterval;
     private long reconnectJitter;
+    private long notifyWindow;
 
     // service local cache. key: serviceName, value: <service url list>
     private ConcurrentHashMap<String, List<URL>> serviceCache = new ConcurrentHashMap<String, List<URL>>();
+    // the services loaded from the snapshot that are not looked up from Consul yet.
+    private Set<String> preloadedServices = ConcurrentHashMap.newKeySet();
     // keep all subscribe urls, so that it won't double subscribe.
     private static Set<URL> subscribedSet = new ConcurrentHashSet<>();
-    // record lookup service thread, ensure each serviceName start only one thread, <serviceName, lastConsulIndexId>
+    // record lookup service index, ensure each serviceName start only one watch, <serviceName, lastConsulIndexId>
     private ConcurrentHashMap<String, Long> lookupServices = new ConcurrentHashMap<String, Long>();
+    // the watches of the subscribed services. All the blocking queries are sent asynchronously on the shared watchExecutor.
+    private ConcurrentHashMap<String, ServiceWatch> watches = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor watchExecutor;
 
     // TODO: 2016/6/17 clientUrl support multiple listener
     // record subscribers service callback listeners, listener was called when corresponding service changes
     private ConcurrentHashMap<String, ConcurrentHashMap<URL, NotifyListener>> notifyListeners = new ConcurrentHashMap<>();
-    private ThreadPoolExecutor notifyExecutor;
+    // the notifications of each service are coalesced and delivered in order by its notifier.
+    private ConcurrentHashMap<String, ServiceNotifier> notifiers = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor notifyExecutor;
 
     static String MASK_KEY_CONSUL_TOKEN = "consulToken";
 
@@ -69,9 +85,24 @@ public class ConsulRegistry extends AbstractRegistry {
         lookupInterval = getConsulConfig().getLookupInterval() * 1000;
         reconnectInterval = getConsulConfig().getReconnectInterval() * 1000;
         reconnectJitter = getConsulConfig().getReconnectJitter() * 1000;
-
-        ArrayBlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<Runnable>(20000);
-        notifyExecutor = new ThreadPoolExecutor(10, 30, 30 * 1000, TimeUnit.MILLISECONDS, workQueue);
+        notifyWindow = Math.max(0, getConsulConfig().getNotifyWindow());
+        // route with the last known urls until the watches catch up with Consul.
+        Map<String, List<URL>> snapshot = loadSnapshot();
+        serviceCache.putAll(snapshot);
+        preloadedServices.addAll(snapshot.keySet());
+
+        AtomicInteger notifyThreadCount = new AtomicInteger();
+        notifyExecutor = new ScheduledThreadPoolExecutor(NOTIFY_THREADS, r -> {
+            Thread thread = new Thread(r, "consul-notify-" + notifyThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger watchThreadCount = new AtomicInteger();
+        watchExecutor = new ScheduledThreadPoolExecutor(Math.max(1, getConsulConfig().getWatchThreads()), r -> {
+            Thread thread = new Thread(r, "consul-watch-" + watchThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         logger.info("ConsulRegistry init finish.");
         ModuleRegistry.registerModule(ConsulRegistry.class.getName(), Config.getInstance().getJsonMapConfigNoCache(ConsulConfig.CONFIG_NAME), List.of(MASK_KEY_CONSUL_TOKEN));
     }
@@ -80,6 +111,43 @@ public class ConsulRegistry extends AbstractRegistry {
         return notifyListeners;
     }
 
+    /**
+     * The metrics of the service discovery for monitoring. The watchLag of a service is the milliseconds since the
+     * last response from Consul, which is normally less than lookupInterval + wait + timeoutBuffer. The snapshotAge is
+     * the milliseconds since the loaded snapshot was taken while any service is still routed with the urls from it,
+     * or -1 if all the services are looked up from Consul or the snapshot is not enabled.
+     *
+     * @return the number of watch threads, the snapshot age and the state of each watched service
+     */
+    public Map<String, Object> getWatchMetrics() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> services = new LinkedHashMap<>();
+        for (Map.Entry<String, ServiceWatch> entry : watches.entrySet()) {
+            ServiceWatch watch = entry.getValue();
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("index", lookupServices.getOrDefault(entry.getKey(), 0L));
+            metrics.put("watchLag", now - watch.lastResponse);
+            metrics.put("failures", watch.failures);
+            services.put(entry.getKey(), metrics);
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("threads", watchExecutor.getPoolSize());
+        metrics.put("activeThreads", watchExecutor.getActiveCount());
+        metrics.put("watches", watches.size());
+        metrics.put("snapshotAge", getSnapshotAge());
+        metrics.put("services", services);
+        return metrics;
+    }
+
+    /**
+     * Change the intervals of the watches in milliseconds. It is for testing only.
+     */
+    void setWatchIntervals(long lookupInterval, long reconnectInterval, long reconnectJitter) {
+        this.lookupInterval = lookupInterval;
+        this.reconnectInterval = reconnectInterval;
+        this.reconnectJitter = reconnectJitter;
+    }
+
     @Override
     protected void doRegister(URL url) {
         ConsulService service = ConsulUtils.buildService(url);
@@ -124,7 +192,7 @@ public class ConsulRegistry extends AbstractRegistry {
         // you only need to subscribe once.
         if(!subscribedSet.contains(url)) {
             addNotifyListener(url, listener);
-            startListenerThreadIfNewService(url);
+            startWatchIfNewService(url);
             subscribedSet.add(url);
         }
     }
@@ -146,6 +214,10 @@ public class ConsulRegistry extends AbstractRegistry {
         String protocol = url.getProtocol();
         if(logger.isTraceEnabled()) logger.trace("protocol = " + protocol + " serviceName = " + serviceName + " tag = " + tag);
         List<URL> urls = serviceCache.get(serviceName);
+        if (urls != null && preloadedServices.contains(serviceName)) {
+            // the urls are from the snapshot, look up the service in the background.
+            startWatchIfNewService(url);
+        }
         if (urls == null || urls .isEmpty()) {
             synchronized (serviceName.intern()) {
                 urls = serviceCache.get(serviceName);
@@ -160,25 +232,25 @@ public class ConsulRegistry extends AbstractRegistry {
     }
 
     /**
-     * if new service registered, start a new lookup thread
-     * each serviceName start a lookup thread to discover service
+     * if new service registered, start a new watch
+     * each serviceName has only one watch to discover service
      *
      * @param url
      */
-    private void startListenerThreadIfNewService(URL url) {
+    private void startWatchIfNewService(URL url) {
         String serviceName = url.getPath();
 
-        // Do NOT start a listener thread if serviceName is blank
+        // Do NOT start a watch if serviceName is blank
         if(StringUtils.isBlank(serviceName))
             return;
 
         String protocol = url.getProtocol();
-        if (!lookupServices.containsKey(serviceName)) {
-            Long value = lookupServices.putIfAbsent(serviceName, 0L);
-            if (value == null) {
-                ServiceLookupThread lookupThread = new ServiceLookupThread(protocol, serviceName);
-                lookupThread.setDaemon(true);
-                lookupThread.start();
+        if (!watches.containsKey(serviceName)) {
+            lookupServices.putIfAbsent(serviceName, 0L);
+            ServiceWatch watch = new ServiceWatch(protocol, serviceName);
+            if (watches.putIfAbsent(serviceName, watch) == null) {
+                // a service from the snapshot is looked up immediately as it is not discovered yet.
+                watch.schedule(preloadedServices.contains(serviceName) ? 0 : lookupInterval);
             }
         }
     }
@@ -195,9 +267,6 @@ public class ConsulRegistry extends AbstractRegistry {
         }
     }
 
-    private ConcurrentHashMap<String, List<URL>> lookupServiceUpdate(String protocol, String serviceName) {
-        return lookupServiceUpdate(protocol, serviceName, true);
-    }
     /***
      *
      * @param   protocol
@@ -239,7 +308,15 @@ public class ConsulRegistry extends AbstractRegistry {
 
         // response should be null iff there was an error connecting to Consul
         ConsulResponse<List<ConsulService>> response = lookupConsulService(serviceName, lastConsulIndexId);
+        return toServiceUrls(protocol, serviceName, lastConsulIndexId, response);
+    }
 
+    /**
+     * convert the response of a lookup to the service urls and keep the Consul index of the service.
+     *
+     * @return the same result as lookupServiceUpdate
+     */
+    private ConcurrentHashMap<String, List<URL>> toServiceUrls(String protocol, String serviceName, Long lastConsulIndexId, ConsulResponse<List<ConsulService>> response) {
         if(logger.isTraceEnabled()) {
             try {
                 logger.trace("response = " + Config.getInstance().getMapper().writeValueAsString(response));
@@ -313,7 +390,7 @@ public class ConsulRegistry extends AbstractRegistry {
             logger.error("Local service cache may be out of date for {} - Consul connection failed", serviceName);
 
             // Indicate to updateServiceCache() to leave cache unchanged for now, and
-            // Indicate to ServiceLookupThread.run() that Consul connection failed
+            // Indicate to ServiceWatch that Consul connection failed
             return null;
         }
 
@@ -353,7 +430,7 @@ public class ConsulRegistry extends AbstractRegistry {
      * @param serviceUrls Leave cache as-is and do not notify if serviceUrls == null || serviceUrls.isEmpty()
      * @param needNotify
      */
-    private void updateServiceCache(String serviceName, ConcurrentHashMap<String, List<URL>> serviceUrls, boolean needNotify) {
+    void updateServiceCache(String serviceName, ConcurrentHashMap<String, List<URL>> serviceUrls, boolean needNotify) {
         if (serviceUrls != null && !serviceUrls.isEmpty()) {
             List<URL> cachedUrls = serviceCache.get(serviceName);
             List<URL> newUrls = serviceUrls.get(serviceName);
@@ -362,15 +439,19 @@ public class ConsulRegistry extends AbstractRegistry {
             } catch(Exception e) {
             }
 
+            if (preloadedServices.remove(serviceName) && preloadedServices.isEmpty()) {
+                snapshotRefreshed();
+            }
             boolean change = true;
             if (ConsulUtils.isSame(newUrls, cachedUrls)) {
                 change = false;
             } else {
                 serviceCache.put(serviceName, newUrls);
+                saveSnapshot(serviceCache);
             }
 
             if (change && needNotify) {
-                notifyExecutor.execute(new NotifyService(serviceName, newUrls));
+                notifiers.computeIfAbsent(serviceName, s -> new ServiceNotifier(s, cachedUrls)).submit(newUrls);
                 if(logger.isDebugEnabled()) logger.debug("light service notify-service: " + serviceName);
                 StringBuilder sb = new StringBuilder();
                 for (URL url : newUrls) {
@@ -381,86 +462,155 @@ public class ConsulRegistry extends AbstractRegistry {
         }
     }
 
-    private class ServiceLookupThread extends Thread {
-       private String protocol;
-       private String serviceName;
-
-        public ServiceLookupThread(String protocol, String serviceName) {
+    /**
+     * The watch of one service. Each cycle sends a blocking query without holding a thread while Consul is waiting
+     * for a change, handles the response on the shared watchExecutor and schedules the next cycle after lookupInterval.
+     * When the Consul connection fails, the cycle is retried with an exponential backoff based on reconnectInterval
+     * plus a random jitter, so that the watches don't reconnect at the same time.
+     */
+    private class ServiceWatch implements Runnable {
+        private final String protocol;
+        private final String serviceName;
+        private final ConsulRecoveryManager consulRecovery;
+        private volatile long lastResponse = System.currentTimeMillis();
+        private volatile int failures;
+
+        ServiceWatch(String protocol, String serviceName) {
             this.protocol = protocol;
             this.serviceName = serviceName;
+            this.consulRecovery = new ConsulRecoveryManager(serviceName);
+        }
+
+        void schedule(long delay) {
+            if(logger.isDebugEnabled()) logger.debug("Consul ServiceWatch - next lookup in {}ms for service {}", delay, serviceName);
+            watchExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
         }
 
         @Override
         public void run() {
-            ConsulRecoveryManager consulRecovery = new ConsulRecoveryManager(serviceName);
+            // check in with the recovery manager
+            consulRecovery.checkin();
+            Long lastConsulIndexId = lookupServices.getOrDefault(serviceName, 0L);
+            if(logger.isDebugEnabled()) logger.debug("serviceName = {} lastConsulIndexId = {}", serviceName, lastConsulIndexId);
+            CompletableFuture<ConsulResponse<List<ConsulService>>> future;
+            try {
+                future = client.lookupHealthServiceAsync(serviceName, null, lastConsulIndexId, getConsulToken());
+            } catch (Throwable e) {
+                logger.error("Consul lookup failed for service " + serviceName, e);
+                future = CompletableFuture.completedFuture(null);
+            }
+            future.whenCompleteAsync((response, throwable) -> complete(lastConsulIndexId, throwable == null ? response : null), watchExecutor);
+        }
 
-            if(logger.isDebugEnabled()) logger.debug("Start Consul ServiceLookupThread thread - Lookup interval: {}ms, service {}", lookupInterval, serviceName);
-            while (true) {
-                // check in with the recovery manager
+        private void complete(Long lastConsulIndexId, ConsulResponse<List<ConsulService>> response) {
+            long delay = lookupInterval;
+            try {
                 consulRecovery.checkin();
+                ConcurrentHashMap<String, List<URL>> serviceUrls = toServiceUrls(protocol, serviceName, lastConsulIndexId, response);
+
+                // toServiceUrls returns null iff Consul connection has failed - attempt to recover
+                if(serviceUrls == null) {
+                    // if max connection reattempts have been reached, shut down the host application
+                    if(!consulRecovery.newFailedAttempt())
+                        ConsulRecoveryManager.gracefulShutdown();
+                    delay = backoff(reconnectInterval, reconnectJitter, ++failures);
+                    return;
+                }
+                if(failures > 0) {
+                    failures = 0;
+                    consulRecovery.exitRecoveryMode();
+                }
+                lastResponse = System.currentTimeMillis();
 
-                try {
-                    if(logger.isDebugEnabled()) logger.debug("Consul ServiceLookupThread Thread - SLEEP: Start to sleep {}ms for service {}", lookupInterval, serviceName);
-                    sleep(lookupInterval);
-                    if(logger.isDebugEnabled()) logger.debug("Consul ServiceLookupThread Thread - WAKE UP: Woke up from sleep for service {}", serviceName);
-                    ConcurrentHashMap<String, List<URL>> serviceUrls = lookupServiceUpdate(protocol, serviceName);
-
-                    // lookupServiceUpdate returns null iff Consul connection has failed - attempt to recover
-                    if(serviceUrls == null)
-                    {
-                        while(serviceUrls == null)
-                        {
-                            // check in with the recovery manager
-                            consulRecovery.checkin();
-
-                            // if max connection reattempts have been reached, shut down the host application
-                            boolean moreAttemptsPermitted = consulRecovery.newFailedAttempt();
-                            if(!moreAttemptsPermitted)
-                                ConsulRecoveryManager.gracefulShutdown();
-
-                            long randomJitter = ThreadLocalRandom.current().nextLong(0, reconnectJitter);
-                            Thread.sleep(reconnectInterval + randomJitter);
-                            serviceUrls = lookupServiceUpdate(protocol, serviceName);
-                        }
-                        consulRecovery.exitRecoveryMode();
-                    }
-
-                    if(serviceUrls.size() == 0)
-                        if(logger.isDebugEnabled()) logger.debug("No service URL updates from Consul lookupServiceUpdate for service {}", serviceName);
-                    else
-                        if(logger.isDebugEnabled()) logger.debug("Got service URLs from Consul lookupServiceUpdate: {} service URLs found for service {} ({})",
-                                serviceUrls.getOrDefault(serviceName, Collections.emptyList()).size(), serviceName, protocol);
-
-                    updateServiceCache(serviceName, serviceUrls, true);
-
-                } catch (Throwable e) {
-                    logger.error("ServiceLookupThread fail!", e);
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ignored) {
-                    }
+                if(serviceUrls.size() == 0) {
+                    if(logger.isDebugEnabled()) logger.debug("No service URL updates from Consul lookupServiceUpdate for service {}", serviceName);
+                } else {
+                    if(logger.isDebugEnabled()) logger.debug("Got service URLs from Consul lookupServiceUpdate: {} service URLs found for service {} ({})",
+                            serviceUrls.getOrDefault(serviceName, Collections.emptyList()).size(), serviceName, protocol);
                 }
+                updateServiceCache(serviceName, serviceUrls, true);
+            } catch (Throwable e) {
+                logger.error("ServiceWatch fail!", e);
+                delay = 2000;
+            } finally {
+                schedule(delay);
             }
         }
+
     }
 
-    private class NotifyService implements Runnable {
-        private String service;
-        private List<URL> urls;
+    /**
+     * The delay of the next lookup after the Consul connection fails.
+     *
+     * @param reconnectInterval milliseconds to wait after the first failure
+     * @param reconnectJitter the random milliseconds in [0..reconnectJitter) added to the delay
+     * @param failures the number of consecutive failures
+     * @return the reconnectInterval doubled for each failure up to 32 times plus the jitter
+     */
+    static long backoff(long reconnectInterval, long reconnectJitter, int failures) {
+        long randomJitter = reconnectJitter > 0 ? ThreadLocalRandom.current().nextLong(0, reconnectJitter) : 0;
+        return (reconnectInterval << Math.min(failures - 1, MAX_BACKOFF_SHIFT)) + randomJitter;
+    }
 
-        public NotifyService(String service, List<URL> urls) {
+    /**
+     * The notifier of one service. The updates submitted within notifyWindow are coalesced and only the latest urls
+     * are delivered, as the change from the urls of the last notification. One notification of a service is running
+     * at a time, so the listeners receive the changes of a service in order.
+     */
+    private class ServiceNotifier implements Runnable {
+        private final String service;
+        private final AtomicReference<List<URL>> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // only accessed by the running notification.
+        private List<URL> delivered;
+
+        ServiceNotifier(String service, List<URL> delivered) {
             this.service = service;
-            this.urls = urls;
+            this.delivered = delivered;
+        }
+
+        void submit(List<URL> urls) {
+            pending.set(urls);
+            scheduleIfIdle();
+        }
+
+        private void scheduleIfIdle() {
+            if(scheduled.compareAndSet(false, true)) {
+                notifyExecutor.schedule(this, notifyWindow, TimeUnit.MILLISECONDS);
+            }
         }
 
         @Override
         public void run() {
+            try {
+                List<URL> urls = pending.getAndSet(null);
+                if(urls != null) dispatch(urls);
+            } catch (Throwable e) {
+                logger.error("Failed to notify service " + service, e);
+            } finally {
+                scheduled.set(false);
+                // the urls submitted during the notification are delivered in the next one.
+                if(pending.get() != null) scheduleIfIdle();
+            }
+        }
+
+        private void dispatch(List<URL> urls) {
+            ServiceChange change = ServiceChange.of(service, delivered, urls);
+            delivered = urls;
+            if(change.isEmpty()) {
+                if(logger.isDebugEnabled()) logger.debug("need not notify service:" + service);
+                return;
+            }
             ConcurrentHashMap<URL, NotifyListener> listeners = notifyListeners.get(service);
             if (listeners != null) {
+                if(logger.isDebugEnabled()) logger.debug("notify service {} with {}", service, change);
                 synchronized (listeners) {
                     for (Map.Entry<URL, NotifyListener> entry : listeners.entrySet()) {
-                        NotifyListener listener = entry.getValue();
-                        listener.notify(getUrl(), urls);
+                        try {
+                            entry.getValue().notifyChange(getUrl(), change);
+                        } catch (Throwable e) {
+                            logger.error("Listener of " + entry.getKey() + " failed to handle the change of service " + service, e);
+                        }
                     }
                 }
             } else {
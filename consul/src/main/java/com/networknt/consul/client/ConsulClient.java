@@ -17,6 +17,7 @@
 package com.networknt.consul.client;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.networknt.consul.ConsulResponse;
 import com.networknt.consul.ConsulService;
@@ -75,4 +76,18 @@ public interface ConsulClient {
 	 */
 	ConsulResponse<List<ConsulService>> lookupHealthService(String serviceName, String tag, long lastConsulIndex, String token);
 
+	/**
+	 * get latest service list without blocking the caller thread while the blocking query is waiting for a change.
+	 * The default implementation calls lookupHealthService in the caller thread.
+	 *
+	 * @param serviceName service name (service_id)
+	 * @param tag tag that is used for filtering (env_tag)
+	 * @param lastConsulIndex last consul index
+	 * @param token Consul token for security (Consul ACL)
+	 * @return	a future that is completed with the same result as lookupHealthService. It is never completed exceptionally.
+	 */
+	default CompletableFuture<ConsulResponse<List<ConsulService>>> lookupHealthServiceAsync(String serviceName, String tag, long lastConsulIndex, String token) {
+		return CompletableFuture.completedFuture(lookupHealthService(serviceName, tag, lastConsulIndex, token));
+	}
+
 }
@@ -19,6 +19,7 @@ package com.networknt.consul.client;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.networknt.client.ClientConfig;
 import com.networknt.client.Http2Client;
+import com.networknt.client.http.Http2ClientCompletableFutureNoRequest;
 import com.networknt.config.Config;
 import com.networknt.consul.*;
 import com.networknt.httpstring.HttpStringConstants;
@@ -41,6 +42,8 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -196,11 +199,7 @@ public class ConsulClientImpl implements ConsulClient {
 		}
 
 		ClientConnection connection = null;
-		String path = "/v1/health/service/" + serviceName + "?passing&wait="+wait+"&index=" + lastConsulIndex;
-		if(tag != null) {
-			path = path + "&tag=" + tag;
-		}
-		logger.trace("Consul health service path = {}", path);
+		String path = getHealthServicePath(serviceName, tag, lastConsulIndex);
 
 		SimpleConnectionHolder.ConnectionToken connectionToken = null;
 		try {
@@ -217,37 +216,7 @@ public class ConsulClientImpl implements ConsulClient {
 
 			if(logger.isDebugEnabled()) logger.debug("Consul connection is OK for service {}", serviceName);
 
-			int statusCode = reference.get().getResponseCode();
-			if(logger.isDebugEnabled()) logger.debug("Got Consul Query status code: {}", statusCode);
-
-			if(statusCode >= UNUSUAL_STATUS_CODE){
-				throw new Exception("Consul Query returned an error: " + statusCode);
-			} else {
-				String body = reference.get().getAttachment(Http2Client.RESPONSE_BODY);
-				logger.debug("Got Consul Query response body: {}", body);
-
-				// Convert the service instances of serviceName to Java objects
-				List<Map<String, Object>> services = Config.getInstance().getMapper().readValue(body, new TypeReference<List<Map<String, Object>>>(){});
-				// consulServices guaranteed to be created if Consul connection successful
-				List<ConsulService> consulServices = new ArrayList<>(services.size());
-
-				for (Map<String, Object> service : services) {
-					ConsulService newService = convertToConsulService((Map<String,Object>)service.get("Service"));
-					consulServices.add(newService);
-				}
-
-				// - Previously, consulServices.isEmpty() == true caused this method to return null ** even on a
-				//   successful Consul request ** (when an empty JSON list '[]' of IPs are returned from Consul)
-				// - We now guarantee that newResponse is non-null unless there is a Consul connection failure
-
-				//if (!consulServices.isEmpty()) {
-				newResponse = new ConsulResponse<>();	// newResponse guaranteed to be non-null if Consul connection successful
-				newResponse.setValue(consulServices);	// newResponse.getValue() guaranteed to be non-null if Consul connection successful
-				newResponse.setConsulIndex(Long.parseLong(reference.get().getResponseHeaders().getFirst("X-Consul-Index")));
-				newResponse.setConsulLastContact(Long.parseLong(reference.get().getResponseHeaders().getFirst("X-Consul-Lastcontact")));
-				newResponse.setConsulKnownLeader(Boolean.parseBoolean(reference.get().getResponseHeaders().getFirst("X-Consul-Knownleader")));
-				//}
-			}
+			newResponse = toConsulResponse(reference.get());
 		} catch (ConsulRequestException e) {
 			// This should only return null if Consul connection fails
 			logger.error("Exception:", e);
@@ -279,6 +248,94 @@ public class ConsulClientImpl implements ConsulClient {
 		return newResponse;
 	}
 
+	/**
+	 * The non-blocking version of lookupHealthService. The connection is borrowed asynchronously and the blocking query
+	 * doesn't hold any thread while Consul is waiting for a change, so that many services can be watched with a few threads.
+	 */
+	@Override
+	public CompletableFuture<ConsulResponse<List<ConsulService>>> lookupHealthServiceAsync(String serviceName, String tag, long lastConsulIndex, String token) {
+		if(StringUtils.isBlank(serviceName)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		String path = getHealthServicePath(serviceName, tag, lastConsulIndex);
+		long timeout = ConsulUtils.getWaitInSecond(wait) + ConsulUtils.getTimeoutBufferInSecond(timeoutBuffer);
+		CompletableFuture<SimpleConnectionHolder.ConnectionToken> futureToken;
+		try {
+			// the default ssl is only created for an https consulUrl.
+			futureToken = client.borrowAsync(uri, Http2Client.WORKER, Http2Client.SSL, Http2Client.BUFFER_POOL, optionMap);
+		} catch (Exception e) {
+			futureToken = CompletableFuture.failedFuture(e);
+		}
+		return futureToken.thenCompose(connectionToken -> {
+			ClientConnection connection = (ClientConnection) connectionToken.getRawConnection();
+			ClientRequest request = new ClientRequest().setMethod(Methods.GET).setPath(path);
+			request.getRequestHeaders().put(Headers.HOST, "localhost");
+			if (token != null) request.getRequestHeaders().put(HttpStringConstants.CONSUL_TOKEN, token);
+			Http2ClientCompletableFutureNoRequest futureResponse = new Http2ClientCompletableFutureNoRequest();
+			try {
+				connection.sendRequest(request, futureResponse);
+			} catch (Exception e) {
+				futureResponse.completeExceptionally(e);
+			}
+			return futureResponse.orTimeout(timeout, TimeUnit.SECONDS)
+					.thenApply(response -> {
+						try {
+							return toConsulResponse(response);
+						} catch (Exception e) {
+							throw new CompletionException(e);
+						}
+					})
+					.whenComplete((response, throwable) -> {
+						// the state of the connection is unknown after a failure or a timeout, so close it to force reconnect.
+						if(throwable != null && connection.isOpen()) IoUtils.safeClose(connection);
+						client.restore(connectionToken);
+					});
+		}).exceptionally(e -> {
+			logger.error("Consul connection or request failed for service " + serviceName, e);
+			return null;
+		});
+	}
+
+	private String getHealthServicePath(String serviceName, String tag, long lastConsulIndex) {
+		String path = "/v1/health/service/" + serviceName + "?passing&wait="+wait+"&index=" + lastConsulIndex;
+		if(tag != null) {
+			path = path + "&tag=" + tag;
+		}
+		logger.trace("Consul health service path = {}", path);
+		return path;
+	}
+
+	private ConsulResponse<List<ConsulService>> toConsulResponse(ClientResponse response) throws Exception {
+		int statusCode = response.getResponseCode();
+		if(logger.isDebugEnabled()) logger.debug("Got Consul Query status code: {}", statusCode);
+
+		if(statusCode >= UNUSUAL_STATUS_CODE){
+			throw new Exception("Consul Query returned an error: " + statusCode);
+		}
+		String body = response.getAttachment(Http2Client.RESPONSE_BODY);
+		logger.debug("Got Consul Query response body: {}", body);
+
+		// Convert the service instances of serviceName to Java objects
+		List<Map<String, Object>> services = Config.getInstance().getMapper().readValue(body, new TypeReference<List<Map<String, Object>>>(){});
+		// consulServices guaranteed to be created if Consul connection successful
+		List<ConsulService> consulServices = new ArrayList<>(services.size());
+
+		for (Map<String, Object> service : services) {
+			ConsulService newService = convertToConsulService((Map<String,Object>)service.get("Service"));
+			consulServices.add(newService);
+		}
+
+		// - Previously, consulServices.isEmpty() == true caused this method to return null ** even on a
+		//   successful Consul request ** (when an empty JSON list '[]' of IPs are returned from Consul)
+		// - We now guarantee that newResponse is non-null unless there is a Consul connection failure
+		ConsulResponse<List<ConsulService>> newResponse = new ConsulResponse<>();	// newResponse guaranteed to be non-null if Consul connection successful
+		newResponse.setValue(consulServices);	// newResponse.getValue() guaranteed to be non-null if Consul connection successful
+		newResponse.setConsulIndex(Long.parseLong(response.getResponseHeaders().getFirst("X-Consul-Index")));
+		newResponse.setConsulLastContact(Long.parseLong(response.getResponseHeaders().getFirst("X-Consul-Lastcontact")));
+		newResponse.setConsulKnownLeader(Boolean.parseBoolean(response.getResponseHeaders().getFirst("X-Consul-Knownleader")));
+		return newResponse;
+	}
+
 	private static class ConsulRequestException extends RuntimeException
 	{
 		public ConsulRequestException(String message) {
@@ -18,9 +18,18 @@ package com.networknt.consul;
 
 import com.networknt.config.Config;
 import com.networknt.consul.client.ConsulClientImpl;
+import io.undertow.Undertow;
+import io.undertow.util.HttpString;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class ConsulClientImplTest {
 
@@ -31,4 +40,56 @@ public class ConsulClientImplTest {
         assertEquals("600s", config.getWait());
 
     }
+
+    @Test
+    public void testLookupAsyncTimeout() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Undertow server = Undertow.builder()
+                .addHttpListener(7071, "localhost")
+                .setHandler(exchange -> {
+                    if (requests.incrementAndGet() == 1) {
+                        // Consul doesn't respond, so the blocking query times out.
+                        exchange.dispatch(() -> {});
+                        return;
+                    }
+                    exchange.getResponseHeaders().put(new HttpString("X-Consul-Index"), "10");
+                    exchange.getResponseHeaders().put(new HttpString("X-Consul-Lastcontact"), "0");
+                    exchange.getResponseHeaders().put(new HttpString("X-Consul-Knownleader"), "true");
+                    exchange.getResponseSender().send("[]");
+                })
+                .build();
+        server.start();
+        String consulUrl = config.getConsulUrl();
+        String wait = config.getWait();
+        String timeoutBuffer = config.getTimeoutBuffer();
+        boolean enableHttp2 = config.isEnableHttp2();
+        ConsulClientImpl client;
+        try {
+            config.setConsulUrl("http://localhost:7071");
+            // a wait shorter than 3 chars is ignored by the client.
+            config.setWait("01s");
+            config.setTimeoutBuffer("1s");
+            config.setEnableHttp2(false);
+            client = new ConsulClientImpl();
+        } finally {
+            config.setConsulUrl(consulUrl);
+            config.setWait(wait);
+            config.setTimeoutBuffer(timeoutBuffer);
+            config.setEnableHttp2(enableHttp2);
+        }
+        try {
+            long start = System.currentTimeMillis();
+            ConsulResponse<List<ConsulService>> response = client.lookupHealthServiceAsync("com.networknt.timeout-1.0.0", null, 0, null).get(10, TimeUnit.SECONDS);
+            // a timeout completes the lookup with null after wait + timeoutBuffer.
+            assertNull(response);
+            assertTrue(System.currentTimeMillis() - start >= 2000);
+            // the timed out connection is closed and restored, so the next lookup gets a new connection.
+            response = client.lookupHealthServiceAsync("com.networknt.timeout-1.0.0", null, 0, null).get(10, TimeUnit.SECONDS);
+            assertNotNull(response);
+            assertEquals(10L, (long)response.getConsulIndex());
+            assertTrue(response.getValue().isEmpty());
+        } finally {
+            server.stop();
+        }
+    }
 }
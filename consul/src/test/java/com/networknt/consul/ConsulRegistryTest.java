@@ -19,14 +19,30 @@ package com.networknt.consul;
 import com.networknt.consul.client.ConsulClient;
 import com.networknt.registry.NotifyListener;
 import com.networknt.registry.Registry;
+import com.networknt.registry.ServiceChange;
 import com.networknt.registry.URL;
+import com.networknt.registry.URLImpl;
+import com.networknt.registry.URLParamType;
+import com.networknt.registry.support.ServiceSnapshot;
 import com.networknt.service.SingletonServiceFactory;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConsulRegistryTest {
     private MockConsulClient client;
@@ -147,6 +163,229 @@ public class ConsulRegistryTest {
         registry.doUnregister(serviceUrl);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void watchMetrics() throws Exception {
+        URL watchUrl = MockUtils.getMockUrl("127.0.0.3", 0);
+        registry.doSubscribe(watchUrl, createNewNotifyListener(serviceUrl));
+        Map<String, Object> metrics = registry.getWatchMetrics();
+        Map<String, Object> services = (Map<String, Object>)metrics.get("services");
+        Assert.assertTrue(services.containsKey(watchUrl.getPath()));
+        // all the services share the watch threads
+        Assert.assertTrue((Integer)metrics.get("threads") <= 2);
+        Assert.assertEquals(services.size(), metrics.get("watches"));
+        registry.doUnsubscribe(watchUrl, null);
+    }
+
+    @Test
+    public void backoff() {
+        Assert.assertEquals(2000, ConsulRegistry.backoff(2000, 0, 1));
+        Assert.assertEquals(4000, ConsulRegistry.backoff(2000, 0, 2));
+        Assert.assertEquals(8000, ConsulRegistry.backoff(2000, 0, 3));
+        // the delay stops growing after it is doubled 5 times.
+        Assert.assertEquals(64000, ConsulRegistry.backoff(2000, 0, 6));
+        Assert.assertEquals(64000, ConsulRegistry.backoff(2000, 0, 100));
+        for (int i = 0; i < 100; i++) {
+            long delay = ConsulRegistry.backoff(2000, 1000, 2);
+            Assert.assertTrue(delay >= 4000 && delay < 5000);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void watchBacksOffOnFailures() throws Exception {
+        String serviceName = "com.networknt.backoff-1.0.0";
+        FailingConsulClient failingClient = new FailingConsulClient(3);
+        URL registryUrl = new URLImpl("light", "localhost", 8500, "", new HashMap<>());
+        ConsulRegistry watchRegistry = new ConsulRegistry(registryUrl, failingClient);
+        watchRegistry.setWatchIntervals(50, 100, 0);
+        watchRegistry.doSubscribe(new URLImpl("http", "127.0.0.5", 0, serviceName, new HashMap<>()), createNewNotifyListener(serviceUrl));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (failingClient.calls.size() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        List<Long> calls = new ArrayList<>(failingClient.calls);
+        Assert.assertTrue("calls " + calls.size(), calls.size() >= 4);
+        // the delay is doubled after each failure: 100, 200 and 400 ms.
+        long first = calls.get(1) - calls.get(0);
+        long second = calls.get(2) - calls.get(1);
+        long third = calls.get(3) - calls.get(2);
+        Assert.assertTrue("first " + first, first >= 100 && first < 200);
+        Assert.assertTrue("second " + second, second >= 200 && second < 400);
+        Assert.assertTrue("third " + third, third >= 400 && third < 800);
+        // the blocking queries are sent with the async lookup only.
+        Assert.assertEquals(0, failingClient.syncCalls.get());
+
+        // the failures are reset after a successful lookup.
+        Thread.sleep(100);
+        Map<String, Object> services = (Map<String, Object>)watchRegistry.getWatchMetrics().get("services");
+        Assert.assertEquals(0, ((Map<String, Object>)services.get(serviceName)).get("failures"));
+    }
+
+    @Test
+    public void preloadFromSnapshot() throws Exception {
+        String serviceName = "com.networknt.snapshot-1.0.0";
+        URL snapshotUrl = new URLImpl("http", "127.0.0.1", 8081, serviceName, new HashMap<>());
+        Path file = Files.createTempDirectory("consul").resolve("services.snapshot");
+        long taken = System.currentTimeMillis() - 60000;
+        new ServiceSnapshot(taken, Collections.singletonMap(serviceName, Collections.singletonList(snapshotUrl))).write(file);
+
+        ConsulService service = new ConsulService();
+        service.setAddress("127.0.0.1");
+        service.setId(ConsulUtils.convertServiceId("127.0.0.1", 8082, serviceName));
+        service.setName(serviceName);
+        service.setPort(8082);
+        service.setTags(new ArrayList<>());
+        SnapshotConsulClient snapshotClient = new SnapshotConsulClient(service);
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(URLParamType.registrySnapshotFile.getName(), file.toString());
+        try {
+            ConsulRegistry snapshotRegistry = new ConsulRegistry(new URLImpl("light", "localhost", 8500, "", parameters), snapshotClient);
+            Assert.assertTrue(snapshotRegistry.getSnapshotAge() >= 60000);
+            snapshotRegistry.setWatchIntervals(60000, 60000, 0);
+
+            // the urls from the snapshot are served without looking up Consul.
+            URL discoverUrl = new URLImpl("http", "127.0.0.1", 0, serviceName, new HashMap<>());
+            Assert.assertEquals(Collections.singletonList(snapshotUrl), snapshotRegistry.discover(discoverUrl));
+            Assert.assertEquals(0, snapshotClient.syncCalls.get());
+
+            // the service is looked up immediately instead of after the lookupInterval.
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!snapshotRegistry.discover(discoverUrl).contains(new URLImpl("http", "127.0.0.1", 8082, serviceName, new HashMap<>()))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, snapshotClient.asyncCalls.get());
+            Assert.assertEquals(1, snapshotRegistry.discover(discoverUrl).size());
+            Assert.assertEquals(8082, (int)snapshotRegistry.discover(discoverUrl).get(0).getPort());
+            // no service is routed with the snapshot anymore.
+            Assert.assertEquals(-1L, snapshotRegistry.getSnapshotAge());
+            Assert.assertEquals(0, snapshotClient.syncCalls.get());
+        } finally {
+            // wait for the snapshot saved in the background before the file is deleted.
+            Thread.sleep(1500);
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.getParent());
+        }
+    }
+
+    /**
+     * A Consul client that returns one instance of a service to the async lookups.
+     */
+    private static class SnapshotConsulClient extends MockConsulClient {
+        final AtomicInteger asyncCalls = new AtomicInteger();
+        final AtomicInteger syncCalls = new AtomicInteger();
+        final ConsulService service;
+
+        SnapshotConsulClient(ConsulService service) {
+            super("localhost", 8500);
+            this.service = service;
+        }
+
+        @Override
+        public ConsulResponse<List<ConsulService>> lookupHealthService(String serviceName, String tag, long lastConsulIndex, String token) {
+            syncCalls.incrementAndGet();
+            return super.lookupHealthService(serviceName, tag, lastConsulIndex, token);
+        }
+
+        @Override
+        public CompletableFuture<ConsulResponse<List<ConsulService>>> lookupHealthServiceAsync(String serviceName, String tag, long lastConsulIndex, String token) {
+            asyncCalls.incrementAndGet();
+            ConsulResponse<List<ConsulService>> response = new ConsulResponse<>();
+            response.setConsulIndex(5L);
+            response.setConsulKnownLeader(true);
+            response.setConsulLastContact(0L);
+            response.setValue(Collections.singletonList(service));
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
+    /**
+     * A Consul client that fails the async lookups before it returns a response without any change.
+     */
+    private static class FailingConsulClient extends MockConsulClient {
+        final List<Long> calls = new CopyOnWriteArrayList<>();
+        final AtomicInteger syncCalls = new AtomicInteger();
+        final int failures;
+
+        FailingConsulClient(int failures) {
+            super("localhost", 8500);
+            this.failures = failures;
+        }
+
+        @Override
+        public ConsulResponse<List<ConsulService>> lookupHealthService(String serviceName, String tag, long lastConsulIndex, String token) {
+            syncCalls.incrementAndGet();
+            return super.lookupHealthService(serviceName, tag, lastConsulIndex, token);
+        }
+
+        @Override
+        public CompletableFuture<ConsulResponse<List<ConsulService>>> lookupHealthServiceAsync(String serviceName, String tag, long lastConsulIndex, String token) {
+            calls.add(System.currentTimeMillis());
+            int count = calls.size();
+            if (count == 1) {
+                // a connection failure
+                return CompletableFuture.failedFuture(new IOException("connection refused"));
+            } else if (count <= failures) {
+                // a timeout or an error response
+                return CompletableFuture.completedFuture(null);
+            }
+            ConsulResponse<List<ConsulService>> response = new ConsulResponse<>();
+            response.setConsulIndex(1L);
+            response.setConsulKnownLeader(true);
+            response.setConsulLastContact(0L);
+            response.setValue(new ArrayList<>());
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
+    @Test
+    public void coalesceNotifications() throws Exception {
+        String serviceName = "com.networknt.coalesce-1.0.0";
+        URL subscribeUrl = new URLImpl("http", "127.0.0.4", 0, serviceName, new HashMap<>());
+        URL url1 = new URLImpl("http", "127.0.0.1", 8081, serviceName, new HashMap<>());
+        URL url2 = new URLImpl("http", "127.0.0.1", 8082, serviceName, new HashMap<>());
+        URL url3 = new URLImpl("http", "127.0.0.1", 8083, serviceName, new HashMap<>());
+        List<ServiceChange> changes = new CopyOnWriteArrayList<>();
+        registry.doSubscribe(subscribeUrl, new NotifyListener() {
+            @Override
+            public void notify(URL registryUrl, List<URL> urls) {
+                Assert.fail("notifyChange is overridden");
+            }
+
+            @Override
+            public void notifyChange(URL registryUrl, ServiceChange change) {
+                changes.add(change);
+            }
+        });
+        registry.updateServiceCache(serviceName, serviceUrls(serviceName, url1, url2), false);
+        // a burst of updates is delivered as one change from the cached urls to the latest urls.
+        registry.updateServiceCache(serviceName, serviceUrls(serviceName, url1), true);
+        registry.updateServiceCache(serviceName, serviceUrls(serviceName, url1, url2, url3), true);
+        registry.updateServiceCache(serviceName, serviceUrls(serviceName, url1, url3), true);
+        Thread.sleep(500);
+        Assert.assertEquals(1, changes.size());
+        ServiceChange change = changes.get(0);
+        Assert.assertEquals(Arrays.asList(url3), change.getAdded());
+        Assert.assertEquals(Arrays.asList(url2), change.getRemoved());
+        Assert.assertEquals(Arrays.asList(url1, url3), change.getUrls());
+
+        // the next change is computed from the last notification.
+        registry.updateServiceCache(serviceName, serviceUrls(serviceName, url3), true);
+        Thread.sleep(500);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(Arrays.asList(url1), changes.get(1).getRemoved());
+        Assert.assertTrue(changes.get(1).getAdded().isEmpty());
+        registry.doUnsubscribe(subscribeUrl, null);
+    }
+
+    private static ConcurrentHashMap<String, List<URL>> serviceUrls(String serviceName, URL... urls) {
+        ConcurrentHashMap<String, List<URL>> serviceUrls = new ConcurrentHashMap<>();
+        serviceUrls.put(serviceName, Arrays.asList(urls));
+        return serviceUrls;
+    }
+
     private Boolean containsNotifyListener(URL serviceUrl, URL clientUrl, NotifyListener listener) {
         String service = ConsulUtils.getUrlClusterInfo(serviceUrl);
         return registry.getNotifyListeners().get(service).get(clientUrl) == listener;
@@ -21,6 +21,7 @@ package com.networknt.correlation;
 public class CorrelationConfig {
     boolean enabled;
     boolean autogenCorrelationID;
+    String idGenerator;
 
     public CorrelationConfig() {
     }
@@ -40,4 +41,12 @@ public class CorrelationConfig {
     public void setAutogenCorrelationID(boolean autogenCorrelationID) {
     	this.autogenCorrelationID = autogenCorrelationID;
     }
+
+    public String getIdGenerator() {
+        return idGenerator;
+    }
+
+    public void setIdGenerator(String idGenerator) {
+        this.idGenerator = idGenerator;
+    }
 }
@@ -52,6 +52,7 @@ public class CorrelationHandler implements MiddlewareHandler {
     private volatile HttpHandler next;
 
     public CorrelationHandler() {
+        Util.setCorrelationIdGenerator(Util.createIdGenerator(config.getIdGenerator()));
         if(logger.isInfoEnabled()) logger.info("CorrelationHandler is loaded.");
     }
 
@@ -64,7 +65,7 @@ public class CorrelationHandler implements MiddlewareHandler {
         	// if not set, check the autgen flag and generate if set to true
         	if(config.isAutogenCorrelationID()) {
 	            // generate a UUID and put it into the request header
-	            cId = Util.getUUID();
+	            cId = Util.getCorrelationId();
 	            exchange.getRequestHeaders().put(HttpStringConstants.CORRELATION_ID, cId);
 	            String tId = exchange.getRequestHeaders().getFirst(HttpStringConstants.TRACEABILITY_ID);
 	            if(tId != null && logger.isInfoEnabled()) {
@@ -104,5 +105,6 @@ public class CorrelationHandler implements MiddlewareHandler {
     @Override
     public void reload() {
         config =  (CorrelationConfig)Config.getInstance().getJsonObjectConfig(CONFIG_NAME, CorrelationConfig.class);
+        Util.setCorrelationIdGenerator(Util.createIdGenerator(config.getIdGenerator()));
     }
 }
@@ -24,7 +24,6 @@ import io.undertow.util.Headers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -86,7 +85,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
     public void dumpResponse(Map<String, Object> result) {
         byte[] responseBodyAttachment = exchange.getAttachment(StoreResponseStreamSinkConduit.RESPONSE);
         if(responseBodyAttachment != null) {
-            this.bodyContent = config.isMaskEnabled() ? Mask.maskJson(new ByteArrayInputStream(responseBodyAttachment), "responseBody") : new String(responseBodyAttachment, UTF_8);
+            this.bodyContent = config.isMaskEnabled() ? Mask.maskJson(responseBodyAttachment, "responseBody") : new String(responseBodyAttachment, UTF_8);
         }
         this.putDumpInfoTo(result);
     }
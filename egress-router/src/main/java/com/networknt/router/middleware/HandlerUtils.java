@@ -1,5 +1,6 @@
 package com.networknt.router.middleware;
 
+import com.networknt.utility.PathPrefixTrie;
 import com.networknt.utility.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,31 @@ public class HandlerUtils {
         return result;
     }
 
+    /**
+     * Looks up the appropriate serviceId for a given requestPath with the mapping compiled in a trie. If
+     * more than one prefix matches, the longest one is used. Returns null if the path does not map to a
+     * configured service, otherwise, an array will be returned with the first element the path prefix and
+     * the second element the serviceId.
+     *
+     * @param searchKey search key
+     * @param mappingTrie a trie of prefix and service id
+     * @return pathPrefix and serviceId in an array that is found
+     */
+    public static String[] findServiceEntry(String searchKey, PathPrefixTrie<String> mappingTrie) {
+        if(logger.isDebugEnabled()) logger.debug("findServiceEntry for " + searchKey);
+        if(mappingTrie == null || mappingTrie.isEmpty()) {
+            if(logger.isDebugEnabled()) logger.debug("mapping is empty in the configuration.");
+            return null;
+        }
+        Map.Entry<String, String> entry = mappingTrie.longestSegmentMatch(searchKey);
+        if(entry == null) {
+            if(logger.isDebugEnabled()) logger.debug("serviceEntry not found!");
+            return null;
+        }
+        if(logger.isDebugEnabled()) logger.debug("prefix = " + entry.getKey() + " serviceId = " + entry.getValue());
+        return new String[] {entry.getKey(), entry.getValue()};
+    }
+
     public static String normalisePath(String requestPath) {
         if(!requestPath.startsWith("/")) {
             return "/" + requestPath;
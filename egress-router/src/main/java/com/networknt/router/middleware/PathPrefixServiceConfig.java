@@ -3,6 +3,7 @@ package com.networknt.router.middleware;
 import com.networknt.config.Config;
 import com.networknt.config.ConfigException;
 import com.networknt.config.JsonMapper;
+import com.networknt.utility.PathPrefixTrie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,6 +28,7 @@ public class PathPrefixServiceConfig {
     // variables
     private  Map<String, Object> mappedConfig;
     private Map<String, String> mapping;
+    private volatile PathPrefixTrie<String> mappingTrie = PathPrefixTrie.of((Map<String, String>)null);
     private boolean enabled;
 
     // the config object
@@ -61,6 +63,13 @@ public class PathPrefixServiceConfig {
         return mapping;
     }
 
+    /**
+     * @return the mapping compiled for the longest prefix lookup. It is replaced as a whole on reload.
+     */
+    public PathPrefixTrie<String> getMappingTrie() {
+        return mappingTrie;
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -102,6 +111,7 @@ public class PathPrefixServiceConfig {
                 logger.error("Mapping is the wrong type. Only JSON string and YAML map are supported.");
             }
         }
+        mappingTrie = PathPrefixTrie.of(mapping);
     }
 
     private void setConfigData() {
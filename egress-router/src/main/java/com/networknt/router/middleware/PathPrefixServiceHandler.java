@@ -79,7 +79,7 @@ public class PathPrefixServiceHandler implements MiddlewareHandler {
         if(serviceId == null) {
             String requestPath = exchange.getRequestURI();
             if(logger.isTraceEnabled()) logger.trace("serviceId is null, looking up the serviceEntry...");
-            serviceEntry = HandlerUtils.findServiceEntry(HandlerUtils.normalisePath(requestPath), config.getMapping());
+            serviceEntry = HandlerUtils.findServiceEntry(HandlerUtils.normalisePath(requestPath), config.getMappingTrie());
             if(serviceEntry != null) {
                 if(logger.isTraceEnabled()) logger.trace("serviceEntry found and header is set for service_id = " + serviceEntry[1]);
                 exchange.getRequestHeaders().put(HttpStringConstants.SERVICE_ID, serviceEntry[1]);
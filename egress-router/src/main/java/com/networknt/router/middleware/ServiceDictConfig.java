@@ -2,6 +2,7 @@ package com.networknt.router.middleware;
 
 import com.networknt.config.Config;
 import com.networknt.config.ConfigException;
+import com.networknt.utility.PathPrefixTrie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +29,7 @@ public class ServiceDictConfig {
     // variables
     private Map<String, Object> mappedConfig;
     private Map<String, String> mapping;
+    private volatile PathPrefixTrie<String> mappingTrie = PathPrefixTrie.of((Map<String, String>)null);
     private boolean enabled;
 
     // the config object
@@ -62,6 +64,13 @@ public class ServiceDictConfig {
         return mapping;
     }
 
+    /**
+     * @return the mapping compiled for the longest prefix lookup. It is replaced as a whole on reload.
+     */
+    public PathPrefixTrie<String> getMappingTrie() {
+        return mappingTrie;
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -108,6 +117,7 @@ public class ServiceDictConfig {
             }
             mapping = Collections.unmodifiableMap(mapping);
         }
+        mappingTrie = PathPrefixTrie.of(mapping);
     }
 
     private void setConfigData() {
@@ -43,7 +43,7 @@ public class ServiceDictHandler implements MiddlewareHandler {
         if(serviceId == null) {
             String requestPath = exchange.getRequestURI();
             String httpMethod = exchange.getRequestMethod().toString().toLowerCase();
-            serviceEntry = HandlerUtils.findServiceEntry(HandlerUtils.toInternalKey(httpMethod, requestPath), config.getMapping());
+            serviceEntry = HandlerUtils.findServiceEntry(HandlerUtils.toInternalKey(httpMethod, requestPath), config.getMappingTrie());
             if(serviceEntry != null) {
                 if(logger.isTraceEnabled()) logger.trace("serviceEntry found and header is set for service_id = " + serviceEntry[1]);
                 exchange.getRequestHeaders().put(HttpStringConstants.SERVICE_ID, serviceEntry[1]);
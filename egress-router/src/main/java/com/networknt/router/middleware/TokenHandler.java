@@ -18,7 +18,7 @@ package com.networknt.router.middleware;
 
 import com.networknt.client.ClientConfig;
 import com.networknt.client.oauth.Jwt;
-import com.networknt.client.oauth.OauthHelper;
+import com.networknt.client.oauth.TokenRefresher;
 import com.networknt.client.oauth.TokenKeyRequest;
 import com.networknt.config.Config;
 import com.networknt.handler.Handler;
@@ -26,7 +26,6 @@ import com.networknt.handler.MiddlewareHandler;
 import com.networknt.httpstring.HttpStringConstants;
 import com.networknt.monad.Failure;
 import com.networknt.monad.Result;
-import com.networknt.monad.Success;
 import com.networknt.status.Status;
 import com.networknt.utility.ConcurrentHashSet;
 import com.networknt.utility.ModuleRegistry;
@@ -38,8 +37,12 @@ import io.undertow.util.Headers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -51,10 +54,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * be encrypted or set as an environment variable. In Kubernetes cluster, you can create a
  * sealed secret for it.
  *
- * This handler will also responsible for checking if the cached token is about expired
- * or not. In which case, it will renew the token in another thread. When request comes and
- * the cached token is already expired, then it will block the request and go to the OAuth
- * provider to get a new token and then resume the request to the next handler in the chain.
+ * The cached tokens are renewed in the background before they are expired, so a request
+ * only reads the cached token. When request comes and there is no valid token for the
+ * serviceId, then it will block the request and go to the OAuth provider to get a new token
+ * and then resume the request to the next handler in the chain.
  *
  * The logic is very similar with client module in light-4j but this is implemented in a
  * handler instead. Multiple OAuth 2.0 providers are supported and the token cache strategy
@@ -80,7 +83,36 @@ public class TokenHandler implements MiddlewareHandler {
     static Logger logger = LoggerFactory.getLogger(TokenHandler.class);
     protected volatile HttpHandler next;
     // Cached jwt token for this handler on behalf of a client by serviceId as the key
-    public final static Map<String, Jwt> cache = new ConcurrentHashMap();
+    static final TokenRefresher tokenRefresher = new TokenRefresher(Integer.MAX_VALUE);
+    /**
+     * Cached jwt token for this handler on behalf of a client by serviceId as the key.
+     *
+     * @deprecated the tokens are kept and renewed by the tokenRefresher. This is a read only view of its tokens.
+     */
+    @Deprecated
+    public final static Map<String, Jwt> cache = new AbstractMap<String, Jwt>() {
+        @Override
+        public Jwt get(Object key) {
+            return key instanceof String ? tokenRefresher.getToken(new Jwt.Key((String)key)) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Jwt>> entrySet() {
+            Map<String, Jwt> tokens = new HashMap<>();
+            tokenRefresher.getTokens().forEach((k, jwt) -> {
+                if(k.getServiceId() != null) tokens.put(k.getServiceId(), jwt);
+            });
+            return Collections.unmodifiableMap(tokens).entrySet();
+        }
+    };
+    // The client credentials config of the auth server by serviceId, built from the clientConfig.
+    static final Map<String, Map<String, Object>> ccConfigs = new ConcurrentHashMap<>();
+    private static volatile ClientConfig clientConfig;
     public TokenHandler() {
         if(logger.isInfoEnabled()) logger.info("TokenHandler is loaded.");
         config = TokenConfig.load();
@@ -136,49 +168,46 @@ public class TokenHandler implements MiddlewareHandler {
     }
 
     public static Result<Jwt> getJwtToken(String serviceId) {
-        ClientConfig clientConfig = ClientConfig.get();
-        Map<String, Object> tokenConfig = clientConfig.getTokenConfig();
-        Map<String, Object> ccConfig = (Map<String, Object>)tokenConfig.get(ClientConfig.CLIENT_CREDENTIALS);
-        Result<Jwt> result;
-        Jwt cachedJwt = cache.get(serviceId);
-        // get a new token if cachedJwt is null or the jwt is about expired.
-        if(cachedJwt == null || cachedJwt.getExpire() - Long.valueOf((Integer)tokenConfig.get(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED)) < System.currentTimeMillis()) {
-            Jwt.Key key = new Jwt.Key(serviceId);
-            cachedJwt = new Jwt(key); // create a new instance if the cache is empty for the serviceId.
-
-            if(clientConfig.isMultipleAuthServers()) {
-                // get the right client credentials configuration based on the serviceId
-                Map<String, Object> serviceIdAuthServers = (Map<String, Object>)ccConfig.get(ClientConfig.SERVICE_ID_AUTH_SERVERS);
-                if(serviceIdAuthServers == null) {
-                    throw new RuntimeException("serviceIdAuthServers property is missing in the token client credentials configuration");
+        // the client credentials config is built again after the client.yml is reloaded, so that the token renewals
+        // use the new client secret.
+        ClientConfig current = ClientConfig.get();
+        if(current != clientConfig) {
+            synchronized (TokenHandler.class) {
+                if(current != clientConfig) {
+                    ccConfigs.clear();
+                    clientConfig = current;
                 }
-                Map<String, Object> authServerConfig = (Map<String, Object>)serviceIdAuthServers.get(serviceId);
-                // overwrite some elements in the auth server config if it is not defined.
-                if(authServerConfig.get(ClientConfig.PROXY_HOST) == null) authServerConfig.put(ClientConfig.PROXY_HOST, tokenConfig.get(ClientConfig.PROXY_HOST));
-                if(authServerConfig.get(ClientConfig.PROXY_PORT) == null) authServerConfig.put(ClientConfig.PROXY_PORT, tokenConfig.get(ClientConfig.PROXY_PORT));
-                if(authServerConfig.get(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED) == null) authServerConfig.put(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED, tokenConfig.get(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED));
-                if(authServerConfig.get(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY) == null) authServerConfig.put(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY));
-                if(authServerConfig.get(ClientConfig.EARLY_REFRESH_RETRY_DELAY) == null) authServerConfig.put(ClientConfig.EARLY_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EARLY_REFRESH_RETRY_DELAY));
-                cachedJwt.setCcConfig(authServerConfig);
-            } else {
-                // only one client credentials configuration, populate some common elements to the ccConfig from tokenConfig.
-                ccConfig.put(ClientConfig.PROXY_HOST, tokenConfig.get(ClientConfig.PROXY_HOST));
-                ccConfig.put(ClientConfig.PROXY_PORT, tokenConfig.get(ClientConfig.PROXY_PORT));
-                ccConfig.put(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED, tokenConfig.get(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED));
-                ccConfig.put(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY));
-                ccConfig.put(ClientConfig.EARLY_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EARLY_REFRESH_RETRY_DELAY));
-                cachedJwt.setCcConfig(ccConfig);
             }
-            result = OauthHelper.populateCCToken(cachedJwt);
-            if(result.isSuccess()) {
-                // put the cachedJwt to the cache.
-                cache.put(serviceId, cachedJwt);
+        }
+        return tokenRefresher.getJwt(new Jwt.Key(serviceId), ccConfigs.computeIfAbsent(serviceId, k -> getCcConfig(current, k)));
+    }
+
+    private static Map<String, Object> getCcConfig(ClientConfig clientConfig, String serviceId) {
+        Map<String, Object> tokenConfig = clientConfig.getTokenConfig();
+        Map<String, Object> ccConfig = (Map<String, Object>)tokenConfig.get(ClientConfig.CLIENT_CREDENTIALS);
+        if(clientConfig.isMultipleAuthServers()) {
+            // get the right client credentials configuration based on the serviceId
+            Map<String, Object> serviceIdAuthServers = (Map<String, Object>)ccConfig.get(ClientConfig.SERVICE_ID_AUTH_SERVERS);
+            if(serviceIdAuthServers == null) {
+                throw new RuntimeException("serviceIdAuthServers property is missing in the token client credentials configuration");
             }
+            Map<String, Object> authServerConfig = (Map<String, Object>)serviceIdAuthServers.get(serviceId);
+            // overwrite some elements in the auth server config if it is not defined.
+            if(authServerConfig.get(ClientConfig.PROXY_HOST) == null) authServerConfig.put(ClientConfig.PROXY_HOST, tokenConfig.get(ClientConfig.PROXY_HOST));
+            if(authServerConfig.get(ClientConfig.PROXY_PORT) == null) authServerConfig.put(ClientConfig.PROXY_PORT, tokenConfig.get(ClientConfig.PROXY_PORT));
+            if(authServerConfig.get(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED) == null) authServerConfig.put(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED, tokenConfig.get(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED));
+            if(authServerConfig.get(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY) == null) authServerConfig.put(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY));
+            if(authServerConfig.get(ClientConfig.EARLY_REFRESH_RETRY_DELAY) == null) authServerConfig.put(ClientConfig.EARLY_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EARLY_REFRESH_RETRY_DELAY));
+            return authServerConfig;
         } else {
-            // the cached jwt is not null and still valid.
-            result = Success.of(cachedJwt);
+            // only one client credentials configuration, populate some common elements to the ccConfig from tokenConfig.
+            ccConfig.put(ClientConfig.PROXY_HOST, tokenConfig.get(ClientConfig.PROXY_HOST));
+            ccConfig.put(ClientConfig.PROXY_PORT, tokenConfig.get(ClientConfig.PROXY_PORT));
+            ccConfig.put(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED, tokenConfig.get(ClientConfig.TOKEN_RENEW_BEFORE_EXPIRED));
+            ccConfig.put(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EXPIRED_REFRESH_RETRY_DELAY));
+            ccConfig.put(ClientConfig.EARLY_REFRESH_RETRY_DELAY, tokenConfig.get(ClientConfig.EARLY_REFRESH_RETRY_DELAY));
+            return ccConfig;
         }
-        return result;
     }
 
     @Override
@@ -206,6 +235,8 @@ public class TokenHandler implements MiddlewareHandler {
     @Override
     public void reload() {
         config.reload();
+        ccConfigs.clear();
+        tokenRefresher.clear();
         ModuleRegistry.registerModule(TokenHandler.class.getName(), config.getMappedConfig(), null);
     }
 }
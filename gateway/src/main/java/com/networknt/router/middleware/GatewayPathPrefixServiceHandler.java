@@ -55,7 +55,7 @@ public class GatewayPathPrefixServiceHandler extends PathPrefixServiceHandler {
             String serviceId = serviceIdHeader != null ? serviceIdHeader.peekFirst() : null;
             if (serviceId == null) {
                 String requestPath = exchange.getRequestURI();
-                serviceEntry = HandlerUtils.findServiceEntry(HandlerUtils.normalisePath(requestPath), config.getMapping());
+                serviceEntry = HandlerUtils.findServiceEntry(HandlerUtils.normalisePath(requestPath), config.getMappingTrie());
                 if (serviceEntry != null) {
                     exchange.getRequestHeaders().put(HttpStringConstants.SERVICE_ID, serviceEntry[1]);
                 }
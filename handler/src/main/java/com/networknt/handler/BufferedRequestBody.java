@@ -0,0 +1,155 @@
+package com.networknt.handler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.config.Config;
+import com.networknt.httpstring.AttachmentConstants;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A shared view of the request body buffered by the RequestInterceptorInjectionHandler. The body can be read as
+ * raw bytes, a UTF-8 string, a Jackson tree or a Map/List, and each form is computed at most once on the first
+ * access and shared by all the request interceptors in the chain. So stacking the body, sanitizer and transformer
+ * interceptors doesn't decode or parse the same body multiple times.
+ *
+ * The view never changes the positions of the pooled buffers, so the body can still be forwarded to the backend.
+ * If an interceptor overwrites the content of the buffers, it must call invalidate() so that the following
+ * interceptors see the new body.
+ *
+ * An exchange is only handled by one thread at a time, so the view is not thread safe.
+ */
+public class BufferedRequestBody {
+    public static final AttachmentKey<BufferedRequestBody> BUFFERED_REQUEST_BODY = AttachmentKey.create(BufferedRequestBody.class);
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+    private static final TypeReference<List<Object>> LIST_TYPE = new TypeReference<>() {};
+
+    private final PooledByteBuffer[] buffers;
+    private byte[] bytes;
+    private String string;
+    private JsonNode tree;
+    private Object json;
+
+    public BufferedRequestBody(PooledByteBuffer[] buffers) {
+        this.buffers = buffers;
+    }
+
+    /**
+     * Get the body view of the exchange. The view is created and attached on the first call if the request body is
+     * buffered by the RequestInterceptorInjectionHandler.
+     *
+     * @param exchange HttpServerExchange
+     * @return the body view or null if the request body is not buffered
+     */
+    public static BufferedRequestBody get(HttpServerExchange exchange) {
+        BufferedRequestBody body = exchange.getAttachment(BUFFERED_REQUEST_BODY);
+        if(body == null) {
+            PooledByteBuffer[] buffers = exchange.getAttachment(AttachmentConstants.BUFFERED_REQUEST_DATA_KEY);
+            if(buffers == null) return null;
+            body = new BufferedRequestBody(buffers);
+            exchange.putAttachment(BUFFERED_REQUEST_BODY, body);
+        }
+        return body;
+    }
+
+    public PooledByteBuffer[] getBuffers() {
+        return buffers;
+    }
+
+    /**
+     * @return a new stream over the body that reads the pooled buffers without copying them
+     */
+    public InputStream getInputStream() {
+        return new PooledByteBufferInputStream(buffers);
+    }
+
+    public int getLength() {
+        return bytes != null ? bytes.length : new PooledByteBufferInputStream(buffers).available();
+    }
+
+    /**
+     * @return the body bytes. The array is shared and must not be modified.
+     */
+    public byte[] getBytes() {
+        if(bytes == null) {
+            bytes = new PooledByteBufferInputStream(buffers).readBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the body decoded as UTF-8
+     */
+    public String getString() {
+        if(string == null) {
+            string = bytes != null ? new String(bytes, StandardCharsets.UTF_8) : new PooledByteBufferInputStream(buffers).readString();
+        }
+        return string;
+    }
+
+    /**
+     * @return the body parsed as a JSON tree
+     * @throws IOException if the body is not a valid JSON
+     */
+    public JsonNode getTree() throws IOException {
+        if(tree == null) {
+            tree = bytes != null ? mapper().readTree(bytes) : mapper().readTree(getInputStream());
+        }
+        return tree;
+    }
+
+    /**
+     * Parse the JSON body into a Map or a List based on the first character "{" or "[".
+     *
+     * @return a Map or a List, or null if the body is not a JSON object or array
+     * @throws IOException if the body is not a valid JSON
+     */
+    public Object getJson() throws IOException {
+        if(json == null) {
+            int first = new PooledByteBufferInputStream(buffers).peekNonWhitespace();
+            if(first == '{') {
+                json = tree != null ? mapper().convertValue(tree, MAP_TYPE) : readValue(MAP_TYPE);
+            } else if(first == '[') {
+                json = tree != null ? mapper().convertValue(tree, LIST_TYPE) : readValue(LIST_TYPE);
+            }
+        }
+        return json;
+    }
+
+    /**
+     * @return the JSON object body as a Map or null if the body is not a JSON object
+     * @throws IOException if the body is not a valid JSON
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getMap() throws IOException {
+        Object object = getJson();
+        return object instanceof Map ? (Map<String, Object>)object : null;
+    }
+
+    /**
+     * Discard all the computed forms after the content of the buffers is changed.
+     */
+    public void invalidate() {
+        bytes = null;
+        string = null;
+        tree = null;
+        json = null;
+    }
+
+    private <T> T readValue(TypeReference<T> type) throws IOException {
+        return bytes != null ? mapper().readValue(bytes, type) : mapper().readValue(getInputStream(), type);
+    }
+
+    private static ObjectMapper mapper() {
+        return Config.getInstance().getMapper();
+    }
+}
@@ -48,8 +48,7 @@ import static io.undertow.Handlers.websocket;
  */
 public class Handler {
 
-	private static final AttachmentKey<Integer> CHAIN_SEQ = AttachmentKey.create(Integer.class);
-	private static final AttachmentKey<String> CHAIN_ID = AttachmentKey.create(String.class);
+	private static final AttachmentKey<Pipeline> PIPELINE = AttachmentKey.create(Pipeline.class);
 	private static final Logger logger = LoggerFactory.getLogger(Handler.class);
 	private static final String CONFIG_NAME = "handler";
 	private static String configName = CONFIG_NAME;
@@ -61,6 +60,8 @@ public class Handler {
 	// each handler keyed by a name.
 	static final Map<String, HttpHandler> handlers = new HashMap<>();
 	static final Map<String, List<HttpHandler>> handlerListById = new HashMap<>();
+	// the same lists compiled to arrays without the disabled middleware handlers.
+	static final Map<String, HttpHandler[]> pipelineById = new HashMap<>();
 	static final Map<HttpString, PathTemplateMatcher<String>> methodToMatcherMap = new HashMap<>();
 	static List<HttpHandler> defaultHandlers;
 	// this is the last handler that need to be called when OrchestratorHandler is injected into the beginning of the chain
@@ -115,7 +116,7 @@ public class Handler {
 						throw new RuntimeException("Chain " + chainName + " uses Unknown handler: " + chainItemName);
 					handlerChain.add(chainItem);
 				}
-				handlerListById.put(chainName, handlerChain);
+				putHandlerList(chainName, handlerChain);
 			}
 		}
 	}
@@ -142,7 +143,7 @@ public class Handler {
 	static void initDefaultHandlers() {
 		if (config != null && config.getDefaultHandlers() != null) {
 			defaultHandlers = getHandlersFromExecList(config.getDefaultHandlers());
-			handlerListById.put("defaultHandlers", defaultHandlers);
+			putHandlerList("defaultHandlers", defaultHandlers);
 		}
 	}
 
@@ -194,10 +195,29 @@ public class Handler {
 
 			if(pathTemplateMatcher.get(pathChain.getPath()) == null) { pathTemplateMatcher.add(pathChain.getPath(), randInt.toString()); }
 			methodToMatcherMap.put(method, pathTemplateMatcher);
-			handlerListById.put(randInt.toString(), handlers);
+			putHandlerList(randInt.toString(), handlers);
 		}
 	}
 
+	/**
+	 * Register a list of handlers by its id along with the compiled pipeline that is used to
+	 * dispatch the requests, so that the enabled flag of the middleware handlers is checked only once.
+	 */
+	private static void putHandlerList(String id, List<HttpHandler> handlerList) {
+		handlerListById.put(id, handlerList);
+		pipelineById.put(id, compile(handlerList));
+	}
+
+	static HttpHandler[] compile(List<HttpHandler> handlerList) {
+		List<HttpHandler> enabled = new ArrayList<>(handlerList.size());
+		for(HttpHandler handler : handlerList) {
+			if(!(handler instanceof MiddlewareHandler) || ((MiddlewareHandler)handler).isEnabled()) {
+				enabled.add(handler);
+			}
+		}
+		return enabled.toArray(new HttpHandler[0]);
+	}
+
 	/**
 	 * Handle the next request in the chain.
 	 *
@@ -250,18 +270,17 @@ public class Handler {
 	 */
 	public static void next(HttpServerExchange httpServerExchange, String execName, Boolean returnToOrigFlow)
 			throws Exception {
-		String currentChainId = httpServerExchange.getAttachment(CHAIN_ID);
-		Integer currentNextIndex = httpServerExchange.getAttachment(CHAIN_SEQ);
-
-		httpServerExchange.putAttachment(CHAIN_ID, execName);
-		httpServerExchange.putAttachment(CHAIN_SEQ, 0);
+		HttpHandler[] handlersForExec = pipelineById.get(execName);
+		if (handlersForExec == null)
+			throw new RuntimeException("Unknown handler or chain: " + execName);
+		// the current pipeline keeps its position while the given flow is executed with its own one.
+		Pipeline currentPipeline = httpServerExchange.putAttachment(PIPELINE, new Pipeline(handlersForExec));
 
 		next(httpServerExchange);
 
 		// return to current flow.
 		if (returnToOrigFlow) {
-			httpServerExchange.putAttachment(CHAIN_ID, currentChainId);
-			httpServerExchange.putAttachment(CHAIN_SEQ, currentNextIndex);
+			httpServerExchange.putAttachment(PIPELINE, currentPipeline);
 			next(httpServerExchange);
 		}
 	}
@@ -275,15 +294,8 @@ public class Handler {
 	 * @return The HttpHandler that should be executed next.
 	 */
 	public static HttpHandler getNext(HttpServerExchange httpServerExchange) {
-		String chainId = httpServerExchange.getAttachment(CHAIN_ID);
-		List<HttpHandler> handlersForId = handlerListById.get(chainId);
-		Integer nextIndex = httpServerExchange.getAttachment(CHAIN_SEQ);
-		// Check if we've reached the end of the chain.
-		if (nextIndex < handlersForId.size()) {
-			httpServerExchange.putAttachment(CHAIN_SEQ, nextIndex + 1);
-			return handlersForId.get(nextIndex);
-		}
-		return null;
+		Pipeline pipeline = httpServerExchange.getAttachment(PIPELINE);
+		return pipeline == null ? null : pipeline.next();
 	}
 
 	/**
@@ -333,8 +345,7 @@ public class Handler {
 					httpServerExchange.addPathParam(entry.getKey(), entry.getValue());
 				}
 				String id = result.getValue();
-				httpServerExchange.putAttachment(CHAIN_ID, id);
-				httpServerExchange.putAttachment(CHAIN_SEQ, 0);
+				httpServerExchange.putAttachment(PIPELINE, new Pipeline(pipelineById.get(id)));
 				return true;
 			}
 		}
@@ -354,8 +365,7 @@ public class Handler {
 	public static boolean startDefaultHandlers(HttpServerExchange httpServerExchange) {
 		// check if defaultHandlers is empty
 		if(defaultHandlers != null && defaultHandlers.size() > 0) {
-			httpServerExchange.putAttachment(CHAIN_ID, "defaultHandlers");
-			httpServerExchange.putAttachment(CHAIN_SEQ, 0);
+			httpServerExchange.putAttachment(PIPELINE, new Pipeline(pipelineById.get("defaultHandlers")));
 			return true;
 		}
 		return false;
@@ -373,20 +383,11 @@ public class Handler {
 		List<HttpHandler> handlersFromExecList = new ArrayList<>();
 		if (execs != null) {
 			for (String exec : execs) {
-				List<HttpHandler> handlerList = handlerListById.get(exec);
-				if (handlerList == null)
+				// the pipeline only has the handlers that are enabled in the configuration
+				HttpHandler[] pipeline = pipelineById.get(exec);
+				if (pipeline == null)
 					throw new RuntimeException("Unknown handler or chain: " + exec);
-				
-				for(HttpHandler handler : handlerList) {
-					if(handler instanceof MiddlewareHandler) {
-						// add the handler to the list of handlers to execute if it is enabled in the configuration
-						if(((MiddlewareHandler)handler).isEnabled()) {
-							handlersFromExecList.add(handler);
-						}
-					} else {
-						handlersFromExecList.add(handler);
-					}
-				}
+				Collections.addAll(handlersFromExecList, pipeline);
 			}
 		}
 		return handlersFromExecList;
@@ -438,7 +439,7 @@ public class Handler {
 		}
 		registerMiddlewareHandler(resolvedHandler);
 		handlers.put(namedClass.first, resolvedHandler);
-		handlerListById.put(namedClass.first, Collections.singletonList(resolvedHandler));
+		putHandlerList(namedClass.first, Collections.singletonList(resolvedHandler));
 	}
 
 	/**
@@ -467,7 +468,7 @@ public class Handler {
 				}
 				registerMiddlewareHandler(httpHandler);
 				handlers.put(namedClass.first, httpHandler);
-				handlerListById.put(namedClass.first, Collections.singletonList(httpHandler));
+				putHandlerList(namedClass.first, Collections.singletonList(httpHandler));
 			} else if (entry.getValue() instanceof List) {
 
 				// If the values in the config are a list, call the constructor of the handler
@@ -482,7 +483,7 @@ public class Handler {
 				}
 				registerMiddlewareHandler(httpHandler);
 				handlers.put(namedClass.first, httpHandler);
-				handlerListById.put(namedClass.first, Collections.singletonList(httpHandler));
+				putHandlerList(namedClass.first, Collections.singletonList(httpHandler));
 			}
 		}
 	}
@@ -527,4 +528,22 @@ public class Handler {
 	public static Map<String, HttpHandler> getHandlers() {
 		return handlers;
 	}
+
+	/**
+	 * The position of an exchange in the compiled handlers of its chain. It is the only attachment
+	 * that is read on each hop, and the next handler is an array index without any boxing.
+	 */
+	static final class Pipeline {
+		private final HttpHandler[] handlers;
+		private int index;
+
+		Pipeline(HttpHandler[] handlers) {
+			this.handlers = handlers;
+		}
+
+		HttpHandler next() {
+			// Check if we've reached the end of the chain.
+			return index < handlers.length ? handlers[index++] : null;
+		}
+	}
 }
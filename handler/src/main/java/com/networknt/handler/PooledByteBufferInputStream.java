@@ -0,0 +1,102 @@
+package com.networknt.handler;
+
+import io.undertow.connector.PooledByteBuffer;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An InputStream over the pooled buffers of a request body buffered by the RequestInterceptorInjectionHandler.
+ * It reads duplicates of the buffers so that the positions of the pooled buffers are not changed and the body
+ * can still be forwarded to the next handler or the backend API. The buffer array ends at the first null
+ * element.
+ *
+ * This allows Jackson to parse the body directly from the pooled buffers with its own recycled read buffer
+ * instead of decoding the body into a String first.
+ */
+class PooledByteBufferInputStream extends InputStream {
+    private final ByteBuffer[] buffers;
+    private int index;
+
+    PooledByteBufferInputStream(PooledByteBuffer[] pooled) {
+        int count = 0;
+        while(count < pooled.length && pooled[count] != null) count++;
+        buffers = new ByteBuffer[count];
+        for(int i = 0; i < count; i++) {
+            buffers[i] = pooled[i].getBuffer().duplicate();
+        }
+    }
+
+    @Override
+    public int read() {
+        ByteBuffer buffer = current();
+        return buffer == null ? -1 : buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if(len == 0) return 0;
+        ByteBuffer buffer = current();
+        if(buffer == null) return -1;
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        long total = 0;
+        for(int i = index; i < buffers.length; i++) total += buffers[i].remaining();
+        return (int)Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find the first non-whitespace byte without consuming the stream. It is used to decide if the JSON
+     * body is an object or an array before parsing.
+     *
+     * @return the first non-whitespace byte or -1 if the body is empty or blank
+     */
+    int peekNonWhitespace() {
+        for(int i = index; i < buffers.length; i++) {
+            ByteBuffer buffer = buffers[i];
+            for(int p = buffer.position(); p < buffer.limit(); p++) {
+                byte b = buffer.get(p);
+                // the same as the String.trim() used to handle the body before.
+                if((b & 0xFF) > ' ') return b & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read the remaining bytes of all the buffers into one array.
+     *
+     * @return the body bytes
+     */
+    byte[] readBytes() {
+        byte[] bytes = new byte[available()];
+        int off = 0;
+        int n;
+        while(off < bytes.length && (n = read(bytes, off, bytes.length - off)) > 0) off += n;
+        return bytes;
+    }
+
+    /**
+     * Decode the remaining bytes of all the buffers as UTF-8. The bytes are copied once into an array so that
+     * a multibyte character split between two buffers is decoded correctly.
+     *
+     * @return the body string
+     */
+    String readString() {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer current() {
+        while(index < buffers.length) {
+            if(buffers[index].hasRemaining()) return buffers[index];
+            index++;
+        }
+        return null;
+    }
+}
@@ -3,6 +3,7 @@ package com.networknt.handler;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.networknt.config.Config;
 import com.networknt.config.ConfigException;
+import com.networknt.utility.PathPrefixTrie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +21,7 @@ public class RequestInjectionConfig {
 
     private boolean enabled;
     private List<String> appliedBodyInjectionPathPrefixes;
+    private volatile PathPrefixTrie<String> appliedBodyInjectionPathPrefixTrie = PathPrefixTrie.of((List<String>)null);
 
     private Map<String, Object> mappedConfig;
     private Config config;
@@ -64,6 +66,13 @@ public class RequestInjectionConfig {
         return appliedBodyInjectionPathPrefixes;
     }
 
+    /**
+     * @return the appliedBodyInjectionPathPrefixes compiled for the lookup on the request path
+     */
+    public PathPrefixTrie<String> getAppliedBodyInjectionPathPrefixTrie() {
+        return appliedBodyInjectionPathPrefixTrie;
+    }
+
     Map<String, Object> getMappedConfig() {
         return mappedConfig;
     }
@@ -102,6 +111,7 @@ public class RequestInjectionConfig {
                 throw new ConfigException("appliedBodyInjectionPathPrefixes must be a string or a list of strings.");
             }
         }
+        appliedBodyInjectionPathPrefixTrie = PathPrefixTrie.of(appliedBodyInjectionPathPrefixes);
     }
 
 }
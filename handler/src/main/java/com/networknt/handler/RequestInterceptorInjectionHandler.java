@@ -249,6 +249,8 @@ public class RequestInterceptorInjectionHandler implements MiddlewareHandler {
      */
     private void saveBufferAndResetUndertowConnector(final HttpServerExchange httpServerExchange, final PooledByteBuffer[] bufferedData) {
         httpServerExchange.putAttachment(AttachmentConstants.BUFFERED_REQUEST_DATA_KEY, bufferedData);
+        // shared by all the interceptors so that the body is decoded and parsed at most once.
+        httpServerExchange.putAttachment(BufferedRequestBody.BUFFERED_REQUEST_BODY, new BufferedRequestBody(bufferedData));
 
         if (httpServerExchange.getRequestHeaders().getFirst("content-length") != null) {
             long length = 0;
@@ -288,6 +290,6 @@ public class RequestInterceptorInjectionHandler implements MiddlewareHandler {
     }
 
     private boolean isAppliedBodyInjectionPathPrefix(String requestPath) {
-        return config.getAppliedBodyInjectionPathPrefixes() != null && config.getAppliedBodyInjectionPathPrefixes().stream().anyMatch(requestPath::startsWith);
+        return config.getAppliedBodyInjectionPathPrefixTrie().matches(requestPath);
     }
 }
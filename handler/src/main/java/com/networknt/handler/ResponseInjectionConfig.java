@@ -3,6 +3,7 @@ package com.networknt.handler;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.networknt.config.Config;
 import com.networknt.config.ConfigException;
+import com.networknt.utility.PathPrefixTrie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +24,7 @@ public class ResponseInjectionConfig {
     private static final String APPLIED_BODY_INJECTION_PATH_PREFIXES = "appliedBodyInjectionPathPrefixes";
     private boolean enabled;
     private List<String> appliedBodyInjectionPathPrefixes;
+    private volatile PathPrefixTrie<String> appliedBodyInjectionPathPrefixTrie = PathPrefixTrie.of((List<String>)null);
 
     private Map<String, Object> mappedConfig;
     private Config config;
@@ -68,6 +70,13 @@ public class ResponseInjectionConfig {
         return appliedBodyInjectionPathPrefixes;
     }
 
+    /**
+     * @return the appliedBodyInjectionPathPrefixes compiled for the lookup on the request path
+     */
+    public PathPrefixTrie<String> getAppliedBodyInjectionPathPrefixTrie() {
+        return appliedBodyInjectionPathPrefixTrie;
+    }
+
     Map<String, Object> getMappedConfig() {
         return mappedConfig;
     }
@@ -108,6 +117,7 @@ public class ResponseInjectionConfig {
                 throw new ConfigException("appliedBodyInjectionPathPrefixes must be a string or a list of strings.");
             }
         }
+        appliedBodyInjectionPathPrefixTrie = PathPrefixTrie.of(appliedBodyInjectionPathPrefixes);
     }
 
 }
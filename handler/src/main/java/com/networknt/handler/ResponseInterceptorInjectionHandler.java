@@ -159,6 +159,6 @@ public class ResponseInterceptorInjectionHandler implements MiddlewareHandler {
     }
 
     private boolean isAppliedBodyInjectionPathPrefix(String requestPath) {
-        return config.getAppliedBodyInjectionPathPrefixes() != null && config.getAppliedBodyInjectionPathPrefixes().stream().anyMatch(requestPath::startsWith);
+        return config.getAppliedBodyInjectionPathPrefixTrie().matches(requestPath);
     }
 }
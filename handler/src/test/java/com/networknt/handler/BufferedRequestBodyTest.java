@@ -0,0 +1,61 @@
+package com.networknt.handler;
+
+import com.networknt.httpstring.AttachmentConstants;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.server.HttpServerExchange;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static com.networknt.handler.PooledByteBufferInputStreamTest.split;
+
+public class BufferedRequestBodyTest {
+
+    @Test
+    public void testSharedView() throws Exception {
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        Assert.assertNull(BufferedRequestBody.get(exchange));
+        exchange.putAttachment(AttachmentConstants.BUFFERED_REQUEST_DATA_KEY, split("{\"id\":1,\"name\":\"dog\"}", 4));
+        BufferedRequestBody body = BufferedRequestBody.get(exchange);
+        Assert.assertSame(body, BufferedRequestBody.get(exchange));
+        Map<String, Object> map = body.getMap();
+        Assert.assertEquals("dog", map.get("name"));
+        // each form is computed once and shared.
+        Assert.assertSame(map, body.getJson());
+        Assert.assertSame(body.getString(), body.getString());
+        Assert.assertEquals(1, body.getTree().get("id").asInt());
+        Assert.assertEquals(21, body.getLength());
+        Assert.assertEquals(21, body.getBytes().length);
+    }
+
+    @Test
+    public void testListAndInvalid() throws Exception {
+        BufferedRequestBody body = new BufferedRequestBody(split(" [1,2]", 2));
+        Assert.assertTrue(body.getJson() instanceof List);
+        Assert.assertNull(body.getMap());
+        Assert.assertNull(new BufferedRequestBody(split("text", 2)).getJson());
+        try {
+            new BufferedRequestBody(split("{\"id\":", 2)).getJson();
+            Assert.fail("invalid JSON");
+        } catch (Exception expected) {
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        PooledByteBuffer[] buffers = split("{\"a\":1}", 16);
+        BufferedRequestBody body = new BufferedRequestBody(buffers);
+        Assert.assertEquals(1, body.getMap().get("a"));
+        ByteBuffer buffer = buffers[0].getBuffer();
+        buffer.clear();
+        buffer.put("{\"a\":2}".getBytes(StandardCharsets.UTF_8)).flip();
+        Assert.assertEquals(1, body.getMap().get("a"));
+        body.invalidate();
+        Assert.assertEquals(2, body.getMap().get("a"));
+        Assert.assertEquals("{\"a\":2}", body.getString());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.handler;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PipelineTest {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineTest.class);
+
+    @After
+    public void tearDown() {
+        // the pipelines are static, so they are removed to not leak into the other tests.
+        Handler.pipelineById.remove("outer");
+        Handler.pipelineById.remove("inner");
+        Handler.pipelineById.remove("1234567890");
+        LEGACY_LIST_BY_ID.clear();
+    }
+
+    @Test
+    public void testCompileSkipsDisabledMiddleware() {
+        HttpHandler first = new TestMiddlewareHandler(true);
+        HttpHandler disabled = new TestMiddlewareHandler(false);
+        HttpHandler last = exchange -> {};
+        HttpHandler[] pipeline = Handler.compile(Arrays.asList(first, disabled, last));
+        Assert.assertArrayEquals(new HttpHandler[] {first, last}, pipeline);
+    }
+
+    @Test
+    public void testNextToExecAndReturnToOrigFlow() throws Exception {
+        List<String> calls = new ArrayList<>();
+        Handler.pipelineById.put("outer", new HttpHandler[] {
+                exchange -> { calls.add("outer1"); Handler.next(exchange, "inner", true); },
+                exchange -> { calls.add("outer2"); Handler.next(exchange); }
+        });
+        Handler.pipelineById.put("inner", new HttpHandler[] {
+                exchange -> { calls.add("inner1"); Handler.next(exchange); },
+                exchange -> calls.add("inner2")
+        });
+        HttpServerExchange exchange = new HttpServerExchange(null);
+        Handler.next(exchange, "outer", false);
+        Assert.assertEquals(Arrays.asList("outer1", "inner1", "inner2", "outer2"), calls);
+        Assert.assertNull(Handler.getNext(exchange));
+    }
+
+    /**
+     * Compare the cost of a hop of a 15 handlers chain with the compiled pipeline against the chain id and
+     * the boxed sequence attachments that were looked up on each hop before. The numbers are logged only
+     * as the timing is not reliable enough on a build server to be asserted, and the number of requests is
+     * kept small so that it doesn't slow down the build.
+     */
+    @Test
+    public void testPerHopOverhead() throws Exception {
+        int size = 15;
+        HttpHandler[] legacyHandlers = new HttpHandler[size];
+        Arrays.fill(legacyHandlers, (HttpHandler) PipelineTest::legacyNext);
+        LEGACY_LIST_BY_ID.put("1234567890", Arrays.asList(legacyHandlers));
+        HttpHandler[] handlers = new HttpHandler[size];
+        Arrays.fill(handlers, (HttpHandler) Handler::next);
+        Handler.pipelineById.put("1234567890", handlers);
+        HttpServerExchange exchange = new HttpServerExchange(null);
+
+        int requests = 10000;
+        long legacy = Long.MAX_VALUE;
+        long compiled = Long.MAX_VALUE;
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < requests; i++) {
+                exchange.putAttachment(CHAIN_ID, "1234567890");
+                exchange.putAttachment(CHAIN_SEQ, 0);
+                legacyNext(exchange);
+            }
+            legacy = Math.min(legacy, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for(int i = 0; i < requests; i++) {
+                Handler.next(exchange, "1234567890", false);
+            }
+            compiled = Math.min(compiled, System.nanoTime() - start);
+        }
+        long hops = (long) requests * size;
+        logger.info("Per hop overhead: attachments {} ns, compiled pipeline {} ns",
+                String.format("%.2f", (double) legacy / hops), String.format("%.2f", (double) compiled / hops));
+        Assert.assertEquals(size, exchange.getAttachment(CHAIN_SEQ).intValue());
+    }
+
+    private static final AttachmentKey<String> CHAIN_ID = AttachmentKey.create(String.class);
+    private static final AttachmentKey<Integer> CHAIN_SEQ = AttachmentKey.create(Integer.class);
+    private static final Map<String, List<HttpHandler>> LEGACY_LIST_BY_ID = new HashMap<>();
+
+    // The getNext and next of the Handler before the pipelines are compiled.
+    private static void legacyNext(HttpServerExchange exchange) throws Exception {
+        List<HttpHandler> handlersForId = LEGACY_LIST_BY_ID.get(exchange.getAttachment(CHAIN_ID));
+        Integer nextIndex = exchange.getAttachment(CHAIN_SEQ);
+        if (nextIndex < handlersForId.size()) {
+            exchange.putAttachment(CHAIN_SEQ, nextIndex + 1);
+            handlersForId.get(nextIndex).handleRequest(exchange);
+        }
+    }
+
+    private static class TestMiddlewareHandler implements MiddlewareHandler {
+        private final boolean enabled;
+        private volatile HttpHandler next;
+
+        TestMiddlewareHandler(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        @Override
+        public HttpHandler getNext() {
+            return next;
+        }
+
+        @Override
+        public MiddlewareHandler setNext(HttpHandler next) {
+            this.next = next;
+            return this;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void register() {
+        }
+
+        @Override
+        public void handleRequest(HttpServerExchange exchange) throws Exception {
+            Handler.next(exchange, next);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.networknt.handler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.networknt.config.Config;
+import io.undertow.connector.PooledByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class PooledByteBufferInputStreamTest {
+
+    @Test
+    public void testParseAcrossBuffers() throws Exception {
+        PooledByteBuffer[] buffers = split("  {\"name\":\"café\",\"list\":[1,2,3]}  ", 5);
+        PooledByteBufferInputStream stream = new PooledByteBufferInputStream(buffers);
+        Assert.assertEquals('{', stream.peekNonWhitespace());
+        Map<String, Object> map = Config.getInstance().getMapper().readValue(stream, new TypeReference<Map<String, Object>>() {});
+        Assert.assertEquals("café", map.get("name"));
+        Assert.assertEquals(Arrays.asList(1, 2, 3), map.get("list"));
+        // the pooled buffers are not consumed so that the body can be forwarded.
+        Assert.assertEquals(5, buffers[0].getBuffer().remaining());
+    }
+
+    @Test
+    public void testReadStringWithSplitCharacter() {
+        // the two bytes of the character are in different buffers.
+        PooledByteBuffer[] buffers = split("[\"é\"]", 3);
+        Assert.assertEquals("[\"é\"]", new PooledByteBufferInputStream(buffers).readString());
+        List<Object> list = null;
+        try {
+            list = Config.getInstance().getMapper().readValue(new PooledByteBufferInputStream(buffers), new TypeReference<List<Object>>() {});
+        } catch (Exception e) {
+            Assert.fail(e.getMessage());
+        }
+        Assert.assertEquals("é", list.get(0));
+    }
+
+    @Test
+    public void testBlankAndNullTerminated() {
+        PooledByteBuffer[] buffers = new PooledByteBuffer[4];
+        buffers[0] = pooled(" \n\t".getBytes(StandardCharsets.UTF_8));
+        PooledByteBufferInputStream stream = new PooledByteBufferInputStream(buffers);
+        Assert.assertEquals(-1, stream.peekNonWhitespace());
+        Assert.assertEquals(3, stream.available());
+        Assert.assertEquals("", new PooledByteBufferInputStream(new PooledByteBuffer[4]).readString());
+    }
+
+    static PooledByteBuffer[] split(String s, int size) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        PooledByteBuffer[] buffers = new PooledByteBuffer[(bytes.length + size - 1) / size + 1];
+        for (int i = 0; i * size < bytes.length; i++) {
+            buffers[i] = pooled(Arrays.copyOfRange(bytes, i * size, Math.min(bytes.length, (i + 1) * size)));
+        }
+        return buffers;
+    }
+
+    static PooledByteBuffer pooled(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return new PooledByteBuffer() {
+            @Override
+            public ByteBuffer getBuffer() {
+                return buffer;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+        };
+    }
+}
@@ -22,6 +22,7 @@ package com.networknt.whitelist;
 import com.networknt.config.Config;
 import com.networknt.config.ConfigException;
 import com.networknt.config.JsonMapper;
+import com.networknt.utility.PathPrefixTrie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnio.Bits;
@@ -72,6 +73,7 @@ public class WhitelistConfig {
     boolean enabled;
     boolean defaultAllow;
     Map<String, IpAcl> prefixAcl = new HashMap<>();
+    private volatile PathPrefixTrie<IpAcl> prefixAclTrie = PathPrefixTrie.of(prefixAcl);
     private Config config;
     private Map<String, Object> mappedConfig;
 
@@ -124,6 +126,13 @@ public class WhitelistConfig {
         return prefixAcl;
     }
 
+    /**
+     * @return the prefixAcl compiled for the longest prefix lookup on the request path
+     */
+    public PathPrefixTrie<IpAcl> getPrefixAclTrie() {
+        return prefixAclTrie;
+    }
+
     public Map<String, Object> getMappedConfig() {
         return mappedConfig;
     }
@@ -175,6 +184,7 @@ public class WhitelistConfig {
                 addRule(entry.getKey(), peer, !this.defaultAllow);
             }
         }
+        prefixAclTrie = PathPrefixTrie.of(new HashMap<>(prefixAcl));
     }
 
     private void addRule(final String pathPrefix, final String peer, final boolean deny) {
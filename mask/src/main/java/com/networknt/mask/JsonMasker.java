@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.mask;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The json paths of a key in mask.yml compiled into a tree of the path steps, so that a json document
+ * can be masked while it is copied from a parser to a generator in one pass.
+ *
+ * While the document is copied, the nodes of the tree that match the current position are tracked for
+ * each level. A string or an integer at a terminal node is masked with the regex of the path, and so are
+ * the string and integer elements of an array at a terminal node. A branch that no path can match is
+ * copied as it is.
+ *
+ * Only the path steps of a property name, an array index, a wildcard and a deep scan are supported. The
+ * paths with a filter, a slice, a union or a function are not compiled, and the key is masked with the
+ * JsonPath implementation instead.
+ */
+class JsonMasker {
+    private final Node root;
+
+    private JsonMasker(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param patternMap the json path to regex map of a key
+     * @return the compiled masker or null if any of the paths is not supported
+     */
+    static JsonMasker compile(Map<String, Object> patternMap) {
+        Node root = new Node();
+        for(Map.Entry<String, Object> entry : patternMap.entrySet()) {
+            if(!add(root, entry.getKey().trim(), String.valueOf(entry.getValue()))) {
+                return null;
+            }
+        }
+        return new JsonMasker(root);
+    }
+
+    /**
+     * Copy the json document from the parser to the generator with the values masked.
+     *
+     * @param parser the parser of the document
+     * @param generator the generator to write the masked document to
+     * @throws IOException if the document cannot be parsed or written
+     */
+    void mask(JsonParser parser, JsonGenerator generator) throws IOException {
+        if(parser.nextToken() == null) return;
+        copy(parser, generator, add(null, root), Collections.emptyList());
+        generator.flush();
+    }
+
+    private void copy(JsonParser parser, JsonGenerator generator, List<Node> active, List<String> inherited) throws IOException {
+        JsonToken token = parser.currentToken();
+        switch(token) {
+            case START_OBJECT:
+                generator.writeStartObject();
+                while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    generator.writeFieldName(name);
+                    parser.nextToken();
+                    List<Node> children = step(active, name, -1);
+                    if(children.isEmpty()) {
+                        generator.copyCurrentStructure(parser);
+                    } else {
+                        copy(parser, generator, children, Collections.emptyList());
+                    }
+                }
+                generator.writeEndObject();
+                break;
+            case START_ARRAY:
+                // the scalar elements of a matched array are masked with the regex of the array.
+                List<String> regexes = regexes(active, Collections.emptyList());
+                generator.writeStartArray();
+                int index = 0;
+                while(parser.nextToken() != JsonToken.END_ARRAY) {
+                    List<Node> children = step(active, null, index++);
+                    if(children.isEmpty() && regexes.isEmpty()) {
+                        generator.copyCurrentStructure(parser);
+                    } else {
+                        copy(parser, generator, children, regexes);
+                    }
+                }
+                generator.writeEndArray();
+                break;
+            case VALUE_STRING:
+            case VALUE_NUMBER_INT:
+                regexes = regexes(active, inherited);
+                if(regexes.isEmpty()) {
+                    generator.copyCurrentEvent(parser);
+                } else {
+                    String value = parser.getText();
+                    for(String regex : regexes) {
+                        value = Mask.replaceWithMask(value, Mask.MASK_REPLACEMENT_CHAR.charAt(0), regex);
+                    }
+                    generator.writeString(value);
+                }
+                break;
+            default:
+                generator.copyCurrentEvent(parser);
+        }
+    }
+
+    private static List<String> regexes(List<Node> active, List<String> inherited) {
+        List<String> regexes = inherited;
+        for(Node node : active) {
+            if(node.regex != null) {
+                if(regexes == inherited) regexes = new ArrayList<>(inherited);
+                regexes.add(node.regex);
+            }
+        }
+        return regexes;
+    }
+
+    private static List<Node> step(List<Node> active, String name, int index) {
+        List<Node> children = null;
+        for(Node node : active) {
+            if(node.recursive) children = add(children, node);
+            if(name != null && node.fields != null) children = add(children, node.fields.get(name));
+            if(index >= 0 && node.indexes != null) children = add(children, node.indexes.get(index));
+            children = add(children, node.any);
+        }
+        return children == null ? Collections.emptyList() : children;
+    }
+
+    private static List<Node> add(List<Node> nodes, Node node) {
+        if(node == null) return nodes;
+        if(nodes == null) nodes = new ArrayList<>(2);
+        if(!nodes.contains(node)) nodes.add(node);
+        // a deep scan from a node starts at the same level as the node.
+        return node.descendant == null ? nodes : add(nodes, node.descendant);
+    }
+
+    /**
+     * Add the steps of a json path to the tree.
+     *
+     * @return false if the path is not supported
+     */
+    private static boolean add(Node root, String path, String regex) {
+        if(!path.startsWith("$")) return false;
+        Node node = root;
+        int i = 1;
+        int length = path.length();
+        while(i < length) {
+            char c = path.charAt(i);
+            if(c == '.') {
+                if(i + 1 < length && path.charAt(i + 1) == '.') {
+                    // deep scan, the next step can match at any level below.
+                    node = node.recursive();
+                    i += 2;
+                } else {
+                    i++;
+                }
+                if(i < length && path.charAt(i) == '[') continue;
+                int end = i;
+                while(end < length && path.charAt(end) != '.' && path.charAt(end) != '[') end++;
+                String name = path.substring(i, end);
+                if(name.isEmpty() || !isName(name)) return false;
+                node = "*".equals(name) ? node.any() : node.field(name);
+                i = end;
+            } else if(c == '[') {
+                int end = path.indexOf(']', i);
+                if(end < 0) return false;
+                String step = path.substring(i + 1, end).trim();
+                if("*".equals(step)) {
+                    node = node.any();
+                } else if(step.length() >= 2 && (step.charAt(0) == '\'' || step.charAt(0) == '"') && step.charAt(step.length() - 1) == step.charAt(0)) {
+                    String name = step.substring(1, step.length() - 1);
+                    if(name.indexOf('\'') >= 0 || name.indexOf('"') >= 0) return false;
+                    node = node.field(name);
+                } else {
+                    try {
+                        int index = Integer.parseInt(step);
+                        if(index < 0) return false;
+                        node = node.index(index);
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+                i = end + 1;
+            } else {
+                return false;
+            }
+        }
+        if(node == root) return false;
+        // the same path in a key can only have one regex; the latest wins like in a map.
+        node.regex = regex;
+        return true;
+    }
+
+    private static boolean isName(String name) {
+        if("*".equals(name)) return true;
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if(c == '*' || c == '(' || c == ')' || c == '?' || c == '@' || c == ',' || c == ':' || c == '\'' || c == '"' || c == ' ') return false;
+        }
+        return true;
+    }
+
+    /**
+     * A step in the tree. A recursive node stays active for all the descendants of the value it matches.
+     */
+    private static final class Node {
+        Map<String, Node> fields;
+        Map<Integer, Node> indexes;
+        Node any;
+        Node descendant;
+        boolean recursive;
+        String regex;
+
+        Node field(String name) {
+            if(fields == null) fields = new HashMap<>();
+            return fields.computeIfAbsent(name, n -> new Node());
+        }
+
+        Node index(int index) {
+            if(indexes == null) indexes = new HashMap<>();
+            return indexes.computeIfAbsent(index, n -> new Node());
+        }
+
+        Node any() {
+            if(any == null) any = new Node();
+            return any;
+        }
+
+        Node recursive() {
+            if(descendant == null) {
+                descendant = new Node();
+                descendant.recursive = true;
+            }
+            return descendant;
+        }
+    }
+}
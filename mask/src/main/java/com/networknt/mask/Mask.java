@@ -16,7 +16,11 @@
 
 package com.networknt.mask;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jayway.jsonpath.*;
 import com.networknt.config.Config;
 import com.networknt.utility.ModuleRegistry;
@@ -25,7 +29,10 @@ import org.owasp.encoder.Encode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
@@ -34,11 +41,16 @@ import java.util.regex.Pattern;
 /**
  * A utility to mask sensitive data based on regex pattern before logging
  *
+ * The json paths of a key are compiled once into a JsonMasker, and a json input is masked while it is
+ * parsed in one streaming pass. The keys with a path that cannot be compiled are masked with JsonPath.
+ *
  * @author Steve Hu
  */
 public class Mask {
 
     static Map<String, Pattern> patternCache = new ConcurrentHashMap<>();
+    // the compiled json paths per key, empty if the key is not configured or has an unsupported path.
+    static Map<String, Optional<JsonMasker>> jsonMaskerCache = new ConcurrentHashMap<>();
 
     private static final String MASK_CONFIG = "mask";
     public static final String MASK_REPLACEMENT_CHAR = "*";
@@ -102,7 +114,7 @@ public class Mask {
         return input;
     }
 
-    private static String replaceWithMask(String stringToBeMasked, char maskingChar, String regex) {
+    static String replaceWithMask(String stringToBeMasked, char maskingChar, String regex) {
         if (stringToBeMasked == null || stringToBeMasked.length() == 0)
             return stringToBeMasked;
         String replacementString = "";
@@ -143,10 +155,39 @@ public class Mask {
     public static String maskJson(String input, String key) {
         if(input == null)
             return null;
+        JsonMasker masker = getJsonMasker(key);
+        if(masker != null) {
+            try {
+                return maskJson(masker, getJsonFactory().createParser(input));
+            } catch (IOException e) {
+                throw new InvalidJsonException(e);
+            }
+        }
         DocumentContext ctx = JsonPath.parse(input);
         return maskJson(ctx, key);
     }
 
+    /**
+     * Replace values in JSON using json path
+     * @param input byte[] The UTF-8 encoded json that needs to be masked
+     * @param key String The key maps to a list of json path for masking
+     * @return String Masked result
+     */
+    public static String maskJson(byte[] input, String key) {
+        if(input == null)
+            return null;
+        JsonMasker masker = getJsonMasker(key);
+        if(masker != null) {
+            try {
+                return maskJson(masker, getJsonFactory().createParser(input));
+            } catch (IOException e) {
+                throw new InvalidJsonException(e);
+            }
+        }
+        DocumentContext ctx = JsonPath.parse(new String(input, StandardCharsets.UTF_8));
+        return maskJson(ctx, key);
+    }
+
     /**
      * Replace values in JSON using json path
      * @param input InputStream inputStream of json that needs to be masked
@@ -156,6 +197,14 @@ public class Mask {
     public static String maskJson(InputStream input, String key) {
         if(input == null)
             return null;
+        JsonMasker masker = getJsonMasker(key);
+        if(masker != null) {
+            try {
+                return maskJson(masker, getJsonFactory().createParser(input));
+            } catch (IOException e) {
+                throw new InvalidJsonException(e);
+            }
+        }
         DocumentContext ctx = JsonPath.parse(input);
         return maskJson(ctx, key);
     }
@@ -169,6 +218,15 @@ public class Mask {
     public static String maskJson(Object input, String key) {
         if(input == null)
             return null;
+        JsonMasker masker = getJsonMasker(key);
+        if(masker != null) {
+            ObjectMapper mapper = Config.getInstance().getMapper();
+            try {
+                return maskJson(masker, mapper.treeAsTokens(mapper.valueToTree(input)));
+            } catch (IOException e) {
+                throw new InvalidJsonException(e);
+            }
+        }
         DocumentContext ctx = JsonPath.parse(input);
         return maskJson(ctx, key);
     }
@@ -194,6 +252,37 @@ public class Mask {
         return ctx.jsonString();
     }
 
+    private static String maskJson(JsonMasker masker, JsonParser parser) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonParser p = parser; JsonGenerator generator = getJsonFactory().createGenerator(writer)) {
+            masker.mask(p, generator);
+        }
+        return writer.toString();
+    }
+
+    private static JsonFactory getJsonFactory() {
+        return Config.getInstance().getMapper().getFactory();
+    }
+
+    /**
+     * Get the compiled json paths of the key. The paths are compiled once, and a key that is not
+     * configured or has a path that cannot be compiled is masked with JsonPath instead.
+     *
+     * @param key String The key maps to a list of json path for masking
+     * @return JsonMasker the compiled paths or null
+     */
+    static JsonMasker getJsonMasker(String key) {
+        if(key == null) return null;
+        return jsonMaskerCache.computeIfAbsent(key, k -> {
+            Map<String, Object> jsonConfig = (Map<String, Object>) config.get(MASK_TYPE_JSON);
+            Map<String, Object> patternMap = jsonConfig == null ? null : (Map<String, Object>) jsonConfig.get(k);
+            if(patternMap == null) return Optional.empty();
+            JsonMasker masker = JsonMasker.compile(patternMap);
+            if(masker == null && logger.isInfoEnabled()) logger.info("The json paths of {} are masked with JsonPath as some of them cannot be compiled", Encode.forJava(k));
+            return Optional.ofNullable(masker);
+        }).orElse(null);
+    }
+
     private static void applyMask(Map.Entry<String, JsonNode> entry, DocumentContext ctx) {
         Object value;
         String jsonPath = entry.getKey();
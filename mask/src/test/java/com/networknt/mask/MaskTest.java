@@ -28,7 +28,9 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
 import java.util.Set;
 
@@ -137,6 +139,34 @@ public class MaskTest {
         Assert.assertEquals(output, "{\"name\":\"Steve\",\"list\":[{\"name\":\"Josh\",\"creditCardNumber\":\"****************\"}],\"password\":\"secret\"}");
     }
 
+    @Test
+    public void testMaskBytes() {
+        String input = "{\"name\":\"Steve\",\"contact\":{\"phone\":\"416-111-1111\"},\"password\":\"secret\"}";
+        String output = Mask.maskJson(input.getBytes(StandardCharsets.UTF_8), "test1");
+        Assert.assertEquals("{\"name\":\"Steve\",\"contact\":{\"phone\":\"************\"},\"password\":\"******\"}", output);
+        Assert.assertEquals(output, Mask.maskJson(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), "test1"));
+    }
+
+    @Test
+    public void testMaskDeepScan() {
+        String input = "{\"email\":\"a@b.c\",\"list\":[{\"email\":\"d@e.f\",\"contact\":{\"email\":\"g@h\"}}],"
+                + "\"account\":{\"numbers\":[123,456,\"789\"]},\"active\":true}";
+        String output = Mask.maskJson(input, "testDeepScan");
+        Assert.assertEquals("{\"email\":\"*****\",\"list\":[{\"email\":\"*****\",\"contact\":{\"email\":\"***\"}}],"
+                + "\"account\":{\"numbers\":[123,\"***\",\"789\"]},\"active\":true}", output);
+    }
+
+    @Test
+    public void testMaskWithUnsupportedPath() {
+        // a filter cannot be compiled, so the key is masked with JsonPath.
+        Assert.assertNull(Mask.getJsonMasker("testFilter"));
+        Assert.assertNotNull(Mask.getJsonMasker("test2"));
+        String input = "{\"list\":[{\"type\":\"card\",\"number\":\"1234\"},{\"type\":\"cash\",\"number\":\"5678\"}]}";
+        String output = Mask.maskJson(input, "testFilter");
+        Assert.assertEquals("****", JsonPath.parse(output).read("$.list[0].number"));
+        Assert.assertEquals("5678", JsonPath.parse(output).read("$.list[1].number"));
+    }
+
     @Test
     public void testNullInput()
     {
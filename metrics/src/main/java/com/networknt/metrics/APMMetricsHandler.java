@@ -3,10 +3,8 @@ package com.networknt.metrics;
 
 import java.net.InetAddress;
 import java.net.MalformedURLException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.networknt.server.ServerConfig;
@@ -25,8 +23,6 @@ import io.dropwizard.metrics.broadcom.APMEPAgentSender;
 
 import io.dropwizard.metrics.Clock;
 import io.dropwizard.metrics.MetricFilter;
-import io.dropwizard.metrics.MetricName;
-import io.dropwizard.metrics.MetricRegistry;
 import io.undertow.Handlers;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
@@ -45,6 +41,7 @@ public class APMMetricsHandler extends AbstractMetricsHandler {
         if(config.getIssuerRegex() != null) {
             pattern = Pattern.compile(config.getIssuerRegex());
         }
+        createCardinalityLimiter();
         serverConfig = (ServerConfig) Config.getInstance().getJsonObjectConfig(ServerConfig.CONFIG_NAME, ServerConfig.class);
         ModuleRegistry.registerModule(MetricsConfig.class.getName(), config.getMappedConfig(), null);
         if(logger.isDebugEnabled()) logger.debug("APMMetricsHandler is constructed!");
@@ -62,6 +59,8 @@ public class APMMetricsHandler extends AbstractMetricsHandler {
             if (logger.isDebugEnabled()) {
                 logger.debug(commonTags.toString());
             }
+            clearMetricHandles();
+            registerSeriesGauges();
             
             try {
                 TimeSeriesDbSender sender =
@@ -87,43 +86,8 @@ public class APMMetricsHandler extends AbstractMetricsHandler {
         exchange.addExchangeCompleteListener((exchange1, nextListener) -> {
             Map<String, Object> auditInfo = exchange1.getAttachment(AttachmentConstants.AUDIT_INFO);
             if (auditInfo != null) {
-                Map<String, String> tags = new HashMap<>();
-                tags.put("endpoint", (String) auditInfo.get(Constants.ENDPOINT_STRING));
-                String clientId = auditInfo.get(Constants.CLIENT_ID_STRING) != null ? (String) auditInfo.get(Constants.CLIENT_ID_STRING) : "unknown";
-                if(logger.isTraceEnabled()) logger.trace("clientId = " + clientId);
-                tags.put("clientId", clientId);
-                // scope client id will only be available if two token is used. For example, authorization code flow.
-                if (config.isSendScopeClientId()) {
-                    tags.put("scopeClientId", auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) != null ? (String) auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) : "unknown");
-                }
-                // caller id is the calling serviceId that is passed from the caller. It is not always available but some organizations enforce it.
-                if (config.isSendCallerId()) {
-                    tags.put("callerId", auditInfo.get(Constants.CALLER_ID_STRING) != null ? (String) auditInfo.get(Constants.CALLER_ID_STRING) : "unknown");
-                }
-                if (config.isSendIssuer()) {
-                    String issuer = (String) auditInfo.get(Constants.ISSUER_CLAIMS);
-                    if (issuer != null) {
-                        // we need to send issuer as a tag. Do we need to apply regex to extract only a part of the issuer?
-                        if(config.getIssuerRegex() != null) {
-                            Matcher matcher = pattern.matcher(issuer);
-                            if (matcher.find()) {
-                                String iss = matcher.group(1);
-                                if(logger.isTraceEnabled()) logger.trace("Extracted issuer {} from Original issuer {] is sent.", iss, issuer);
-                                tags.put("issuer", iss != null ? iss : "unknown");
-                            }
-                        } else {
-                            if(logger.isTraceEnabled()) logger.trace("Original issuer {} is sent.", issuer);
-                            tags.put("issuer", issuer);
-                        }
-                    }
-                }
-
-                MetricName metricName = new MetricName("response_time");
-                metricName = metricName.tagged(commonTags);
-                metricName = metricName.tagged(tags);
                 long time = Clock.defaultClock().getTick() - startTime;
-                registry.getOrAdd(metricName, MetricRegistry.MetricBuilder.TIMERS).update(time, TimeUnit.NANOSECONDS);
-                incCounterForStatusCode(exchange1.getStatusCode(), commonTags, tags);
+                getMetricHandles("response_time", auditInfo).update(time, exchange1.getStatusCode());
             }
             nextListener.proceed();
         });
@@ -157,6 +121,7 @@ public class APMMetricsHandler extends AbstractMetricsHandler {
     @Override
     public void reload() {
         config.reload();
+        createCardinalityLimiter();
         ModuleRegistry.registerModule(APMMetricsHandler.class.getName(), Config.getInstance().getJsonMapConfigNoCache(CONFIG_NAME), null);
     }
 }
@@ -18,17 +18,28 @@ package com.networknt.metrics;
 
 import com.networknt.handler.MiddlewareHandler;
 import com.networknt.httpstring.AttachmentConstants;
+import com.networknt.utility.CardinalityLimiter;
 import com.networknt.utility.Constants;
+import com.networknt.utility.GaugeRegistry;
+import io.dropwizard.metrics.Counter;
+import io.dropwizard.metrics.Gauge;
 import io.dropwizard.metrics.MetricFilter;
 import io.dropwizard.metrics.MetricName;
 import io.dropwizard.metrics.MetricRegistry;
+import io.dropwizard.metrics.MetricRegistryListener;
+import io.dropwizard.metrics.Timer;
 import io.undertow.server.HttpServerExchange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,6 +53,14 @@ import java.util.regex.Pattern;
  * This is the generic implementation and all others will be extended from this handler. This handler will
  * be used by others to inject metrics info if enabled.
  *
+ * The timer and the counters of a metrics name and a set of tags are resolved from the registry once and
+ * cached as MetricHandles, so that a request only looks up the handles by the tag values instead of building
+ * the tags map and the MetricName objects every time. The cache is cleared when the common tags are changed
+ * or a metric is removed from the registry.
+ *
+ * The values of the clientId, scopeClientId, callerId and issuer tags are limited to the top maxTagValues of
+ * each tag in metrics.yml, and the rest are reported as "other" to keep the number of series bounded.
+ *
  * @author Steve Hu
  */
 public abstract class AbstractMetricsHandler implements MiddlewareHandler {
@@ -52,8 +71,161 @@ public abstract class AbstractMetricsHandler implements MiddlewareHandler {
     // The structure that collect all the metrics entries. Even others will be using this structure to inject.
     public static final MetricRegistry registry = new MetricRegistry();
     public Map<String, String> commonTags = new HashMap<>();
+    // The number of the counters and timers removed from the registry. The listener is registered once for all the
+    // handler instances, and a handler clears its resolved handles when the number is changed.
+    private static final AtomicLong removedMetrics = new AtomicLong();
+    // The listener of the gauges in the GaugeRegistry is added by the first handler that registers its gauges.
+    private static final AtomicBoolean moduleGaugesRegistered = new AtomicBoolean();
+    static {
+        registry.addListener(new MetricRegistryListener.Base() {
+            @Override
+            public void onCounterRemoved(MetricName name) {
+                removedMetrics.incrementAndGet();
+            }
+
+            @Override
+            public void onTimerRemoved(MetricName name) {
+                removedMetrics.incrementAndGet();
+            }
+        });
+    }
+    // The resolved timer and counters by the metrics name and the tag values.
+    private final Map<MetricKey, MetricHandles> handles = new ConcurrentHashMap<>();
+    // The removedMetrics when the handles are cleared last time.
+    private volatile long handlesRemovedMetrics = removedMetrics.get();
+    // The limiter of the distinct values of the tags from the requests. It is null before the config is loaded.
+    private volatile CardinalityLimiter limiter;
+
+    /**
+     * Create the limiter of the tag values with the maxTagValues in the config. It must be called after the
+     * config is loaded or reloaded. The series of a tag value that is evicted from the top values are removed
+     * from the registry.
+     */
+    protected void createCardinalityLimiter() {
+        limiter = new CardinalityLimiter(config.getMaxTagValues(), CardinalityLimiter.DEFAULT_REVIEW_INTERVAL, (dimension, value) -> {
+            if(logger.isDebugEnabled()) logger.debug("The series of {} {} are removed as it is not in the top {} values.", dimension, value, config.getMaxTagValues());
+            registry.removeMatching((name, metric) -> value.equals(name.getTags().get(dimension)));
+        });
+        handles.clear();
+    }
+
+    /**
+     * Register the gauges of the number of the series in the registry and the number of the tag values that are
+     * reported as "other". It must be called once after the commonTags are set.
+     */
+    protected void registerSeriesGauges() {
+        try {
+            registry.register(new MetricName("metric_series", new HashMap<>(commonTags)), (Gauge<Integer>) () -> registry.getMetrics().size());
+            for(String dimension : new String[] {"clientId", "scopeClientId", "callerId", "issuer"}) {
+                Map<String, String> tags = new HashMap<>(commonTags);
+                tags.put("dimension", dimension);
+                registry.register(new MetricName("tag_folded", tags), (Gauge<Long>) () -> {
+                    CardinalityLimiter current = limiter;
+                    return current == null ? 0L : current.getFoldedCount(dimension);
+                });
+            }
+        } catch (IllegalArgumentException e) {
+            // the gauges are registered by another metrics handler instance.
+            if(logger.isDebugEnabled()) logger.debug("The series gauges are registered already.");
+        }
+        if(moduleGaugesRegistered.compareAndSet(false, true)) {
+            // the gauges of the other modules, e.g. the rate limiter and the circuit breaker, are added once.
+            Map<String, String> tags = new HashMap<>(commonTags);
+            GaugeRegistry.addListener(gauge -> registerModuleGauge(gauge, tags));
+        }
+    }
+
+    private static void registerModuleGauge(GaugeRegistry.Gauge gauge, Map<String, String> commonTags) {
+        Map<String, String> tags = new HashMap<>(commonTags);
+        tags.putAll(gauge.getTags());
+        MetricName name = new MetricName(gauge.getName(), tags);
+        // the gauge replaces the previous one with the same name and tags after a reload.
+        registry.remove(name);
+        registry.register(name, (Gauge<Number>) gauge::getValue);
+    }
+
+    /**
+     * Clear the resolved metric handles. It must be called after the commonTags are changed.
+     */
+    protected void clearMetricHandles() {
+        handles.clear();
+    }
+
+    /**
+     * Get the timer and the counters of a metrics name and the tags. The tags with a null value except the
+     * endpoint and the clientId are not added to the metric.
+     *
+     * @param metricsName the name of the timer
+     * @param endpoint the endpoint tag
+     * @param clientId the clientId tag
+     * @param scopeClientId the scopeClientId tag or null
+     * @param callerId the callerId tag or null
+     * @param issuer the issuer tag or null
+     * @return MetricHandles the timer and the counters
+     */
+    public MetricHandles getMetricHandles(String metricsName, String endpoint, String clientId, String scopeClientId, String callerId, String issuer) {
+        CardinalityLimiter current = limiter;
+        if(current != null && current.isEnabled()) {
+            clientId = current.limit("clientId", clientId);
+            scopeClientId = current.limit("scopeClientId", scopeClientId);
+            callerId = current.limit("callerId", callerId);
+            issuer = current.limit("issuer", issuer);
+        }
+        long removed = removedMetrics.get();
+        if(removed != handlesRemovedMetrics) {
+            // a metric is removed from the registry, so the handles might refer to a removed timer or counter.
+            handles.clear();
+            handlesRemovedMetrics = removed;
+        }
+        MetricKey key = new MetricKey(metricsName, endpoint, clientId, scopeClientId, callerId, issuer);
+        MetricHandles metricHandles = handles.get(key);
+        if(metricHandles == null) {
+            metricHandles = handles.computeIfAbsent(key, k -> new MetricHandles(k.metricsName, commonTags, k.toTags()));
+        }
+        return metricHandles;
+    }
 
-    public AbstractMetricsHandler() {
+    /**
+     * Get the timer and the counters of a metrics name with the tags from the auditInfo according to the
+     * metrics.yml config.
+     *
+     * @param metricsName the name of the timer
+     * @param auditInfo the auditInfo attachment of the exchange
+     * @return MetricHandles the timer and the counters
+     */
+    protected MetricHandles getMetricHandles(String metricsName, Map<String, Object> auditInfo) {
+        String endpoint = (String) auditInfo.get(Constants.ENDPOINT_STRING);
+        String clientId = auditInfo.get(Constants.CLIENT_ID_STRING) != null ? (String) auditInfo.get(Constants.CLIENT_ID_STRING) : "unknown";
+        if(logger.isTraceEnabled()) logger.trace("clientId = " + clientId);
+        String scopeClientId = null;
+        // scope client id will only be available if two token is used. For example, authorization code flow.
+        if (config.isSendScopeClientId()) {
+            scopeClientId = auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) != null ? (String) auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) : "unknown";
+        }
+        String callerId = null;
+        // caller id is the calling serviceId that is passed from the caller. It is not always available but some organizations enforce it.
+        if (config.isSendCallerId()) {
+            callerId = auditInfo.get(Constants.CALLER_ID_STRING) != null ? (String) auditInfo.get(Constants.CALLER_ID_STRING) : "unknown";
+        }
+        String issuerTag = null;
+        if (config.isSendIssuer()) {
+            String issuer = (String) auditInfo.get(Constants.ISSUER_CLAIMS);
+            if (issuer != null) {
+                // we need to send issuer as a tag. Do we need to apply regex to extract only a part of the issuer?
+                if(config.getIssuerRegex() != null) {
+                    Matcher matcher = pattern.matcher(issuer);
+                    if (matcher.find()) {
+                        String iss = matcher.group(1);
+                        if(logger.isTraceEnabled()) logger.trace("Extracted issuer {} from Original issuer {] is sent.", iss, issuer);
+                        issuerTag = iss != null ? iss : "unknown";
+                    }
+                } else {
+                    if(logger.isTraceEnabled()) logger.trace("Original issuer {} is sent.", issuer);
+                    issuerTag = issuer;
+                }
+            }
+        }
+        return getMetricHandles(metricsName, endpoint, clientId, scopeClientId, callerId, issuerTag);
     }
 
     @Override
@@ -95,42 +267,116 @@ public abstract class AbstractMetricsHandler implements MiddlewareHandler {
     public void injectMetrics(HttpServerExchange httpServerExchange, long startTime, String metricsName) {
         Map<String, Object> auditInfo = httpServerExchange.getAttachment(AttachmentConstants.AUDIT_INFO);
         if (auditInfo != null) {
-            Map<String, String> tags = new HashMap<>();
-            tags.put(Constants.ENDPOINT_STRING, (String) auditInfo.get(Constants.ENDPOINT_STRING));
-            String clientId = auditInfo.get(Constants.CLIENT_ID_STRING) != null ? (String) auditInfo.get(Constants.CLIENT_ID_STRING) : "unknown";
-            if(logger.isTraceEnabled()) logger.trace("clientId = " + clientId);
-            tags.put("clientId", clientId);
-            // scope client id will only be available if two token is used. For example, authorization code flow.
-            if (config.isSendScopeClientId()) {
-                tags.put("scopeClientId", auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) != null ? (String) auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) : "unknown");
-            }
-            // caller id is the calling serviceId that is passed from the caller. It is not always available but some organizations enforce it.
-            if (config.isSendCallerId()) {
-                tags.put("callerId", auditInfo.get(Constants.CALLER_ID_STRING) != null ? (String) auditInfo.get(Constants.CALLER_ID_STRING) : "unknown");
+            long time = System.nanoTime() - startTime;
+            getMetricHandles(metricsName, auditInfo).update(time, httpServerExchange.getStatusCode());
+        }
+    }
+
+    /**
+     * The timer of a metrics name and the status code counters with the same tags. A counter is only added
+     * to the registry when it is used for the first time like the timer.
+     */
+    public static final class MetricHandles {
+        private static final String[] COUNTER_NAMES = {"success", "auth_error", "request_error", "server_error"};
+        private static final int SUCCESS = 0;
+        private static final int AUTH_ERROR = 1;
+        private static final int REQUEST_ERROR = 2;
+        private static final int SERVER_ERROR = 3;
+
+        private final Map<String, String> commonTags;
+        private final Map<String, String> tags;
+        private final Timer timer;
+        private final Counter request;
+        private final AtomicReferenceArray<Counter> counters = new AtomicReferenceArray<>(COUNTER_NAMES.length);
+
+        MetricHandles(String metricsName, Map<String, String> commonTags, Map<String, String> tags) {
+            this.commonTags = new HashMap<>(commonTags);
+            this.tags = tags;
+            this.timer = registry.getOrAdd(new MetricName(metricsName).tagged(this.commonTags).tagged(tags), MetricRegistry.MetricBuilder.TIMERS);
+            this.request = registry.getOrAdd(new MetricName("request").tagged(this.commonTags).tagged(tags), MetricRegistry.MetricBuilder.COUNTERS);
+        }
+
+        public Timer getTimer() {
+            return timer;
+        }
+
+        /**
+         * Update the timer with the response time and increase the counters of the status code.
+         *
+         * @param nanos the response time in nanoseconds
+         * @param statusCode the response status code
+         */
+        public void update(long nanos, int statusCode) {
+            timer.update(nanos, TimeUnit.NANOSECONDS);
+            request.inc();
+            if (statusCode >= 200 && statusCode < 400) {
+                counter(SUCCESS).inc();
+            } else if (statusCode == 401 || statusCode == 403) {
+                counter(AUTH_ERROR).inc();
+            } else if (statusCode >= 400 && statusCode < 500) {
+                counter(REQUEST_ERROR).inc();
+            } else if (statusCode >= 500) {
+                counter(SERVER_ERROR).inc();
             }
-            if (config.isSendIssuer()) {
-                String issuer = (String) auditInfo.get(Constants.ISSUER_CLAIMS);
-                if (issuer != null) {
-                    // we need to send issuer as a tag. Do we need to apply regex to extract only a part of the issuer?
-                    if(config.getIssuerRegex() != null) {
-                        Matcher matcher = pattern.matcher(issuer);
-                        if (matcher.find()) {
-                            String iss = matcher.group(1);
-                            if(logger.isTraceEnabled()) logger.trace("Extracted issuer {} from Original issuer {] is sent.", iss, issuer);
-                            tags.put("issuer", iss != null ? iss : "unknown");
-                        }
-                    } else {
-                        if(logger.isTraceEnabled()) logger.trace("Original issuer {} is sent.", issuer);
-                        tags.put("issuer", issuer);
-                    }
-                }
+        }
+
+        private Counter counter(int index) {
+            Counter counter = counters.get(index);
+            if(counter == null) {
+                counter = registry.getOrAdd(new MetricName(COUNTER_NAMES[index]).tagged(commonTags).tagged(tags), MetricRegistry.MetricBuilder.COUNTERS);
+                counters.set(index, counter);
             }
-            MetricName metricName = new MetricName(metricsName);
-            metricName = metricName.tagged(commonTags);
-            metricName = metricName.tagged(tags);
-            long time = System.nanoTime() - startTime;
-            registry.getOrAdd(metricName, MetricRegistry.MetricBuilder.TIMERS).update(time, TimeUnit.NANOSECONDS);
-            incCounterForStatusCode(httpServerExchange.getStatusCode(), commonTags, tags);
+            return counter;
+        }
+    }
+
+    static final class MetricKey {
+        final String metricsName;
+        final String endpoint;
+        final String clientId;
+        final String scopeClientId;
+        final String callerId;
+        final String issuer;
+        private final int hash;
+
+        MetricKey(String metricsName, String endpoint, String clientId, String scopeClientId, String callerId, String issuer) {
+            this.metricsName = metricsName;
+            this.endpoint = endpoint;
+            this.clientId = clientId;
+            this.scopeClientId = scopeClientId;
+            this.callerId = callerId;
+            this.issuer = issuer;
+            int h = Objects.hashCode(metricsName);
+            h = 31 * h + Objects.hashCode(endpoint);
+            h = 31 * h + Objects.hashCode(clientId);
+            h = 31 * h + Objects.hashCode(scopeClientId);
+            h = 31 * h + Objects.hashCode(callerId);
+            this.hash = 31 * h + Objects.hashCode(issuer);
+        }
+
+        Map<String, String> toTags() {
+            Map<String, String> tags = new HashMap<>();
+            tags.put(Constants.ENDPOINT_STRING, endpoint);
+            tags.put("clientId", clientId);
+            if(scopeClientId != null) tags.put("scopeClientId", scopeClientId);
+            if(callerId != null) tags.put("callerId", callerId);
+            if(issuer != null) tags.put("issuer", issuer);
+            return tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MetricKey)) return false;
+            MetricKey that = (MetricKey) o;
+            return hash == that.hash && Objects.equals(metricsName, that.metricsName) && Objects.equals(endpoint, that.endpoint)
+                    && Objects.equals(clientId, that.clientId) && Objects.equals(scopeClientId, that.scopeClientId)
+                    && Objects.equals(callerId, that.callerId) && Objects.equals(issuer, that.issuer);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
     }
 }
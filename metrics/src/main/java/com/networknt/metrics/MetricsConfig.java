@@ -44,6 +44,9 @@ public class MetricsConfig {
     private static final String SEND_CALLER_ID = "sendCallerId";
     private static final String SEND_ISSUER = "sendIssuer";
     private static final String ISSUER_REGEX = "issuerRegex";
+    private static final String MAX_TAG_VALUES = "maxTagValues";
+    // the default of the maxTagValues, which is the same as the metrics.yml.
+    private static final int DEFAULT_MAX_TAG_VALUES = 100;
     boolean enabled;
     boolean enableJVMMonitor;
     String serverProtocol;
@@ -59,6 +62,7 @@ public class MetricsConfig {
     boolean sendCallerId;
     boolean sendIssuer;
     String issuerRegex;
+    int maxTagValues = DEFAULT_MAX_TAG_VALUES;
 
     private Map<String, Object> mappedConfig;
     private Config config;
@@ -210,6 +214,14 @@ public class MetricsConfig {
         this.issuerRegex = issuerRegex;
     }
 
+    public int getMaxTagValues() {
+        return maxTagValues;
+    }
+
+    public void setMaxTagValues(int maxTagValues) {
+        this.maxTagValues = maxTagValues;
+    }
+
     Map<String, Object> getMappedConfig() {
         return mappedConfig;
     }
@@ -275,5 +287,9 @@ public class MetricsConfig {
         if(object != null) {
             issuerRegex = (String) object;
         }
+        object = getMappedConfig().get(MAX_TAG_VALUES);
+        if(object != null) {
+            maxTagValues = (int) object;
+        }
     }
 }
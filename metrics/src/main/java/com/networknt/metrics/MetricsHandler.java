@@ -10,8 +10,6 @@ import com.networknt.utility.ModuleRegistry;
 import com.networknt.utility.Util;
 import io.dropwizard.metrics.Clock;
 import io.dropwizard.metrics.MetricFilter;
-import io.dropwizard.metrics.MetricName;
-import io.dropwizard.metrics.MetricRegistry;
 import io.dropwizard.metrics.influxdb.InfluxDbHttpSender;
 import io.dropwizard.metrics.influxdb.InfluxDbReporter;
 import io.undertow.Handlers;
@@ -21,7 +19,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +38,7 @@ public class MetricsHandler extends AbstractMetricsHandler {
         if(config.getIssuerRegex() != null) {
             pattern = Pattern.compile(config.getIssuerRegex());
         }
+        createCardinalityLimiter();
         ModuleRegistry.registerModule(MetricsHandler.class.getName(), config.getMappedConfig(), List.of(MASK_KEY_SERVER_PASS));
         if(logger.isDebugEnabled()) logger.debug("MetricsHandler is constructed!");
     }
@@ -58,6 +56,8 @@ public class MetricsHandler extends AbstractMetricsHandler {
             if(logger.isDebugEnabled()) {
                 logger.debug(commonTags.toString());
             }
+            clearMetricHandles();
+            registerSeriesGauges();
             try {
                 TimeSeriesDbSender influxDb =
                         new InfluxDbHttpSender(config.getServerProtocol(), config.getServerHost(), config.getServerPort(),
@@ -87,17 +87,12 @@ public class MetricsHandler extends AbstractMetricsHandler {
             try {
                 Map<String, Object> auditInfo = exchange1.getAttachment(AttachmentConstants.AUDIT_INFO);
                 if(auditInfo != null) {
-                    Map<String, String> tags = new HashMap<>();
-                    tags.put("endpoint", (String)auditInfo.get(Constants.ENDPOINT_STRING));
-                    tags.put("clientId", auditInfo.get(Constants.CLIENT_ID_STRING) != null ? (String)auditInfo.get(Constants.CLIENT_ID_STRING) : "unknown");
-                    tags.put("scopeClientId", auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) != null ? (String)auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) : "unknown");
-                    tags.put("callerId", auditInfo.get(Constants.CALLER_ID_STRING) != null ? (String)auditInfo.get(Constants.CALLER_ID_STRING) : "unknown");
                     long time = Clock.defaultClock().getTick() - startTime;
-                    MetricName metricName = new MetricName("response_time");
-                    metricName = metricName.tagged(commonTags);
-                    metricName = metricName.tagged(tags);
-                    registry.getOrAdd(metricName, MetricRegistry.MetricBuilder.TIMERS).update(time, TimeUnit.NANOSECONDS);
-                    incCounterForStatusCode(exchange1.getStatusCode(), commonTags, tags);
+                    getMetricHandles("response_time", (String)auditInfo.get(Constants.ENDPOINT_STRING),
+                            auditInfo.get(Constants.CLIENT_ID_STRING) != null ? (String)auditInfo.get(Constants.CLIENT_ID_STRING) : "unknown",
+                            auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) != null ? (String)auditInfo.get(Constants.SCOPE_CLIENT_ID_STRING) : "unknown",
+                            auditInfo.get(Constants.CALLER_ID_STRING) != null ? (String)auditInfo.get(Constants.CALLER_ID_STRING) : "unknown",
+                            null).update(time, exchange1.getStatusCode());
                 }
             } catch (Throwable e) {
                 logger.error("ExchangeListener throwable",  e);
@@ -117,6 +112,7 @@ public class MetricsHandler extends AbstractMetricsHandler {
     @Override
     public void reload() {
         config.reload();
+        createCardinalityLimiter();
         ModuleRegistry.registerModule(MetricsHandler.class.getName(), Config.getInstance().getJsonMapConfigNoCache(CONFIG_NAME), List.of(MASK_KEY_SERVER_PASS));
         if(logger.isTraceEnabled()) logger.trace("MetricsHandler is reloaded.");
     }
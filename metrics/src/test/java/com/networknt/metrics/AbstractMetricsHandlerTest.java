@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.metrics;
+
+import com.networknt.utility.GaugeRegistry;
+import io.dropwizard.metrics.Counter;
+import io.dropwizard.metrics.Gauge;
+import io.dropwizard.metrics.MetricName;
+import io.dropwizard.metrics.Timer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class AbstractMetricsHandlerTest {
+
+    @Test
+    public void testMetricHandles() {
+        MetricsHandler handler = new MetricsHandler();
+        AbstractMetricsHandler.MetricHandles handles = handler.getMetricHandles("handles_time", "/v1/pets@get", "client1", "unknown", "unknown", null);
+        Assert.assertSame(handles, handler.getMetricHandles("handles_time", "/v1/pets@get", "client1", "unknown", "unknown", null));
+        Assert.assertNotSame(handles, handler.getMetricHandles("handles_time", "/v1/pets@get", "client2", "unknown", "unknown", null));
+
+        handles.update(1000000L, 200);
+        handles.update(1000000L, 404);
+        Map<String, String> tags = new HashMap<>(handler.commonTags);
+        tags.put("endpoint", "/v1/pets@get");
+        tags.put("clientId", "client1");
+        tags.put("scopeClientId", "unknown");
+        tags.put("callerId", "unknown");
+        Timer timer = (Timer)AbstractMetricsHandler.registry.getMetrics().get(new MetricName("handles_time", tags));
+        Assert.assertEquals(2, timer.getCount());
+        Assert.assertEquals(2, ((Counter)AbstractMetricsHandler.registry.getMetrics().get(new MetricName("request", tags))).getCount());
+        Assert.assertEquals(1, ((Counter)AbstractMetricsHandler.registry.getMetrics().get(new MetricName("success", tags))).getCount());
+        Assert.assertEquals(1, ((Counter)AbstractMetricsHandler.registry.getMetrics().get(new MetricName("request_error", tags))).getCount());
+        // the counter is only added when it is used.
+        Assert.assertNull(AbstractMetricsHandler.registry.getMetrics().get(new MetricName("server_error", tags)));
+
+        // the handles of all the handler instances are resolved again when a metric is removed from the registry.
+        MetricsHandler other = new MetricsHandler();
+        AbstractMetricsHandler.MetricHandles otherHandles = other.getMetricHandles("handles_time", "/v1/pets@get", "client1", "unknown", "unknown", null);
+        AbstractMetricsHandler.registry.remove(new MetricName("handles_time", tags));
+        Assert.assertNotSame(handles, handler.getMetricHandles("handles_time", "/v1/pets@get", "client1", "unknown", "unknown", null));
+        Assert.assertNotSame(otherHandles, other.getMetricHandles("handles_time", "/v1/pets@get", "client1", "unknown", "unknown", null));
+    }
+
+    @Test
+    public void testTagValueLimit() {
+        MetricsHandler handler = new MetricsHandler();
+        int maxTagValues = AbstractMetricsHandler.config.getMaxTagValues();
+        AbstractMetricsHandler.config.setMaxTagValues(2);
+        try {
+            handler.createCardinalityLimiter();
+            AbstractMetricsHandler.MetricHandles handles1 = handler.getMetricHandles("limit_time", "/v1/pets@get", "client1", null, null, null);
+            AbstractMetricsHandler.MetricHandles handles2 = handler.getMetricHandles("limit_time", "/v1/pets@get", "client2", null, null, null);
+            AbstractMetricsHandler.MetricHandles handles3 = handler.getMetricHandles("limit_time", "/v1/pets@get", "client3", null, null, null);
+            AbstractMetricsHandler.MetricHandles handles4 = handler.getMetricHandles("limit_time", "/v1/pets@get", "client4", null, null, null);
+            Assert.assertNotSame(handles1, handles2);
+            // the clients beyond the limit share the series of other.
+            Assert.assertSame(handles3, handles4);
+            Assert.assertSame(handles1, handler.getMetricHandles("limit_time", "/v1/pets@get", "client1", null, null, null));
+            handles3.update(1000000L, 200);
+            Map<String, String> tags = new HashMap<>(handler.commonTags);
+            tags.put("endpoint", "/v1/pets@get");
+            tags.put("clientId", "other");
+            Assert.assertEquals(1, ((Timer)AbstractMetricsHandler.registry.getMetrics().get(new MetricName("limit_time", tags))).getCount());
+        } finally {
+            AbstractMetricsHandler.config.setMaxTagValues(maxTagValues);
+            handler.createCardinalityLimiter();
+        }
+    }
+
+    @Test
+    public void testModuleGauges() {
+        MetricsHandler handler = new MetricsHandler();
+        handler.registerSeriesGauges();
+        GaugeRegistry.register("module_test", Map.of("module", "test"), () -> 5);
+        Map<String, String> tags = new HashMap<>(handler.commonTags);
+        tags.put("module", "test");
+        Gauge<?> gauge = (Gauge<?>)AbstractMetricsHandler.registry.getMetrics().get(new MetricName("module_test", tags));
+        Assert.assertEquals(5, gauge.getValue());
+    }
+}
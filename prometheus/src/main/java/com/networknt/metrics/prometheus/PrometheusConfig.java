@@ -25,8 +25,12 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
  * @author Gavin Chen
  */
 public class PrometheusConfig {
+    // the default of the maxTagValues, which is the same as the prometheus.yml.
+    private static final int DEFAULT_MAX_TAG_VALUES = 100;
+
     boolean enabled;
     boolean enableHotspot;
+    int maxTagValues = DEFAULT_MAX_TAG_VALUES;
 
 
 
@@ -52,6 +56,14 @@ public class PrometheusConfig {
         this.enableHotspot = enableHotspot;
     }
 
+    public int getMaxTagValues() {
+        return maxTagValues;
+    }
+
+    public void setMaxTagValues(int maxTagValues) {
+        this.maxTagValues = maxTagValues;
+    }
+
     public String getDescription() {
         return description;
     }
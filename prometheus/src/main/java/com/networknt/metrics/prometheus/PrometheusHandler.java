@@ -21,10 +21,14 @@ import com.networknt.config.Config;
 import com.networknt.handler.Handler;
 import com.networknt.handler.MiddlewareHandler;
 import com.networknt.httpstring.AttachmentConstants;
+import com.networknt.utility.CardinalityLimiter;
 import com.networknt.utility.Constants;
 import com.networknt.utility.ModuleRegistry;
+import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.SimpleCollector;
 import io.prometheus.client.SimpleTimer;
 import io.prometheus.client.Summary;
 import io.prometheus.client.hotspot.DefaultExports;
@@ -40,6 +44,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -47,6 +52,10 @@ import java.util.concurrent.ConcurrentMap;
  * capture metrics information for all services. This is systems monitoring middleware handler
  * to integrated with Prometheus
  *
+ * The clientId label is limited to the top maxTagValues in prometheus.yml, and the other clients are reported
+ * as "other" so that the number of series is bounded. When a client is replaced by a more used one, only the
+ * series of the client are removed from the counters and summaries.
+ *
  */
 public class PrometheusHandler implements MiddlewareHandler {
     public static final String CONFIG_NAME = "prometheus";
@@ -57,8 +66,11 @@ public class PrometheusHandler implements MiddlewareHandler {
     static final Logger logger = LoggerFactory.getLogger(PrometheusHandler.class);
 
     private volatile HttpHandler next;
-    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, Summary> response_times = new ConcurrentHashMap<>();
+    // the collectors are registered in the default registry, so they are shared by all the handler instances.
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Summary> response_times = new ConcurrentHashMap<>();
+    private static volatile CardinalityLimiter limiter;
+    private static final AtomicBoolean gaugesRegistered = new AtomicBoolean();
 
     public static final String REQUEST_TOTAL = "requests_total";
     public static final String SUCCESS_TOTAL = "success_total";
@@ -66,11 +78,71 @@ public class PrometheusHandler implements MiddlewareHandler {
     public static final String REQUEST_ERROR_TOTAL = "request_error_total";
     public static final String SERVER_ERROR_TOTAL = "server_error_total";
     public static final String RESPONSE_TIME_SECOND = "response_time_seconds";
+    public static final String METRIC_SERIES = "metric_series";
+    public static final String TAG_FOLDED = "tag_folded";
 
 
 
     public PrometheusHandler() {
         registry=  CollectorRegistry.defaultRegistry;
+        synchronized (PrometheusHandler.class) {
+            if(limiter == null) createCardinalityLimiter();
+        }
+        registerSeriesGauges();
+    }
+
+    private static void createCardinalityLimiter() {
+        limiter = new CardinalityLimiter(config.getMaxTagValues(), CardinalityLimiter.DEFAULT_REVIEW_INTERVAL, (dimension, value) -> {
+            if(logger.isDebugEnabled()) logger.debug("The series of {} {} are removed as it is not in the top {} values.", dimension, value, config.getMaxTagValues());
+            counters.values().forEach(counter -> removeMatching(counter, dimension, value));
+            response_times.values().forEach(summary -> removeMatching(summary, dimension, value));
+        });
+    }
+
+    /**
+     * Remove the children of a collector with the label value so that the series of the other label values
+     * are not reset.
+     */
+    static void removeMatching(SimpleCollector<?> collector, String labelName, String labelValue) {
+        for(Collector.MetricFamilySamples family : collector.collect()) {
+            for(Collector.MetricFamilySamples.Sample sample : family.samples) {
+                int index = sample.labelNames.indexOf(labelName);
+                // the quantile samples of a summary have an extra label that is not a label of the child.
+                if(index >= 0 && !sample.labelNames.contains("quantile") && labelValue.equals(sample.labelValues.get(index))) {
+                    collector.remove(sample.labelValues.toArray(new String[0]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Register the gauges once. They read the shared counters and the current limiter, so they follow the limiter
+     * that is created again on reload.
+     */
+    private void registerSeriesGauges() {
+        if(!gaugesRegistered.compareAndSet(false, true)) return;
+        try {
+            Gauge series = Gauge.build().name(METRIC_SERIES).help("The number of the label sets of the request metrics").create();
+            series.setChild(new Gauge.Child() {
+                @Override
+                public double get() {
+                    Counter requests = counters.get(REQUEST_TOTAL);
+                    return requests == null ? 0 : requests.collect().get(0).samples.size();
+                }
+            });
+            series.register(registry);
+            Gauge folded = Gauge.build().name(TAG_FOLDED).help("The number of the label values reported as other").labelNames("dimension").create();
+            folded.setChild(new Gauge.Child() {
+                @Override
+                public double get() {
+                    return limiter.getFoldedCount("clientId");
+                }
+            }, "clientId");
+            folded.register(registry);
+        } catch (IllegalArgumentException e) {
+            // the gauges are registered in the default registry already.
+            if(logger.isDebugEnabled()) logger.debug("The series gauges are registered already.");
+        }
     }
 
     @Override
@@ -96,7 +168,7 @@ public class PrometheusHandler implements MiddlewareHandler {
                 if(auditInfo != null) {
                     Map<String, String> tags = new HashMap<>();
                     tags.put("endpoint", (String)auditInfo.get(Constants.ENDPOINT_STRING));
-                    tags.put("clientId", auditInfo.get(Constants.CLIENT_ID_STRING) != null ? (String)auditInfo.get(Constants.CLIENT_ID_STRING) : "unknown");
+                    tags.put("clientId", limiter.limit("clientId", auditInfo.get(Constants.CLIENT_ID_STRING) != null ? (String)auditInfo.get(Constants.CLIENT_ID_STRING) : "unknown"));
 
                     // The tags can be empty in error cases.
                     if (!tags.isEmpty()) {
@@ -137,6 +209,7 @@ public class PrometheusHandler implements MiddlewareHandler {
     @Override
     public void reload() {
         config =(PrometheusConfig)Config.getInstance().getJsonObjectConfig(CONFIG_NAME, PrometheusConfig.class);
+        createCardinalityLimiter();
     }
 
     private void incCounterForStatusCode(int statusCode, List<String> labels,  List<String> labelValues) {
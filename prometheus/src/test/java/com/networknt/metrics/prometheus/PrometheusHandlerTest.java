@@ -18,6 +18,10 @@ package com.networknt.metrics.prometheus;
 
 import com.networknt.client.Http2Client;
 import com.networknt.exception.ClientException;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Summary;
 import io.undertow.Handlers;
 import io.undertow.Undertow;
 import io.undertow.client.ClientConnection;
@@ -37,6 +41,7 @@ import org.xnio.IoUtils;
 import org.xnio.OptionMap;
 
 import java.net.URI;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -113,4 +118,44 @@ public class PrometheusHandlerTest {
         Assert.assertEquals("test", body);
     }
 
+    @Test
+    public void testRemoveMatching() {
+        Counter counter = Counter.build().name("remove_total").help("test").labelNames("endpoint", "clientId").create();
+        counter.labels("/v1/pets@get", "client1").inc();
+        counter.labels("/v1/pets@post", "client1").inc();
+        counter.labels("/v1/pets@get", "client2").inc();
+        Summary summary = Summary.build().name("remove_seconds").help("test").labelNames("endpoint", "clientId").quantile(0.5, 0.05).create();
+        summary.labels("/v1/pets@get", "client1").observe(1);
+        summary.labels("/v1/pets@get", "client2").observe(1);
+
+        PrometheusHandler.removeMatching(counter, "clientId", "client1");
+        PrometheusHandler.removeMatching(summary, "clientId", "client1");
+        // only the series of the evicted client are removed, and the others are not reset.
+        List<Collector.MetricFamilySamples.Sample> samples = counter.collect().get(0).samples;
+        Assert.assertEquals("remove_total", samples.get(0).name);
+        Assert.assertEquals("client2", samples.get(0).labelValues.get(1));
+        Assert.assertEquals(1.0, samples.get(0).value, 0);
+        for(Collector.MetricFamilySamples.Sample sample : samples) {
+            Assert.assertEquals("client2", sample.labelValues.get(1));
+        }
+        for(Collector.MetricFamilySamples.Sample sample : summary.collect().get(0).samples) {
+            Assert.assertEquals("client2", sample.labelValues.get(1));
+        }
+    }
+
+    @Test
+    public void testMaxTagValuesDefault() {
+        // the same as the default in the prometheus.yml, so the limiter is not turned off without the key.
+        Assert.assertEquals(100, new PrometheusConfig().getMaxTagValues());
+    }
+
+    @Test
+    public void testSeriesGaugesShared() {
+        PrometheusHandler handler = new PrometheusHandler();
+        handler.reload();
+        // the gauges are registered once and read the shared state of all the handler instances.
+        Assert.assertNotNull(CollectorRegistry.defaultRegistry.getSampleValue(PrometheusHandler.METRIC_SERIES));
+        Assert.assertEquals(0.0, CollectorRegistry.defaultRegistry.getSampleValue(PrometheusHandler.TAG_FOLDED,
+                new String[]{"dimension"}, new String[]{"clientId"}), 0);
+    }
 }
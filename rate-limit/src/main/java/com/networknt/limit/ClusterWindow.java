@@ -0,0 +1,150 @@
+package com.networknt.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed window counter for one LimitQuota that is shared by all the instances of a service through a
+ * CounterStore. The request path only consumes local tokens with compare-and-set. The RateLimiter pushes
+ * the locally allowed requests to the store in the background and gives the window its share of the
+ * remaining cluster quota until the next sync.
+ *
+ * When a new window starts, each instance gets an equal share of the quota before the first sync. The
+ * requests that are allowed between the last sync of a window and the start of the next one are counted
+ * in the next window, so the cluster errs on the side of rejecting.
+ */
+public class ClusterWindow implements QuotaWindow {
+    private final String key;
+    private final LimitQuota quota;
+    private final long window;
+    // the fixed window that the tokens and the pending count belong to.
+    private final AtomicLong windowIndex = new AtomicLong(-1);
+    // the requests that this instance can still allow in the window without the store.
+    private final AtomicLong tokens = new AtomicLong();
+    // the requests allowed locally that are not pushed to the store yet.
+    private final AtomicLong pending = new AtomicLong();
+    // the cluster count of the window at the last sync.
+    private volatile long clusterCount;
+    private volatile int nodes;
+
+    public ClusterWindow(String key, LimitQuota quota, int nodes) {
+        this.key = key;
+        this.quota = quota;
+        this.window = SlidingWindow.getWindow(quota.unit);
+        this.nodes = Math.max(1, nodes);
+    }
+
+    @Override
+    public LimitQuota getQuota() {
+        return quota;
+    }
+
+    @Override
+    public long getWindow() {
+        return window;
+    }
+
+    @Override
+    public boolean tryAcquire(long now) {
+        long index = now / window;
+        if(windowIndex.get() < index) roll(index);
+        for(;;) {
+            long available = tokens.get();
+            if(available <= 0) return false;
+            if(tokens.compareAndSet(available, available - 1)) {
+                pending.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void release(long now) {
+        if(windowIndex.get() == now / window) {
+            pending.decrementAndGet();
+            tokens.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getCount(long now) {
+        return windowIndex.get() == now / window ? clusterCount + pending.get() : 0;
+    }
+
+    @Override
+    public long getResetSeconds(long now) {
+        return (now / window + 1) * window - now;
+    }
+
+    /**
+     * @param now current epoch second
+     * @return true if the window has been used in the current fixed window and needs to be synced
+     */
+    boolean isActive(long now) {
+        return windowIndex.get() == now / window;
+    }
+
+    /**
+     * @return the fixed window index that the pending count belongs to
+     */
+    long getIndex() {
+        return windowIndex.get();
+    }
+
+    /**
+     * @param index the fixed window index
+     * @return the key of the counter in the CounterStore
+     */
+    String getCounterKey(long index) {
+        return key + LimitConfig.SEPARATE_KEY + window + LimitConfig.SEPARATE_KEY + index;
+    }
+
+    /**
+     * Take the locally allowed requests to push them to the store.
+     *
+     * @return the number of requests since the last sync
+     */
+    long drainPending() {
+        return pending.getAndSet(0);
+    }
+
+    /**
+     * Put back the drained requests if the store cannot be reached so that they are pushed in the next sync.
+     *
+     * @param count the number of requests returned by drainPending
+     */
+    void restorePending(long count) {
+        pending.addAndGet(count);
+    }
+
+    /**
+     * Update the window with the cluster count returned by the store and recalculate the local tokens.
+     *
+     * @param index the fixed window index that is synced
+     * @param count the cluster count of the window
+     * @param nodes the number of live instances
+     */
+    synchronized void update(long index, long count, int nodes) {
+        this.nodes = Math.max(1, nodes);
+        if(windowIndex.get() != index) return;
+        clusterCount = count;
+        long remaining = quota.value - count - pending.get();
+        tokens.set(remaining <= 0 ? 0 : share(remaining));
+    }
+
+    /**
+     * Start a new fixed window. The tokens are reset before the new index is published, so a request that
+     * sees the new index never consumes the tokens left from the previous window.
+     */
+    private synchronized void roll(long index) {
+        if(index > windowIndex.get()) {
+            clusterCount = 0;
+            tokens.set(share(quota.value));
+            windowIndex.set(index);
+        }
+    }
+
+    private long share(long remaining) {
+        int n = nodes;
+        return (remaining + n - 1) / n;
+    }
+}
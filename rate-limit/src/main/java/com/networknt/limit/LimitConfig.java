@@ -42,13 +42,21 @@ public class LimitConfig {
     private static final String ADDRESS = "address";
     private static final String CLIENT = "client";
     private static final String USER = "user";
+    private static final String MAX_KEYS = "maxKeys";
+    private static final String COUNTER_STORE = "counterStore";
+    private static final String SYNC_INTERVAL = "syncInterval";
     public static final String SEPARATE_KEY = "#";
+    public static final int DEFAULT_MAX_KEYS = 100000;
+    public static final int DEFAULT_SYNC_INTERVAL = 200;
 
 
     boolean enabled;
     int concurrentRequest;
     int queueSize;
     int errorCode;
+    int maxKeys;
+    String counterStore;
+    int syncInterval;
     String clientIdKeyResolver;
     String addressKeyResolver;
     String userIdKeyResolver;
@@ -125,6 +133,30 @@ public class LimitConfig {
         this.errorCode = errorCode;
     }
 
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    public void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public String getCounterStore() {
+        return counterStore;
+    }
+
+    public void setCounterStore(String counterStore) {
+        this.counterStore = counterStore;
+    }
+
+    public int getSyncInterval() {
+        return syncInterval;
+    }
+
+    public void setSyncInterval(int syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
     public String getClientIdKeyResolver() {
         return clientIdKeyResolver;
     }
@@ -217,6 +249,24 @@ public class LimitConfig {
             // set default value to 503.
             errorCode = 503;
         }
+        object = mappedConfig.get(MAX_KEYS);
+        if (object != null) {
+            maxKeys = (int) object;
+        } else {
+            maxKeys = DEFAULT_MAX_KEYS;
+        }
+        object = mappedConfig.get(COUNTER_STORE);
+        if (object != null && !((String) object).isBlank()) {
+            counterStore = (String) object;
+        } else {
+            counterStore = null;
+        }
+        object = mappedConfig.get(SYNC_INTERVAL);
+        if (object != null) {
+            syncInterval = (int) object;
+        } else {
+            syncInterval = DEFAULT_SYNC_INTERVAL;
+        }
 
         object = getMappedConfig().get(IS_ENABLED);
         if(object != null && (Boolean) object) {
@@ -22,6 +22,7 @@ import com.networknt.handler.Handler;
 import com.networknt.handler.MiddlewareHandler;
 import com.networknt.status.HttpStatus;
 import com.networknt.utility.Constants;
+import com.networknt.utility.GaugeRegistry;
 import com.networknt.utility.ModuleRegistry;
 import io.undertow.Handlers;
 import io.undertow.server.HttpHandler;
@@ -40,7 +41,19 @@ public class LimitHandler implements MiddlewareHandler {
     static final Logger logger = LoggerFactory.getLogger(LimitHandler.class);
 
     private volatile HttpHandler next;
-    private static RateLimiter rateLimiter;
+    private static volatile RateLimiter rateLimiter;
+
+    static {
+        // the gauges read the current limiter, so they are registered once and follow the limiter after a reload.
+        GaugeRegistry.register("rate_limit_keys", null, () -> {
+            RateLimiter limiter = rateLimiter;
+            return limiter == null ? 0L : limiter.getKeyCount();
+        });
+        GaugeRegistry.register("rate_limit_evictions", null, () -> {
+            RateLimiter limiter = rateLimiter;
+            return limiter == null ? 0L : limiter.getEvictionCount();
+        });
+    }
     private LimitConfig config;
     private static final ObjectMapper mapper = Config.getInstance().getMapper();
 
@@ -84,6 +97,15 @@ public class LimitHandler implements MiddlewareHandler {
         }
     }
 
+    /**
+     * Get the current rate limiter to report the number of live keys and evictions.
+     *
+     * @return RateLimiter
+     */
+    public static RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
     @Override
     public HttpHandler getNext() {
         return next;
@@ -110,6 +132,7 @@ public class LimitHandler implements MiddlewareHandler {
     public void reload() {
         config.reload();
         try {
+            if (rateLimiter != null) rateLimiter.shutdown();
             rateLimiter = new RateLimiter(config);
         } catch (Exception e) {
             logger.error("Failed to recreate RateLimiter with reloaded config.", e);
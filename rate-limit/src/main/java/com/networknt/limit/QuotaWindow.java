@@ -0,0 +1,46 @@
+package com.networknt.limit;
+
+/**
+ * The counter of one LimitQuota for one rate limit key. The RateLimiter keeps one window per quota
+ * of the key and a request is only allowed if all the windows of the key can acquire it.
+ *
+ * All the methods take the current epoch second so that the caller reads the clock once per request.
+ */
+public interface QuotaWindow {
+    /**
+     * Try to count one request in the window.
+     *
+     * @param now current epoch second
+     * @return true if the request is within the quota and has been counted
+     */
+    boolean tryAcquire(long now);
+
+    /**
+     * Give back a request counted by tryAcquire when another quota for the same key has rejected it.
+     *
+     * @param now the same epoch second passed to tryAcquire
+     */
+    void release(long now);
+
+    /**
+     * @param now current epoch second
+     * @return the number of requests counted in the window
+     */
+    long getCount(long now);
+
+    /**
+     * @param now current epoch second
+     * @return the number of seconds until requests are allowed again
+     */
+    long getResetSeconds(long now);
+
+    /**
+     * @return the quota of the window
+     */
+    LimitQuota getQuota();
+
+    /**
+     * @return the length of the window in seconds
+     */
+    long getWindow();
+}
@@ -1,34 +1,50 @@
 package com.networknt.limit;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.networknt.exception.FrameworkException;
 import com.networknt.limit.key.KeyResolver;
+import com.networknt.limit.store.CounterStore;
 import com.networknt.status.Status;
 import com.networknt.utility.Constants;
+import com.networknt.utility.PathPrefixTrie;
 
 import io.undertow.server.HttpServerExchange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *  Rate limit logic for light-4j framework. The config will define in the limit.yml config file.
  *
  * By default Rate limit will handle on the server(service) level. But framework support client and address level limitation
  *
+ * Each key has one SlidingWindow per configured LimitQuota and all the quotas must allow the request. The windows
+ * are updated with compare-and-set only, so concurrent requests are not serialized on the limiter instance.
+ *
+ * If a counterStore is configured, the quotas are enforced across all the instances with a ClusterWindow per quota
+ * instead. The counts are pushed to the store in batches from a background thread every syncInterval, so the request
+ * path never waits for the store.
+ *
  * @author Gavin Chen
  */
 public class RateLimiter {
     private static final String LIMIT_KEY_NOT_FOUND = "ERR10073";
     protected LimitConfig config;
 
-    private Map<String, Map<Long, AtomicLong>> serverTimeMap = new ConcurrentHashMap<>();
-
-    private Map<String, Map<TimeUnit, Map<Long, AtomicLong>>> directTimeMap = new ConcurrentHashMap<>();
+    private static final RateLimitResponse ALLOWED = new RateLimitResponse(true, null);
+    // sliding windows for the path prefixes configured in the server section. It is not changed after construction.
+    private final Map<String, QuotaWindow[]> serverWindowMap = new LinkedHashMap<>();
+    // the server path prefixes compiled for the longest prefix lookup on the request path.
+    private final PathPrefixTrie<QuotaWindow[]> serverWindowTrie;
+    // sliding windows for address, client and user keys and for the server paths without a configured prefix. The
+    // keys are bounded by maxKeys and evicted once idle for the longest window, so the heap doesn't grow with clients.
+    private final Cache<String, QuotaWindow[]> directWindowCache;
     private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
     static final String ADDRESS_TYPE = "address";
     static final String CLIENT_TYPE = "client";
@@ -38,6 +54,11 @@ public class RateLimiter {
     private KeyResolver addressKeyResolver;
     private KeyResolver userIdKeyResolver;
 
+    // the store to share the counters across the cluster. It is null if the rate limit is per instance.
+    private final CounterStore counterStore;
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile int nodes = 1;
+    private ScheduledExecutorService syncExecutor;
 
     /**
      * Load config and initial model by Rate limit key.
@@ -45,54 +66,52 @@ public class RateLimiter {
      * @throws Exception runtime exception
      */
     public RateLimiter(LimitConfig config) throws Exception {
+        this(config, config.getCounterStore() == null ? null : (CounterStore)Class.forName(config.getCounterStore()).getDeclaredConstructor().newInstance());
+    }
+
+    /**
+     * Create a rate limiter that shares the counters with other instances through the counter store.
+     * @param config LimitConfig object
+     * @param counterStore CounterStore object or null to limit per instance
+     * @throws Exception runtime exception
+     */
+    public RateLimiter(LimitConfig config, CounterStore counterStore) throws Exception {
         this.config = config;
+        this.counterStore = counterStore;
+        if (counterStore != null) {
+            // register this instance so that the other instances reduce their share before the first sync.
+            counterStore.addAndGet(nodeId, Collections.emptyMap(), 0);
+            nodes = counterStore.getNodeCount();
+        }
+        this.directWindowCache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxKeys() > 0 ? config.getMaxKeys() : LimitConfig.DEFAULT_MAX_KEYS)
+                .expireAfter(new IdleExpiry())
+                .recordStats()
+                .build();
         if (LimitKey.SERVER.equals(config.getKey())) {
             if (this.config.getServer()!=null && !this.config.getServer().isEmpty()) {
-                this.config.getServer().forEach((k,v)->serverTimeMap.put(k, new ConcurrentHashMap<>()));
+                this.config.getServer().forEach((k,v)->serverWindowMap.put(k, new QuotaWindow[] {createWindow(k, 0, v)}));
             }
         } else if (LimitKey.ADDRESS.equals(config.getKey())) {
-            if (this.config.getAddress()!=null) {
-                if (this.config.getAddress().getDirectMaps()!=null && !this.config.getAddress().getDirectMaps().isEmpty()) {
-                    this.config.getAddress().getDirectMaps().forEach((k,v)->{
-                        Map<TimeUnit, Map<Long, AtomicLong>> directMap = new ConcurrentHashMap<>();
-                        v.forEach(i->{
-                            directMap.put(i.getUnit(), new ConcurrentHashMap<>());
-                        });
-                        directTimeMap.put(k, directMap);
-                    });
-                }
-            }
             String addressKey = this.config.getAddressKeyResolver()==null? "com.networknt.limit.key.RemoteAddressKeyResolver":this.config.getAddressKeyResolver();
             addressKeyResolver = (KeyResolver)Class.forName(addressKey).getDeclaredConstructor().newInstance();
         } else if (LimitKey.CLIENT.equals(config.getKey())) {
-            if (this.config.getClient()!=null) {
-                if (this.config.getClient().getDirectMaps()!=null && !this.config.getClient().getDirectMaps().isEmpty()) {
-                    this.config.getClient().getDirectMaps().forEach((k,v)->{
-                        Map<TimeUnit, Map<Long, AtomicLong>> directMap = new ConcurrentHashMap<>();
-                        v.forEach(i->{
-                            directMap.put(i.getUnit(), new ConcurrentHashMap<>());
-                        });
-                        directTimeMap.put(k, directMap);
-                    });
-                }
-            }
             String clientIdKey = this.config.getClientIdKeyResolver()==null? "com.networknt.limit.key.JwtClientIdKeyResolver":this.config.getClientIdKeyResolver();
             clientIdKeyResolver = (KeyResolver)Class.forName(clientIdKey).getDeclaredConstructor().newInstance();
         } else if (LimitKey.USER.equals(config.getKey())) {
-            if (this.config.getUser()!=null) {
-                if (this.config.getUser().getDirectMaps()!=null && !this.config.getUser().getDirectMaps().isEmpty()) {
-                    this.config.getUser().getDirectMaps().forEach((k,v)->{
-                        Map<TimeUnit, Map<Long, AtomicLong>> directMap = new ConcurrentHashMap<>();
-                        v.forEach(i->{
-                            directMap.put(i.getUnit(), new ConcurrentHashMap<>());
-                        });
-                        directTimeMap.put(k, directMap);
-                    });
-                }
-            }
             String userIdKey = this.config.getUserIdKeyResolver()==null? "com.networknt.limit.key.JwtUserIdKeyResolver":this.config.getUserIdKeyResolver();
             userIdKeyResolver = (KeyResolver)Class.forName(userIdKey).getDeclaredConstructor().newInstance();
         }
+        serverWindowTrie = PathPrefixTrie.of(serverWindowMap);
+        if (counterStore != null) {
+            long interval = config.getSyncInterval() > 0 ? config.getSyncInterval() : LimitConfig.DEFAULT_SYNC_INTERVAL;
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "rate-limit-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncExecutor.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+        }
     }
 
     public RateLimitResponse handleRequest(final HttpServerExchange exchange, LimitKey limitKey) {
@@ -139,83 +158,29 @@ public class RateLimiter {
      * @return RateLimitResponse response
      */
     protected RateLimitResponse isAllowDirect(String directKey, String path, String type) {
-        long currentTimeWindow = Instant.now().getEpochSecond();
-        Map<TimeUnit, Map<Long, AtomicLong>> localTimeMap;
-
-        String keyWithPath = directKey + LimitConfig.SEPARATE_KEY + path;
-        List<LimitQuota> rateLimit;
-        String mapKey = directKey;
+        LimitConfig.RateLimitSet rateLimitSet;
         if (ADDRESS_TYPE.equalsIgnoreCase(type)) {
-            if (config.getAddress() != null && config.getAddress().directMaps.containsKey(keyWithPath)) {
-                rateLimit = config.getAddress().directMaps.get(keyWithPath);
-                mapKey = keyWithPath;
-            } else if (config.getAddress() != null && config.getAddress().directMaps.containsKey(directKey)) {
-                rateLimit = config.getAddress().directMaps.get(directKey);
-            } else {
-                rateLimit = config.rateLimit;
-                Map<TimeUnit, Map<Long, AtomicLong>> directMap = new ConcurrentHashMap<>();
-
-                this.config.getRateLimit().forEach(i->{
-                    directMap.put(i.getUnit(), new ConcurrentHashMap<>());
-                });
-                directTimeMap.put(mapKey, directMap);
-            }
+            rateLimitSet = config.getAddress();
         } else if(CLIENT_TYPE.equalsIgnoreCase(type)) {
-            if (config.getClient() != null && config.getClient().directMaps.containsKey(keyWithPath)) {
-                rateLimit = config.getClient().directMaps.get(keyWithPath);
-                mapKey = keyWithPath;
-            } else if (config.getClient() != null && config.getClient().directMaps.containsKey(directKey)) {
-                rateLimit = config.getClient().directMaps.get(directKey);
-            } else {
-                rateLimit = config.rateLimit;
-                Map<TimeUnit, Map<Long, AtomicLong>> directMap = new ConcurrentHashMap<>();
-                synchronized(this) {
-                    this.config.getRateLimit().forEach(i->{
-                        directMap.put(i.getUnit(), new ConcurrentHashMap<>());
-                    });
-                    directTimeMap.put(mapKey, directMap);
-                }
-            }
+            rateLimitSet = config.getClient();
         } else {
-            if (config.getUser() != null && config.getUser().directMaps.containsKey(keyWithPath)) {
-                rateLimit = config.getUser().directMaps.get(keyWithPath);
+            rateLimitSet = config.getUser();
+        }
+        Map<String, List<LimitQuota>> directMaps = rateLimitSet == null ? null : rateLimitSet.getDirectMaps();
+        List<LimitQuota> rateLimit = null;
+        String mapKey = directKey;
+        if (directMaps != null) {
+            String keyWithPath = directKey + LimitConfig.SEPARATE_KEY + path;
+            rateLimit = directMaps.get(keyWithPath);
+            if (rateLimit != null) {
                 mapKey = keyWithPath;
-            } else if (config.getUser() != null && config.getUser().directMaps.containsKey(directKey)) {
-                rateLimit = config.getUser().directMaps.get(directKey);
             } else {
-                rateLimit = config.rateLimit;
-                Map<TimeUnit, Map<Long, AtomicLong>> directMap = new ConcurrentHashMap<>();
-                synchronized(this) {
-                    this.config.getRateLimit().forEach(i->{
-                        directMap.put(i.getUnit(), new ConcurrentHashMap<>());
-                    });
-                    directTimeMap.put(mapKey, directMap);
-                }
+                rateLimit = directMaps.get(directKey);
             }
         }
-        localTimeMap = directTimeMap.get(mapKey);
-        synchronized(this) {
-            for (LimitQuota limitQuota: rateLimit) {
-                Map<Long, AtomicLong> timeMap =  localTimeMap.get(limitQuota.getUnit());
-                if (timeMap.isEmpty()) {
-                    timeMap.put(currentTimeWindow, new AtomicLong(1L));
-                    return new RateLimitResponse(true, null);
-                } else {
-                    Long countInOverallTime = removeOldEntriesForUser(currentTimeWindow, timeMap, limitQuota.unit);
-                    if (countInOverallTime < limitQuota.value) {
-                        //Handle new time windows
-                        Long newCount = timeMap.getOrDefault(currentTimeWindow, new AtomicLong(0)).longValue() + 1;
-                        timeMap.put(currentTimeWindow, new AtomicLong(newCount));
-                        logger.debug("CurrentTimeWindow:" + currentTimeWindow +" Result:true "+ " Count:"+countInOverallTime);
-                        return new RateLimitResponse(true, null);
-                    } else {
-                        String reset = getRateLimitReset(currentTimeWindow, timeMap, limitQuota);
-                        return new RateLimitResponse(false, buildHeaders(countInOverallTime, limitQuota, reset));
-                    }
-                }
-            }
-        }
-        return null;
+        final List<LimitQuota> quotas = rateLimit == null ? config.getRateLimit() : rateLimit;
+        QuotaWindow[] windows = directWindowCache.get(mapKey, k -> createWindows(k, quotas));
+        return acquire(windows);
     }
 
     /**
@@ -224,116 +189,148 @@ public class RateLimiter {
      * @return RateLimitResponse rate limit response
      */
     public RateLimitResponse isAllowByServer(String path) {
-        long currentTimeWindow = Instant.now().getEpochSecond();
-        Map<Long, AtomicLong> timeMap = lookupServerTimeMap(path);
-        if(timeMap == null) {
-            timeMap = new ConcurrentHashMap<>();
-            synchronized(this) {
-                serverTimeMap.put(path, timeMap);
-            }
-        }
-        LimitQuota limitQuota = config.getServer() != null ? lookupLimitQuota(path) : null;
-        if(limitQuota == null) {
-            limitQuota = this.config.getRateLimit().get(0);
+        QuotaWindow[] windows = lookupServerWindows(path);
+        if(windows == null) {
+            windows = directWindowCache.get(path, k -> createWindows(k, config.getRateLimit()));
         }
-        synchronized(this) {
-            if (timeMap.isEmpty()) {
-                timeMap.put(currentTimeWindow, new AtomicLong(1L));
-            } else {
-                Long countInOverallTime = removeOldEntriesForUser(currentTimeWindow, timeMap, limitQuota.unit);
-                if (countInOverallTime < limitQuota.value) {
-                    //Handle new time windows
-                    Long newCount = timeMap.getOrDefault(currentTimeWindow, new AtomicLong(0)).longValue() + 1;
-                    timeMap.put(currentTimeWindow, new AtomicLong(newCount));
-                    logger.debug("CurrentTimeWindow:" + currentTimeWindow +" Result:true "+ " Count:"+countInOverallTime);
-                    return new RateLimitResponse(true, null);
-                } else {
-                    String reset = getRateLimitReset(currentTimeWindow, timeMap, limitQuota);
-                    return new RateLimitResponse(false, buildHeaders(countInOverallTime, limitQuota, reset));
+        return acquire(windows);
+    }
+
+    /**
+     * Count the request in all the windows of the key. If any of the quotas is reached, the request is
+     * given back to the windows that have counted it and the headers of the rejecting quota are returned.
+     *
+     * @param windows sliding windows of the key
+     * @return RateLimitResponse rate limit response
+     */
+    private RateLimitResponse acquire(QuotaWindow[] windows) {
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < windows.length; i++) {
+            QuotaWindow window = windows[i];
+            if (!window.tryAcquire(now)) {
+                for (int j = 0; j < i; j++) {
+                    windows[j].release(now);
                 }
+                long count = window.getCount(now);
+                if(logger.isDebugEnabled()) logger.debug("CurrentTimeWindow:" + now +" Result:false "+ " Count:" + count);
+                return new RateLimitResponse(false, buildHeaders(count, window.getQuota(), window.getResetSeconds(now) + "s"));
             }
         }
-        return new RateLimitResponse(true, null);
+        return ALLOWED;
+    }
+
+    /**
+     * @return the number of keys with rate limit counters in memory
+     */
+    public long getKeyCount() {
+        directWindowCache.cleanUp();
+        return directWindowCache.estimatedSize();
+    }
+
+    /**
+     * @return the number of keys evicted because maxKeys is reached or they have been idle
+     */
+    public long getEvictionCount() {
+        return directWindowCache.stats().evictionCount();
     }
 
-    private Map<Long, AtomicLong> lookupServerTimeMap(String path) {
-        String prefix = null;
-        for(String s: serverTimeMap.keySet()) {
-            if(path.startsWith(s)) {
-                prefix = s;
-                break;
+    private QuotaWindow[] lookupServerWindows(String path) {
+        return serverWindowTrie.get(path);
+    }
+
+    private QuotaWindow[] createWindows(String key, List<LimitQuota> quotas) {
+        QuotaWindow[] windows = new QuotaWindow[quotas.size()];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = createWindow(key, i, quotas.get(i));
+        }
+        return windows;
+    }
+
+    private QuotaWindow createWindow(String key, int quotaIndex, LimitQuota quota) {
+        // the quota index is part of the counter key so that two quotas of the same unit on a key are counted separately.
+        return counterStore == null ? new SlidingWindow(quota) : new ClusterWindow(key + LimitConfig.SEPARATE_KEY + quotaIndex, quota, nodes);
+    }
+
+    /**
+     * Push the requests allowed by this instance since the last sync to the counter store in one batch and
+     * update the local tokens of each window with the cluster counts. It runs on the sync thread only.
+     */
+    void sync() {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Long> deltas = new HashMap<>();
+        Map<String, ClusterWindow> synced = new HashMap<>();
+        Map<String, Long> indexes = new HashMap<>();
+        long expireSeconds = 0;
+        List<QuotaWindow[]> keys = new ArrayList<>(serverWindowMap.values());
+        keys.addAll(directWindowCache.asMap().values());
+        for (QuotaWindow[] windows : keys) {
+            for (QuotaWindow window : windows) {
+                if (window instanceof ClusterWindow && ((ClusterWindow) window).isActive(now)) {
+                    ClusterWindow clusterWindow = (ClusterWindow) window;
+                    long index = clusterWindow.getIndex();
+                    String counterKey = clusterWindow.getCounterKey(index);
+                    deltas.put(counterKey, clusterWindow.drainPending());
+                    synced.put(counterKey, clusterWindow);
+                    indexes.put(counterKey, index);
+                    expireSeconds = Math.max(expireSeconds, clusterWindow.getWindow());
+                }
             }
         }
-        if(prefix == null) {
-            return null;
-        } else {
-            return serverTimeMap.get(prefix);
+        try {
+            Map<String, Long> counts = counterStore.addAndGet(nodeId, deltas, expireSeconds);
+            nodes = counterStore.getNodeCount();
+            synced.forEach((k, w) -> {
+                Long count = counts.get(k);
+                if (count != null) w.update(indexes.get(k), count, nodes);
+            });
+        } catch (Exception e) {
+            logger.error("Failed to sync the rate limit counters with the counter store.", e);
+            synced.forEach((k, w) -> w.restorePending(deltas.get(k)));
         }
+    }
 
+    /**
+     * Stop the background sync with the counter store. It is called when the limiter is replaced on reload.
+     */
+    public void shutdown() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+        }
     }
 
-    private LimitQuota lookupLimitQuota(String path) {
-        String prefix = null;
-        for(String s: this.config.getServer().keySet()) {
-            if(path.startsWith(s)) {
-                prefix = s;
-                break;
+    /**
+     * A key only expires after it is idle for the longest window of its quotas. At that time all its windows
+     * are empty, so the eviction doesn't give a client more than its quota.
+     */
+    private static class IdleExpiry implements Expiry<String, QuotaWindow[]> {
+        @Override
+        public long expireAfterCreate(String key, QuotaWindow[] windows, long currentTime) {
+            long window = 1;
+            for (QuotaWindow w : windows) {
+                window = Math.max(window, w.getWindow());
             }
+            return TimeUnit.SECONDS.toNanos(window);
         }
-        if(prefix == null) {
-            return null;
-        } else {
-            return this.config.getServer().get(prefix);
+
+        @Override
+        public long expireAfterUpdate(String key, QuotaWindow[] windows, long currentTime, long currentDuration) {
+            return currentDuration;
         }
-    }
 
-    private String getRateLimitReset(Long currentTimeWindow, Map<Long, AtomicLong> timeMap,  LimitQuota limitQuota) {
-        String res = null;
-        if (TimeUnit.SECONDS.equals(limitQuota.unit)){
-            res = "1s";
-        } else {
-            Optional<Long> firstKey = timeMap.keySet().stream().findFirst();
-            long reset = getWindow(limitQuota.unit) + firstKey.get() - currentTimeWindow;
-            res = reset + "s";
+        @Override
+        public long expireAfterRead(String key, QuotaWindow[] windows, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, windows, currentTime);
         }
-        return res;
     }
 
     private Map<String, String> buildHeaders(Long countInOverallTime, LimitQuota limitQuota, String reset) {
         Map<String, String> headers = new HashMap<>();
         headers.put(Constants.RATELIMIT_LIMIT, limitQuota.value + "/" + limitQuota.unit);
-        headers.put(Constants.RATELIMIT_REMAINING, String.valueOf(limitQuota.value - countInOverallTime));
+        headers.put(Constants.RATELIMIT_REMAINING, String.valueOf(Math.max(0, limitQuota.value - countInOverallTime)));
         if (reset!=null) {
             headers.put(Constants.RATELIMIT_RESET, reset);
         }
 
         return headers;
     }
-
-    private  long removeOldEntriesForUser( long currentTimeWindow, Map<Long, AtomicLong> timeWindowVSCountMap, TimeUnit unit)
-    {
-        List <Long> oldEntriesToBeDeleted=new ArrayList<>();
-        long overallCount=0L;
-        for (Long timeWindow : timeWindowVSCountMap.keySet()) {
-            //Mark old entries (Entries older than the oldest valid time window within the time limit) for deletion
-            if ((currentTimeWindow - timeWindow) >= getWindow(unit))
-                oldEntriesToBeDeleted.add(timeWindow);
-            else
-                overallCount+=timeWindowVSCountMap.get(timeWindow).longValue();
-        }
-        timeWindowVSCountMap.keySet().removeAll(oldEntriesToBeDeleted);
-        return overallCount;
-    }
-
-    private int getWindow(TimeUnit unit) {
-        if (TimeUnit.DAYS.equals(unit)) {
-            return 24*60*60;
-        } else if (TimeUnit.HOURS.equals(unit)) {
-            return 60*60;
-        } else if (TimeUnit.MINUTES.equals(unit)) {
-            return 60;
-        } else {
-            return 1;
-        }
-    }
 }
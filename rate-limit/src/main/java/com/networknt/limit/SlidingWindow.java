@@ -0,0 +1,110 @@
+package com.networknt.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free sliding window counter for one LimitQuota. The window is split into a fixed number of
+ * slots kept in a ring buffer. Each slot packs the index of the time slot it belongs to in the high 32
+ * bits and the request count in the low 32 bits of a single long, so that rolling a slot over to a new
+ * time slot and incrementing it is one compare-and-set. No locks are taken and no objects are allocated
+ * on the hot path, so the throughput scales with the number of IO threads.
+ *
+ * For second and minute quotas, each slot is one second so the window is exact. For hour and day quotas,
+ * the window is split into 60 slots and expired requests are released one slot at a time.
+ */
+public class SlidingWindow implements QuotaWindow {
+    private static final int MAX_SLOTS = 60;
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    final LimitQuota quota;
+    private final long window;
+    private final long slotSize;
+    private final int slots;
+    private final AtomicLongArray ring;
+
+    public SlidingWindow(LimitQuota quota) {
+        this.quota = quota;
+        this.window = getWindow(quota.unit);
+        this.slots = (int)Math.min(window, MAX_SLOTS);
+        this.slotSize = window / slots;
+        this.ring = new AtomicLongArray(slots);
+    }
+
+    @Override
+    public LimitQuota getQuota() {
+        return quota;
+    }
+
+    @Override
+    public long getWindow() {
+        return window;
+    }
+
+    @Override
+    public boolean tryAcquire(long now) {
+        long current = now / slotSize;
+        int i = (int)(current % slots);
+        for(;;) {
+            // read the slot before the total so that a successful CAS proves the total is still valid
+            long old = ring.get(i);
+            if(count(current) >= quota.value) return false;
+            long next = (old >>> 32) == current ? old + 1 : (current << 32) | 1L;
+            if(ring.compareAndSet(i, old, next)) return true;
+        }
+    }
+
+    @Override
+    public void release(long now) {
+        long current = now / slotSize;
+        int i = (int)(current % slots);
+        for(;;) {
+            long old = ring.get(i);
+            if((old >>> 32) != current || (old & COUNT_MASK) == 0) return;
+            if(ring.compareAndSet(i, old, old - 1)) return;
+        }
+    }
+
+    @Override
+    public long getCount(long now) {
+        return count(now / slotSize);
+    }
+
+    @Override
+    public long getResetSeconds(long now) {
+        long current = now / slotSize;
+        long oldest = current;
+        for(int i = 0; i < slots; i++) {
+            long value = ring.get(i);
+            long slot = value >>> 32;
+            if((value & COUNT_MASK) > 0 && slot > current - slots && slot < oldest) {
+                oldest = slot;
+            }
+        }
+        return oldest * slotSize + window - now;
+    }
+
+    private long count(long current) {
+        long total = 0;
+        for(int i = 0; i < slots; i++) {
+            long value = ring.get(i);
+            long slot = value >>> 32;
+            if(slot <= current && slot > current - slots) {
+                total += value & COUNT_MASK;
+            }
+        }
+        return total;
+    }
+
+    static int getWindow(TimeUnit unit) {
+        if (TimeUnit.DAYS.equals(unit)) {
+            return 24*60*60;
+        } else if (TimeUnit.HOURS.equals(unit)) {
+            return 60*60;
+        } else if (TimeUnit.MINUTES.equals(unit)) {
+            return 60;
+        } else {
+            return 1;
+        }
+    }
+}
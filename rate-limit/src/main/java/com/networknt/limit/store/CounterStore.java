@@ -0,0 +1,29 @@
+package com.networknt.limit.store;
+
+import java.util.Map;
+
+/**
+ * A store shared by all the instances of a service to sum up the rate limit counters across the cluster.
+ * The RateLimiter never calls the store on the request path. Each instance accumulates its counts locally
+ * and pushes them in one batch per sync interval from a background thread. The returned cluster counts
+ * are used to give the instance its share of the remaining quota until the next sync.
+ *
+ * Implementations must be thread safe and have a public default constructor so that they can be created
+ * from the counterStore class name in limit.yml.
+ */
+public interface CounterStore {
+    /**
+     * Add the counts accumulated locally since the last sync to the cluster counters.
+     *
+     * @param nodeId the id of the instance. It is used to keep track of the live instances.
+     * @param deltas the local counts keyed by the counter key. A zero delta only reads the counter.
+     * @param expireSeconds the counters are not needed after this number of seconds.
+     * @return the cluster counts after adding the deltas keyed by the counter key
+     */
+    Map<String, Long> addAndGet(String nodeId, Map<String, Long> deltas, long expireSeconds);
+
+    /**
+     * @return the number of live instances that have synced with the store recently
+     */
+    int getNodeCount();
+}
@@ -0,0 +1,59 @@
+package com.networknt.limit.store;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A loopback CounterStore that keeps the counters in the JVM. It is used for tests and for a single
+ * instance, and several RateLimiter instances can share it to simulate a cluster.
+ */
+public class InMemoryCounterStore implements CounterStore {
+    private static final long DEFAULT_NODE_TIMEOUT = 10000;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Long> nodes = new ConcurrentHashMap<>();
+    private final long nodeTimeout;
+
+    public InMemoryCounterStore() {
+        this(DEFAULT_NODE_TIMEOUT);
+    }
+
+    /**
+     * @param nodeTimeout milliseconds after the last sync to consider a node is gone
+     */
+    public InMemoryCounterStore(long nodeTimeout) {
+        this.nodeTimeout = nodeTimeout;
+    }
+
+    @Override
+    public Map<String, Long> addAndGet(String nodeId, Map<String, Long> deltas, long expireSeconds) {
+        long now = System.currentTimeMillis();
+        nodes.put(nodeId, now);
+        counters.values().removeIf(c -> c.expireAt < now);
+        Map<String, Long> result = new HashMap<>();
+        long expireAt = now + expireSeconds * 1000;
+        deltas.forEach((k, v) -> {
+            Counter counter = counters.computeIfAbsent(k, key -> new Counter(expireAt));
+            result.put(k, counter.value.addAndGet(v));
+        });
+        return result;
+    }
+
+    @Override
+    public int getNodeCount() {
+        long now = System.currentTimeMillis();
+        nodes.values().removeIf(t -> now - t > nodeTimeout);
+        return Math.max(1, nodes.size());
+    }
+
+    private static class Counter {
+        final AtomicLong value = new AtomicLong();
+        final long expireAt;
+
+        Counter(long expireAt) {
+            this.expireAt = expireAt;
+        }
+    }
+}
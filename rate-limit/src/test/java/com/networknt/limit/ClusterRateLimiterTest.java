@@ -0,0 +1,104 @@
+package com.networknt.limit;
+
+import com.networknt.limit.store.InMemoryCounterStore;
+import com.networknt.utility.Constants;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Two rate limiters share an in-memory counter store to simulate two instances of a service. The sync
+ * is called directly instead of waiting for the background thread to make the test deterministic.
+ */
+public class ClusterRateLimiterTest {
+    private RateLimiter node1;
+    private RateLimiter node2;
+
+    @Before
+    public void setUp() throws Exception {
+        LimitConfig config = LimitConfig.load();
+        config.setKey(LimitKey.ADDRESS);
+        config.setRateLimit(Collections.singletonList(new LimitQuota("100/d")));
+        // sync manually in the test
+        config.setSyncInterval(Integer.MAX_VALUE);
+        InMemoryCounterStore store = new InMemoryCounterStore();
+        node1 = new RateLimiter(config, store);
+        node2 = new RateLimiter(config, store);
+    }
+
+    @After
+    public void tearDown() {
+        node1.shutdown();
+        node2.shutdown();
+    }
+
+    @Test
+    public void testQuotaSharedByNodes() {
+        node1.sync();
+        int allowed = call(node1, 60);
+        // each node gets half of the quota before the first sync.
+        Assert.assertEquals(50, allowed);
+        node1.sync();
+        allowed += call(node2, 60);
+        node2.sync();
+        node1.sync();
+        allowed += call(node1, 10);
+        allowed += call(node2, 10);
+        Assert.assertEquals(100, allowed);
+        RateLimitResponse response = node1.isAllowDirect("10.1.1.1", "/v1/pets", RateLimiter.ADDRESS_TYPE);
+        Assert.assertFalse(response.isAllow());
+        Assert.assertEquals("0", response.getHeaders().get(Constants.RATELIMIT_REMAINING));
+    }
+
+    @Test
+    public void testRemainingQuotaAfterSync() {
+        node1.sync();
+        Assert.assertEquals(20, call(node1, 20));
+        node1.sync();
+        Assert.assertEquals(1, call(node2, 1));
+        node2.sync();
+        // 79 left in the cluster and node2 gets half of it rounded up.
+        Assert.assertEquals(40, call(node2, 50));
+        Assert.assertEquals(0, call(node2, 1));
+    }
+
+    @Test
+    public void testQuotasOfSameUnitCountedSeparately() throws Exception {
+        LimitConfig config = LimitConfig.load();
+        config.setKey(LimitKey.ADDRESS);
+        config.setRateLimit(Arrays.asList(new LimitQuota("100/d"), new LimitQuota("40/d")));
+        config.setSyncInterval(Integer.MAX_VALUE);
+        Map<String, Long> pushed = new HashMap<>();
+        InMemoryCounterStore store = new InMemoryCounterStore() {
+            @Override
+            public Map<String, Long> addAndGet(String nodeId, Map<String, Long> deltas, long expireSeconds) {
+                pushed.putAll(deltas);
+                return super.addAndGet(nodeId, deltas, expireSeconds);
+            }
+        };
+        RateLimiter limiter = new RateLimiter(config, store);
+        try {
+            Assert.assertEquals(5, call(limiter, 5));
+            limiter.sync();
+            // each quota has its own counter in the store.
+            Assert.assertEquals(2, pushed.size());
+            for(long delta : pushed.values()) Assert.assertEquals(5, delta);
+        } finally {
+            limiter.shutdown();
+        }
+    }
+
+    private int call(RateLimiter limiter, int times) {
+        int allowed = 0;
+        for (int i = 0; i < times; i++) {
+            if (limiter.isAllowDirect("10.1.1.1", "/v1/pets", RateLimiter.ADDRESS_TYPE).isAllow()) allowed++;
+        }
+        return allowed;
+    }
+}
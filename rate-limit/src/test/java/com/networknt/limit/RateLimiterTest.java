@@ -135,4 +135,17 @@ public class RateLimiterTest {
         return rateLimiterAddress.isAllowDirect(address, "/v1/address", RateLimiter.ADDRESS_TYPE);
     }
 
+    @Test
+    public void testMaxKeys() throws Exception {
+        LimitConfig config = LimitConfig.load();
+        config.setKey(LimitKey.ADDRESS);
+        config.setMaxKeys(100);
+        RateLimiter limiter = new RateLimiter(config);
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(limiter.isAllowDirect("10.0." + (i / 256) + "." + (i % 256), "/v1/address", RateLimiter.ADDRESS_TYPE).isAllow());
+        }
+        Assert.assertTrue(limiter.getKeyCount() <= 100);
+        Assert.assertTrue(limiter.getEvictionCount() >= 9900);
+    }
+
 }
@@ -0,0 +1,77 @@
+package com.networknt.limit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SlidingWindowTest {
+
+    @Test
+    public void testSecondWindow() {
+        SlidingWindow window = new SlidingWindow(new LimitQuota("3/s"));
+        long now = 1000000L;
+        Assert.assertTrue(window.tryAcquire(now));
+        Assert.assertTrue(window.tryAcquire(now));
+        Assert.assertTrue(window.tryAcquire(now));
+        Assert.assertFalse(window.tryAcquire(now));
+        Assert.assertEquals(3, window.getCount(now));
+        Assert.assertEquals(1, window.getResetSeconds(now));
+        // next second starts a new window
+        Assert.assertTrue(window.tryAcquire(now + 1));
+        Assert.assertEquals(1, window.getCount(now + 1));
+    }
+
+    @Test
+    public void testMinuteWindowSlides() {
+        SlidingWindow window = new SlidingWindow(new LimitQuota("2/m"));
+        long now = 1000020L;
+        Assert.assertTrue(window.tryAcquire(now));
+        Assert.assertTrue(window.tryAcquire(now + 30));
+        Assert.assertFalse(window.tryAcquire(now + 59));
+        Assert.assertEquals(1, window.getResetSeconds(now + 59));
+        // the first request leaves the window after 60 seconds
+        Assert.assertTrue(window.tryAcquire(now + 60));
+        Assert.assertFalse(window.tryAcquire(now + 61));
+        Assert.assertEquals(2, window.getCount(now + 61));
+    }
+
+    @Test
+    public void testRelease() {
+        SlidingWindow window = new SlidingWindow(new LimitQuota("1/d"));
+        long now = 1000000L;
+        Assert.assertTrue(window.tryAcquire(now));
+        Assert.assertFalse(window.tryAcquire(now));
+        window.release(now);
+        Assert.assertEquals(0, window.getCount(now));
+        Assert.assertTrue(window.tryAcquire(now));
+    }
+
+    @Test
+    public void testConcurrentAcquire() throws Exception {
+        SlidingWindow window = new SlidingWindow(new LimitQuota("1000/h"));
+        long now = 1000000L;
+        Callable<Integer> task = () -> {
+            int allowed = 0;
+            for (int i = 0; i < 500; i++) {
+                if (window.tryAcquire(now)) allowed++;
+            }
+            return allowed;
+        };
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) tasks.add(task);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        int total = 0;
+        for (Future<Integer> future : executorService.invokeAll(tasks)) {
+            total += future.get();
+        }
+        executorService.shutdown();
+        Assert.assertEquals(1000, total);
+        Assert.assertEquals(1000, window.getCount(now));
+    }
+}
@@ -27,4 +27,19 @@ import java.util.List;
 public interface NotifyListener {
 
     void notify(URL registryUrl, List<URL> urls);
+
+    /**
+     * Notify the change of a service with the added, removed and changed instances since the last
+     * notification. The notifications of a service are delivered in order, and a burst of changes
+     * may be coalesced into one notification with the latest urls.
+     *
+     * The default implementation calls notify with the full list of the current urls. A listener that
+     * maintains its own state per instance can override it to apply the change only.
+     *
+     * @param registryUrl the url of the registry
+     * @param change the change of the service
+     */
+    default void notifyChange(URL registryUrl, ServiceChange change) {
+        notify(registryUrl, change.getUrls());
+    }
 }
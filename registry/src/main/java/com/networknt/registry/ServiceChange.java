@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.registry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The change of the instances of a service between two notifications. The instances are identified
+ * by host:port, so an instance with the same host:port and different parameters (e.g. tags) is
+ * reported as changed instead of removed and added.
+ *
+ * The full list of the current urls is always available so that a listener can still rebuild its
+ * state from scratch.
+ */
+public class ServiceChange {
+    private final String serviceName;
+    private final List<URL> urls;
+    private final List<URL> added;
+    private final List<URL> removed;
+    private final List<URL> changed;
+
+    private ServiceChange(String serviceName, List<URL> urls, List<URL> added, List<URL> removed, List<URL> changed) {
+        this.serviceName = serviceName;
+        this.urls = urls;
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * Compute the change from the previous urls to the current urls.
+     *
+     * @param serviceName the service name
+     * @param previous the urls of the last notification, null if the service is not notified yet
+     * @param current the current urls
+     * @return ServiceChange the change of the service
+     */
+    public static ServiceChange of(String serviceName, List<URL> previous, List<URL> current) {
+        List<URL> urls = current == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(current));
+        Map<String, URL> before = new LinkedHashMap<>();
+        if(previous != null) {
+            for(URL url : previous) before.put(url.getServerPortStr(), url);
+        }
+        List<URL> added = new ArrayList<>();
+        List<URL> changed = new ArrayList<>();
+        for(URL url : urls) {
+            URL old = before.remove(url.getServerPortStr());
+            if(old == null) {
+                added.add(url);
+            } else if(!old.equals(url)) {
+                changed.add(url);
+            }
+        }
+        List<URL> removed = new ArrayList<>(before.values());
+        return new ServiceChange(serviceName, urls, Collections.unmodifiableList(added),
+                Collections.unmodifiableList(removed), Collections.unmodifiableList(changed));
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * @return all the current urls of the service
+     */
+    public List<URL> getUrls() {
+        return urls;
+    }
+
+    public List<URL> getAdded() {
+        return added;
+    }
+
+    public List<URL> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the current urls of the instances whose parameters are changed
+     */
+    public List<URL> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceChange{serviceName=" + serviceName + ", added=" + added.size() + ", removed=" + removed.size()
+                + ", changed=" + changed.size() + ", urls=" + urls.size() + "}";
+    }
+}
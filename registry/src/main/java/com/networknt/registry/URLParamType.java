@@ -82,6 +82,8 @@ public enum URLParamType {
     embed("embed", ""),
 
     registryRetryPeriod("registryRetryPeriod", 30 * Constants.SECOND_MILLS),
+    // the local file of the last discovered services, which is loaded at startup. Empty to disable.
+    registrySnapshotFile("registrySnapshotFile", ""),
 
     cluster("cluster", Constants.DEFAULT_VALUE),
     loadbalance("loadbalance", "activeWeight"), 
@@ -24,11 +24,19 @@ import com.networknt.registry.URL;
 import com.networknt.switcher.SwitcherListener;
 import com.networknt.utility.ConcurrentHashSet;
 import com.networknt.switcher.SwitcherUtil;
+import com.networknt.utility.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Abstract registry。
@@ -40,6 +48,13 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AbstractRegistry implements Registry {
     private static final Logger logger = LoggerFactory.getLogger(AbstractRegistry.class);
+    // the changes within the delay are saved in one snapshot.
+    private static final long SNAPSHOT_DELAY = 1000;
+    private static final ScheduledExecutorService snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "registry-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private ConcurrentHashMap<URL, Map<String, List<URL>>> subscribedCategoryResponses =
             new ConcurrentHashMap<>();
@@ -47,9 +62,14 @@ public abstract class AbstractRegistry implements Registry {
     private URL registryUrl;
     private Set<URL> registeredServiceUrls = new ConcurrentHashSet<>();
     protected String registryClassName = this.getClass().getSimpleName();
+    private final Path snapshotFile;
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+    private volatile long snapshotTime;
 
     public AbstractRegistry(URL url) {
         this.registryUrl = url.createCopy();
+        String file = registryUrl.getParameter(URLParamType.registrySnapshotFile.getName(), URLParamType.registrySnapshotFile.getValue());
+        this.snapshotFile = StringUtils.isBlank(file) ? null : Paths.get(file);
         // register a heartbeat switcher to perceive service state change and change available state
         SwitcherUtil.registerSwitcherListener(Constants.REGISTRY_HEARTBEAT_SWITCHER, new SwitcherListener() {
 
@@ -177,6 +197,70 @@ public abstract class AbstractRegistry implements Registry {
         }
     }
 
+    /**
+     * Load the services saved by saveSnapshot at the last run, so that the requests can be routed before the
+     * registry responds. The registry must still look up the loaded services to catch up with the changes.
+     *
+     * @return the urls of the services in the snapshot or an empty map if there is no snapshot
+     */
+    protected Map<String, List<URL>> loadSnapshot() {
+        if(snapshotFile == null || !Files.exists(snapshotFile)) {
+            return Collections.emptyMap();
+        }
+        try {
+            ServiceSnapshot snapshot = ServiceSnapshot.read(snapshotFile);
+            if(!snapshot.getServices().isEmpty()) snapshotTime = snapshot.getTimestamp();
+            if(logger.isInfoEnabled()) logger.info("[{}] Loaded {} services from the snapshot {} taken {}ms ago",
+                    registryClassName, snapshot.getServices().size(), snapshotFile, getSnapshotAge());
+            return snapshot.getServices();
+        } catch (Exception e) {
+            logger.warn("[" + registryClassName + "] Failed to load the snapshot " + snapshotFile, e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Save the discovered services to the snapshot file in the background. It is called whenever the services are
+     * changed, and the changes within a second are saved once with the latest content of the map.
+     *
+     * @param services the map of the service name to the urls, which is read when the snapshot is written
+     */
+    protected void saveSnapshot(Map<String, List<URL>> services) {
+        if(snapshotFile == null || !snapshotScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        snapshotExecutor.schedule(() -> {
+            snapshotScheduled.set(false);
+            long now = System.currentTimeMillis();
+            try {
+                new ServiceSnapshot(now, new LinkedHashMap<>(services)).write(snapshotFile);
+                if(logger.isDebugEnabled()) logger.debug("[{}] Saved {} services to the snapshot {}", registryClassName, services.size(), snapshotFile);
+            } catch (Exception e) {
+                logger.warn("[" + registryClassName + "] Failed to save the snapshot " + snapshotFile, e);
+            }
+        }, SNAPSHOT_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * It is called when all the services loaded from the snapshot are looked up from the registry, so that
+     * no request is routed with the urls from the snapshot anymore.
+     */
+    protected void snapshotRefreshed() {
+        snapshotTime = 0;
+    }
+
+    /**
+     * The staleness of the loaded snapshot. The snapshots saved after the services are looked up don't change
+     * the age, as they are only used at the next start.
+     *
+     * @return the milliseconds since the loaded snapshot was taken while any service is still routed with the
+     * urls from it, or -1 if no snapshot is in use
+     */
+    public long getSnapshotAge() {
+        long time = snapshotTime;
+        return time == 0 ? -1 : System.currentTimeMillis() - time;
+    }
+
     List<URL> getCachedUrls(URL url) {
         Map<String, List<URL>> rsUrls = subscribedCategoryResponses.get(url);
         if (rsUrls == null || rsUrls.size() == 0) {
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.registry.support;
+
+import com.networknt.registry.URL;
+import com.networknt.registry.URLImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The last known urls of the discovered services saved in a local file, so that a registry can
+ * route the requests at startup before the first lookup is completed.
+ *
+ * The file is in a compact binary format with a magic number, a version and the time it was written,
+ * followed by the services and the protocol, host, port, path and parameters of each url. Each string
+ * is preceded by a flag that tells if it is null, and the urls with a string that is too long to be written
+ * are skipped with a warning. It is written to a temporary file and moved into place so that a reader never
+ * sees a partial snapshot.
+ */
+public class ServiceSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceSnapshot.class);
+    private static final int MAGIC = 0x4C53534E;
+    private static final short VERSION = 2;
+    // the maximum number of bytes of a string encoded by writeUTF.
+    private static final int MAX_UTF_LENGTH = 65535;
+
+    private final long timestamp;
+    private final Map<String, List<URL>> services;
+
+    public ServiceSnapshot(long timestamp, Map<String, List<URL>> services) {
+        this.timestamp = timestamp;
+        this.services = services;
+    }
+
+    /**
+     * @return the time in milliseconds when the snapshot was taken
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, List<URL>> getServices() {
+        return services;
+    }
+
+    public static ServiceSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC) throw new IOException("Not a service snapshot: " + file);
+            short version = in.readShort();
+            if(version != VERSION) throw new IOException("Unsupported service snapshot version " + version + ": " + file);
+            long timestamp = in.readLong();
+            int serviceCount = in.readInt();
+            Map<String, List<URL>> services = new LinkedHashMap<>();
+            for(int i = 0; i < serviceCount; i++) {
+                String serviceName = readString(in);
+                int urlCount = in.readInt();
+                List<URL> urls = new ArrayList<>(urlCount);
+                for(int j = 0; j < urlCount; j++) {
+                    String protocol = readString(in);
+                    String host = readString(in);
+                    int port = in.readInt();
+                    String path = readString(in);
+                    int parameterCount = in.readInt();
+                    Map<String, String> parameters = null;
+                    if(parameterCount >= 0) {
+                        parameters = new HashMap<>();
+                        for(int k = 0; k < parameterCount; k++) {
+                            parameters.put(readString(in), readString(in));
+                        }
+                    }
+                    urls.add(new URLImpl(protocol, host, port, path, parameters));
+                }
+                services.put(serviceName, Collections.unmodifiableList(urls));
+            }
+            return new ServiceSnapshot(timestamp, services);
+        }
+    }
+
+    public void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if(parent != null) Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(timestamp);
+                Map<String, List<URL>> writable = getWritableServices();
+                out.writeInt(writable.size());
+                for(Map.Entry<String, List<URL>> entry : writable.entrySet()) {
+                    writeString(out, entry.getKey());
+                    List<URL> urls = entry.getValue();
+                    out.writeInt(urls.size());
+                    for(URL url : urls) {
+                        writeString(out, url.getProtocol());
+                        writeString(out, url.getHost());
+                        out.writeInt(url.getPort());
+                        writeString(out, url.getPath());
+                        Map<String, String> parameters = url.getParameters();
+                        if(parameters == null) {
+                            out.writeInt(-1);
+                            continue;
+                        }
+                        out.writeInt(parameters.size());
+                        for(Map.Entry<String, String> parameter : parameters.entrySet()) {
+                            writeString(out, parameter.getKey());
+                            writeString(out, parameter.getValue());
+                        }
+                    }
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Skip the services and the urls that cannot be written, so that one of them does not abort the whole snapshot.
+     */
+    private Map<String, List<URL>> getWritableServices() {
+        Map<String, List<URL>> writable = new LinkedHashMap<>();
+        for(Map.Entry<String, List<URL>> entry : services.entrySet()) {
+            if(!isWritable(entry.getKey())) {
+                logger.warn("Service {} is too long to be saved in the snapshot.", entry.getKey().substring(0, 100));
+                continue;
+            }
+            List<URL> urls = new ArrayList<>();
+            if(entry.getValue() != null) {
+                for(URL url : entry.getValue()) {
+                    if(isWritable(url)) {
+                        urls.add(url);
+                    } else {
+                        logger.warn("A url of service {} is null or too long to be saved in the snapshot.", entry.getKey());
+                    }
+                }
+            }
+            writable.put(entry.getKey(), urls);
+        }
+        return writable;
+    }
+
+    private static boolean isWritable(URL url) {
+        if(url == null || !isWritable(url.getProtocol()) || !isWritable(url.getHost()) || !isWritable(url.getPath())) return false;
+        if(url.getParameters() != null) {
+            for(Map.Entry<String, String> parameter : url.getParameters().entrySet()) {
+                if(!isWritable(parameter.getKey()) || !isWritable(parameter.getValue())) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWritable(String s) {
+        if(s == null) return true;
+        // the length in the modified UTF-8 of writeUTF is at least the number of chars and at most three times of it.
+        if(s.length() <= MAX_UTF_LENGTH / 3) return true;
+        if(s.length() > MAX_UTF_LENGTH) return false;
+        int length = 0;
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if(c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length <= MAX_UTF_LENGTH;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if(s != null) out.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.registry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ServiceChangeTest {
+
+    private static URL url(int port, String tag) {
+        Map<String, String> parameters = new HashMap<>();
+        if(tag != null) parameters.put("environment", tag);
+        return new URLImpl("http", "127.0.0.1", port, "com.networknt.apia-1.0.0", parameters);
+    }
+
+    @Test
+    public void testFirstNotification() {
+        List<URL> urls = Arrays.asList(url(8081, null), url(8082, null));
+        ServiceChange change = ServiceChange.of("com.networknt.apia-1.0.0", null, urls);
+        Assert.assertEquals(urls, change.getAdded());
+        Assert.assertTrue(change.getRemoved().isEmpty());
+        Assert.assertTrue(change.getChanged().isEmpty());
+        Assert.assertEquals(urls, change.getUrls());
+    }
+
+    @Test
+    public void testAddedRemovedChanged() {
+        List<URL> previous = Arrays.asList(url(8081, null), url(8082, null), url(8083, null));
+        List<URL> current = Arrays.asList(url(8081, null), url(8082, "dev"), url(8084, null));
+        ServiceChange change = ServiceChange.of("com.networknt.apia-1.0.0", previous, current);
+        Assert.assertEquals(Collections.singletonList(url(8084, null)), change.getAdded());
+        Assert.assertEquals(Collections.singletonList(url(8083, null)), change.getRemoved());
+        Assert.assertEquals(Collections.singletonList(url(8082, "dev")), change.getChanged());
+        Assert.assertEquals(3, change.getUrls().size());
+        Assert.assertFalse(change.isEmpty());
+    }
+
+    @Test
+    public void testNoChange() {
+        List<URL> previous = Arrays.asList(url(8081, null), url(8082, null));
+        List<URL> current = Arrays.asList(url(8082, null), url(8081, null));
+        Assert.assertTrue(ServiceChange.of("com.networknt.apia-1.0.0", previous, current).isEmpty());
+        ServiceChange removeAll = ServiceChange.of("com.networknt.apia-1.0.0", previous, Collections.emptyList());
+        Assert.assertEquals(2, removeAll.getRemoved().size());
+        Assert.assertTrue(removeAll.getUrls().isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.registry.support;
+
+import com.networknt.registry.URL;
+import com.networknt.registry.URLImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class ServiceSnapshotTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("environment", "dev");
+        Map<String, List<URL>> services = new LinkedHashMap<>();
+        services.put("com.networknt.apia-1.0.0", Arrays.asList(
+                new URLImpl("https", "192.168.1.1", 8443, "com.networknt.apia-1.0.0", parameters),
+                new URLImpl("https", "192.168.1.2", 8443, "com.networknt.apia-1.0.0", new HashMap<>())));
+        services.put("com.networknt.apib-1.0.0", Collections.emptyList());
+
+        Path file = Files.createTempDirectory("snapshot").resolve("services.snapshot");
+        try {
+            new ServiceSnapshot(1000L, services).write(file);
+            ServiceSnapshot snapshot = ServiceSnapshot.read(file);
+            Assert.assertEquals(1000L, snapshot.getTimestamp());
+            Assert.assertEquals(services, snapshot.getServices());
+            Assert.assertEquals("dev", snapshot.getServices().get("com.networknt.apia-1.0.0").get(0).getParameter("environment"));
+
+            // the file is replaced by the next snapshot.
+            services.remove("com.networknt.apib-1.0.0");
+            new ServiceSnapshot(2000L, services).write(file);
+            snapshot = ServiceSnapshot.read(file);
+            Assert.assertEquals(2000L, snapshot.getTimestamp());
+            Assert.assertEquals(1, snapshot.getServices().size());
+            try (Stream<Path> files = Files.list(file.getParent())) {
+                Assert.assertEquals(1, files.count());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.getParent());
+        }
+    }
+
+    @Test
+    public void testNullAndLongStrings() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("environment", null);
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'a');
+        Map<String, String> longParameters = new HashMap<>();
+        longParameters.put("environment", new String(chars));
+        Map<String, List<URL>> services = new LinkedHashMap<>();
+        services.put("com.networknt.apia-1.0.0", Arrays.asList(
+                new URLImpl("https", "192.168.1.1", 8443, null, parameters),
+                new URLImpl("https", "192.168.1.2", 8443, "com.networknt.apia-1.0.0", longParameters),
+                new URLImpl("https", "192.168.1.3", 8443, "com.networknt.apia-1.0.0", null)));
+
+        Path file = Files.createTempDirectory("snapshot").resolve("services.snapshot");
+        try {
+            new ServiceSnapshot(1000L, services).write(file);
+            List<URL> urls = ServiceSnapshot.read(file).getServices().get("com.networknt.apia-1.0.0");
+            // the url with the long parameter is skipped.
+            Assert.assertEquals(2, urls.size());
+            Assert.assertNull(urls.get(0).getPath());
+            Assert.assertTrue(urls.get(0).getParameters().containsKey("environment"));
+            Assert.assertNull(urls.get(0).getParameters().get("environment"));
+            Assert.assertEquals("192.168.1.3", urls.get(1).getHost());
+            Assert.assertNull(urls.get(1).getParameters());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.getParent());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidFile() throws Exception {
+        Path file = Files.createTempFile("snapshot", ".snapshot");
+        try {
+            Files.write(file, "not a snapshot".getBytes());
+            ServiceSnapshot.read(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
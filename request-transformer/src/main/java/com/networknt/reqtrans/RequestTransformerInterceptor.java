@@ -1,6 +1,6 @@
 package com.networknt.reqtrans;
 
-import com.networknt.handler.BuffersUtils;
+import com.networknt.handler.BufferedRequestBody;
 import com.networknt.handler.MiddlewareHandler;
 import com.networknt.handler.RequestInterceptor;
 import com.networknt.httpstring.AttachmentConstants;
@@ -22,7 +22,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnio.Buffers;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -123,8 +122,7 @@ public class RequestTransformerInterceptor implements RequestInterceptor {
                         objMap.put("requestPath", exchange.getRequestPath());
                         if ((method.equalsIgnoreCase("post") || method.equalsIgnoreCase("put") || method.equalsIgnoreCase("patch")) && !exchange.isRequestComplete()) {
                             // This object contains the reference to the request data buffer. Any modification done to this will be reflected in the request.
-                            PooledByteBuffer[] requestData = this.getBuffer(exchange);
-                            String s = BuffersUtils.toString(requestData, StandardCharsets.UTF_8);
+                            String s = this.getRequestBody(exchange).getString();
                             // Transform the request body with the rule engine.
                             if(logger.isDebugEnabled()) logger.debug("original request body = " + s);
                             objMap.put("requestBody", s);
@@ -216,6 +214,8 @@ public class RequestTransformerInterceptor implements RequestInterceptor {
                                             }
                                         }
                                         exchange.getRequestHeaders().put(Headers.CONTENT_LENGTH, length);
+                                        // the following interceptors must see the transformed body.
+                                        this.getRequestBody(exchange).invalidate();
                                         break;
                                     case "validationError":
                                         // If the rule engine returns any validationError entry, stop the chain and send the res.
@@ -243,6 +243,14 @@ public class RequestTransformerInterceptor implements RequestInterceptor {
         return config.isRequiredContent();
     }
 
+    private BufferedRequestBody getRequestBody(HttpServerExchange exchange) {
+        BufferedRequestBody body = BufferedRequestBody.get(exchange);
+        if (body == null) {
+            throw new IllegalStateException("Request content is not available in exchange attachment as there is no interceptors.");
+        }
+        return body;
+    }
+
     public PooledByteBuffer[] getBuffer(HttpServerExchange exchange) {
         PooledByteBuffer[] buffer = exchange.getAttachment(AttachmentConstants.BUFFERED_REQUEST_DATA_KEY);
         if (buffer == null) {
@@ -18,6 +18,7 @@ package com.networknt.security;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.networknt.client.ClientConfig;
 import com.networknt.client.oauth.OauthHelper;
 import com.networknt.client.oauth.SignKeyRequest;
@@ -30,6 +31,8 @@ import com.networknt.exception.ExpiredTokenException;
 import com.networknt.status.Status;
 import com.networknt.utility.FingerPrintUtil;
 import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jws.AlgorithmIdentifiers;
 import org.jose4j.jwk.JsonWebKeySet;
 import org.jose4j.jwt.JwtClaims;
 import org.jose4j.jwt.MalformedClaimException;
@@ -52,10 +55,23 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -79,8 +95,14 @@ public class JwtVerifier extends TokenVerifier {
     static final String GET_KEY_ERROR = "ERR10066";
 
     public static final String KID = "kid";
+    // the kid in the keys of the jwksMap for the tokens and the JWK without a kid, as the map doesn't accept null keys.
+    private static final String NO_KID = "";
     public static final String SECURITY_CONFIG = "security";
     private static final int CACHE_EXPIRED_IN_MINUTES = 15;
+    // the time to remember a kid that the key service doesn't know, so that the tokens with the kid don't flood the key service.
+    private static final int UNKNOWN_KID_EXPIRED_IN_SECONDS = 30;
+    // the max time to wait for the JWK of a kid that is being retrieved by another request.
+    private static final int JWK_FETCH_WAIT_IN_SECONDS = 10;
 
     public static final String JWT_KEY_RESOLVER_X509CERT = "X509Certificate";
     public static final String JWT_KEY_RESOLVER_JWKS = "JsonWebKeySet";
@@ -91,10 +113,36 @@ public class JwtVerifier extends TokenVerifier {
     Boolean enableRelaxedKeyValidation;
     Boolean bootstrapFromKeyService;
 
-    static Cache<String, JwtClaims> cache;
+    static Cache<TokenKey, CachedClaims> cache;
     static Map<String, X509Certificate> certMap;
     static Map<String, List<JsonWebKey>> jwksMap;
     static List<String> fingerPrints;
+    // the max number of the signature verification consumers that are kept.
+    private static final int CONSUMER_CACHE_SIZE = 1000;
+    // the signature verification consumers built with the certificate or the JWK of a kid by the scope and kid. A
+    // consumer is only kept after a signature is verified with it.
+    static final Cache<String, JwtConsumer> consumers = Caffeine.newBuilder()
+            .maximumSize(CONSUMER_CACHE_SIZE)
+            .build();
+    static final LongAdder cacheHits = new LongAdder();
+    static final LongAdder cacheMisses = new LongAdder();
+    static final LongAdder verifyCount = new LongAdder();
+    static final LongAdder verifyNanos = new LongAdder();
+    // the JWK retrievals in progress by the scope and kid, so that the requests with a new kid share one retrieval.
+    static final Map<String, CompletableFuture<List<JsonWebKey>>> jwkFetches = new ConcurrentHashMap<>();
+    static final Cache<String, Boolean> unknownKids = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(UNKNOWN_KID_EXPIRED_IN_SECONDS, TimeUnit.SECONDS)
+            .build();
+    private static final ScheduledExecutorService jwkRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jwk-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ScheduledFuture<?> jwkRefreshTask;
+
+    // parse the token to get the kid and the claims without verifying the signature.
+    private final JwtConsumer parseConsumer;
 
     public JwtVerifier(SecurityConfig config) {
         this.config = config;
@@ -105,10 +153,35 @@ public class JwtVerifier extends TokenVerifier {
         if (Boolean.TRUE.equals(enableJwtCache)) {
             cache = Caffeine.newBuilder()
                     .maximumSize(config.getJwtCacheFullSize())
-                    // assuming that the clock screw time is less than 5 minutes
-                    .expireAfterWrite(CACHE_EXPIRED_IN_MINUTES, TimeUnit.MINUTES)
+                    // a token is evicted when it is expired, and no later than CACHE_EXPIRED_IN_MINUTES after it is cached.
+                    .expireAfter(new Expiry<TokenKey, CachedClaims>() {
+                        @Override
+                        public long expireAfterCreate(TokenKey key, CachedClaims value, long currentTime) {
+                            return value.getTimeToLive();
+                        }
+
+                        @Override
+                        public long expireAfterUpdate(TokenKey key, CachedClaims value, long currentTime, long currentDuration) {
+                            return value.getTimeToLive();
+                        }
+
+                        @Override
+                        public long expireAfterRead(TokenKey key, CachedClaims value, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
                     .build();
         }
+        JwtConsumerBuilder parseBuilder = new JwtConsumerBuilder()
+                .setSkipAllValidators()
+                .setDisableRequireSignature()
+                .setSkipSignatureVerification();
+        if (this.enableRelaxedKeyValidation) {
+            parseBuilder.setRelaxVerificationKeyValidation();
+        }
+        parseConsumer = parseBuilder.build();
+        // the certificates and the JWK might be changed with the new config.
+        consumers.invalidateAll();
         // init getting JWK during the initialization. The other part is in the resolver for OAuth 2.0 provider to
         // rotate keys when the first token is received with the new kid.
         String keyResolver = config.getKeyResolver();
@@ -118,9 +191,86 @@ public class JwtVerifier extends TokenVerifier {
         // if KeyResolver is jwk and bootstrap from jwk is true, load jwk during server startup.
         if (JWT_KEY_RESOLVER_JWKS.equals(keyResolver) && bootstrapFromKeyService) {
             jwksMap = getJsonWebKeyMap();
+            scheduleJwkRefresh(config.getJwkRefreshInterval());
         } else {
-            jwksMap = new HashMap<>();
+            jwksMap = new ConcurrentHashMap<>();
+            scheduleJwkRefresh(0);
+        }
+        unknownKids.invalidateAll();
+    }
+
+    /**
+     * Schedule the background refresh of the JWK from the key service and cancel the refresh of the previous
+     * verifier, so that a rotated key is normally loaded before the first token signed with it is received.
+     *
+     * @param interval the refresh interval in seconds, 0 to disable the refresh
+     */
+    private void scheduleJwkRefresh(int interval) {
+        synchronized (JwtVerifier.class) {
+            if (jwkRefreshTask != null) {
+                jwkRefreshTask.cancel(false);
+                jwkRefreshTask = null;
+            }
+            if (interval > 0) {
+                jwkRefreshTask = jwkRefresher.scheduleWithFixedDelay(this::refreshJsonWebKeys, interval, interval, TimeUnit.SECONDS);
+                if (logger.isInfoEnabled()) logger.info("JWK are refreshed from the key service every {} seconds", interval);
+            }
+        }
+    }
+
+    /**
+     * Reload the JWK of all the configured key services. The keys that are removed from a key service are removed
+     * from the cache as well, and the consumers are rebuilt if any key is added, changed or removed. The keys of a
+     * key service that cannot be reached are kept.
+     */
+    void refreshJsonWebKeys() {
+        try {
+            Map<String, List<JsonWebKey>> keyMap = getJsonWebKeyMap();
+            boolean multipleAuthServers = ClientConfig.get().isMultipleAuthServers();
+            Set<String> refreshed = new HashSet<>();
+            for (String key : keyMap.keySet()) {
+                refreshed.add(getKeyServiceId(key, multipleAuthServers));
+            }
+            boolean changed = false;
+            for (Map.Entry<String, List<JsonWebKey>> entry : keyMap.entrySet()) {
+                List<JsonWebKey> previous = jwksMap.put(entry.getKey(), entry.getValue());
+                if (!isSameKeys(previous, entry.getValue())) changed = true;
+            }
+            for (String key : jwksMap.keySet()) {
+                if (!keyMap.containsKey(key) && refreshed.contains(getKeyServiceId(key, multipleAuthServers))) {
+                    jwksMap.remove(key);
+                    changed = true;
+                    if (logger.isInfoEnabled()) logger.info("JWK {} is removed from the key service", key);
+                }
+            }
+            if (changed) {
+                consumers.invalidateAll();
+                unknownKids.invalidateAll();
+                if (logger.isInfoEnabled()) logger.info("JWK are changed in the key service and reloaded");
+            }
+        } catch (Throwable e) {
+            logger.error("Failed to refresh JWK from the key service", e);
+        }
+    }
+
+    /**
+     * Get the serviceId of the key service from the key of the jwksMap, which is the serviceId and the kid for the
+     * multiple key services or the kid only for the single key service.
+     */
+    private static String getKeyServiceId(String key, boolean multipleAuthServers) {
+        int index = key.indexOf(':');
+        return multipleAuthServers && index >= 0 ? key.substring(0, index) : "";
+    }
+
+    private static boolean isSameKeys(List<JsonWebKey> previous, List<JsonWebKey> current) {
+        if (previous == null || previous.size() != current.size()) return false;
+        for (int i = 0; i < current.size(); i++) {
+            JsonWebKey p = previous.get(i);
+            JsonWebKey c = current.get(i);
+            if (p.getKeyId() == null ? c.getKeyId() != null : !p.getKeyId().equals(c.getKeyId())) return false;
+            if (!p.getKey().equals(c.getKey())) return false;
         }
+        return true;
     }
 
 
@@ -195,7 +345,7 @@ public class JwtVerifier extends TokenVerifier {
      * @throws ExpiredTokenException throw when the token is expired
      */
     public JwtClaims verifyJwt(String jwt, boolean ignoreExpiry, boolean isToken, String pathPrefix, String requestPath, List<String> jwkServiceIds) throws InvalidJwtException, ExpiredTokenException {
-        return verifyJwt(jwt, ignoreExpiry, isToken, pathPrefix, requestPath, jwkServiceIds, this::getKeyResolver);
+        return verifyJwt(jwt, ignoreExpiry, pathPrefix, jwkServiceIds != null ? jwkServiceIds : requestPath, this::getKeyResolver, true);
     }
 
     /**
@@ -210,7 +360,7 @@ public class JwtVerifier extends TokenVerifier {
      * @throws ExpiredTokenException throw when the token is expired
      */
     public JwtClaims verifyJwt(String jwt, boolean ignoreExpiry, boolean isToken) throws InvalidJwtException, ExpiredTokenException {
-        return verifyJwt(jwt, ignoreExpiry, isToken, null, null, null, this::getKeyResolver);
+        return verifyJwt(jwt, ignoreExpiry, null, null, this::getKeyResolver, true);
     }
 
     /**
@@ -234,37 +384,31 @@ public class JwtVerifier extends TokenVerifier {
      */
     public JwtClaims verifyJwt(String jwt, boolean ignoreExpiry, boolean isToken, String pathPrefix, String requestPath, List<String> jwkServiceIds, BiFunction<String, Object, VerificationKeyResolver> getKeyResolver)
             throws InvalidJwtException, ExpiredTokenException {
+        // the resolver is provided by the caller, so the consumer cannot be reused for other tokens.
+        return verifyJwt(jwt, ignoreExpiry, pathPrefix, jwkServiceIds != null ? jwkServiceIds : requestPath, getKeyResolver, false);
+    }
+
+    private JwtClaims verifyJwt(String jwt, boolean ignoreExpiry, String pathPrefix, Object requestPathOrJwkServiceIds,
+                                BiFunction<String, Object, VerificationKeyResolver> getKeyResolver, boolean reuseConsumer)
+            throws InvalidJwtException, ExpiredTokenException {
         JwtClaims claims;
 
+        TokenKey tokenKey = null;
         if (Boolean.TRUE.equals(enableJwtCache)) {
-            if(pathPrefix != null) {
-                claims = cache.getIfPresent(pathPrefix + ":" + jwt);
-            } else {
-                claims = cache.getIfPresent(jwt);
-            }
-            if (claims != null) {
-
-                checkExpiry(ignoreExpiry, claims, secondsOfAllowedClockSkew, null);
+            tokenKey = new TokenKey(pathPrefix, jwt);
+            CachedClaims cached = cache.getIfPresent(tokenKey);
+            // the key is the hash of the signature, so the token is compared to rule out a collision.
+            if (cached != null && cached.jwt.equals(jwt)) {
+                cacheHits.increment();
+                checkExpiry(ignoreExpiry, cached.claims, secondsOfAllowedClockSkew, null);
 
                 // this claims object is signature verified already
-                return claims;
+                return cached.claims;
             }
+            cacheMisses.increment();
         }
 
-
-        JwtConsumer consumer;
-        JwtConsumerBuilder pKeyBuilder = new JwtConsumerBuilder()
-                .setSkipAllValidators()
-                .setDisableRequireSignature()
-                .setSkipSignatureVerification();
-
-        if (this.enableRelaxedKeyValidation) {
-            pKeyBuilder.setRelaxVerificationKeyValidation();
-        }
-
-        consumer = pKeyBuilder.build();
-
-        JwtContext jwtContext = consumer.process(jwt);
+        JwtContext jwtContext = parseConsumer.process(jwt);
         claims = jwtContext.getJwtClaims();
         JsonWebStructure structure = jwtContext.getJoseObjects().get(0);
         // need this kid to load public key certificate for signature verification
@@ -274,27 +418,30 @@ public class JwtVerifier extends TokenVerifier {
         // if ignoreExpiry is false, verify expiration of the token
         checkExpiry(ignoreExpiry, claims, secondsOfAllowedClockSkew, jwtContext);
 
-        JwtConsumerBuilder jwtBuilder = new JwtConsumerBuilder()
-                .setRequireExpirationTime()
-                .setAllowedClockSkewInSeconds(315360000) // use seconds of 10 years to skip expiration validation as we need skip it in some cases.
-                .setSkipDefaultAudienceValidation()
-                .setVerificationKeyResolver(getKeyResolver.apply(kid, jwkServiceIds != null ? jwkServiceIds : requestPath));
-
-        if (this.enableRelaxedKeyValidation) {
-            jwtBuilder.setRelaxVerificationKeyValidation();
+        JwtConsumer consumer = null;
+        String consumerKey = null;
+        if (reuseConsumer) {
+            consumerKey = getScope(requestPathOrJwkServiceIds) + ":" + kid;
+            consumer = consumers.getIfPresent(consumerKey);
+        }
+        boolean newConsumer = consumer == null;
+        if (newConsumer) {
+            consumer = reuseConsumer ? createConsumer(kid, requestPathOrJwkServiceIds) : buildConsumer(getKeyResolver.apply(kid, requestPathOrJwkServiceIds), null);
         }
-
-        consumer = jwtBuilder.build();
 
         // Validate the JWT and process it to the Claims
+        long start = System.nanoTime();
         jwtContext = consumer.process(jwt);
+        verifyNanos.add(System.nanoTime() - start);
+        verifyCount.increment();
         claims = jwtContext.getJwtClaims();
-        if (Boolean.TRUE.equals(enableJwtCache)) {
-            if(pathPrefix != null) {
-                cache.put(pathPrefix + ":" + jwt, claims);
-            } else {
-                cache.put(jwt, claims);
-            }
+        if (reuseConsumer && newConsumer) {
+            // the consumer is only kept once a signature is verified with it, so that the invalid tokens cannot fill the cache.
+            consumers.put(consumerKey, consumer);
+            if (logger.isDebugEnabled()) logger.debug("Cached the JwtConsumer for {}", consumerKey);
+        }
+        if (tokenKey != null) {
+            cache.put(tokenKey, new CachedClaims(jwt, claims, secondsOfAllowedClockSkew));
             if(cache.estimatedSize() > config.getJwtCacheFullSize()) {
                 logger.error("JWT cache exceeds the size limit " + config.getJwtCacheFullSize());
             }
@@ -302,6 +449,102 @@ public class JwtVerifier extends TokenVerifier {
         return claims;
     }
 
+    /**
+     * Create the consumer that verifies the tokens signed with the certificate or the JWK of the kid. The algorithms
+     * are permitted by the key instead of the token header, so that a token cannot choose how it is verified.
+     *
+     * @param kid the key id from the token header
+     * @param requestPathOrJwkServiceIds the request path or the jwkServiceIds to find the JWK of the kid
+     * @return JwtConsumer
+     */
+    private JwtConsumer createConsumer(String kid, Object requestPathOrJwkServiceIds) {
+        X509Certificate certificate = certMap == null ? null : certMap.get(kid);
+        if (certificate != null) {
+            return buildConsumer(getCertificateResolver(certificate), getPermittedAlgorithms(certificate.getPublicKey().getAlgorithm(), null));
+        }
+        if (!JWT_KEY_RESOLVER_JWKS.equals(config.getKeyResolver())) {
+            logger.error("Both X509Certificate and JWK are not configured.");
+            return buildConsumer(null, null);
+        }
+        List<JsonWebKey> jwkList = getJsonWebKeys(kid, requestPathOrJwkServiceIds);
+        List<String> algorithms = new ArrayList<>();
+        for (JsonWebKey jwk : jwkList) {
+            if (kid == null || kid.equals(jwk.getKeyId())) {
+                algorithms.addAll(getPermittedAlgorithms(jwk.getKeyType(), jwk.getAlgorithm()));
+            }
+        }
+        return buildConsumer(new JwksVerificationKeyResolver(jwkList), algorithms);
+    }
+
+    /**
+     * Get the algorithms that can be verified with a key. It is the alg of the JWK if it is specified, otherwise the
+     * signature algorithms of the key type.
+     */
+    private static List<String> getPermittedAlgorithms(String keyType, String algorithm) {
+        if (algorithm != null) {
+            return Collections.singletonList(algorithm);
+        }
+        if ("RSA".equals(keyType)) {
+            return Arrays.asList(AlgorithmIdentifiers.RSA_USING_SHA256, AlgorithmIdentifiers.RSA_USING_SHA384, AlgorithmIdentifiers.RSA_USING_SHA512,
+                    AlgorithmIdentifiers.RSA_PSS_USING_SHA256, AlgorithmIdentifiers.RSA_PSS_USING_SHA384, AlgorithmIdentifiers.RSA_PSS_USING_SHA512);
+        } else if ("EC".equals(keyType)) {
+            return Arrays.asList(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256, AlgorithmIdentifiers.ECDSA_USING_P384_CURVE_AND_SHA384,
+                    AlgorithmIdentifiers.ECDSA_USING_P521_CURVE_AND_SHA512);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the scope of the keys, which is the serviceId of the request path, the jwkServiceIds or an empty string
+     * for the single key service.
+     */
+    @SuppressWarnings("unchecked")
+    private String getScope(Object requestPathOrJwkServiceIds) {
+        if (requestPathOrJwkServiceIds instanceof String) {
+            String serviceId = getServiceIdByRequestPath(ClientConfig.get(), (String) requestPathOrJwkServiceIds);
+            return serviceId == null ? "" : serviceId;
+        } else if (requestPathOrJwkServiceIds instanceof List) {
+            return String.join(",", (List<String>) requestPathOrJwkServiceIds);
+        }
+        return "";
+    }
+
+    private JwtConsumer buildConsumer(VerificationKeyResolver resolver, List<String> algorithms) {
+        JwtConsumerBuilder jwtBuilder = new JwtConsumerBuilder()
+                .setRequireExpirationTime()
+                .setAllowedClockSkewInSeconds(315360000) // use seconds of 10 years to skip expiration validation as we need skip it in some cases.
+                .setSkipDefaultAudienceValidation()
+                .setVerificationKeyResolver(resolver);
+
+        if (algorithms != null && !algorithms.isEmpty()) {
+            // the consumer is only used for the tokens signed with the algorithms of the key.
+            jwtBuilder.setJwsAlgorithmConstraints(new AlgorithmConstraints(AlgorithmConstraints.ConstraintType.PERMIT, algorithms.toArray(new String[0])));
+        }
+        if (this.enableRelaxedKeyValidation) {
+            jwtBuilder.setRelaxVerificationKeyValidation();
+        }
+        return jwtBuilder.build();
+    }
+
+    /**
+     * The metrics of the JWT cache and the signature verification. The averageVerifyMicros is the average time of
+     * the signature verification of the tokens that are not found in the cache.
+     *
+     * @return the cache hits, misses and size, the number of verifications and the consumers
+     */
+    public Map<String, Object> getCacheMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long verifications = verifyCount.sum();
+        metrics.put("hits", cacheHits.sum());
+        metrics.put("misses", cacheMisses.sum());
+        metrics.put("size", cache == null ? 0 : cache.estimatedSize());
+        metrics.put("verifications", verifications);
+        metrics.put("averageVerifyMicros", verifications == 0 ? 0 : verifyNanos.sum() / verifications / 1000);
+        metrics.put("consumers", consumers.estimatedSize());
+        metrics.put("unknownKids", unknownKids.estimatedSize());
+        return metrics;
+    }
+
     /**
      * Checks expiry of a jwt token from the claim.
      *
@@ -346,79 +589,150 @@ public class JwtVerifier extends TokenVerifier {
         // to support JWK instead of X509Certificate endpoint. 
         X509Certificate certificate = certMap == null ? null : certMap.get(kid);
         if (certificate != null) {
-            X509VerificationKeyResolver x509VerificationKeyResolver = new X509VerificationKeyResolver(certificate);
-            x509VerificationKeyResolver.setTryAllOnNoThumbHeader(true);
-            return x509VerificationKeyResolver;
+            return getCertificateResolver(certificate);
         } else {
             if (JWT_KEY_RESOLVER_JWKS.equals(keyResolver)) {
                 // try jwk if kid cannot be found in the certificate map.
-                ClientConfig clientConfig = ClientConfig.get();
-                List<JsonWebKey> jwkList = null;
-                if(requestPathOrJwkServiceIds == null) {
-                    // single oauth server, kid is the key for the jwk cache
-                    jwkList = jwksMap.get(kid);
-                } else if(requestPathOrJwkServiceIds instanceof String) {
-                    String requestPath = (String)requestPathOrJwkServiceIds;
-                    // a single request path is passed in.
-                    String serviceId = getServiceIdByRequestPath(clientConfig, requestPath);
-                    if(serviceId == null) {
-                        jwkList = jwksMap.get(kid);
-                    } else {
-                        jwkList = jwksMap.get(serviceId + ":" + kid);
-                    }
-                } else if(requestPathOrJwkServiceIds instanceof List) {
-                    List<String> serviceIds = (List)requestPathOrJwkServiceIds;
-                    if(serviceIds != null && serviceIds.size() > 0) {
-                        // more than one serviceIds are passed in from the UnifiedSecurityHandler. Just use the serviceId and kid
-                        // combination to look up the jwkList. Once found, break the loop.
-                        for(String serviceId: serviceIds) {
-                            jwkList = jwksMap.get(serviceId + ":" + kid);
-                            if(jwkList != null && jwkList.size() > 0) {
-                                break;
-                            }
-                        }
+                return new JwksVerificationKeyResolver(getJsonWebKeys(kid, requestPathOrJwkServiceIds));
+            } else {
+                logger.error("Both X509Certificate and JWK are not configured.");
+                return null;
+            }
+        }
+    }
+
+    private static VerificationKeyResolver getCertificateResolver(X509Certificate certificate) {
+        X509VerificationKeyResolver x509VerificationKeyResolver = new X509VerificationKeyResolver(certificate);
+        x509VerificationKeyResolver.setTryAllOnNoThumbHeader(true);
+        return x509VerificationKeyResolver;
+    }
+
+    /**
+     * Get the JWK of the kid from the local cache, or from the key service if the kid is not cached.
+     *
+     * @param kid         key id from the JWT token
+     * @param requestPathOrJwkServiceIds the request path or jwkServiceIds of incoming request used to identify the serviceId to get the JWK.
+     * @return the list of JWK that contains the kid
+     */
+    @SuppressWarnings("unchecked")
+    private List<JsonWebKey> getJsonWebKeys(String kid, Object requestPathOrJwkServiceIds) {
+        ClientConfig clientConfig = ClientConfig.get();
+        List<JsonWebKey> jwkList = null;
+        if(requestPathOrJwkServiceIds == null) {
+            // single oauth server, kid is the key for the jwk cache
+            jwkList = jwksMap.get(getJwkKey(null, kid));
+        } else if(requestPathOrJwkServiceIds instanceof String) {
+            String requestPath = (String)requestPathOrJwkServiceIds;
+            // a single request path is passed in.
+            String serviceId = getServiceIdByRequestPath(clientConfig, requestPath);
+            if(serviceId == null) {
+                jwkList = jwksMap.get(getJwkKey(null, kid));
+            } else {
+                jwkList = jwksMap.get(getJwkKey(serviceId, kid));
+            }
+        } else if(requestPathOrJwkServiceIds instanceof List) {
+            List<String> serviceIds = (List)requestPathOrJwkServiceIds;
+            if(serviceIds != null && serviceIds.size() > 0) {
+                // more than one serviceIds are passed in from the UnifiedSecurityHandler. Just use the serviceId and kid
+                // combination to look up the jwkList. Once found, break the loop.
+                for(String serviceId: serviceIds) {
+                    jwkList = jwksMap.get(getJwkKey(serviceId, kid));
+                    if(jwkList != null && jwkList.size() > 0) {
+                        break;
                     }
                 }
+            }
+        }
 
-                if (jwkList == null) {
-                    jwkList = getJsonWebKeySetForToken(kid, requestPathOrJwkServiceIds);
-                    if (jwkList == null || jwkList.isEmpty()) {
-                        throw new RuntimeException("no JWK for kid: " + kid);
-                    }
-                    if(requestPathOrJwkServiceIds == null) {
-                        // single jwk setup and kid is the key for the jwk cache.
-                        cacheJwkList(jwkList, null);
-                    } else if(requestPathOrJwkServiceIds instanceof String) {
-                        // a single request path is passed in.
-                        String serviceId = getServiceIdByRequestPath(clientConfig, (String)requestPathOrJwkServiceIds);
-                        cacheJwkList(jwkList, serviceId);
-                    } else if(requestPathOrJwkServiceIds instanceof List) {
-                        // called with a list of serviceIds from the UnifiedSecurityHandler.
-                        for(String serviceId: (List<String>)requestPathOrJwkServiceIds) {
-                            cacheJwkList(jwkList, serviceId);
-                        }
-                    }
+        if (jwkList == null) {
+            jwkList = fetchJsonWebKeySet(kid, requestPathOrJwkServiceIds, clientConfig);
+        }
+        logger.debug("Got Json web key set from local cache");
+        return jwkList;
+    }
+
+    /**
+     * Retrieve the JWK of a new kid from the key service. Only one request retrieves the JWK of a kid at a time, and
+     * the other requests with the same kid wait for its result instead of calling the key service again. A kid that
+     * is not found is remembered for UNKNOWN_KID_EXPIRED_IN_SECONDS to protect the key service from invalid tokens.
+     *
+     * @param kid the key id from the token header
+     * @param requestPathOrJwkServiceIds the request path or the jwkServiceIds
+     * @param clientConfig the client config
+     * @return the list of JWK that are cached in the jwksMap
+     */
+    @SuppressWarnings("unchecked")
+    private List<JsonWebKey> fetchJsonWebKeySet(String kid, Object requestPathOrJwkServiceIds, ClientConfig clientConfig) {
+        String fetchKey = getScope(requestPathOrJwkServiceIds) + ":" + kid;
+        if (unknownKids.getIfPresent(fetchKey) != null) {
+            throw new RuntimeException("no JWK for kid: " + kid);
+        }
+        CompletableFuture<List<JsonWebKey>> fetch = new CompletableFuture<>();
+        CompletableFuture<List<JsonWebKey>> inflight = jwkFetches.putIfAbsent(fetchKey, fetch);
+        if (inflight != null) {
+            if (logger.isDebugEnabled()) logger.debug("Waiting for the JWK of kid {} retrieved by another request", kid);
+            try {
+                return inflight.get(JWK_FETCH_WAIT_IN_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("no JWK for kid: " + kid, e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new RuntimeException("no JWK for kid: " + kid, e);
+            }
+        }
+        try {
+            List<JsonWebKey> jwkList = getJsonWebKeySetForToken(kid, requestPathOrJwkServiceIds);
+            if (jwkList == null || jwkList.isEmpty()) {
+                unknownKids.put(fetchKey, Boolean.TRUE);
+                throw new RuntimeException("no JWK for kid: " + kid);
+            }
+            if(requestPathOrJwkServiceIds == null) {
+                // single jwk setup and kid is the key for the jwk cache.
+                cacheJwkList(jwkList, null);
+            } else if(requestPathOrJwkServiceIds instanceof String) {
+                // a single request path is passed in.
+                String serviceId = getServiceIdByRequestPath(clientConfig, (String)requestPathOrJwkServiceIds);
+                cacheJwkList(jwkList, serviceId);
+            } else if(requestPathOrJwkServiceIds instanceof List) {
+                // called with a list of serviceIds from the UnifiedSecurityHandler.
+                for(String serviceId: (List<String>)requestPathOrJwkServiceIds) {
+                    cacheJwkList(jwkList, serviceId);
                 }
-                logger.debug("Got Json web key set from local cache");
-                return new JwksVerificationKeyResolver(jwkList);
-            } else {
-                logger.error("Both X509Certificate and JWK are not configured.");
-                return null;
             }
+            fetch.complete(jwkList);
+            return jwkList;
+        } catch (RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            jwkFetches.remove(fetchKey, fetch);
         }
     }
 
     private void cacheJwkList(List<JsonWebKey> jwkList, String serviceId) {
         for (JsonWebKey jwk : jwkList) {
             if(serviceId != null) {
-                if(logger.isTraceEnabled()) logger.trace("cache the jwkList with serviceId {} kid {} and key {}", serviceId, jwk.getKeyId(), serviceId + ":" + jwk.getKeyId());
-                jwksMap.put(serviceId + ":" + jwk.getKeyId(), jwkList);
+                if(logger.isTraceEnabled()) logger.trace("cache the jwkList with serviceId {} kid {} and key {}", serviceId, jwk.getKeyId(), getJwkKey(serviceId, jwk.getKeyId()));
+                jwksMap.put(getJwkKey(serviceId, jwk.getKeyId()), jwkList);
             } else {
                 if(logger.isTraceEnabled()) logger.trace("cache the jwkList with kid and only kid as key", jwk.getKeyId());
-                jwksMap.put(jwk.getKeyId(), jwkList);
+                jwksMap.put(getJwkKey(null, jwk.getKeyId()), jwkList);
             }
         }
     }
+
+    /**
+     * Get the key of the jwksMap for the kid, prefixed with the serviceId of the key service if there are multiple
+     * key services. A null kid is replaced with NO_KID so that the tokens and the JWK without a kid are supported.
+     *
+     * @param serviceId the serviceId of the key service or null for the single key service
+     * @param kid the key id, which can be null
+     * @return the key of the jwksMap
+     */
+    static String getJwkKey(String serviceId, String kid) {
+        String key = kid == null ? NO_KID : kid;
+        return serviceId == null ? key : serviceId + ":" + key;
+    }
     private String getServiceIdByRequestPath(ClientConfig clientConfig, String requestPath) {
         Map<String, String> pathPrefixServices = clientConfig.getPathPrefixServices();
         if(clientConfig.isMultipleAuthServers()) {
@@ -452,7 +766,7 @@ public class JwtVerifier extends TokenVerifier {
     private Map<String, List<JsonWebKey>> getJsonWebKeyMap() {
         // the jwk indicator will ensure that the kid is not concat to the uri for path parameter.
         // the kid is not needed to get JWK. We need to figure out only one jwk server or multiple.
-        jwksMap = new HashMap<>();
+        Map<String, List<JsonWebKey>> keyMap = new ConcurrentHashMap<>();
         ClientConfig clientConfig = ClientConfig.get();
         if (clientConfig.isMultipleAuthServers()) {
             // iterate all the configured auth server to get JWK.
@@ -484,9 +798,9 @@ public class JwtVerifier extends TokenVerifier {
                             logger.error("Cannot get JWK from OAuth server.");
                     } else {
                         for (JsonWebKey jwk : jwkList) {
-                            jwksMap.put(serviceId + ":" + jwk.getKeyId(), jwkList);
+                            keyMap.put(getJwkKey(serviceId, jwk.getKeyId()), jwkList);
                             if (logger.isDebugEnabled())
-                                logger.debug("Successfully cached JWK for serviceId {} kid {} with key {}", serviceId, jwk.getKeyId(), serviceId + ":" + jwk.getKeyId());
+                                logger.debug("Successfully cached JWK for serviceId {} kid {} with key {}", serviceId, jwk.getKeyId(), getJwkKey(serviceId, jwk.getKeyId()));
                         }
                     }
                 } catch (JoseException ce) {
@@ -516,7 +830,7 @@ public class JwtVerifier extends TokenVerifier {
                     throw new RuntimeException("cannot get JWK from OAuth server");
                 }
                 for (JsonWebKey jwk : jwkList) {
-                    jwksMap.put(jwk.getKeyId(), jwkList);
+                    keyMap.put(getJwkKey(null, jwk.getKeyId()), jwkList);
 
                     if (logger.isDebugEnabled())
                         logger.debug("Successfully cached JWK for kid {}", jwk.getKeyId());
@@ -532,7 +846,7 @@ public class JwtVerifier extends TokenVerifier {
                     logger.error("Failed to get Key. - {} - {}", new Status(GET_KEY_ERROR), ce.getMessage(), ce);
             }
         }
-        return jwksMap;
+        return keyMap;
     }
 
     /**
@@ -687,4 +1001,65 @@ public class JwtVerifier extends TokenVerifier {
         return fingerPrints;
     }
 
+    /**
+     * The cache key of a token, which is the pathPrefix and a 64-bit FNV-1a hash of the signature segment. The
+     * signature is unique per token, so hashing it is enough to identify the token without the whole token string.
+     */
+    static final class TokenKey {
+        private final String pathPrefix;
+        private final long hash;
+
+        TokenKey(String pathPrefix, String jwt) {
+            this.pathPrefix = pathPrefix;
+            long h = 0xcbf29ce484222325L;
+            for (int i = jwt.lastIndexOf('.') + 1; i < jwt.length(); i++) {
+                h ^= jwt.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TokenKey)) return false;
+            TokenKey that = (TokenKey) o;
+            return hash == that.hash && (pathPrefix == null ? that.pathPrefix == null : pathPrefix.equals(that.pathPrefix));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (pathPrefix == null ? 0 : pathPrefix.hashCode()) + Long.hashCode(hash);
+        }
+    }
+
+    /**
+     * The verified claims of a token with the time in nanoseconds to keep it in the cache.
+     */
+    static final class CachedClaims {
+        final String jwt;
+        final JwtClaims claims;
+        private final long timeToLive;
+
+        CachedClaims(String jwt, JwtClaims claims, int allowedClockSkew) {
+            this.jwt = jwt;
+            this.claims = claims;
+            long maxTime = TimeUnit.MINUTES.toNanos(CACHE_EXPIRED_IN_MINUTES);
+            long time = maxTime;
+            try {
+                NumericDate expiration = claims.getExpirationTime();
+                if (expiration != null) {
+                    long millis = (expiration.getValue() + allowedClockSkew) * 1000 - System.currentTimeMillis();
+                    time = Math.max(0, Math.min(maxTime, TimeUnit.MILLISECONDS.toNanos(millis)));
+                }
+            } catch (MalformedClaimException e) {
+                // the expiration is required by the consumer, so it won't happen.
+            }
+            this.timeToLive = time;
+        }
+
+        long getTimeToLive() {
+            return timeToLive;
+        }
+    }
 }
@@ -36,6 +36,13 @@ public class SecurityConfig {
     private static final String ENABLE_JWT_CACHE = "enableJwtCache";
     private static final String JWT_CACHE_FULL_SIZE = "jwtCacheFullSize";
     private static final String BOOTSTRAP_FROM_KEY_SERVICE = "bootstrapFromKeyService";
+    private static final String JWK_REFRESH_INTERVAL = "jwkRefreshInterval";
+    // the default of the jwkRefreshInterval in seconds, which is the same as the security.yml.
+    private static final int DEFAULT_JWK_REFRESH_INTERVAL = 3600;
+    private static final String ENABLE_SWT_CACHE = "enableSwtCache";
+    private static final String SWT_CACHE_FULL_SIZE = "swtCacheFullSize";
+    private static final String SWT_CACHE_TTL = "swtCacheTtl";
+    private static final String SWT_NEGATIVE_CACHE_TTL = "swtNegativeCacheTtl";
     private static final String IGNORE_JWT_EXPIRY = "ignoreJwtExpiry";
     private static final String PROVIDER_ID = "providerId";
     private static final String ENABLE_H2C = "enableH2c";
@@ -60,6 +67,11 @@ public class SecurityConfig {
     private boolean enableJwtCache;
     private int jwtCacheFullSize;
     private boolean bootstrapFromKeyService;
+    private int jwkRefreshInterval = DEFAULT_JWK_REFRESH_INTERVAL;
+    private boolean enableSwtCache;
+    private int swtCacheFullSize;
+    private int swtCacheTtl;
+    private int swtNegativeCacheTtl;
     private boolean ignoreJwtExpiry;
     private String providerId;
     private boolean enableH2c;
@@ -152,6 +164,21 @@ public class SecurityConfig {
     public boolean isBootstrapFromKeyService() {
         return bootstrapFromKeyService;
     }
+    public int getJwkRefreshInterval() {
+        return jwkRefreshInterval;
+    }
+    public boolean isEnableSwtCache() {
+        return enableSwtCache;
+    }
+    public int getSwtCacheFullSize() {
+        return swtCacheFullSize;
+    }
+    public int getSwtCacheTtl() {
+        return swtCacheTtl;
+    }
+    public int getSwtNegativeCacheTtl() {
+        return swtNegativeCacheTtl;
+    }
     public List<String> getSkipPathPrefixes() {
         return skipPathPrefixes;
     }
@@ -241,6 +268,26 @@ public class SecurityConfig {
             if(object != null && (Boolean) object) {
                 bootstrapFromKeyService = true;
             }
+            object = getMappedConfig().get(JWK_REFRESH_INTERVAL);
+            if(object != null) {
+                jwkRefreshInterval = (Integer)object;
+            }
+            object = getMappedConfig().get(ENABLE_SWT_CACHE);
+            if(object != null && (Boolean) object) {
+                enableSwtCache = true;
+            }
+            object = getMappedConfig().get(SWT_CACHE_FULL_SIZE);
+            if(object != null) {
+                swtCacheFullSize = (Integer)object;
+            }
+            object = getMappedConfig().get(SWT_CACHE_TTL);
+            if(object != null) {
+                swtCacheTtl = (Integer)object;
+            }
+            object = getMappedConfig().get(SWT_NEGATIVE_CACHE_TTL);
+            if(object != null) {
+                swtNegativeCacheTtl = (Integer)object;
+            }
             object = getMappedConfig().get(IGNORE_JWT_EXPIRY);
             if(object != null && (Boolean) object) {
                 ignoreJwtExpiry = true;
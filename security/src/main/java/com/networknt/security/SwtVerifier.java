@@ -1,5 +1,8 @@
 package com.networknt.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.networknt.client.ClientConfig;
 import com.networknt.client.oauth.TokenInfo;
 import com.networknt.client.oauth.TokenIntrospectionRequest;
@@ -13,12 +16,23 @@ import com.networknt.status.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This is common part the simple web token verification class. It will be called by the UnifiedSecurityHandler
  * or SwtVerifyHandler in light-rest-4j.
+ *
+ * If enableSwtCache is true, the introspection results are cached by the token and the serviceId of the auth
+ * server, so that a token is introspected once until it is expired or the swtCacheTtl is passed. The concurrent
+ * requests with the same token that is not cached share one introspection.
  * @author Steve Hu
  */
 public class SwtVerifier extends TokenVerifier {
@@ -28,8 +42,39 @@ public class SwtVerifier extends TokenVerifier {
     public static final String INTROSPECTED_TOKEN_EXPIRED = "ERR10081";
     static SecurityConfig config;
 
+    static Cache<IntrospectionKey, CachedTokenInfo> cache;
+    // the introspections in progress by the token, so that the requests with the same new token share one introspection.
+    static final Map<IntrospectionKey, CompletableFuture<Result<TokenInfo>>> introspections = new ConcurrentHashMap<>();
+    // the max time in milliseconds to wait for the introspection of the same token by another request.
+    static long introspectionWait = TimeUnit.SECONDS.toMillis(10);
+    static final LongAdder cacheHits = new LongAdder();
+    static final LongAdder cacheMisses = new LongAdder();
+
     public SwtVerifier(SecurityConfig config) {
         this.config = config;
+        if(config.isEnableSwtCache()) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(config.getSwtCacheFullSize())
+                    .expireAfter(new Expiry<IntrospectionKey, CachedTokenInfo>() {
+                        @Override
+                        public long expireAfterCreate(IntrospectionKey key, CachedTokenInfo value, long currentTime) {
+                            return value.timeToLive;
+                        }
+
+                        @Override
+                        public long expireAfterUpdate(IntrospectionKey key, CachedTokenInfo value, long currentTime, long currentDuration) {
+                            return value.timeToLive;
+                        }
+
+                        @Override
+                        public long expireAfterRead(IntrospectionKey key, CachedTokenInfo value, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    })
+                    .build();
+        } else {
+            cache = null;
+        }
         if(logger.isInfoEnabled()) logger.info("SwtVerifier is constructed.");
     }
 
@@ -82,14 +127,14 @@ public class SwtVerifier extends TokenVerifier {
                     throw new ConfigException("serviceId cannot be identified in client.yml with the requestPath = " + requestPath);
                 }
                 config = getJwkConfig(clientConfig, serviceId);
-                result = inspectToken(swt, config);
+                result = inspectToken(swt, serviceId, config);
             } else if (requestPathOrSwtServiceIds instanceof List) {
                 // for this particular path prefix, there are two OAuth servers set up to inspect the token. Which one is success
                 // with active true will be used. Here we just return the one entry with active equal to true.
                 List<String> swtServiceIds = (List<String>)requestPathOrSwtServiceIds;
                 for(String serviceId: swtServiceIds) {
                     config = getJwkConfig(clientConfig, serviceId);
-                    result  = inspectToken(swt, config);
+                    result  = inspectToken(swt, serviceId, config);
                     if(result.isSuccess()) {
                         // find the first success, we need to break the loop.
                         break;
@@ -101,12 +146,98 @@ public class SwtVerifier extends TokenVerifier {
             }
         } else {
             // get the token introspection config from the key section in the client.yml token key.
-            result = inspectToken(swt, null);
+            result = inspectToken(swt, null, null);
         }
         return result;
     }
 
-    private Result<TokenInfo> inspectToken(String swt, Map<String, Object> config) {
+    /**
+     * Get the token info from the cache or the introspection endpoint of the auth server.
+     *
+     * @param swt String of simple web token
+     * @param serviceId the serviceId of the auth server or null if the single auth server is used
+     * @param config the introspection config of the auth server or null if the single auth server is used
+     * @return {@link Result} of {@link TokenInfo}.
+     */
+    private Result<TokenInfo> inspectToken(String swt, String serviceId, Map<String, Object> config) {
+        Cache<IntrospectionKey, CachedTokenInfo> cache = SwtVerifier.cache;
+        if(cache == null) return introspectToken(swt, config);
+        IntrospectionKey key = new IntrospectionKey(serviceId, swt);
+        CachedTokenInfo cached = cache.getIfPresent(key);
+        if(cached != null) {
+            cacheHits.increment();
+            return cached.result;
+        }
+        cacheMisses.increment();
+        CompletableFuture<Result<TokenInfo>> future = new CompletableFuture<>();
+        CompletableFuture<Result<TokenInfo>> inflight = introspections.putIfAbsent(key, future);
+        if(inflight != null) {
+            if(logger.isTraceEnabled()) logger.trace("Waiting for the introspection in progress of the same token.");
+            try {
+                return inflight.get(introspectionWait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return introspectionError(swt, config, e);
+            } catch (ExecutionException | TimeoutException e) {
+                return introspectionError(swt, config, e);
+            }
+        }
+        try {
+            Result<TokenInfo> result = introspectToken(swt, config);
+            long timeToLive = timeToLive(result);
+            if(timeToLive > 0) cache.put(key, new CachedTokenInfo(result, timeToLive));
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            introspections.remove(key, future);
+        }
+    }
+
+    /**
+     * An active token is cached up to the swtCacheTtl and never after its exp. An inactive token is cached for
+     * the swtNegativeCacheTtl. The other errors are not cached as they might be transient.
+     */
+    static long timeToLive(Result<TokenInfo> result) {
+        if(result.isSuccess()) {
+            long ttl = TimeUnit.SECONDS.toNanos(config.getSwtCacheTtl());
+            long exp = result.getResult().getExp();
+            if(exp > 0) {
+                ttl = Math.min(ttl, TimeUnit.MILLISECONDS.toNanos(exp * 1000 - System.currentTimeMillis()));
+            }
+            return ttl;
+        } else if(INTROSPECTED_TOKEN_EXPIRED.equals(result.getError().getCode())) {
+            return TimeUnit.SECONDS.toNanos(config.getSwtNegativeCacheTtl());
+        }
+        return 0;
+    }
+
+    /**
+     * The metrics of the introspection cache.
+     *
+     * @return the cache hits, misses and size, and the number of the introspections in progress
+     */
+    public Map<String, Object> getCacheMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("hits", cacheHits.sum());
+        metrics.put("misses", cacheMisses.sum());
+        metrics.put("size", cache == null ? 0 : cache.estimatedSize());
+        metrics.put("introspections", introspections.size());
+        return metrics;
+    }
+
+    /**
+     * The introspection error of a request that cannot get the result of the introspection in progress.
+     */
+    private Result<TokenInfo> introspectionError(String swt, Map<String, Object> config, Exception e) {
+        String serverUrl = new TokenIntrospectionRequest(swt, config).getServerUrl();
+        logger.error("Failed to wait for the token info - {} - {}", new Status(OAUTH_INTROSPECTION_ERROR, serverUrl, swt), e.toString());
+        return Failure.of(new Status(OAUTH_INTROSPECTION_ERROR, serverUrl, swt));
+    }
+
+    private Result<TokenInfo> introspectToken(String swt, Map<String, Object> config) {
         // get the token info with the swt token and config map.
         if (logger.isTraceEnabled() && config != null)
             logger.trace("OAuth token info introspection config = " + JsonMapper.toJson(config));
@@ -143,5 +274,36 @@ public class SwtVerifier extends TokenVerifier {
         }
     }
 
+    static final class IntrospectionKey {
+        private final String serviceId;
+        private final String swt;
 
+        IntrospectionKey(String serviceId, String swt) {
+            this.serviceId = serviceId;
+            this.swt = swt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IntrospectionKey)) return false;
+            IntrospectionKey that = (IntrospectionKey) o;
+            return swt.equals(that.swt) && (serviceId == null ? that.serviceId == null : serviceId.equals(that.serviceId));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (serviceId == null ? 0 : serviceId.hashCode()) + swt.hashCode();
+        }
+    }
+
+    static final class CachedTokenInfo {
+        final Result<TokenInfo> result;
+        final long timeToLive;
+
+        CachedTokenInfo(Result<TokenInfo> result, long timeToLive) {
+            this.result = result;
+            this.timeToLive = timeToLive;
+        }
+    }
 }
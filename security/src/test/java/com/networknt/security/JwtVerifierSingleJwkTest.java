@@ -48,6 +48,10 @@ public class JwtVerifierSingleJwkTest extends JwtVerifierJwkBase {
     public static String jsonWebKeySetJson111 = "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"111\",\"n\":\"uuXEy0NvrQOiASV_hMHPnTi1GF5mKYATR0kv9hvLidpwl2q9zmXjP5ZakN-sj2StDZiL3K-HAA_4-tHqBZwipY_hyk0TtcgBQOCvgK3IjsKm1P-WmO1uTPgMYIyZp4OfSOoeom1J5JkZ_BW7nMAabyfiwdq2OefEEj-JbORMgjdXjG_RZ4rfuzM1MR36XLZqDufYhXnM2diaplN4xCYnYQ1L4jAAbcQ22JW2tVPH_Zsa2q60mO13Gw3nz9xQb-C5HIxPo48jxiLdnN6929FvFp3KESX8prDq8lx3GYkje2niXH6nqwDE5Zrtpqkl7gnG60BCrO_QYp1WOgcpDXAHrQ\",\"e\":\"AQAB\"}]}";
     public static String jsonWebKeySetJson112 = "{\"keys\":[{\"kty\":\"RSA\",\"kid\":\"112\",\"n\":\"uuXEy0NvrQOiASV_hMHPnTi1GF5mKYATR0kv9hvLidpwl2q9zmXjP5ZakN-sj2StDZiL3K-HAA_4-tHqBZwipY_hyk0TtcgBQOCvgK3IjsKm1P-WmO1uTPgMYIyZp4OfSOoeom1J5JkZ_BW7nMAabyfiwdq2OefEEj-JbORMgjdXjG_RZ4rfuzM1MR36XLZqDufYhXnM2diaplN4xCYnYQ1L4jAAbcQ22JW2tVPH_Zsa2q60mO13Gw3nz9xQb-C5HIxPo48jxiLdnN6929FvFp3KESX8prDq8lx3GYkje2niXH6nqwDE5Zrtpqkl7gnG60BCrO_QYp1WOgcpDXAHrQ\",\"e\":\"AQAB\"}]}";
 
+    public static String jsonWebKeySetJsonNoKid = "{\"keys\":[{\"kty\":\"RSA\",\"n\":\"uuXEy0NvrQOiASV_hMHPnTi1GF5mKYATR0kv9hvLidpwl2q9zmXjP5ZakN-sj2StDZiL3K-HAA_4-tHqBZwipY_hyk0TtcgBQOCvgK3IjsKm1P-WmO1uTPgMYIyZp4OfSOoeom1J5JkZ_BW7nMAabyfiwdq2OefEEj-JbORMgjdXjG_RZ4rfuzM1MR36XLZqDufYhXnM2diaplN4xCYnYQ1L4jAAbcQ22JW2tVPH_Zsa2q60mO13Gw3nz9xQb-C5HIxPo48jxiLdnN6929FvFp3KESX8prDq8lx3GYkje2niXH6nqwDE5Zrtpqkl7gnG60BCrO_QYp1WOgcpDXAHrQ\",\"e\":\"AQAB\"}]}";
+    // the JWK set returned by the key service of server3.
+    static volatile String jsonWebKeySet = jsonWebKeySetJson111;
+
     public static final String CLIENT_CONFIG_NAME = "client-single-auth";
     static ClientConfig config;
     static SecurityConfig securityConfig;
@@ -161,7 +165,7 @@ public class JwtVerifierSingleJwkTest extends JwtVerifierJwkBase {
                     .setHandler(new PathHandler()
                             .addExactPath(KEY, exchange -> {
                                 exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-                                exchange.getResponseSender().send(jsonWebKeySetJson111);
+                                exchange.getResponseSender().send(jsonWebKeySet);
                             })
                             .addExactPath(TOKEN, exchange -> exchange.getRequestReceiver().receiveFullString(new Receiver.FullStringCallback() {
                                 @Override
@@ -345,6 +349,43 @@ public class JwtVerifierSingleJwkTest extends JwtVerifierJwkBase {
         callMarketApiAsync();
     }
 
+    @Test
+    public void testRefreshRemovesRevokedKeys() throws Exception {
+        ClientConfig.get(CLIENT_CONFIG_NAME);
+        JwtVerifier jwtVerifier = new JwtVerifier(securityConfig);
+        // a kid that was retrieved before and is no longer returned by the key service.
+        JwtVerifier.jwksMap.put("revoked", JwtVerifier.jwksMap.getOrDefault("111", Collections.emptyList()));
+        jwtVerifier.refreshJsonWebKeys();
+        Assert.assertTrue(JwtVerifier.jwksMap.containsKey("111"));
+        Assert.assertFalse(JwtVerifier.jwksMap.containsKey("revoked"));
+    }
+
+    @Test
+    public void testJwkWithoutKid() throws Exception {
+        ClientConfig.get(CLIENT_CONFIG_NAME);
+        JwtVerifier jwtVerifier = new JwtVerifier(securityConfig);
+        jsonWebKeySet = jsonWebKeySetJsonNoKid;
+        try {
+            // the JWK without a kid is cached and used to verify the token without a kid.
+            jwtVerifier.refreshJsonWebKeys();
+            Assert.assertTrue(JwtVerifier.jwksMap.containsKey(JwtVerifier.getJwkKey(null, null)));
+            JwtClaims claims = jwtVerifier.verifyJwt(getJwt(5, null), false, true);
+            Assert.assertNotNull(claims);
+        } finally {
+            jsonWebKeySet = jsonWebKeySetJson111;
+            jwtVerifier.refreshJsonWebKeys();
+        }
+    }
+
+    @Test
+    public void testTokenWithoutKid() throws Exception {
+        ClientConfig.get(CLIENT_CONFIG_NAME);
+        JwtVerifier jwtVerifier = new JwtVerifier(securityConfig);
+        // the token without a kid is verified with the JWK retrieved from the key service.
+        JwtClaims claims = jwtVerifier.verifyJwt(getJwt(5, null), false, true);
+        Assert.assertNotNull(claims);
+    }
+
     @Test
     public void testVerifyJwt() throws Exception {
         JwtClaims claims = ClaimsUtil.getTestClaims("steve", "EMPLOYEE", "f7d42348-c647-4efb-a52d-4c5787421e72", Arrays.asList("write:pets", "read:pets"), "user");
@@ -21,9 +21,12 @@ import com.networknt.utility.Constants;
 import org.jose4j.jwk.JsonWebKey;
 import org.jose4j.jwk.JsonWebKeySet;
 import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jwk.RsaJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
 import org.jose4j.jws.AlgorithmIdentifiers;
 import org.jose4j.jws.JsonWebSignature;
 import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.keys.resolvers.JwksVerificationKeyResolver;
 import org.jose4j.lang.JoseException;
 import org.junit.Assert;
@@ -34,6 +37,8 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class JwtVerifierTest {
     static final String CONFIG_NAME = "security-509";
@@ -269,4 +274,111 @@ public class JwtVerifierTest {
         ids.add("xyz");
         System.out.println("ids = " + ids);
     }
+
+    @Test
+    public void testVerifyJwtCache() throws Exception {
+        JwtClaims claims = ClaimsUtil.getTestClaims("steve", "EMPLOYEE", "f7d42348-c647-4efb-a52d-4c5787421e72", Arrays.asList("write:pets", "read:pets"), "user");
+        String jwt = JwtIssuer.getJwt(claims);
+        JwtVerifier jwtVerifier = new JwtVerifier(SecurityConfig.load(CONFIG_NAME));
+        Map<String, Object> before = jwtVerifier.getCacheMetrics();
+        claims = jwtVerifier.verifyJwt(jwt, false, true, "/v1/pets", null, null);
+        Assert.assertEquals("steve", claims.getStringClaimValue(Constants.USER_ID_STRING));
+        // the second verification is served from the cache without verifying the signature again.
+        Assert.assertSame(claims, jwtVerifier.verifyJwt(jwt, false, true, "/v1/pets", null, null));
+        Map<String, Object> after = jwtVerifier.getCacheMetrics();
+        Assert.assertEquals(1L, (Long)after.get("hits") - (Long)before.get("hits"));
+        Assert.assertEquals(1L, (Long)after.get("verifications") - (Long)before.get("verifications"));
+
+        // another token with the same kid reuses the consumer.
+        String jwt2 = JwtIssuer.getJwt(ClaimsUtil.getTestClaims("eric", "EMPLOYEE", "f7d42348-c647-4efb-a52d-4c5787421e72", Arrays.asList("write:pets", "read:pets"), "user"));
+        Assert.assertEquals("eric", jwtVerifier.verifyJwt(jwt2, false, true, "/v1/pets", null, null).getStringClaimValue(Constants.USER_ID_STRING));
+        Assert.assertEquals(after.get("consumers"), jwtVerifier.getCacheMetrics().get("consumers"));
+
+        // a token with the signature of the cached token and a different payload is not served from the cache.
+        String[] parts = jwt.split("\\.");
+        String forged = parts[0] + "." + jwt2.split("\\.")[1] + "." + parts[2];
+        try {
+            jwtVerifier.verifyJwt(forged, false, true, "/v1/pets", null, null);
+            Assert.fail("the forged token must not be verified");
+        } catch (InvalidJwtException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConsumerNotCachedForHeaderAlgorithm() throws Exception {
+        String jwt = JwtIssuer.getJwt(ClaimsUtil.getTestClaims("steve", "EMPLOYEE", "f7d42348-c647-4efb-a52d-4c5787421e72", Arrays.asList("write:pets", "read:pets"), "user"));
+        JwtVerifier jwtVerifier = new JwtVerifier(SecurityConfig.load(CONFIG_NAME));
+        String[] parts = jwt.split("\\.");
+        String header = new String(Base64.getUrlDecoder().decode(parts[0]), "UTF-8");
+        // the tokens with the known kid and the algorithms that are not permitted by the key don't add any consumer.
+        for (int i = 0; i < 10; i++) {
+            String forgedHeader = header.replace("RS256", "RS256-" + i);
+            String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(forgedHeader.getBytes("UTF-8")) + "." + parts[1] + "." + parts[2];
+            try {
+                jwtVerifier.verifyJwt(forged, false, true, "/v1/pets", null, null);
+                Assert.fail("the token with an algorithm that is not permitted must not be verified");
+            } catch (InvalidJwtException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(0L, jwtVerifier.getCacheMetrics().get("consumers"));
+        jwtVerifier.verifyJwt(jwt, false, true, "/v1/pets", null, null);
+        Assert.assertEquals(1L, jwtVerifier.getCacheMetrics().get("consumers"));
+    }
+
+    private static String getJwt(RsaJsonWebKey jwk) throws JoseException {
+        JwtClaims claims = ClaimsUtil.getTestClaims("steve", "EMPLOYEE", "f7d42348-c647-4efb-a52d-4c5787421e72", Arrays.asList("write:pets", "read:pets"), "user");
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setKey(jwk.getPrivateKey());
+        jws.setKeyIdHeaderValue(jwk.getKeyId());
+        jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.RSA_USING_SHA256);
+        return jws.getCompactSerialization();
+    }
+
+    @Test
+    public void testWaitForInflightJwkFetch() throws Exception {
+        RsaJsonWebKey jwk = RsaJwkGenerator.generateJwk(2048);
+        jwk.setKeyId("jwk-fetch-test");
+        String jwt = getJwt(jwk);
+        JwtVerifier jwtVerifier = new JwtVerifier(SecurityConfig.load(JwtVerifier.SECURITY_CONFIG));
+        // another request is retrieving the JWK of the kid, so the verification waits for it instead of calling the key service.
+        CompletableFuture<List<JsonWebKey>> fetch = new CompletableFuture<>();
+        JwtVerifier.jwkFetches.put(":" + jwk.getKeyId(), fetch);
+        try {
+            CompletableFuture<JwtClaims> result = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return jwtVerifier.verifyJwt(jwt, false, true);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            Assert.assertFalse(result.isDone());
+            PublicJsonWebKey publicJwk = PublicJsonWebKey.Factory.newPublicJwk(jwk.getPublicKey());
+            publicJwk.setKeyId(jwk.getKeyId());
+            fetch.complete(Collections.singletonList(publicJwk));
+            Assert.assertEquals("steve", result.get(5, TimeUnit.SECONDS).getStringClaimValue(Constants.USER_ID_STRING));
+        } finally {
+            JwtVerifier.jwkFetches.remove(":" + jwk.getKeyId());
+        }
+    }
+
+    @Test
+    public void testUnknownKid() throws Exception {
+        RsaJsonWebKey jwk = RsaJwkGenerator.generateJwk(2048);
+        jwk.setKeyId("unknown-kid-test");
+        String jwt = getJwt(jwk);
+        JwtVerifier jwtVerifier = new JwtVerifier(SecurityConfig.load(JwtVerifier.SECURITY_CONFIG));
+        // a kid that is not found in the key service is rejected without calling the key service again.
+        JwtVerifier.unknownKids.put(":" + jwk.getKeyId(), Boolean.TRUE);
+        try {
+            jwtVerifier.verifyJwt(jwt, false, true);
+            Assert.fail("the token with an unknown kid must not be verified");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("no JWK for kid: unknown-kid-test", e.getMessage());
+        }
+        Assert.assertEquals(1L, jwtVerifier.getCacheMetrics().get("unknownKids"));
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.security;
+
+import com.networknt.client.oauth.TokenInfo;
+import com.networknt.monad.Failure;
+import com.networknt.monad.Result;
+import com.networknt.monad.Success;
+import com.networknt.status.Status;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class SwtVerifierTest {
+    static final String SERVICE_ID = "com.networknt.petstore-3.0.1";
+    static final List<String> SWT_SERVICE_IDS = Collections.singletonList(SERVICE_ID);
+
+    SwtVerifier swtVerifier;
+
+    @Before
+    public void setUp() {
+        swtVerifier = new SwtVerifier(SecurityConfig.load("security"));
+        SwtVerifier.cacheHits.reset();
+        SwtVerifier.cacheMisses.reset();
+    }
+
+    @Test
+    public void testCachedTokenInfo() {
+        TokenInfo tokenInfo = new TokenInfo();
+        tokenInfo.setActive(true);
+        Result<TokenInfo> result = Success.of(tokenInfo);
+        SwtVerifier.cache.put(new SwtVerifier.IntrospectionKey(SERVICE_ID, "token1"), new SwtVerifier.CachedTokenInfo(result, TimeUnit.MINUTES.toNanos(1)));
+        Assert.assertSame(result, swtVerifier.verifySwt("token1", "/v1/pets", SWT_SERVICE_IDS));
+        Assert.assertEquals(1L, swtVerifier.getCacheMetrics().get("hits"));
+    }
+
+    @Test
+    public void testSharedIntrospectionTimeout() throws Exception {
+        long wait = SwtVerifier.introspectionWait;
+        SwtVerifier.introspectionWait = 100;
+        try {
+            // the introspection in progress never completes.
+            SwtVerifier.introspections.put(new SwtVerifier.IntrospectionKey(SERVICE_ID, "token3"), new CompletableFuture<>());
+            Result<TokenInfo> result = swtVerifier.verifySwt("token3", "/v1/pets", SWT_SERVICE_IDS);
+            Assert.assertTrue(result.isFailure());
+            Assert.assertEquals(SwtVerifier.OAUTH_INTROSPECTION_ERROR, result.getError().getCode());
+        } finally {
+            SwtVerifier.introspectionWait = wait;
+            SwtVerifier.introspections.clear();
+        }
+    }
+
+    @Test
+    public void testSharedIntrospection() throws Exception {
+        TokenInfo tokenInfo = new TokenInfo();
+        tokenInfo.setActive(true);
+        Result<TokenInfo> result = Success.of(tokenInfo);
+        // an introspection of the same token is in progress by another request.
+        CompletableFuture<Result<TokenInfo>> inflight = new CompletableFuture<>();
+        SwtVerifier.introspections.put(new SwtVerifier.IntrospectionKey(SERVICE_ID, "token2"), inflight);
+        CompletableFuture<Result<TokenInfo>> verified = CompletableFuture.supplyAsync(() -> swtVerifier.verifySwt("token2", "/v1/pets", SWT_SERVICE_IDS));
+        Thread.sleep(50);
+        Assert.assertFalse(verified.isDone());
+        inflight.complete(result);
+        Assert.assertSame(result, verified.get(1, TimeUnit.SECONDS));
+        SwtVerifier.introspections.clear();
+    }
+
+    @Test
+    public void testTimeToLive() {
+        TokenInfo tokenInfo = new TokenInfo();
+        tokenInfo.setActive(true);
+        // no exp, the swtCacheTtl is used.
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(60), SwtVerifier.timeToLive(Success.of(tokenInfo)));
+        // the token is expired in 10 seconds.
+        tokenInfo.setExp(System.currentTimeMillis() / 1000 + 10);
+        long ttl = SwtVerifier.timeToLive(Success.of(tokenInfo));
+        Assert.assertTrue(ttl > TimeUnit.SECONDS.toNanos(8) && ttl <= TimeUnit.SECONDS.toNanos(10));
+        // the inactive token is cached for the swtNegativeCacheTtl.
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(10), SwtVerifier.timeToLive(Failure.of(new Status(SwtVerifier.INTROSPECTED_TOKEN_EXPIRED, "token"))));
+        Assert.assertEquals(0, SwtVerifier.timeToLive(Failure.of(new Status(SwtVerifier.OAUTH_INTROSPECTION_ERROR, "url", "token"))));
+    }
+}
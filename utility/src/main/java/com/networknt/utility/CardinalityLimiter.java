@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Limit the number of the distinct values of the metric tags so that the number of the series in a metric
+ * registry is bounded when the values come from the requests (e.g. clientId in a multi-tenant gateway).
+ *
+ * For each dimension, up to the limit of values are kept as they are, and the rest are replaced with
+ * "other". The first values seen are kept until the limit is reached. After that, the frequencies of the
+ * folded values are tracked with a space-saving sketch, and at each review interval the folded values that
+ * are seen more often than the least used kept values replace them. So the kept values converge to the top
+ * values of the dimension. The eviction listener is notified so that the series of an evicted value can be
+ * removed from the registry.
+ *
+ * The lookup of a kept value is lock free, and the lock of the dimension is only taken to add a value under the
+ * limit. A folded value is counted in the sketch only if the lock of the sketch is free, so the sketch samples
+ * the folded values when the requests are concurrent instead of making them wait. The review and the eviction
+ * listener run on a background thread.
+ */
+public class CardinalityLimiter {
+    static final Logger logger = LoggerFactory.getLogger(CardinalityLimiter.class);
+    public static final String OTHER = "other";
+    public static final long DEFAULT_REVIEW_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    // the reviews of all the limiters are run on one thread as they are short and infrequent.
+    private static final ExecutorService reviewer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cardinality-review");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int limit;
+    private final long reviewInterval;
+    private final BiConsumer<String, String> evictionListener;
+    private final Map<String, Dimension> dimensions = new ConcurrentHashMap<>();
+
+    /**
+     * @param limit the max number of the distinct values per dimension. 0 or negative disables the limit.
+     * @param reviewInterval the min interval in milliseconds to replace the kept values with the top folded values
+     * @param evictionListener called with the dimension and the value that is replaced. It can be null.
+     */
+    public CardinalityLimiter(int limit, long reviewInterval, BiConsumer<String, String> evictionListener) {
+        this.limit = limit;
+        this.reviewInterval = reviewInterval;
+        this.evictionListener = evictionListener;
+    }
+
+    public CardinalityLimiter(int limit) {
+        this(limit, DEFAULT_REVIEW_INTERVAL, null);
+    }
+
+    public boolean isEnabled() {
+        return limit > 0;
+    }
+
+    /**
+     * @param dimension the name of the tag
+     * @param value the value of the tag
+     * @return the value if it is kept or OTHER if it is folded
+     */
+    public String limit(String dimension, String value) {
+        if(limit <= 0 || value == null) return value;
+        Dimension d = dimensions.get(dimension);
+        if(d == null) d = dimensions.computeIfAbsent(dimension, n -> new Dimension(n));
+        LongAdder count = d.kept.get(value);
+        if(count == null && d.kept.size() < limit) {
+            count = d.keep(value);
+        }
+        if(count != null) {
+            count.increment();
+            return value;
+        }
+        d.fold(value);
+        return OTHER;
+    }
+
+    /**
+     * @return the number of the kept values per dimension
+     */
+    public Map<String, Integer> getValueCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        dimensions.forEach((name, d) -> counts.put(name, d.kept.size()));
+        return counts;
+    }
+
+    /**
+     * @return the number of the values replaced with OTHER per dimension since the start
+     */
+    public Map<String, Long> getFoldedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        dimensions.forEach((name, d) -> counts.put(name, d.folded.sum()));
+        return counts;
+    }
+
+    /**
+     * Replace the kept values with the top folded values in all dimensions now on the caller thread instead of
+     * waiting for the review interval.
+     */
+    public void review() {
+        for(Dimension d : dimensions.values()) {
+            d.lastReview.set(System.currentTimeMillis());
+            d.review();
+        }
+    }
+
+    public long getFoldedCount(String dimension) {
+        Dimension d = dimensions.get(dimension);
+        return d == null ? 0 : d.folded.sum();
+    }
+
+    private final class Dimension {
+        final String name;
+        final Map<String, LongAdder> kept = new ConcurrentHashMap<>();
+        final LongAdder folded = new LongAdder();
+        final SpaceSaving sketch = new SpaceSaving(Math.max(limit * 2, 16));
+        final ReentrantLock sketchLock = new ReentrantLock();
+        final AtomicLong lastReview = new AtomicLong(System.currentTimeMillis());
+
+        Dimension(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Add a value if the number of the kept values is still under the limit.
+         *
+         * @return the count of the value or null if the limit is reached
+         */
+        synchronized LongAdder keep(String value) {
+            LongAdder count = kept.get(value);
+            if(count == null && kept.size() < limit) {
+                count = new LongAdder();
+                kept.put(value, count);
+            }
+            return count;
+        }
+
+        void fold(String value) {
+            folded.increment();
+            if(sketchLock.tryLock()) {
+                try {
+                    sketch.offer(value);
+                } finally {
+                    sketchLock.unlock();
+                }
+            }
+            long last = lastReview.get();
+            long now = System.currentTimeMillis();
+            if(now - last >= reviewInterval && lastReview.compareAndSet(last, now)) {
+                reviewer.execute(this::review);
+            }
+        }
+
+        /**
+         * Replace the least used kept values with the folded values that are guaranteed to be seen more
+         * often in the last interval, and start a new interval.
+         */
+        void review() {
+            List<String> evicted = new ArrayList<>();
+            synchronized (this) {
+                List<SpaceSaving.Counter> top;
+                sketchLock.lock();
+                try {
+                    top = sketch.top();
+                    sketch.clear();
+                } finally {
+                    sketchLock.unlock();
+                }
+                List<Map.Entry<String, Long>> keptCounts = new ArrayList<>(kept.size());
+                for(Map.Entry<String, LongAdder> entry : kept.entrySet()) {
+                    keptCounts.add(Map.entry(entry.getKey(), entry.getValue().sumThenReset()));
+                }
+                keptCounts.sort(Map.Entry.comparingByValue());
+                Iterator<Map.Entry<String, Long>> least = keptCounts.iterator();
+                for(SpaceSaving.Counter candidate : top) {
+                    if(!least.hasNext()) break;
+                    Map.Entry<String, Long> victim = least.next();
+                    if(candidate.count - candidate.error <= victim.getValue()) break;
+                    kept.remove(victim.getKey());
+                    kept.put(candidate.value, new LongAdder());
+                    evicted.add(victim.getKey());
+                }
+            }
+            if(evictionListener != null) {
+                for(String value : evicted) {
+                    try {
+                        evictionListener.accept(name, value);
+                    } catch (RuntimeException e) {
+                        // the listener must not stop the review of the other values.
+                        logger.error("Failed to remove the series of " + name + " " + value, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The space-saving sketch of the top values in a stream with the Stream-Summary structure. The counters are
+     * kept in the buckets of the same count, and the buckets are linked in the ascending order of the count, so a
+     * value is counted in constant time. A new value takes over a counter of the min count when all counters are
+     * used. The count of a value is overestimated by at most the error of the counter. It is not thread safe.
+     */
+    static final class SpaceSaving {
+        static final class Counter {
+            String value;
+            long count;
+            long error;
+            Bucket bucket;
+            Counter prev;
+            Counter next;
+
+            Counter(String value, long error) {
+                this.value = value;
+                this.error = error;
+            }
+        }
+
+        static final class Bucket {
+            final long count;
+            Bucket prev;
+            Bucket next;
+            Counter head;
+
+            Bucket(long count) {
+                this.count = count;
+            }
+        }
+
+        private final int capacity;
+        private final Map<String, Counter> counters = new HashMap<>();
+        // the buckets with the min and the max count.
+        private Bucket min;
+        private Bucket max;
+
+        SpaceSaving(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void offer(String value) {
+            Counter counter = counters.get(value);
+            if(counter != null) {
+                increment(counter);
+            } else if(counters.size() < capacity) {
+                counter = new Counter(value, 0);
+                counters.put(value, counter);
+                if(min == null || min.count != 1) {
+                    Bucket bucket = new Bucket(1);
+                    insertAfter(null, bucket);
+                }
+                attach(counter, min);
+            } else {
+                counter = min.head;
+                counters.remove(counter.value);
+                counter.value = value;
+                counter.error = min.count;
+                counters.put(value, counter);
+                increment(counter);
+            }
+        }
+
+        /**
+         * @return the counters ordered by the count in descending order
+         */
+        List<Counter> top() {
+            List<Counter> top = new ArrayList<>(counters.size());
+            for(Bucket bucket = max; bucket != null; bucket = bucket.prev) {
+                for(Counter counter = bucket.head; counter != null; counter = counter.next) {
+                    top.add(counter);
+                }
+            }
+            return top;
+        }
+
+        void clear() {
+            counters.clear();
+            min = null;
+            max = null;
+        }
+
+        private void increment(Counter counter) {
+            Bucket bucket = counter.bucket;
+            Bucket next = bucket.next;
+            if(next == null || next.count != bucket.count + 1) {
+                next = new Bucket(bucket.count + 1);
+                insertAfter(bucket, next);
+            }
+            detach(counter);
+            attach(counter, next);
+        }
+
+        private void attach(Counter counter, Bucket bucket) {
+            counter.bucket = bucket;
+            counter.count = bucket.count;
+            counter.prev = null;
+            counter.next = bucket.head;
+            if(bucket.head != null) bucket.head.prev = counter;
+            bucket.head = counter;
+        }
+
+        private void detach(Counter counter) {
+            Bucket bucket = counter.bucket;
+            if(counter.prev != null) counter.prev.next = counter.next; else bucket.head = counter.next;
+            if(counter.next != null) counter.next.prev = counter.prev;
+            if(bucket.head == null) {
+                // remove the empty bucket.
+                if(bucket.prev != null) bucket.prev.next = bucket.next; else min = bucket.next;
+                if(bucket.next != null) bucket.next.prev = bucket.prev; else max = bucket.prev;
+            }
+        }
+
+        /**
+         * Insert the bucket after the given one, or as the min bucket if the given one is null.
+         */
+        private void insertAfter(Bucket bucket, Bucket inserted) {
+            Bucket next = bucket == null ? min : bucket.next;
+            inserted.prev = bucket;
+            inserted.next = next;
+            if(bucket == null) min = inserted; else bucket.next = inserted;
+            if(next == null) max = inserted; else next.prev = inserted;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The gauges of the modules that don't depend on the metrics module, for example, the number of the keys of the
+ * rate limiter or the state of a circuit. A module registers its gauges here, and the metrics handler adds them to
+ * its registry when they are registered, so that they are reported with the other metrics.
+ *
+ * A gauge is identified by the name and the tags. Registering a gauge with the same name and tags replaces the
+ * previous one, so a module can register its gauges again after a reload.
+ */
+public class GaugeRegistry {
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private static final List<Consumer<Gauge>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param name the name of the gauge
+     * @param tags the tags of the gauge, which are added to the common tags of the metrics handler
+     * @param value the supplier of the current value
+     */
+    public static void register(String name, Map<String, String> tags, Supplier<Number> value) {
+        Gauge gauge = new Gauge(name, tags, value);
+        gauges.put(gauge.getId(), gauge);
+        for(Consumer<Gauge> listener : listeners) {
+            listener.accept(gauge);
+        }
+    }
+
+    /**
+     * Add a listener that is called with the gauges registered already and every gauge registered afterwards.
+     *
+     * @param listener the listener of the registered gauges
+     */
+    public static void addListener(Consumer<Gauge> listener) {
+        listeners.add(listener);
+        for(Gauge gauge : gauges.values()) {
+            listener.accept(gauge);
+        }
+    }
+
+    public static void removeListener(Consumer<Gauge> listener) {
+        listeners.remove(listener);
+    }
+
+    public static List<Gauge> getGauges() {
+        return new ArrayList<>(gauges.values());
+    }
+
+    public static final class Gauge {
+        private final String name;
+        private final Map<String, String> tags;
+        private final Supplier<Number> value;
+
+        Gauge(String name, Map<String, String> tags, Supplier<Number> value) {
+            this.name = name;
+            this.tags = tags == null ? Collections.emptyMap() : Collections.unmodifiableMap(new TreeMap<>(tags));
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Map<String, String> getTags() {
+            return tags;
+        }
+
+        public Number getValue() {
+            return value.get();
+        }
+
+        String getId() {
+            return name + tags;
+        }
+    }
+}
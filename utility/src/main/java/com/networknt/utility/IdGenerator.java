@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.utility;
+
+/**
+ * Generate the unique ids like the correlationId of the requests. The generator that is used for
+ * the correlationId can be replaced with Util.setCorrelationIdGenerator or the idGenerator in the
+ * correlation.yml.
+ *
+ * The implementation must be thread safe as it is called from all the IO and worker threads.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+    /**
+     * @return a new unique id
+     */
+    String generate();
+}
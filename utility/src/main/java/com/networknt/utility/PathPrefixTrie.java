@@ -0,0 +1,188 @@
+package com.networknt.utility;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable radix trie compiled from a map of path prefixes to find the longest configured prefix of a
+ * request path. The lookup cost is proportional to the length of the path regardless of the number of the
+ * prefixes, and the result doesn't depend on the iteration order of the map in the config.
+ *
+ * As the trie is immutable, a handler can build a new one on config reload and replace the reference in a
+ * volatile field so that the requests in flight always see a consistent set of prefixes.
+ *
+ * @param <V> The type of the value associated with a prefix
+ */
+public final class PathPrefixTrie<V> {
+    private static final PathPrefixTrie<?> EMPTY = new PathPrefixTrie<>(new Node<>("", new char[0], new Node[0], null), 0);
+
+    private final Node<V> root;
+    private final int size;
+
+    private PathPrefixTrie(Node<V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Compile the prefixes and values in a map.
+     *
+     * @param mapping a map of prefix and value. It can be null.
+     * @param <V> The type of the value
+     * @return PathPrefixTrie
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PathPrefixTrie<V> of(Map<String, V> mapping) {
+        if(mapping == null || mapping.isEmpty()) return (PathPrefixTrie<V>)EMPTY;
+        BuildNode<V> root = new BuildNode<>();
+        for(Map.Entry<String, V> entry : mapping.entrySet()) {
+            BuildNode<V> node = root;
+            String prefix = entry.getKey();
+            for(int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new BuildNode<>());
+            }
+            node.entry = new AbstractMap.SimpleImmutableEntry<>(prefix, entry.getValue());
+        }
+        return new PathPrefixTrie<>(root.compile(""), mapping.size());
+    }
+
+    /**
+     * Compile a list of prefixes. The value of each prefix is the prefix itself.
+     *
+     * @param prefixes a collection of prefixes. It can be null.
+     * @return PathPrefixTrie
+     */
+    public static PathPrefixTrie<String> of(Collection<String> prefixes) {
+        if(prefixes == null) return of((Map<String, String>)null);
+        Map<String, String> mapping = new TreeMap<>();
+        for(String prefix : prefixes) {
+            mapping.put(prefix, prefix);
+        }
+        return of(mapping);
+    }
+
+    /**
+     * Find the longest prefix of the path.
+     *
+     * @param path the request path
+     * @return the prefix and value entry or null if no prefix matches
+     */
+    public Map.Entry<String, V> longestMatch(String path) {
+        return find(path, false);
+    }
+
+    /**
+     * Find the longest prefix of the path that ends at a segment boundary. That is the path is the same as
+     * the prefix or the next character of the path after the prefix is '/'. For example, /v1/pet matches
+     * /v1/pet/123 but it doesn't match /v1/pets.
+     *
+     * @param path the request path
+     * @return the prefix and value entry or null if no prefix matches
+     */
+    public Map.Entry<String, V> longestSegmentMatch(String path) {
+        return find(path, true);
+    }
+
+    /**
+     * @param path the request path
+     * @return the value of the longest prefix of the path or null if no prefix matches
+     */
+    public V get(String path) {
+        Map.Entry<String, V> entry = find(path, false);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * @param path the request path
+     * @return true if any of the prefixes matches the path
+     */
+    public boolean matches(String path) {
+        return find(path, false) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private Map.Entry<String, V> find(String path, boolean segment) {
+        if(path == null) return null;
+        int length = path.length();
+        Node<V> node = root;
+        Map.Entry<String, V> best = segment ? null : node.entry;
+        if(segment && node.entry != null && (length == 0 || path.charAt(0) == '/')) best = node.entry;
+        int pos = 0;
+        while(pos < length) {
+            Node<V> child = node.child(path.charAt(pos));
+            if(child == null || !path.regionMatches(pos, child.label, 0, child.label.length())) break;
+            pos += child.label.length();
+            node = child;
+            if(node.entry != null && (!segment || pos == length || path.charAt(pos) == '/')) {
+                best = node.entry;
+            }
+        }
+        return best;
+    }
+
+    private static final class Node<V> {
+        final String label;
+        final char[] keys;
+        final Node<V>[] children;
+        final Map.Entry<String, V> entry;
+
+        Node(String label, char[] keys, Node<V>[] children, Map.Entry<String, V> entry) {
+            this.label = label;
+            this.keys = keys;
+            this.children = children;
+            this.entry = entry;
+        }
+
+        Node<V> child(char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while(low <= high) {
+                int mid = (low + high) >>> 1;
+                char key = keys[mid];
+                if(key < c) {
+                    low = mid + 1;
+                } else if(key > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class BuildNode<V> {
+        final TreeMap<Character, BuildNode<V>> children = new TreeMap<>();
+        Map.Entry<String, V> entry;
+
+        @SuppressWarnings("unchecked")
+        Node<V> compile(String label) {
+            char[] keys = new char[children.size()];
+            Node<V>[] nodes = new Node[children.size()];
+            int i = 0;
+            for(Map.Entry<Character, BuildNode<V>> e : children.entrySet()) {
+                // collapse the chain of nodes that have only one child and no prefix into one edge.
+                StringBuilder sb = new StringBuilder().append(e.getKey().charValue());
+                BuildNode<V> child = e.getValue();
+                while(child.entry == null && child.children.size() == 1) {
+                    Map.Entry<Character, BuildNode<V>> only = child.children.firstEntry();
+                    sb.append(only.getKey().charValue());
+                    child = only.getValue();
+                }
+                keys[i] = e.getKey();
+                nodes[i] = child.compile(sb.toString());
+                i++;
+            }
+            return new Node<>(label, keys, nodes, entry);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.utility;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The default IdGenerator that generates the 128-bit time-ordered UUID version 7 with the current
+ * milliseconds in the first 48 bits and 74 random bits from the ThreadLocalRandom. It doesn't share
+ * a SecureRandom between the threads, so it should not be used for a secret like a token.
+ *
+ * The id is encoded as 22 chars of URL safe Base64 without padding, the same as Util.getUUID, and the
+ * chars are written directly from the bits.
+ */
+public class TimeBasedIdGenerator implements IdGenerator {
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    @Override
+    public String generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = System.currentTimeMillis() << 16 | 0x7000L | (random.nextInt() & 0x0FFFL);
+        long lsb = random.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return encode(msb, lsb);
+    }
+
+    /**
+     * Encode the 128 bits to the URL safe Base64 without padding.
+     */
+    static String encode(long msb, long lsb) {
+        char[] chars = new char[22];
+        for(int i = 0; i < 10; i++) {
+            chars[i] = ALPHABET[(int)(msb >>> (58 - i * 6)) & 0x3F];
+        }
+        // the 11th char has the last 4 bits of msb and the first 2 bits of lsb.
+        chars[10] = ALPHABET[(int)((msb & 0x0FL) << 2 | lsb >>> 62)];
+        for(int i = 11; i < 21; i++) {
+            chars[i] = ALPHABET[(int)(lsb >>> (56 - (i - 11) * 6)) & 0x3F];
+        }
+        chars[21] = ALPHABET[(int)(lsb & 0x03L) << 4];
+        return new String(chars);
+    }
+}
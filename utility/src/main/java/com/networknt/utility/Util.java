@@ -44,10 +44,13 @@ public class Util {
 
     public static final List<String> METHODS = Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH");
 
+    private static volatile IdGenerator correlationIdGenerator = new TimeBasedIdGenerator();
+
     /**
-     * Generate UUID across the entire app and it is used for correlationId.
+     * Generate a random UUID from the SecureRandom. It should be used when the id must not be
+     * predictable. For the correlationId, please use getCorrelationId instead.
      *
-     * @return String correlationId
+     * @return String uuid
      */
     public static String getUUID() {
         UUID id = UUID.randomUUID();
@@ -57,6 +60,44 @@ public class Util {
         return Base64.encodeBase64URLSafeString(bb.array());
     }
 
+    /**
+     * Generate a correlationId or traceabilityId with the current IdGenerator, which is the
+     * TimeBasedIdGenerator by default.
+     *
+     * @return String correlationId
+     */
+    public static String getCorrelationId() {
+        return correlationIdGenerator.generate();
+    }
+
+    public static IdGenerator getCorrelationIdGenerator() {
+        return correlationIdGenerator;
+    }
+
+    /**
+     * Replace the IdGenerator of the correlationId for the entire app.
+     *
+     * @param idGenerator the IdGenerator, the TimeBasedIdGenerator is used if it is null
+     */
+    public static void setCorrelationIdGenerator(IdGenerator idGenerator) {
+        correlationIdGenerator = idGenerator == null ? new TimeBasedIdGenerator() : idGenerator;
+    }
+
+    /**
+     * Create an IdGenerator from the class name with the default constructor.
+     *
+     * @param className the class name of the IdGenerator implementation
+     * @return IdGenerator the IdGenerator or the TimeBasedIdGenerator if the className is empty
+     */
+    public static IdGenerator createIdGenerator(String className) {
+        if(className == null || className.trim().isEmpty()) return new TimeBasedIdGenerator();
+        try {
+            return (IdGenerator)Class.forName(className.trim()).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new RuntimeException("Could not create the IdGenerator " + className, e);
+        }
+    }
+
     /**
      * Quote the given string if needed
      *
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.utility;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CardinalityLimiterTest {
+
+    @Test
+    public void testFoldAboveLimit() {
+        CardinalityLimiter limiter = new CardinalityLimiter(2);
+        Assert.assertEquals("a", limiter.limit("clientId", "a"));
+        Assert.assertEquals("b", limiter.limit("clientId", "b"));
+        Assert.assertEquals(CardinalityLimiter.OTHER, limiter.limit("clientId", "c"));
+        Assert.assertEquals("a", limiter.limit("clientId", "a"));
+        // the dimensions are limited separately.
+        Assert.assertEquals("c", limiter.limit("callerId", "c"));
+        Assert.assertNull(limiter.limit("clientId", null));
+        Assert.assertEquals(Integer.valueOf(2), limiter.getValueCounts().get("clientId"));
+        Assert.assertEquals(1L, limiter.getFoldedCount("clientId"));
+    }
+
+    @Test
+    public void testDisabled() {
+        CardinalityLimiter limiter = new CardinalityLimiter(0);
+        Assert.assertFalse(limiter.isEnabled());
+        for(int i = 0; i < 100; i++) {
+            Assert.assertEquals("v" + i, limiter.limit("clientId", "v" + i));
+        }
+    }
+
+    @Test
+    public void testReplaceWithTopValues() {
+        List<String> evicted = new ArrayList<>();
+        CardinalityLimiter limiter = new CardinalityLimiter(2, Long.MAX_VALUE, (dimension, value) -> evicted.add(dimension + "=" + value));
+        limiter.limit("clientId", "rare");
+        limiter.limit("clientId", "busy");
+        for(int i = 0; i < 10; i++) {
+            limiter.limit("clientId", "busy");
+            Assert.assertEquals(CardinalityLimiter.OTHER, limiter.limit("clientId", "heavy"));
+            limiter.limit("clientId", "noise" + i);
+        }
+        limiter.review();
+        // heavy replaces rare, which is used less in the interval.
+        Assert.assertEquals("heavy", limiter.limit("clientId", "heavy"));
+        Assert.assertEquals("busy", limiter.limit("clientId", "busy"));
+        Assert.assertEquals(CardinalityLimiter.OTHER, limiter.limit("clientId", "rare"));
+        Assert.assertEquals(List.of("clientId=rare"), evicted);
+    }
+
+    @Test
+    public void testSpaceSaving() {
+        CardinalityLimiter.SpaceSaving sketch = new CardinalityLimiter.SpaceSaving(10);
+        for(int i = 0; i < 100; i++) {
+            sketch.offer("top");
+            if(i % 2 == 0) sketch.offer("second");
+            sketch.offer("noise" + i);
+        }
+        List<CardinalityLimiter.SpaceSaving.Counter> top = sketch.top();
+        Assert.assertEquals(10, top.size());
+        Assert.assertEquals("top", top.get(0).value);
+        Assert.assertEquals(100, top.get(0).count - top.get(0).error);
+        Assert.assertEquals("second", top.get(1).value);
+    }
+
+    @Test
+    public void testReviewInBackground() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> threads = new ArrayList<>();
+        CardinalityLimiter limiter = new CardinalityLimiter(1, 50, (dimension, value) -> {
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+        });
+        limiter.limit("clientId", "rare");
+        for(int i = 0; i < 10; i++) {
+            Assert.assertEquals(CardinalityLimiter.OTHER, limiter.limit("clientId", "heavy"));
+        }
+        Thread.sleep(60);
+        // the folded value after the interval starts the review, which is not run on the request thread.
+        Assert.assertEquals(CardinalityLimiter.OTHER, limiter.limit("clientId", "heavy"));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(List.of("cardinality-review"), threads);
+        Assert.assertEquals("heavy", limiter.limit("clientId", "heavy"));
+    }
+
+    @Test
+    public void testSpaceSavingReplaceMin() {
+        CardinalityLimiter.SpaceSaving sketch = new CardinalityLimiter.SpaceSaving(2);
+        sketch.offer("a");
+        sketch.offer("a");
+        sketch.offer("b");
+        // c takes over the counter of b with the min count.
+        sketch.offer("c");
+        sketch.offer("a");
+        List<CardinalityLimiter.SpaceSaving.Counter> top = sketch.top();
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("a", top.get(0).value);
+        Assert.assertEquals(3, top.get(0).count);
+        Assert.assertEquals("c", top.get(1).value);
+        Assert.assertEquals(2, top.get(1).count);
+        Assert.assertEquals(1, top.get(1).error);
+        sketch.clear();
+        Assert.assertTrue(sketch.top().isEmpty());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.utility;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class GaugeRegistryTest {
+
+    @Test
+    public void testListener() {
+        GaugeRegistry.register("registry_test_before", Map.of("key", "a"), () -> 1);
+        List<GaugeRegistry.Gauge> received = new ArrayList<>();
+        Consumer<GaugeRegistry.Gauge> listener = received::add;
+        GaugeRegistry.addListener(listener);
+        try {
+            // the gauges registered before the listener is added are replayed.
+            Assert.assertTrue(received.stream().anyMatch(g -> g.getName().equals("registry_test_before")));
+            GaugeRegistry.register("registry_test_after", null, () -> 2);
+            GaugeRegistry.Gauge last = received.get(received.size() - 1);
+            Assert.assertEquals("registry_test_after", last.getName());
+            Assert.assertTrue(last.getTags().isEmpty());
+            Assert.assertEquals(2, last.getValue());
+            // the gauge with the same name and tags is replaced.
+            GaugeRegistry.register("registry_test_before", Map.of("key", "a"), () -> 3);
+            Assert.assertEquals(1, GaugeRegistry.getGauges().stream().filter(g -> g.getName().equals("registry_test_before")).count());
+        } finally {
+            GaugeRegistry.removeListener(listener);
+        }
+    }
+}
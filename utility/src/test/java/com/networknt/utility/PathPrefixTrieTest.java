@@ -0,0 +1,75 @@
+package com.networknt.utility;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PathPrefixTrieTest {
+
+    @Test
+    public void testLongestMatch() {
+        Map<String, String> map = new HashMap<>();
+        map.put("/v1", "a");
+        map.put("/v1/pets", "b");
+        map.put("/v1/pets/dog", "c");
+        map.put("/v2/address", "d");
+        PathPrefixTrie<String> trie = PathPrefixTrie.of(map);
+        Assert.assertEquals(4, trie.size());
+        Assert.assertEquals("c", trie.get("/v1/pets/dog/123"));
+        Assert.assertEquals("b", trie.get("/v1/pets/cat"));
+        Assert.assertEquals("b", trie.get("/v1/petstore"));
+        Assert.assertEquals("a", trie.get("/v1/address"));
+        Assert.assertEquals("/v1/pets", trie.longestMatch("/v1/pets/cat").getKey());
+        Assert.assertEquals("d", trie.get("/v2/address"));
+        Assert.assertNull(trie.get("/v2/addres"));
+        Assert.assertNull(trie.get("/v3"));
+        Assert.assertNull(trie.get(""));
+        Assert.assertNull(trie.get(null));
+    }
+
+    @Test
+    public void testLongestSegmentMatch() {
+        Map<String, String> map = new HashMap<>();
+        map.put("/v1/pet", "a");
+        map.put("/v1/pet/dog", "b");
+        PathPrefixTrie<String> trie = PathPrefixTrie.of(map);
+        Assert.assertEquals("a", trie.longestSegmentMatch("/v1/pet").getValue());
+        Assert.assertEquals("a", trie.longestSegmentMatch("/v1/pet/cat").getValue());
+        Assert.assertEquals("b", trie.longestSegmentMatch("/v1/pet/dog/1").getValue());
+        Assert.assertEquals("a", trie.longestSegmentMatch("/v1/pet/dogs").getValue());
+        Assert.assertNull(trie.longestSegmentMatch("/v1/pets"));
+    }
+
+    @Test
+    public void testPrefixList() {
+        PathPrefixTrie<String> trie = PathPrefixTrie.of(Arrays.asList("/v1/pets", "/v2"));
+        Assert.assertTrue(trie.matches("/v1/pets/1"));
+        Assert.assertTrue(trie.matches("/v2/address"));
+        Assert.assertFalse(trie.matches("/v1/address"));
+        Assert.assertTrue(PathPrefixTrie.of(Arrays.asList("")).matches("/any"));
+    }
+
+    @Test
+    public void testEmpty() {
+        PathPrefixTrie<String> trie = PathPrefixTrie.of((Map<String, String>)null);
+        Assert.assertTrue(trie.isEmpty());
+        Assert.assertNull(trie.longestMatch("/v1"));
+        Assert.assertFalse(PathPrefixTrie.of(new HashMap<String, String>()).matches("/v1"));
+    }
+
+    @Test
+    public void testManyPrefixes() {
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            map.put("/service" + i + "/v1", i);
+        }
+        PathPrefixTrie<Integer> trie = PathPrefixTrie.of(map);
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertEquals(Integer.valueOf(i), trie.get("/service" + i + "/v1/resource"));
+        }
+        Assert.assertNull(trie.get("/service5000/v1"));
+    }
+}
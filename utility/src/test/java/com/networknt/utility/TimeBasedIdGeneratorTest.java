@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.utility;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class TimeBasedIdGeneratorTest {
+    private final TimeBasedIdGenerator generator = new TimeBasedIdGenerator();
+
+    @Test
+    public void testEncodeSameAsBase64() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i = 0; i < 1000; i++) {
+            long msb = random.nextLong();
+            long lsb = random.nextLong();
+            ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
+            bb.putLong(msb);
+            bb.putLong(lsb);
+            Assert.assertEquals(Base64.encodeBase64URLSafeString(bb.array()), TimeBasedIdGenerator.encode(msb, lsb));
+        }
+        Assert.assertEquals("AAAAAAAAAAAAAAAAAAAAAA", TimeBasedIdGenerator.encode(0, 0));
+        Assert.assertEquals("_____________________w", TimeBasedIdGenerator.encode(-1, -1));
+    }
+
+    @Test
+    public void testVersion7() {
+        long before = System.currentTimeMillis();
+        String id = generator.generate();
+        long after = System.currentTimeMillis();
+        Assert.assertEquals(22, id.length());
+        ByteBuffer bb = ByteBuffer.wrap(Base64.decodeBase64(id));
+        UUID uuid = new UUID(bb.getLong(), bb.getLong());
+        Assert.assertEquals(7, uuid.version());
+        Assert.assertEquals(2, uuid.variant());
+        long time = uuid.getMostSignificantBits() >>> 16;
+        Assert.assertTrue(time >= before && time <= after);
+    }
+
+    @Test
+    public void testUnique() {
+        Set<String> ids = new HashSet<>();
+        for(int i = 0; i < 100000; i++) {
+            Assert.assertTrue(ids.add(generator.generate()));
+        }
+    }
+
+    @Test
+    public void testCorrelationIdGenerator() {
+        try {
+            Util.setCorrelationIdGenerator(() -> "fixed");
+            Assert.assertEquals("fixed", Util.getCorrelationId());
+            Util.setCorrelationIdGenerator(Util.createIdGenerator(TimeBasedIdGenerator.class.getName()));
+            Assert.assertTrue(Util.getCorrelationIdGenerator() instanceof TimeBasedIdGenerator);
+        } finally {
+            Util.setCorrelationIdGenerator(null);
+        }
+        Assert.assertEquals(22, Util.getCorrelationId().length());
+    }
+}